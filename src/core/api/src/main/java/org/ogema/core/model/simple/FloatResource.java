@@ -69,6 +69,24 @@ public interface FloatResource extends SingleValueResource {
 	 * 		if access mode is read-only
 	 */
 	float getAndAdd(float value) throws VirtualResourceException, SecurityException, ResourceAccessException;
+
+	/**
+	 * Atomically sets the value to update, if the current value equals expect. The values are compared like {@link Float#equals(Object)}.
+	 * 
+	 * @param expect
+	 * 		the expected current value
+	 * @param update
+	 * 		the new value to be set
+	 * @return
+	 * 		true if the value was set, false if the current value did not equal expect
+	 * @throws VirtualResourceException
+	 * 		if the resource is virtual
+	 * @throws SecurityException
+	 * 		if the caller does not have the read and write permission for this resource
+	 * @throws ResourceAccessException
+	 * 		if access mode is read-only
+	 */
+	boolean compareAndSet(float expect, float update) throws VirtualResourceException, SecurityException, ResourceAccessException;
 	
 	/**
 	 * Gets an access to the value's logged data.
@@ -70,6 +70,24 @@ public interface IntegerResource extends SingleValueResource {
 	 */
 	int getAndAdd(int value) throws VirtualResourceException, SecurityException, ResourceAccessException;
 
+	/**
+	 * Atomically sets the value to update, if the current value equals expect.
+	 * 
+	 * @param expect
+	 * 		the expected current value
+	 * @param update
+	 * 		the new value to be set
+	 * @return
+	 * 		true if the value was set, false if the current value did not equal expect
+	 * @throws VirtualResourceException
+	 * 		if the resource is virtual
+	 * @throws SecurityException
+	 * 		if the caller does not have the read and write permission for this resource
+	 * @throws ResourceAccessException
+	 * 		if access mode is read-only
+	 */
+	boolean compareAndSet(int expect, int update) throws VirtualResourceException, SecurityException, ResourceAccessException;
+
 	/**
 	 * Gets an access to the value's logged data.
 	 */
@@ -52,6 +52,24 @@ public interface StringResource extends SingleValueResource {
 	 */
 	String getAndSet(String value) throws VirtualResourceException, SecurityException, ResourceAccessException;
 
+	/**
+	 * Atomically sets the value to update, if the current value equals expect. The values are compared by {@link String#equals(Object)}.
+	 * 
+	 * @param expect
+	 * 		the expected current value
+	 * @param update
+	 * 		the new value to be set
+	 * @return
+	 * 		true if the value was set, false if the current value did not equal expect
+	 * @throws VirtualResourceException
+	 * 		if the resource is virtual
+	 * @throws SecurityException
+	 * 		if the caller does not have the read and write permission for this resource
+	 * @throws ResourceAccessException
+	 * 		if access mode is read-only
+	 */
+	boolean compareAndSet(String expect, String update) throws VirtualResourceException, SecurityException, ResourceAccessException;
+
 	/**
 	 * Future prognosis for this value. The data type, unit and interpretation of
 	 * the values in the schedule are the same as the value in this. If multiple
@@ -74,6 +74,24 @@ public interface TimeResource extends SingleValueResource {
 	 * 		if access mode is read-only
 	 */
 	long getAndAdd(long value) throws VirtualResourceException, SecurityException, ResourceAccessException;
+
+	/**
+	 * Atomically sets the value to update, if the current value equals expect.
+	 * 
+	 * @param expect
+	 * 		the expected current value
+	 * @param update
+	 * 		the new value to be set
+	 * @return
+	 * 		true if the value was set, false if the current value did not equal expect
+	 * @throws VirtualResourceException
+	 * 		if the resource is virtual
+	 * @throws SecurityException
+	 * 		if the caller does not have the read and write permission for this resource
+	 * @throws ResourceAccessException
+	 * 		if access mode is read-only
+	 */
+	boolean compareAndSet(long expect, long update) throws VirtualResourceException, SecurityException, ResourceAccessException;
 	
 	/**
 	 * Gets recorded past values.
@@ -31,6 +31,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -54,6 +55,7 @@ import org.ogema.core.resourcemanager.ResourceManagement;
 import org.ogema.core.resourcemanager.pattern.ResourcePatternAccess;
 import org.ogema.core.security.WebAccessManager;
 import org.ogema.core.tools.SerializationManager;
+import org.ogema.events.OrderedEventSubmitter;
 import org.ogema.patternaccess.AdministrationPatternAccess;
 import org.ogema.resourcemanager.impl.ApplicationResourceManager;
 import org.ogema.timer.TimerRemovedListener;
@@ -64,9 +66,16 @@ import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class ApplicationManagerImpl implements ApplicationManager, TimerRemovedListener {
+public class ApplicationManagerImpl implements ApplicationManager, OrderedEventSubmitter, TimerRemovedListener {
 
 	private static final long serialVersionUID = 11534545646813546L;
+	/**
+	 * Framework property: number of threads executing the callbacks of an application, default 1. Can be set for a
+	 * single application by appending its bundle symbolic name, e.g. {@code org.ogema.apps.threads.my.app.bundle}.
+	 * With more than one thread, callbacks submitted with the same key (see {@link OrderedEventSubmitter}) are still
+	 * executed in order, in particular all events of a listener registration.
+	 */
+	public static final String THREADS_PROPERTY = "org.ogema.apps.threads";
 	final TimerScheduler scheduler;
 	final List<Timer> timers;
 	private final FrameworkClock clock;
@@ -76,6 +85,9 @@ public class ApplicationManagerImpl implements ApplicationManager, TimerRemovedL
 	private static final int WORKQUEUE_FORCE_DRAIN_SIZE = 50;
 	final Callable<Void> drainWorkQueueTask;
 	private final ApplicationThreadFactory tfac;
+	// null if the application uses a single thread
+	private final OrderedExecutor orderedExecutor;
+	private final ExecutionStatistics statistics = new ExecutionStatistics();
 
 	private final Application application;
 	ApplicationTracker tracker;
@@ -102,13 +114,17 @@ public class ApplicationManagerImpl implements ApplicationManager, TimerRemovedL
 		this.application = Objects.requireNonNull(app);
 		this.appID = id;
 		workQueue = new ConcurrentLinkedQueue<>();
-		this.executor = Executors.newSingleThreadExecutor(tfac = new ApplicationThreadFactory(application));
+		this.bContext = id.getBundle().getBundleContext();
+		tfac = new ApplicationThreadFactory(application);
+		final int threads = readThreadCount(
+				bContext.getProperty(THREADS_PROPERTY + "." + id.getBundle().getSymbolicName()),
+				bContext.getProperty(THREADS_PROPERTY));
+		this.orderedExecutor = threads > 1 ? new OrderedExecutor(threads, tfac) : null;
+		this.executor = orderedExecutor != null ? orderedExecutor : Executors.newSingleThreadExecutor(tfac);
 		logger = LoggerFactory.getLogger("org.ogema.core.application-" + app.getClass().getName());
 		this.resMan = new ApplicationResourceManager(this, app, tracker.getResourceDBManager(),
 				tracker.getPermissionManager());
 		timers = new LinkedList<>();
-
-		this.bContext = id.getBundle().getBundleContext();
 	}
 
 	// constructor used only for timer tests
@@ -126,13 +142,30 @@ public class ApplicationManagerImpl implements ApplicationManager, TimerRemovedL
 		this.clock = clock;
 		this.bContext = null;
 		workQueue = new ConcurrentLinkedQueue<>();
-		this.executor = Executors.newSingleThreadExecutor(tfac = new ApplicationThreadFactory(application));
+		tfac = new ApplicationThreadFactory(application);
+		final int threads = readThreadCount(null, System.getProperty(THREADS_PROPERTY));
+		this.orderedExecutor = threads > 1 ? new OrderedExecutor(threads, tfac) : null;
+		this.executor = orderedExecutor != null ? orderedExecutor : Executors.newSingleThreadExecutor(tfac);
 		logger = LoggerFactory.getLogger("AppMan." + app.getClass().getName());
 		resMan = null;
 		this.appID = AppIDImpl.getNewID(app);
 		timers = new LinkedList<>();
 	}
 
+	private static int readThreadCount(String appValue, String globalValue) {
+		final String value = appValue != null ? appValue : globalValue;
+		if (value == null) {
+			return 1;
+		}
+		try {
+			return Math.max(1, Integer.parseInt(value.trim()));
+		} catch (NumberFormatException e) {
+			LoggerFactory.getLogger(ApplicationManagerImpl.class).warn("Invalid value for {}: {}", THREADS_PROPERTY,
+					value);
+			return 1;
+		}
+	}
+
 	@Override
 	public void shutdown() {
 		tracker.removeApplication(application);
@@ -352,23 +385,73 @@ public class ApplicationManagerImpl implements ApplicationManager, TimerRemovedL
 
 	@Override
 	public <T> Future<T> submitEvent(Callable<T> application) {
+		return submitEvent(null, application);
+	}
+
+	@Override
+	public <T> Future<T> submitEvent(Object key, Callable<T> callback) {
 		if (executor.isShutdown()) {
 			return null;
 		}
-		Future<T> f = executor.submit(application);
+		final Callable<T> timed = new TimedCallable<>(callback);
+		final Future<T> f;
+		try {
+			f = orderedExecutor != null ? orderedExecutor.submit(key, timed) : executor.submit(timed);
+		} catch (RejectedExecutionException e) { // shut down concurrently
+			return null;
+		}
 		workQueue.add(f);
 		if (workQueue.size() > WORKQUEUE_FORCE_DRAIN_SIZE) {
 			final Future<?> future = workQueue.peek();
 			if (future != null && future.isDone()) {
-				executor.submit(drainWorkQueueTask);
+				try {
+					executor.submit(drainWorkQueueTask);
+				} catch (RejectedExecutionException e) {
+					// shut down concurrently
+				}
 			}
 		}
 		return f;
 	}
 
+	/**
+	 * @return queue wait times and durations of the callbacks submitted to this application.
+	 */
+	public ExecutionStatistics getExecutionStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * @return number of threads executing the callbacks of this application.
+	 */
+	public int getThreadCount() {
+		return orderedExecutor != null ? orderedExecutor.getThreadCount() : 1;
+	}
+
+	private final class TimedCallable<T> implements Callable<T> {
+
+		private final Callable<T> callback;
+		private final long submitted = System.nanoTime();
+
+		TimedCallable(Callable<T> callback) {
+			this.callback = callback;
+		}
+
+		@Override
+		public T call() throws Exception {
+			final long start = System.nanoTime();
+			try {
+				return callback.call();
+			} finally {
+				statistics.record(start - submitted, System.nanoTime() - start);
+			}
+		}
+
+	}
+
 	/**
 	 * Removes completed futures from the workqueue and logs all exceptions as warnings.
-	 * Synchronization note: must be called in app thread only.
+	 * Synchronization note: must be called in app thread only, and without an ordering key.
 	 */
 	protected void drainWorkQueue() {
 		while (!workQueue.isEmpty() && workQueue.peek().isDone()) {
@@ -403,10 +486,10 @@ public class ApplicationManagerImpl implements ApplicationManager, TimerRemovedL
 	}
 
 	/**
-	 * @return true iff the current thread is this application's thread.
+	 * @return true iff the current thread is one of this application's threads.
 	 */
 	public boolean isApplicationThread() {
-		return Thread.currentThread() == tfac.getLastThread();
+		return tfac.isOwnThread();
 	}
 
 	@Override
@@ -36,6 +36,9 @@ class ApplicationThreadFactory implements ThreadFactory {
 
 	private volatile Thread lastThread;
 
+	// the factory which created the current thread
+	private static final ThreadLocal<ApplicationThreadFactory> OWNER = new ThreadLocal<>();
+
 	private AtomicInteger threadCount = new AtomicInteger(0);
 
 	/**
@@ -45,13 +48,27 @@ class ApplicationThreadFactory implements ThreadFactory {
 		return lastThread;
 	}
 
+	/**
+	 * @return true iff the current thread has been created by this factory.
+	 */
+	public boolean isOwnThread() {
+		return OWNER.get() == this;
+	}
+
 	public ApplicationThreadFactory(Application application) {
 		this.application = application;
 	}
 
 	@Override
-	public Thread newThread(Runnable r) {
-		Thread t = new Thread(group, r);
+	public Thread newThread(final Runnable r) {
+		Thread t = new Thread(group, new Runnable() {
+
+			@Override
+			public void run() {
+				OWNER.set(ApplicationThreadFactory.this);
+				r.run();
+			}
+		});
 		t.setName("App '" + application.getClass().getName() + "' (" + threadCount.incrementAndGet() + ")");
 		lastThread = t;
 		return t;
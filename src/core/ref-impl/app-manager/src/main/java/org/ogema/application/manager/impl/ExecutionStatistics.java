@@ -0,0 +1,86 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.application.manager.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Execution times of the callbacks submitted to an application: the time a callback waits in the queue before it
+ * is started, and the time it takes to run. All times in ns.
+ */
+public class ExecutionStatistics {
+
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalWait = new AtomicLong();
+	private final AtomicLong maxWait = new AtomicLong();
+	private final AtomicLong totalDuration = new AtomicLong();
+	private final AtomicLong maxDuration = new AtomicLong();
+
+	void record(long wait, long duration) {
+		count.incrementAndGet();
+		totalWait.addAndGet(wait);
+		totalDuration.addAndGet(duration);
+		updateMax(maxWait, wait);
+		updateMax(maxDuration, duration);
+	}
+
+	private static void updateMax(AtomicLong max, long value) {
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * @return number of callbacks executed.
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getTotalWaitTime() {
+		return totalWait.get();
+	}
+
+	public long getMaxWaitTime() {
+		return maxWait.get();
+	}
+
+	public long getAverageWaitTime() {
+		final long n = count.get();
+		return n == 0 ? 0 : totalWait.get() / n;
+	}
+
+	public long getTotalDuration() {
+		return totalDuration.get();
+	}
+
+	public long getMaxDuration() {
+		return maxDuration.get();
+	}
+
+	public long getAverageDuration() {
+		final long n = count.get();
+		return n == 0 ? 0 : totalDuration.get() / n;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d callbacks, wait avg/max %d/%d ns, duration avg/max %d/%d ns", getCount(),
+				getAverageWaitTime(), getMaxWaitTime(), getAverageDuration(), getMaxDuration());
+	}
+
+}
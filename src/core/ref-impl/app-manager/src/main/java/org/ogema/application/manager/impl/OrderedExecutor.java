@@ -0,0 +1,229 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.application.manager.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes the tasks of an application on a fixed number of threads. Tasks with the same key are executed one at a
+ * time in the order of submission, tasks with different keys may run in parallel. Tasks executed without a key, like
+ * the timer callbacks and the start and stop calls of the application, share a default key, so they keep the order
+ * they would have on a single application thread.<br>
+ * Each key with pending tasks has its own queue, which is submitted to the thread pool whenever it has a task to run
+ * and is not running already. A slow task thus delays only the tasks with the same key.
+ */
+class OrderedExecutor extends AbstractExecutorService {
+
+	private final ExecutorService pool;
+	private final int threads;
+	private final ConcurrentMap<Object, KeyQueue> queues = new ConcurrentHashMap<>();
+	private final Object defaultKey = new Object();
+	// set by shutdownNow, the queues are not run any more
+	private volatile boolean stopped;
+
+	OrderedExecutor(int threads, ThreadFactory factory) {
+		this.pool = Executors.newFixedThreadPool(threads, factory);
+		this.threads = threads;
+	}
+
+	int getThreadCount() {
+		return threads;
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		execute(defaultKey, command);
+	}
+
+	public void execute(Object key, Runnable command) {
+		if (key == null) {
+			key = defaultKey;
+		}
+		if (pool.isShutdown()) {
+			throw new RejectedExecutionException("Executor has been shut down");
+		}
+		for (;;) {
+			KeyQueue q = queues.get(key);
+			if (q == null) {
+				final KeyQueue newQueue = new KeyQueue(key);
+				q = queues.putIfAbsent(key, newQueue);
+				if (q == null) {
+					q = newQueue;
+				}
+			}
+			if (q.offer(command)) {
+				return;
+			}
+			// the queue has just been emptied and removed, try again with a new one
+		}
+	}
+
+	public <T> Future<T> submit(Object key, Callable<T> task) {
+		final FutureTask<T> f = new FutureTask<>(task);
+		execute(key, f);
+		return f;
+	}
+
+	/**
+	 * @return the number of keys with pending or running tasks.
+	 */
+	int getActiveKeys() {
+		return queues.size();
+	}
+
+	@Override
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Stops all running tasks and discards the pending ones. Pending tasks which are {@link Future}s, like those
+	 * created by {@link #submit(Object, Callable)}, are cancelled, so that no caller waits for them in vain.
+	 * 
+	 * @return the tasks which have not been started.
+	 */
+	@Override
+	public List<Runnable> shutdownNow() {
+		stopped = true;
+		// returns only queues, their tasks are drained below
+		pool.shutdownNow();
+		final List<Runnable> pending = new ArrayList<>();
+		for (KeyQueue q : queues.values()) {
+			q.drainTo(pending);
+		}
+		for (Runnable task : pending) {
+			if (task instanceof Future) {
+				((Future<?>) task).cancel(false);
+			}
+		}
+		return pending;
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return pool.isShutdown();
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return pool.isTerminated();
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return pool.awaitTermination(timeout, unit);
+	}
+
+	private class KeyQueue implements Runnable {
+
+		private final Object key;
+		// guarded by this
+		private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+		// guarded by this, the queue is submitted to the pool or running
+		private boolean scheduled;
+		// guarded by this, the queue has been removed from the map
+		private boolean removed;
+
+		KeyQueue(Object key) {
+			this.key = key;
+		}
+
+		synchronized boolean offer(Runnable task) {
+			if (removed) {
+				return false;
+			}
+			tasks.add(task);
+			if (!scheduled) {
+				scheduled = true;
+				try {
+					pool.execute(this);
+				} catch (RejectedExecutionException e) {
+					// shut down concurrently; other tasks of the queue, if any, are left to shutdownNow
+					scheduled = false;
+					tasks.removeLastOccurrence(task);
+					throw e;
+				}
+			}
+			return true;
+		}
+
+		synchronized void drainTo(List<Runnable> list) {
+			list.addAll(tasks);
+			tasks.clear();
+		}
+
+		@Override
+		public void run() {
+			boolean next = true;
+			while (next) {
+				final Runnable task;
+				synchronized (this) {
+					task = tasks.poll();
+				}
+				try {
+					if (task != null) {
+						task.run();
+					}
+				} finally {
+					next = next();
+				}
+			}
+		}
+
+		/*
+		 * Called after each task. Returns true if the next task is to be run on the current thread, which is the
+		 * case only after a shutdown, when the pool does not accept the queue any more.
+		 */
+		private synchronized boolean next() {
+			if (tasks.isEmpty()) {
+				scheduled = false;
+				removed = true;
+				queues.remove(key, this);
+				return false;
+			}
+			if (stopped) {
+				// remaining tasks are drained by shutdownNow
+				scheduled = false;
+				return false;
+			}
+			if (pool.isShutdown()) {
+				return true;
+			}
+			// back to the pool after each task, so other keys are not starved
+			try {
+				pool.execute(this);
+				return false;
+			} catch (RejectedExecutionException e) {
+				// shut down concurrently
+				return true;
+			}
+		}
+	}
+
+}
@@ -56,6 +56,10 @@ public class ApplicationTimer implements Timer, Comparable<ApplicationTimer>,
      */
     protected volatile long period;
     protected volatile long nextRun;
+    /**
+     * Scheduling data of the timer queue, guarded by the lock on scheduler.timers
+     */
+    Object queueEntry;
 
     /**
      * false iff this timer's listener callbacks are currently being executed
@@ -218,6 +222,7 @@ public class ApplicationTimer implements Timer, Comparable<ApplicationTimer>,
         	}
         }
         state = TimerState.SHUTDOWN;
+        scheduler.timerDestroyed(this);
     }
 
     @Override
@@ -15,8 +15,9 @@
  */
 package org.ogema.application.manager.impl.scheduler;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
 
@@ -36,12 +37,29 @@ import org.slf4j.Logger;
 @Service(TimerScheduler.class)
 public class DefaultTimerScheduler implements TimerScheduler, FrameworkClock.ClockChangeListener {
 
-    protected final PriorityQueue<ApplicationTimer> timers = new PriorityQueue<>();
+    /**
+     * System property: if true, timers are scheduled on a hierarchical timing
+     * wheel instead of a binary heap. Recommended for large numbers of timers,
+     * e.g. many recorded data with fixed interval logging.
+     */
+    public static final String TIMING_WHEEL_PROPERTY = "org.ogema.timer.wheel";
+
+    protected final TimerQueue timers;
     protected Thread dispatchThread;
+    // guarded by timers, only used by the dispatch thread
+    private final List<ApplicationTimer> due = new ArrayList<>();
 
     @Reference
     protected FrameworkClock clock;
 
+    public DefaultTimerScheduler() {
+        this(Boolean.getBoolean(TIMING_WHEEL_PROPERTY) ? new TimingWheel() : new HeapTimerQueue());
+    }
+
+    DefaultTimerScheduler(TimerQueue timers) {
+        this.timers = timers;
+    }
+
     private final Runnable dispatchImpl = new Runnable() {
         @Override
         public void run() {
@@ -56,9 +74,10 @@ public class DefaultTimerScheduler implements TimerScheduler, FrameworkClock.Clo
                         continue;
                     }
                     long now = clock.getExecutionTime();
-                    long next = timers.peek().getNextRunTime();
+                    long next = timers.nextWakeUpTime();
                     if (next <= now) {
-                        processTimer(timers.poll(), now);
+                        dispatchDue(now);
+                        continue;
                     }
                     try {
                         float factor = clock.getSimulationFactor();
@@ -78,12 +97,28 @@ public class DefaultTimerScheduler implements TimerScheduler, FrameworkClock.Clo
 
     };
 
+    /**
+     * Executes all timers due at the given time and schedules their next run.
+     */
+    void dispatchDue(long now) {
+        synchronized (timers) {
+            timers.pollDue(now, due);
+            try {
+                for (ApplicationTimer t : due) {
+                    processTimer(t, now);
+                }
+            } finally {
+                due.clear();
+            }
+        }
+    }
+
     private void processTimer(ApplicationTimer timer, long executionTime) {
         //open synchronization issues: possible to enqueue callback for paused/stopped timer.
         switch (timer.getState()) {
             case PAUSED:
                 timer.forward();
-                timers.offer(timer);
+                timers.add(timer);
                 break;
             case RUNNING:
                 if (timer.isIdle()) {
@@ -94,7 +129,7 @@ public class DefaultTimerScheduler implements TimerScheduler, FrameworkClock.Clo
                 	}
                 }
                 timer.forward();
-                timers.offer(timer);
+                timers.add(timer);
                 break;
             case SHUTDOWN:
                 break;
@@ -130,11 +165,17 @@ public class DefaultTimerScheduler implements TimerScheduler, FrameworkClock.Clo
     protected void reschedule(ApplicationTimer timer) {
         synchronized (timers) {
             timers.remove(timer);
-            timers.offer(timer);
+            timers.add(timer);
             timers.notifyAll();
         }
     }
 
+    protected void timerDestroyed(ApplicationTimer timer) {
+        synchronized (timers) {
+            timers.destroyed(timer);
+        }
+    }
+
      protected void setTimingInterval(ApplicationTimer timer, long period) {
         if (period < 1){
             throw new IllegalArgumentException("period must be > 0");
@@ -151,7 +192,7 @@ public class DefaultTimerScheduler implements TimerScheduler, FrameworkClock.Clo
      */
     private void shutdown() {
         synchronized (timers) {
-            for (ApplicationTimer t : timers) {
+            for (ApplicationTimer t : timers.getTimers()) {
                 t.destroy();
             }
             timers.clear();
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.application.manager.impl.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Default timer queue, a binary heap ordered by next run time. Destroyed timers
+ * are discarded when they are due.
+ */
+class HeapTimerQueue implements TimerQueue {
+
+    private final PriorityQueue<ApplicationTimer> timers = new PriorityQueue<>();
+
+    @Override
+    public void add(ApplicationTimer timer) {
+        timers.offer(timer);
+    }
+
+    @Override
+    public void remove(ApplicationTimer timer) {
+        timers.remove(timer);
+    }
+
+    @Override
+    public void destroyed(ApplicationTimer timer) {
+        // removal is O(n), discard when polled
+    }
+
+    @Override
+    public long nextWakeUpTime() {
+        final ApplicationTimer next = timers.peek();
+        return next == null ? Long.MAX_VALUE : next.getNextRunTime();
+    }
+
+    @Override
+    public void pollDue(long now, List<ApplicationTimer> due) {
+        while (!timers.isEmpty() && timers.peek().getNextRunTime() <= now) {
+            due.add(timers.poll());
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return timers.isEmpty();
+    }
+
+    @Override
+    public List<ApplicationTimer> getTimers() {
+        return new ArrayList<>(timers);
+    }
+
+    @Override
+    public void clear() {
+        timers.clear();
+    }
+
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.application.manager.impl.scheduler;
+
+import java.util.List;
+
+/**
+ * Scheduling queue of the {@link DefaultTimerScheduler}, ordered by the next run
+ * time of the timers. All methods are called while holding the lock on the queue.
+ */
+interface TimerQueue {
+
+    /**
+     * Schedules a timer for its current next run time.
+     */
+    void add(ApplicationTimer timer);
+
+    /**
+     * Removes a timer from the queue, if it is scheduled.
+     */
+    void remove(ApplicationTimer timer);
+
+    /**
+     * Called when a timer has been destroyed. Implementations may remove the
+     * timer right away or leave it to be discarded when it is due.
+     */
+    void destroyed(ApplicationTimer timer);
+
+    /**
+     * @return a time not later than the earliest next run time of all
+     * scheduled timers, at which the scheduler should call
+     * {@link #pollDue(long, List)}. Long.MAX_VALUE if the queue is empty.
+     */
+    long nextWakeUpTime();
+
+    /**
+     * Removes all timers with a next run time not later than now from the
+     * queue and adds them to the list.
+     */
+    void pollDue(long now, List<ApplicationTimer> due);
+
+    boolean isEmpty();
+
+    /**
+     * @return a copy of all scheduled timers.
+     */
+    List<ApplicationTimer> getTimers();
+
+    void clear();
+
+}
@@ -0,0 +1,310 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.application.manager.impl.scheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hierarchical timing wheel for a large number of timers. Adding, rescheduling
+ * and removing a timer take constant time, independent of the number of
+ * timers.
+ * <p>
+ * Timers with the same period and next run time are coalesced into a group,
+ * which takes a single place in the wheel. The wheel has 11 levels of 64 slots
+ * each, with a resolution of 1 ms on the lowest level. A group is stored on the
+ * level of the highest 6 bit digit in which its next run time differs from the
+ * current wheel time, in the slot given by that digit. When the wheel time
+ * reaches a slot, its groups move to lower levels, until they are due. Since
+ * the wheel time is the framework time, simulation factors and clock changes
+ * affect the wheel just like the heap based queue; if the clock is set back,
+ * the wheel is rebuilt.
+ */
+class TimingWheel implements TimerQueue {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = (Long.SIZE + SLOT_BITS - 1) / SLOT_BITS;
+    // index of the bucket with the groups which are due
+    private static final int DUE = LEVELS * SLOTS;
+
+    // first group of each slot, as doubly linked list
+    private final Group[] buckets = new Group[DUE + 1];
+    // occupied slots per level
+    private final long[] occupied = new long[LEVELS];
+    private final Map<GroupKey, Group> groups = new HashMap<>();
+    // group of the last timer added; timers due at the same time are re-added one after the other
+    private Group lastAdded;
+    // all groups on the wheel levels have a next run time after the wheel time
+    private long current;
+
+    @Override
+    public void add(ApplicationTimer timer) {
+        if (timer.queueEntry != null) {
+            remove(timer);
+        }
+        final long period = timer.getTimingInterval();
+        final long nextRun = timer.getNextRunTime();
+        Group g = lastAdded;
+        if (g == null || g.bucket < 0 || g.key.period != period || g.key.nextRun != nextRun) {
+            final GroupKey key = new GroupKey(period, nextRun);
+            g = groups.get(key);
+            if (g == null) {
+                g = new Group(key);
+                groups.put(key, g);
+                insert(g);
+            }
+            lastAdded = g;
+        }
+        g.timers.add(timer);
+        timer.queueEntry = g;
+    }
+
+    @Override
+    public void remove(ApplicationTimer timer) {
+        final Group g = (Group) timer.queueEntry;
+        if (g == null) {
+            return;
+        }
+        timer.queueEntry = null;
+        g.timers.remove(timer);
+        if (g.timers.isEmpty()) {
+            groups.remove(g.key);
+            unlink(g);
+        }
+    }
+
+    @Override
+    public void destroyed(ApplicationTimer timer) {
+        remove(timer);
+    }
+
+    @Override
+    public long nextWakeUpTime() {
+        if (buckets[DUE] != null) {
+            return current;
+        }
+        final int level = firstOccupiedLevel();
+        if (level < 0) {
+            return Long.MAX_VALUE;
+        }
+        return slotStart(level, Long.numberOfTrailingZeros(occupied[level]));
+    }
+
+    @Override
+    public void pollDue(long now, List<ApplicationTimer> due) {
+        if (now < current) {
+            rebuild(now);
+        }
+        advance(now);
+        Group g = buckets[DUE];
+        buckets[DUE] = null;
+        while (g != null) {
+            final Group next = g.next;
+            g.prev = g.next = null;
+            g.bucket = -1;
+            groups.remove(g.key);
+            for (ApplicationTimer t : g.timers) {
+                t.queueEntry = null;
+                due.add(t);
+            }
+            g = next;
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return groups.isEmpty();
+    }
+
+    @Override
+    public List<ApplicationTimer> getTimers() {
+        final List<ApplicationTimer> timers = new ArrayList<>();
+        for (Group g : groups.values()) {
+            timers.addAll(g.timers);
+        }
+        return timers;
+    }
+
+    @Override
+    public void clear() {
+        for (Group g : groups.values()) {
+            for (ApplicationTimer t : g.timers) {
+                t.queueEntry = null;
+            }
+        }
+        groups.clear();
+        lastAdded = null;
+        Arrays.fill(buckets, null);
+        Arrays.fill(occupied, 0);
+    }
+
+    /**
+     * @return number of timer groups, i.e. of distinct combinations of period
+     * and next run time.
+     */
+    int getGroupCount() {
+        return groups.size();
+    }
+
+    // moves the wheel time forward to now, cascading all slots passed on the way
+    private void advance(long now) {
+        for (;;) {
+            final int level = firstOccupiedLevel();
+            if (level < 0) {
+                current = Math.max(current, now);
+                return;
+            }
+            final int slot = Long.numberOfTrailingZeros(occupied[level]);
+            final long start = slotStart(level, slot);
+            if (start > now) {
+                current = now;
+                return;
+            }
+            current = start;
+            final int idx = level * SLOTS + slot;
+            Group g = buckets[idx];
+            buckets[idx] = null;
+            occupied[level] &= ~(1L << slot);
+            while (g != null) {
+                final Group next = g.next;
+                g.prev = g.next = null;
+                insert(g);
+                g = next;
+            }
+        }
+    }
+
+    // the clock has been set back, re-insert all groups relative to the new time
+    private void rebuild(long now) {
+        final List<Group> all = new ArrayList<>(groups.values());
+        Arrays.fill(buckets, null);
+        Arrays.fill(occupied, 0);
+        current = now;
+        for (Group g : all) {
+            g.prev = g.next = null;
+            insert(g);
+        }
+    }
+
+    private void insert(Group g) {
+        final long deadline = g.key.nextRun;
+        if (deadline <= current) {
+            link(g, DUE);
+            return;
+        }
+        final int level = (63 - Long.numberOfLeadingZeros(deadline ^ current)) / SLOT_BITS;
+        final int slot = (int) (deadline >>> (level * SLOT_BITS)) & (SLOTS - 1);
+        link(g, level * SLOTS + slot);
+    }
+
+    private void link(Group g, int idx) {
+        final Group first = buckets[idx];
+        g.prev = null;
+        g.next = first;
+        if (first != null) {
+            first.prev = g;
+        }
+        buckets[idx] = g;
+        g.bucket = idx;
+        if (idx < DUE) {
+            occupied[idx / SLOTS] |= 1L << (idx % SLOTS);
+        }
+    }
+
+    private void unlink(Group g) {
+        final int idx = g.bucket;
+        if (idx < 0) {
+            return;
+        }
+        if (g.prev != null) {
+            g.prev.next = g.next;
+        } else {
+            buckets[idx] = g.next;
+        }
+        if (g.next != null) {
+            g.next.prev = g.prev;
+        }
+        if (buckets[idx] == null && idx < DUE) {
+            occupied[idx / SLOTS] &= ~(1L << (idx % SLOTS));
+        }
+        g.prev = g.next = null;
+        g.bucket = -1;
+    }
+
+    private int firstOccupiedLevel() {
+        for (int l = 0; l < LEVELS; l++) {
+            if (occupied[l] != 0) {
+                return l;
+            }
+        }
+        return -1;
+    }
+
+    // earliest time covered by a slot, relative to the current wheel time
+    private long slotStart(int level, int slot) {
+        final int shift = level * SLOT_BITS;
+        final long higherDigits = shift + SLOT_BITS >= Long.SIZE ? 0 : current & (-1L << (shift + SLOT_BITS));
+        return higherDigits | ((long) slot << shift);
+    }
+
+    private static final class GroupKey {
+
+        final long period;
+        final long nextRun;
+
+        GroupKey(long period, long nextRun) {
+            this.period = period;
+            this.nextRun = nextRun;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof GroupKey)) {
+                return false;
+            }
+            final GroupKey other = (GroupKey) obj;
+            return period == other.period && nextRun == other.nextRun;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (nextRun ^ (nextRun >>> 32)) * 31 + (int) (period ^ (period >>> 32));
+        }
+
+    }
+
+    private static final class Group {
+
+        final GroupKey key;
+        final Set<ApplicationTimer> timers = new LinkedHashSet<>();
+        // index of the bucket, -1 if not linked
+        int bucket = -1;
+        Group prev;
+        Group next;
+
+        Group(GroupKey key) {
+            this.key = key;
+        }
+
+    }
+
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.application.manager.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ogema.core.application.Application;
+import org.ogema.core.application.ApplicationManager;
+
+public class OrderedExecutorTest {
+
+	private OrderedExecutor executor;
+
+	@Before
+	public void setup() {
+		executor = new OrderedExecutor(4, new ApplicationThreadFactory(new Application() {
+
+			@Override
+			public void start(ApplicationManager appManager) {
+			}
+
+			@Override
+			public void stop(AppStopReason reason) {
+			}
+		}));
+	}
+
+	@After
+	public void shutdown() throws InterruptedException {
+		executor.shutdownNow();
+		executor.awaitTermination(5, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void tasksWithSameKeyAreExecutedInOrder() throws InterruptedException {
+		final int keys = 8;
+		final int tasks = 1000;
+		final List<List<Integer>> results = new ArrayList<>();
+		final AtomicInteger overlaps = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(keys * tasks);
+		for (int k = 0; k < keys; k++) {
+			results.add(Collections.synchronizedList(new ArrayList<Integer>()));
+		}
+		final AtomicInteger[] running = new AtomicInteger[keys];
+		for (int k = 0; k < keys; k++) {
+			running[k] = new AtomicInteger();
+		}
+		for (int i = 0; i < tasks; i++) {
+			for (int k = 0; k < keys; k++) {
+				final int key = k;
+				final int value = i;
+				executor.execute(key, new Runnable() {
+
+					@Override
+					public void run() {
+						if (running[key].incrementAndGet() > 1) {
+							overlaps.incrementAndGet();
+						}
+						results.get(key).add(value);
+						running[key].decrementAndGet();
+						done.countDown();
+					}
+				});
+			}
+		}
+		Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals("Tasks with the same key ran concurrently", 0, overlaps.get());
+		for (List<Integer> l : results) {
+			Assert.assertEquals(tasks, l.size());
+			for (int i = 0; i < tasks; i++) {
+				Assert.assertEquals(i, l.get(i).intValue());
+			}
+		}
+	}
+
+	@Test
+	public void slowKeyDoesNotBlockOtherKeys() throws InterruptedException {
+		final CountDownLatch blocker = new CountDownLatch(1);
+		final CountDownLatch otherDone = new CountDownLatch(1);
+		executor.execute("slow", new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					blocker.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		executor.execute("fast", new Runnable() {
+
+			@Override
+			public void run() {
+				otherDone.countDown();
+			}
+		});
+		Assert.assertTrue(otherDone.await(5, TimeUnit.SECONDS));
+		blocker.countDown();
+	}
+
+	@Test
+	public void queuesAreRemovedWhenIdle() throws Exception {
+		for (int i = 0; i < 100; i++) {
+			executor.submit(i, new Callable<Void>() {
+
+				@Override
+				public Void call() {
+					return null;
+				}
+			});
+		}
+		executor.submit((Object) null, new Callable<Void>() {
+
+			@Override
+			public Void call() {
+				return null;
+			}
+		}).get(5, TimeUnit.SECONDS);
+		final long end = System.currentTimeMillis() + 5000;
+		while (executor.getActiveKeys() > 0 && System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(0, executor.getActiveKeys());
+	}
+
+	@Test(expected = RejectedExecutionException.class)
+	public void tasksAreRejectedAfterShutdown() {
+		executor.shutdown();
+		executor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+			}
+		});
+	}
+
+	@Test
+	public void pendingTasksAreExecutedAfterShutdown() throws InterruptedException {
+		final AtomicInteger count = new AtomicInteger();
+		for (int i = 0; i < 100; i++) {
+			executor.execute(i % 3, new Runnable() {
+
+				@Override
+				public void run() {
+					count.incrementAndGet();
+				}
+			});
+		}
+		executor.shutdown();
+		Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		Assert.assertEquals(100, count.get());
+	}
+
+	@Test
+	public void shutdownNowCancelsAndReturnsPendingTasks() throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch blocker = new CountDownLatch(1);
+		executor.execute("key", new Runnable() {
+
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					blocker.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		final List<Future<Void>> futures = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			futures.add(executor.submit("key", new Callable<Void>() {
+
+				@Override
+				public Void call() {
+					return null;
+				}
+			}));
+		}
+		Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+		final List<Runnable> pending = executor.shutdownNow();
+		Assert.assertEquals(futures.size(), pending.size());
+		for (Future<Void> f : futures) {
+			Assert.assertTrue(pending.contains(f));
+			Assert.assertTrue(f.isCancelled());
+		}
+		Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+	}
+
+}
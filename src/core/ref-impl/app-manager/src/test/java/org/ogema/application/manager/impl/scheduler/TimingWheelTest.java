@@ -0,0 +1,229 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.application.manager.impl.scheduler;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.ogema.core.administration.FrameworkClock;
+import org.ogema.core.application.Timer;
+import org.ogema.core.application.TimerListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the timing wheel with the heap based timer queue, on a simulated
+ * framework clock. The benchmark runs only if the system property
+ * org.ogema.timer.benchmark is true; its size can be set with the system
+ * property org.ogema.timer.benchmark.size.
+ */
+public class TimingWheelTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimingWheelTest.class);
+
+    private static final int BENCHMARK_SIZE = Integer.getInteger("org.ogema.timer.benchmark.size", 100000);
+    private static final long START = 1500000000000L;
+
+    private final AtomicLong time = new AtomicLong(START);
+
+    private final Executor directExecutor = new Executor() {
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private DefaultTimerScheduler createScheduler(TimerQueue queue) {
+        final DefaultTimerScheduler scheduler = new DefaultTimerScheduler(queue);
+        scheduler.clock = (FrameworkClock) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{FrameworkClock.class}, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "getExecutionTime":
+                        return time.get();
+                    case "getSimulationFactor":
+                        return 1F;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            }
+        });
+        return scheduler;
+    }
+
+    private static class CountingListener implements TimerListener {
+
+        long calls;
+
+        @Override
+        public void timerElapsed(Timer timer) {
+            calls++;
+        }
+
+    }
+
+    // what the dispatch thread does when it wakes up at the given time
+    private void advanceTo(DefaultTimerScheduler scheduler, long now) {
+        time.set(now);
+        while (scheduler.timers.nextWakeUpTime() <= now) {
+            scheduler.dispatchDue(now);
+        }
+    }
+
+    private List<CountingListener> createTimers(DefaultTimerScheduler scheduler, long seed, int count) {
+        final Random random = new Random(seed);
+        final List<CountingListener> listeners = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final CountingListener l = new CountingListener();
+            final Timer t = scheduler.createTimer(directExecutor, LoggerFactory.getLogger(getClass()));
+            t.addListener(l);
+            t.setTimingInterval(1 + random.nextInt(5000));
+            listeners.add(l);
+            if (random.nextInt(10) == 0) {
+                time.addAndGet(random.nextInt(100));
+            }
+        }
+        return listeners;
+    }
+
+    @Test
+    public void wheelFiresLikeHeap() {
+        final long seed = 42;
+        final List<long[]> results = new ArrayList<>();
+        for (TimerQueue queue : new TimerQueue[]{new HeapTimerQueue(), new TimingWheel()}) {
+            time.set(START);
+            final DefaultTimerScheduler scheduler = createScheduler(queue);
+            final List<CountingListener> listeners = createTimers(scheduler, seed, 500);
+            final Random random = new Random(seed);
+            long now = time.get();
+            for (int i = 0; i < 2000; i++) {
+                switch (random.nextInt(20)) {
+                    case 0: // clock jump, e.g. changed simulation time
+                        now += random.nextInt(100000);
+                        break;
+                    case 1: // clock set back
+                        now -= random.nextInt(10000);
+                        break;
+                    default:
+                        now += random.nextInt(50);
+                }
+                advanceTo(scheduler, now);
+            }
+            final long[] calls = new long[listeners.size()];
+            for (int i = 0; i < calls.length; i++) {
+                calls[i] = listeners.get(i).calls;
+            }
+            results.add(calls);
+        }
+        Assert.assertArrayEquals(results.get(0), results.get(1));
+    }
+
+    @Test
+    public void timersWithSamePeriodAndPhaseAreCoalesced() {
+        final TimingWheel wheel = new TimingWheel();
+        final DefaultTimerScheduler scheduler = createScheduler(wheel);
+        final CountingListener l = new CountingListener();
+        final List<Timer> timers = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            final Timer t = scheduler.createTimer(directExecutor, LoggerFactory.getLogger(getClass()));
+            t.addListener(l);
+            t.setTimingInterval(i % 2 == 0 ? 1000 : 60000);
+            timers.add(t);
+        }
+        Assert.assertEquals(2, wheel.getGroupCount());
+        advanceTo(scheduler, START + 10000);
+        Assert.assertEquals(10 * 500, l.calls);
+        Assert.assertEquals(2, wheel.getGroupCount());
+        for (Timer t : timers) {
+            t.destroy();
+        }
+        Assert.assertTrue(wheel.isEmpty());
+        advanceTo(scheduler, START + 20000);
+        Assert.assertEquals(10 * 500, l.calls);
+    }
+
+    @Test
+    public void pausedTimersAreNotExecuted() {
+        final DefaultTimerScheduler scheduler = createScheduler(new TimingWheel());
+        final CountingListener l = new CountingListener();
+        final Timer t = scheduler.createTimer(directExecutor, LoggerFactory.getLogger(getClass()));
+        t.addListener(l);
+        t.setTimingInterval(100);
+        advanceTo(scheduler, START + 1000);
+        Assert.assertEquals(10, l.calls);
+        t.stop();
+        advanceTo(scheduler, START + 2000);
+        Assert.assertEquals(10, l.calls);
+        t.resume();
+        advanceTo(scheduler, START + 3000);
+        Assert.assertEquals(20, l.calls);
+        Assert.assertEquals(START + 3100, t.getNextRunTime());
+    }
+
+    @Test
+    public void benchmark() {
+        Assume.assumeTrue(Boolean.getBoolean("org.ogema.timer.benchmark"));
+        for (TimerQueue queue : new TimerQueue[]{new HeapTimerQueue(), new TimingWheel()}) {
+            time.set(START);
+            final DefaultTimerScheduler scheduler = createScheduler(queue);
+            final CountingListener l = new CountingListener();
+            final List<Timer> timers = new ArrayList<>(BENCHMARK_SIZE);
+            final Random random = new Random(1);
+            long t0 = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_SIZE; i++) {
+                final Timer t = scheduler.createTimer(directExecutor, LoggerFactory.getLogger(getClass()));
+                t.addListener(l);
+                // typical logging intervals, 1 to 15 minutes
+                t.setTimingInterval(60000 * (1 + random.nextInt(15)));
+                timers.add(t);
+            }
+            final long create = System.nanoTime() - t0;
+            t0 = System.nanoTime();
+            // one simulated hour, in steps of 100ms
+            for (long now = START; now <= START + 3600000; now += 100) {
+                advanceTo(scheduler, now);
+            }
+            final long dispatch = System.nanoTime() - t0;
+            t0 = System.nanoTime();
+            for (Timer t : timers) {
+                t.setTimingInterval(60000);
+            }
+            final long reschedule = System.nanoTime() - t0;
+            t0 = System.nanoTime();
+            for (Timer t : timers) {
+                t.destroy();
+            }
+            final long destroy = System.nanoTime() - t0;
+            Assert.assertTrue(l.calls >= BENCHMARK_SIZE * 4);
+            logger.info("{} with {} timers: create {} ms, dispatch 1h {} ms ({} callbacks), reschedule {} ms, destroy {} ms",
+                    queue.getClass().getSimpleName(), BENCHMARK_SIZE, create / 1000000, dispatch / 1000000, l.calls,
+                    reschedule / 1000000, destroy / 1000000);
+        }
+    }
+
+}
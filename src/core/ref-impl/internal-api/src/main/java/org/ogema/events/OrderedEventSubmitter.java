@@ -0,0 +1,39 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.events;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import org.ogema.core.application.ApplicationManager;
+
+/**
+ * Implemented by application managers which may execute the callbacks of an application on several threads.
+ * Callbacks submitted with the same key are executed one at a time, in the order they were submitted. Callbacks
+ * submitted by {@link ApplicationManager#submitEvent(Callable)} share a single key.
+ */
+public interface OrderedEventSubmitter {
+
+	/**
+	 * @param key
+	 *            the ordering key, e.g. a listener registration. Keys are compared by equals.
+	 * @param callback
+	 *            the callback
+	 * @return the future of the callback, or null if the application does not accept callbacks any more.
+	 */
+	<T> Future<T> submitEvent(Object key, Callable<T> callback);
+
+}
@@ -78,6 +78,8 @@ public class DBConstants {
 	public static final String DB_PATH_NAME = "./data/persistence/";
 	public static final String RESOURCES_ARCHIVE_NAME = "resData";
 	public static final String DIR_FILE_NAME = "resMap";
+	public static final String DIR_JOURNAL_NAME = "resJournal";
+	public static final String VALUE_SLOTS_NAME = "resValues";
 
 	/*
 	 * Properties which can be set in the command line to control DB configuration.
@@ -94,7 +96,52 @@ public class DBConstants {
 	public static final String PROP_NAME_PERSISTENCE_DEBUG = "org.ogema.persistence.debug";
 	public static final String PROP_NAME_PERSISTENCE_COMPACTION_START_SIZE = "org.ogema.persistence.compaction.start.size.file";
 	public static final String PROP_NAME_PERSISTENCE_COMPACTION_START_SIZE_GARBAGE = "org.ogema.persistence.compaction.start.size.garbage";
+	/**
+	 * Number of directory journal entries after which the complete directory is written to a new map file. The
+	 * journal is checkpointed not before it exceeds the number of stored resources, too.
+	 */
+	public static final String PROP_NAME_PERSISTENCE_JOURNAL_CHECKPOINT_SIZE = "org.ogema.persistence.journal.checkpoint.size";
+	/**
+	 * Number of threads decoding the resource data file at start up. Defaults to the number of available processors,
+	 * 0 selects the sequential parser which doesn't map the data file into memory.
+	 */
+	public static final String PROP_NAME_PERSISTENCE_PARSER_THREADS = "org.ogema.persistence.parser.threads";
+	/**
+	 * Snapshot file created by the resource database, which is restored at start up if the database directory
+	 * doesn't contain a resource database yet.
+	 */
+	public static final String PROP_NAME_PERSISTENCE_SNAPSHOT_RESTORE = "org.ogema.persistence.snapshot.restore";
 	public static final String PROP_NAME_TIMEDPERSISTENCE_PERIOD = "org.ogema.timedpersistence.period";
+	/**
+	 * Durability policy of the timed persistence, one of {@link #PROP_VALUE_TIMEDPERSISTENCE_THROUGHPUT} (default),
+	 * {@link #PROP_VALUE_TIMEDPERSISTENCE_STRICT} or {@link #PROP_VALUE_TIMEDPERSISTENCE_ADAPTIVE}.
+	 */
+	public static final String PROP_NAME_TIMEDPERSISTENCE_POLICY = "org.ogema.timedpersistence.policy";
+	/**
+	 * Changes are written each storage period, but synchronized with the storage device only if the sync period
+	 * has elapsed or the number of sync changes has been reached since the last synchronization.
+	 */
+	public static final String PROP_VALUE_TIMEDPERSISTENCE_THROUGHPUT = "throughput";
+	/**
+	 * Each storage period is synchronized with the storage device, in addition the changes are stored and
+	 * synchronized when a transaction is finished.
+	 */
+	public static final String PROP_VALUE_TIMEDPERSISTENCE_STRICT = "strict";
+	/**
+	 * The storage period is adapted to the rate of changes and to the duration of the storage cycles, between a
+	 * tenth and six times the configured period.
+	 */
+	public static final String PROP_VALUE_TIMEDPERSISTENCE_ADAPTIVE = "adaptive";
+	/**
+	 * Maximum time in ms between two synchronizations with the storage device in throughput mode. Defaults to the
+	 * storage period.
+	 */
+	public static final String PROP_NAME_TIMEDPERSISTENCE_SYNC_PERIOD = "org.ogema.timedpersistence.sync.period";
+	/**
+	 * Number of changes after which the storage is synchronized in throughput mode. In adaptive mode the number of
+	 * changes a storage cycle should process.
+	 */
+	public static final String PROP_NAME_TIMEDPERSISTENCE_SYNC_CHANGES = "org.ogema.timedpersistence.sync.changes";
 
 	/*
 	 * A constant value which indicates, that a node haven't yet a valid id.
@@ -186,6 +186,18 @@ public interface ResourceDB {
 	 */
 	Collection<TreeElement> getFilteredNodes(Map<String, String> dict);
 
+	/**
+	 * Get the nodes of all resources of the given type, references excluded.
+	 * 
+	 * @param type
+	 *            the resource type, null for all types
+	 * @param includeSubTypes
+	 *            true if the resources of sub types of the type are requested too, false if only the resources of
+	 *            exactly the given type are requested.
+	 * @return Collection of matching nodes.
+	 */
+	Collection<TreeElement> getElementsByType(Class<? extends Resource> type, boolean includeSubTypes);
+
 	/**
 	 * Get a TreeElement object for the node specified by the given path string.
 	 * 
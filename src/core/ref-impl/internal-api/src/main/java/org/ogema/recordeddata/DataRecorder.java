@@ -16,8 +16,11 @@
 package org.ogema.recordeddata;
 
 import java.util.List;
+import java.util.Map;
 
+import org.ogema.core.channelmanager.measurements.SampledValue;
 import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.ReductionMode;
 
 /**
  * This interface provides access to the recorded data storage repository (time series database). It is provided as a
@@ -56,4 +59,22 @@ public interface DataRecorder {
 	boolean deleteRecordedDataStorage(String id);
 
 	List<String> getAllRecordedDataStorageIDs();
+
+	/**
+	 * Reads the log data of several time series for the same time interval. The result for each time series
+	 * is the same as for {@link RecordedDataStorage#getValues(long, long, long, ReductionMode)}, but the
+	 * time series may be read in parallel.
+	 * 
+	 * @param ids
+	 *            unique IDs of the time series
+	 * @param startTime
+	 * @param endTime
+	 *            exclusive
+	 * @param intervalSize
+	 * @param mode
+	 * @return
+	 *    map of time series ID to log data, in the order of the passed IDs. IDs without a storage are not contained.
+	 */
+	Map<String, List<SampledValue>> getValues(List<String> ids, long startTime, long endTime, long intervalSize,
+			ReductionMode mode);
 }
@@ -60,6 +60,19 @@ public interface SimpleResourceData {
 	 */
 	public void setBoolean(boolean z) throws UnsupportedOperationException;
 
+	/**
+	 * Atomically sets the Boolean value to update, if the current value equals expect.
+	 * 
+	 * @param expect
+	 *            expected current value.
+	 * @param update
+	 *            new value.
+	 * @return true if the value was set, false if the current value didn't equal expect.
+	 * @throws UnsupportedOperationException
+	 *             If the resource is not from type BooleanResource
+	 */
+	public boolean compareAndSetBoolean(boolean expect, boolean update) throws UnsupportedOperationException;
+
 	/**
 	 * Gets the float value.
 	 * 
@@ -79,6 +92,20 @@ public interface SimpleResourceData {
 	 */
 	public void setFloat(float f) throws UnsupportedOperationException;
 
+	/**
+	 * Atomically sets the Float value to update, if the current value equals expect. The values are compared like
+	 * {@link Float#equals(Object)}, i.e. by their bits.
+	 * 
+	 * @param expect
+	 *            expected current value.
+	 * @param update
+	 *            new value.
+	 * @return true if the value was set, false if the current value didn't equal expect.
+	 * @throws UnsupportedOperationException
+	 *             If the resource is not from type FloatResource
+	 */
+	public boolean compareAndSetFloat(float expect, float update) throws UnsupportedOperationException;
+
 	/**
 	 * Gets the integer value.
 	 * 
@@ -98,6 +125,19 @@ public interface SimpleResourceData {
 	 */
 	public void setInt(int i) throws UnsupportedOperationException;
 
+	/**
+	 * Atomically sets the Integer value to update, if the current value equals expect.
+	 * 
+	 * @param expect
+	 *            expected current value.
+	 * @param update
+	 *            new value.
+	 * @return true if the value was set, false if the current value didn't equal expect.
+	 * @throws UnsupportedOperationException
+	 *             If the resource is not from type IntegerResource
+	 */
+	public boolean compareAndSetInt(int expect, int update) throws UnsupportedOperationException;
+
 	/**
 	 * Gets the Long value.
 	 * 
@@ -117,6 +157,19 @@ public interface SimpleResourceData {
 	 */
 	public void setLong(long j) throws UnsupportedOperationException;
 
+	/**
+	 * Atomically sets the Long value to update, if the current value equals expect.
+	 * 
+	 * @param expect
+	 *            expected current value.
+	 * @param update
+	 *            new value.
+	 * @return true if the value was set, false if the current value didn't equal expect.
+	 * @throws UnsupportedOperationException
+	 *             If the resource is not from type LongResource
+	 */
+	public boolean compareAndSetLong(long expect, long update) throws UnsupportedOperationException;
+
 	/**
 	 * Gets the String value.
 	 * 
@@ -136,6 +189,20 @@ public interface SimpleResourceData {
 	 */
 	public void setString(String s) throws UnsupportedOperationException;
 
+	/**
+	 * Atomically sets the String value to update, if the current value equals expect. The values are compared by
+	 * {@link String#equals(Object)}.
+	 * 
+	 * @param expect
+	 *            expected current value.
+	 * @param update
+	 *            new value.
+	 * @return true if the value was set, false if the current value didn't equal expect.
+	 * @throws UnsupportedOperationException
+	 *             If the resource is not from type StringResource
+	 */
+	public boolean compareAndSetString(String expect, String update) throws UnsupportedOperationException;
+
 	/**
 	 * Gets the boolean array value.
 	 * 
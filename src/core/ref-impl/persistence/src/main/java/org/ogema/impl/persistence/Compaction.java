@@ -0,0 +1,202 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+
+/**
+ * Copy-on-write compaction of the resource data file. The live entries of a snapshot of the directory are copied to
+ * a new data file by a background thread, while the storage task keeps appending to the current data file. The ids
+ * stored or deleted after the snapshot has been taken are collected in {@link #changed} and copied resp. removed by
+ * {@link #finish(Map, File)}, which is called by the storage task before it switches to the new file.
+ */
+class Compaction implements Runnable {
+
+	private final Logger logger = org.slf4j.LoggerFactory.getLogger("persistence");
+
+	static final String FILE_PREFIX = "compact_";
+
+	private final DBResourceIO io;
+	private final File source;
+	final File target;
+	private final Map<Integer, Integer> snapshot;
+
+	/**
+	 * Offsets of the entries in the new data file by resource id.
+	 */
+	final Map<Integer, Integer> offsets;
+
+	/**
+	 * Ids of the resources stored or deleted since the snapshot has been taken. Accessed by the storage task only.
+	 */
+	final Set<Integer> changed = new HashSet<>();
+
+	final long startTime;
+
+	private volatile boolean done;
+	private volatile boolean cancelled;
+	private volatile IOException failure;
+
+	private FileOutputStream fos;
+	private DataOutputStream out;
+	private int position;
+	private int garbage;
+
+	Compaction(DBResourceIO io, File source, File target, Map<Integer, Integer> snapshot) {
+		this.io = io;
+		this.source = source;
+		this.target = target;
+		this.snapshot = snapshot;
+		this.offsets = new HashMap<>(snapshot.size() * 4 / 3 + 1);
+		this.startTime = System.currentTimeMillis();
+	}
+
+	@Override
+	public void run() {
+		// copy the entries in the order of the current file
+		TreeMap<Integer, Integer> sortedOffsets = new TreeMap<Integer, Integer>(io.new MapValueSorter(snapshot));
+		sortedOffsets.putAll(snapshot);
+		try (RandomAccessFile in = new RandomAccessFile(source, "r")) {
+			fos = new FileOutputStream(target);
+			out = new DataOutputStream(new BufferedOutputStream(fos, DataFile.BUFFER_SIZE));
+			for (Entry<Integer, Integer> entry : sortedOffsets.entrySet()) {
+				if (cancelled)
+					break;
+				offsets.put(entry.getKey(), copyEntry(in, entry.getValue()));
+			}
+			out.flush();
+		} catch (IOException e) {
+			failure = e;
+		} finally {
+			done = true;
+			if (cancelled)
+				discard();
+		}
+	}
+
+	private int copyEntry(RandomAccessFile in, int offset) throws IOException {
+		in.seek(offset);
+		io.tryReadEntry(in);
+		int length = (int) in.getFilePointer() - offset;
+		byte[] entry = new byte[length];
+		in.seek(offset);
+		in.readFully(entry);
+		out.write(entry);
+		int result = position;
+		position += length;
+		return result;
+	}
+
+	boolean isDone() {
+		return done;
+	}
+
+	IOException getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Copies the entries changed since the snapshot, forces the new data file to the storage device and moves it to
+	 * its final location. To be called by the storage task after {@link #isDone()} returned true.
+	 *
+	 * @param offsetByID
+	 *            the current directory, referring to the source file
+	 * @param dest
+	 *            the final location of the new data file
+	 */
+	void finish(Map<Integer, Integer> offsetByID, File dest) throws IOException {
+		out.flush();
+		// the copies of the changed entries made from the snapshot are garbage now
+		try (RandomAccessFile copied = new RandomAccessFile(target, "r")) {
+			for (Integer id : changed) {
+				Integer offset = offsets.get(id);
+				if (offset == null)
+					continue;
+				copied.seek(offset);
+				io.tryReadEntry(copied);
+				garbage += (int) copied.getFilePointer() - offset;
+			}
+		}
+		try (RandomAccessFile in = new RandomAccessFile(source, "r")) {
+			for (Integer id : changed) {
+				Integer offset = offsetByID.get(id);
+				if (offset == null)
+					offsets.remove(id);
+				else
+					offsets.put(id, copyEntry(in, offset));
+			}
+			out.flush();
+			fos.getFD().sync();
+		}
+		out.close();
+		out = null;
+		Files.move(target.toPath(), dest.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		if (Configuration.LOGGING)
+			logger.debug("Compaction copied " + offsets.size() + " entries, " + changed.size()
+					+ " of them changed while compacting");
+	}
+
+	/**
+	 * @return size of the outdated entries in the new data file
+	 */
+	int getGarbage() {
+		return garbage;
+	}
+
+	/**
+	 * @return length of the new data file
+	 */
+	int getLength() {
+		return position;
+	}
+
+	/**
+	 * Stops the copying and deletes the new data file. The background thread deletes the file itself, if it is still
+	 * running.
+	 */
+	void cancel() {
+		cancelled = true;
+		if (done)
+			discard();
+	}
+
+	void discard() {
+		try {
+			if (out != null)
+				out.close();
+		} catch (IOException e) {
+		}
+		out = null;
+		if (target.exists() && !target.delete())
+			logger.info("File could not be deleted: " + target.getName());
+	}
+
+}
@@ -15,25 +15,39 @@
  */
 package org.ogema.impl.persistence;
 
+import java.io.DataInput;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.ogema.core.model.Resource;
 import org.ogema.core.model.ResourceList;
@@ -91,6 +105,39 @@ public class DBResourceIO {
 
 	DataFile dataFile;
 
+	/*
+	 * Changes of the directory since the last map file has been written. The map file is rewritten only if the
+	 * journal grows bigger than the directory itself or the checkpoint size, whichever is bigger.
+	 */
+	DirectoryJournal journal;
+	final File journalFile;
+	private final Map<Integer, Integer> journalDelta;
+	private static final int DEFAULT_JOURNAL_CHECKPOINT_SIZE = 4096;
+	private int journalCheckpointSize;
+
+	/*
+	 * In-place storage of the values of boolean, int, float and long resources. Null if the slot file couldn't be
+	 * opened, in this case value changes are appended to the data file.
+	 */
+	ValueSlotFile valueSlots;
+	final File valueSlotsFile;
+
+	/*
+	 * Background compaction of the data file, null if none is running. Compaction statistics are kept for
+	 * monitoring purposes.
+	 */
+	private Compaction compaction;
+	private volatile long lastCompactionDuration = -1;
+	private volatile long reclaimedBytes;
+	private volatile int compactionCount;
+
+	/*
+	 * Number of threads decoding the memory mapped data file at start up, 0 selects the sequential parser reading
+	 * the data file via RandomAccessFile.
+	 */
+	int parserThreads;
+	private static final int MIN_ENTRIES_PER_PARSER_TASK = 256;
+
 	private boolean parsed;
 
 	private static String currentPath;
@@ -138,7 +185,7 @@ public class DBResourceIO {
 		// check if the minimum amount of garbage size is set that triggers compaction process.
 		String garbagesize = System.getProperty(DBConstants.PROP_NAME_PERSISTENCE_COMPACTION_START_SIZE_GARBAGE, null);
 		try {
-			minimumCompationGarbageSize = Integer.valueOf(garbagesize) / 100;
+			minimumCompationGarbageSize = Integer.valueOf(garbagesize) / 100f;
 			if (minimumCompationGarbageSize < .10f)
 				minimumCompationGarbageSize = .1f; // not less than 10%
 			if (minimumCompationGarbageSize > .90f)
@@ -146,6 +193,10 @@ public class DBResourceIO {
 		} catch (NumberFormatException e) {
 			minimumCompationGarbageSize = DEFAULT_MIN_COMPACTION_GARBAGE_SIZE;
 		}
+		journalCheckpointSize = Integer.getInteger(DBConstants.PROP_NAME_PERSISTENCE_JOURNAL_CHECKPOINT_SIZE,
+				DEFAULT_JOURNAL_CHECKPOINT_SIZE);
+		parserThreads = Math.max(0, Integer.getInteger(DBConstants.PROP_NAME_PERSISTENCE_PARSER_THREADS,
+				Runtime.getRuntime().availableProcessors()));
 		/*
 		 * Get the application specific file locations
 		 */
@@ -153,6 +204,9 @@ public class DBResourceIO {
 		currentPath = dbPathName;
 		dbResourcesFileName = DBConstants.RESOURCES_ARCHIVE_NAME;
 		dbDirFileName = DBConstants.DIR_FILE_NAME;
+		journalFile = new File(dbPathName, DBConstants.DIR_JOURNAL_NAME);
+		journalDelta = new HashMap<>();
+		valueSlotsFile = new File(dbPathName, DBConstants.VALUE_SLOTS_NAME);
 
 		parsed = false;
 	}
@@ -162,6 +216,26 @@ public class DBResourceIO {
 		if (!dir.exists()) {
 			dir.mkdirs();
 		}
+		/*
+		 * Remove the incomplete output of a compaction that has been interrupted.
+		 */
+		String[] names = dir.list();
+		if (names != null) {
+			for (String name : names) {
+				if (name.startsWith(Compaction.FILE_PREFIX) && !new File(dir, name).delete())
+					logger.info("File could not be deleted: " + name);
+			}
+		}
+		restoreSnapshot(dir);
+		/*
+		 * Open the value slots before any resource is parsed, the parser applies them to the parsed nodes.
+		 */
+		try {
+			valueSlots = new ValueSlotFile(valueSlotsFile);
+		} catch (IOException e) {
+			logger.warn("Value slot file could not be opened, value changes are stored in the data file.", e);
+			valueSlots = null;
+		}
 		/*
 		 * Initialize directory file
 		 */
@@ -178,6 +252,14 @@ public class DBResourceIO {
 		 */
 		postInitFiles();
 
+		/*
+		 * A journal is meaningful only relative to the map file it has been started with.
+		 */
+		if (mapFile == null && journalFile.exists()) {
+			if (!journalFile.delete())
+				logger.info("File could not be deleted: " + journalFile.getName());
+		}
+
 		/*
 		 * If no valid map file is there but some valid data files, the biggest data file is parsed completely without
 		 * map file.
@@ -223,9 +305,11 @@ public class DBResourceIO {
 			if (Configuration.LOGGING)
 				logger.debug("...Resources parsing aborted with exception");
 		}
-		database.nextresourceID = maxID + 1;
+		database.nextresourceID.set(maxID + 1);
 
 		postProcess();
+		if (valueSlots != null)
+			valueSlots.releaseUnused();
 
 		if (Configuration.LOGGING)
 			logger.debug("...Resources parsed");
@@ -466,23 +550,158 @@ public class DBResourceIO {
 		node.footprint += tmpint;
 	}
 
+	/**
+	 * Checks whether the data file is to be compacted and starts a background compaction if so. If a background
+	 * compaction has been finished meanwhile, the data file is switched to its result. Called by the storage task
+	 * before the changes are stored.
+	 * 
+	 * @return true if the data file has been switched to a compacted one
+	 */
 	boolean check4Compaction() {
+		if (compaction != null) {
+			if (!compaction.isDone())
+				return false;
+			return finishCompaction();
+		}
 		int currentFileLength = getCurrentOffset();
 		if (currentFileLength == -1)
 			return false;
 		if (currentFileLength > minimunCompationFileSize
 				&& (garbage > currentFileLength * minimumCompationGarbageSize)) {
-			dataFile.close();
-			resDataFiles.shiftF();
-			dataFile = new DataFile(resDataFiles.fileNew, true);
-			dbFileInitialOffset = 0;
-			compact();
+			startCompaction(currentFileLength);
+		}
+		return false;
+	}
+
+	/**
+	 * Takes a snapshot of the directory and of the value slots. To be called while the storage task is blocked, the
+	 * entries are copied by {@link Snapshot#write(File)} afterwards.
+	 */
+	Snapshot createSnapshot() throws IOException {
+		dataFile.out.flush();
+		return new Snapshot(this, new File(dbPathName, dataFile.fileName), getCurrentOffset(),
+				new HashMap<Integer, Integer>(offsetByID), valueSlots == null ? null : valueSlots.toByteArray());
+	}
+
+	/**
+	 * Unpacks the snapshot configured by {@link DBConstants#PROP_NAME_PERSISTENCE_SNAPSHOT_RESTORE} into the
+	 * database directory, if the directory doesn't contain a resource database yet.
+	 */
+	private void restoreSnapshot(File dir) {
+		String name = System.getProperty(DBConstants.PROP_NAME_PERSISTENCE_SNAPSHOT_RESTORE);
+		if (name == null)
+			return;
+		String[] names = dir.list();
+		if (names != null) {
+			for (String n : names) {
+				if ((n.startsWith(dbResourcesFileName) || n.startsWith(dbDirFileName)) && new File(dir, n).length() > 0) {
+					logger.info("Resource database exists already, snapshot not restored: " + name);
+					return;
+				}
+			}
+		}
+		if (journalFile.exists() && !journalFile.delete())
+			logger.info("File could not be deleted: " + journalFile.getName());
+		long start = System.currentTimeMillis();
+		try {
+			int count = Snapshot.restore(new File(name), new File(dir, dbResourcesFileName + 0),
+					new File(dir, dbDirFileName + 0), valueSlotsFile);
+			logger.info("Restored " + count + " entries from snapshot " + name + " in "
+					+ (System.currentTimeMillis() - start) + " ms");
+		} catch (IOException e) {
+			logger.error("Snapshot could not be restored: " + name, e);
+		}
+	}
+
+	private void startCompaction(int currentFileLength) {
+		File dir = new File(dbPathName);
+		File target = new File(dir, Compaction.FILE_PREFIX + resDataFiles.getNextFile().getName());
+		compaction = new Compaction(this, new File(dir, dataFile.fileName), target,
+				new HashMap<Integer, Integer>(offsetByID));
+		Thread t = new Thread(compaction, "Storage-Compaction-" + database.name);
+		t.setDaemon(true);
+		t.setPriority(Thread.MIN_PRIORITY);
+		t.start();
+		if (Configuration.LOGGING)
+			logger.debug("Compaction started, file size: " + currentFileLength + ", garbage: " + garbage);
+	}
+
+	private boolean finishCompaction() {
+		Compaction c = compaction;
+		compaction = null;
+		if (c.getFailure() != null) {
+			logger.warn("Background compaction failed, compacting synchronously.", c.getFailure());
+			c.discard();
+			compactNow();
 			return true;
 		}
-		else {
+		try {
+			c.finish(offsetByID, resDataFiles.getNextFile());
+		} catch (IOException e) {
+			logger.warn("Background compaction could not be finished.", e);
+			c.discard();
 			return false;
 		}
+		int oldLength = getCurrentOffset();
+		dataFile.close();
+		resDataFiles.shiftF();
+		dataFile = new DataFile(resDataFiles.fileNew, true);
+		dbFileInitialOffset = c.getLength();
+		offsetByID.clear();
+		offsetByID.putAll(c.offsets);
+		journalDelta.clear();
+		garbage = c.getGarbage();
+		// the data file has changed, so the complete directory is written
+		updateDirectory();
+		lastCompactionDuration = System.currentTimeMillis() - c.startTime;
+		reclaimedBytes += oldLength - c.getLength();
+		compactionCount++;
+		if (Configuration.LOGGING)
+			logger.debug("Compaction finished in " + lastCompactionDuration + " ms, bytes reclaimed: "
+					+ (oldLength - c.getLength()));
+		return true;
+	}
+
+	private void compactNow() {
+		dataFile.close();
+		resDataFiles.shiftF();
+		dataFile = new DataFile(resDataFiles.fileNew, true);
+		dbFileInitialOffset = 0;
+		compact();
+	}
+
+	/**
+	 * @return duration of the last compaction in ms, including the time the storage task took to switch to the new
+	 *         file, or -1 if no compaction has been executed yet.
+	 */
+	public long getLastCompactionDuration() {
+		return lastCompactionDuration;
+	}
+
+	/**
+	 * @return the number of bytes removed from the data file by all compactions since startup.
+	 */
+	public long getReclaimedBytes() {
+		return reclaimedBytes;
+	}
+
+	/**
+	 * @return the number of compactions since startup.
+	 */
+	public int getCompactionCount() {
+		return compactionCount;
+	}
 
+	/**
+	 * @return the estimated portion of the data file which is occupied by outdated entries.
+	 */
+	public float getGarbageRatio() {
+		int length = getCurrentOffset();
+		return length <= 0 ? 0 : (float) garbage / length;
+	}
+
+	public boolean isCompactionRunning() {
+		return compaction != null;
 	}
 
 	void compact() {
@@ -493,6 +712,7 @@ public class DBResourceIO {
 		changes.clear();
 		fifo.clear();
 		offsetByID.clear();
+		journalDelta.clear();
 		Set<Entry<Integer, TreeElementImpl>> tlrs = database.resNodeByID.entrySet();
 		for (Map.Entry<Integer, TreeElementImpl> entry : tlrs) {
 
@@ -510,6 +730,8 @@ public class DBResourceIO {
 	void storeResource(TreeElementImpl node) {
 		// The old content is now garbage
 		garbage += node.footprint;
+		if (compaction != null)
+			compaction.changed.add(node.resID);
 
 		if (Configuration.LOGGING)
 			logger.debug("Store Resource " + node.path);
@@ -518,6 +740,14 @@ public class DBResourceIO {
 		 */
 		int offset = getCurrentOffset();
 		offsetByID.put(node.resID, offset);
+		journalDelta.put(node.resID, offset);
+		// the slot must not hold an older value than the archive entry
+		if (valueSlots != null && valueSlots.hasSlot(node.resID)) {
+			if (isSlotValue(node))
+				writeSlot(node);
+			else
+				valueSlots.release(node.resID);
+		}
 		// 1. store entry header
 		storeHeader(node);
 		int typeKey = node.typeKey;
@@ -527,94 +757,77 @@ public class DBResourceIO {
 		 * reference if its simple value is null.
 		 */
 		LeafValue value = node.simpleValue;
+		boolean nonpersistent = node.isNonpersistent();
 
-		int length = 0;
 		// 2. set the resource value(s) for the simple types or simple type
 		// arrays if they aren't a reference.
 		if (!node.reference)
 			switch (typeKey) {
 			case DBConstants.TYPE_KEY_BOOLEAN:
-				setBValue(node.isNonpersistent() ? false : value.Z);
-				node.footprint += 1;
+				setBValue(nonpersistent ? false : value.getBoolean());
 				break;
 			case DBConstants.TYPE_KEY_FLOAT:
-				setFValue(node.isNonpersistent() ? 0 : value.F);
-				node.footprint += 4;
+				setFValue(nonpersistent ? 0 : value.getFloat());
 				break;
 			case DBConstants.TYPE_KEY_INT:
-				setIValue(node.isNonpersistent() ? 0 : value.I);
-				node.footprint += 4;
+				setIValue(nonpersistent ? 0 : value.getInt());
 				break;
 
 			case DBConstants.TYPE_KEY_LONG:
-				setJValue(node.isNonpersistent() ? 0 : value.J);
-				node.footprint += 8;
+				setJValue(nonpersistent ? 0 : value.getLong());
 				break;
 
 			case DBConstants.TYPE_KEY_STRING:
-				setUTF8(node.isNonpersistent() ? null : value.S);
-				node.footprint += value.footprint;
+				setUTF8(nonpersistent ? null : value.getString());
 				break;
 			// set Primitive array resource values
 			case DBConstants.TYPE_KEY_BOOLEAN_ARR:
-				boolean zArr[] = node.isNonpersistent() ? null : value.aZ;
-				length = node.isNonpersistent() ? 0 : value.getArrayLength();
-				setIValue(length);
+				boolean zArr[] = nonpersistent ? null : value.getBooleanArr();
+				setIValue(zArr == null ? 0 : zArr.length);
 				if (zArr != null)
 					for (boolean b : zArr) {
 						setBValue(b);
 					}
-				node.footprint += value.footprint;
 				break;
 			case DBConstants.TYPE_KEY_FLOAT_ARR:
-				float fArr[] = node.isNonpersistent() ? null : value.aF;
-				length = node.isNonpersistent() ? 0 : value.getArrayLength();
-				setIValue(length);
+				float fArr[] = nonpersistent ? null : value.getFloatArr();
+				setIValue(fArr == null ? 0 : fArr.length);
 				if (fArr != null)
 					for (float f : fArr) {
 						setFValue(f);
 					}
-				node.footprint += value.footprint;
 				break;
 			case DBConstants.TYPE_KEY_INT_ARR:
-				int iArr[] = node.isNonpersistent() ? null : value.aI;
-				length = node.isNonpersistent() ? 0 : value.getArrayLength();
-				setIValue(length);
+				int iArr[] = nonpersistent ? null : value.getIntArr();
+				setIValue(iArr == null ? 0 : iArr.length);
 				if (iArr != null)
 					for (int I : iArr) {
 						setIValue(I);
 					}
-				node.footprint += value.footprint;
 				break;
 			case DBConstants.TYPE_KEY_LONG_ARR:
-				long jArr[] = node.isNonpersistent() ? null : value.aJ;
-				length = node.isNonpersistent() ? 0 : value.getArrayLength();
-				setIValue(length);
+				long jArr[] = nonpersistent ? null : value.getLongArr();
+				setIValue(jArr == null ? 0 : jArr.length);
 				if (jArr != null)
 					for (long l : jArr) {
 						setJValue(l);
 					}
-				node.footprint += value.footprint;
 				break;
 			case DBConstants.TYPE_KEY_STRING_ARR:
-				String sArr[] = node.isNonpersistent() ? null : value.aS;
-				length = node.isNonpersistent() ? 0 : value.getArrayLength();
-				setIValue(length);
+				String sArr[] = nonpersistent ? null : value.getStringArr();
+				setIValue(sArr == null ? 0 : sArr.length);
 				if (sArr != null)
 					for (String s : sArr) {
 						setUTF8(s);
 					}
-				node.footprint += value.footprint;
 				break;
 			case DBConstants.TYPE_KEY_OPAQUE:
-				byte bArr[] = node.isNonpersistent() ? null : value.aB;
-				length = node.isNonpersistent() ? 0 : value.getArrayLength();
-				setIValue(length);
+				byte bArr[] = nonpersistent ? null : value.getByteArr();
+				setIValue(bArr == null ? 0 : bArr.length);
 				if (bArr != null)
 					for (byte b : bArr) {
 						setByte(b);
 					}
-				node.footprint += value.footprint;
 				break;
 			// set complex childs
 			case DBConstants.TYPE_KEY_COMPLEX:
@@ -625,6 +838,64 @@ public class DBResourceIO {
 			default:
 				break;
 			}
+		// the footprint is the size of the new entry, which becomes garbage with the next storage of the node
+		node.footprint = getCurrentOffset() - offset;
+	}
+
+	private static boolean isSlotValue(TreeElementImpl node) {
+		return !node.reference && !node.isNonpersistent() && node.simpleValue != null
+				&& ValueSlotFile.isSlotType(node.typeKey);
+	}
+
+	private boolean writeSlot(TreeElementImpl node) {
+		try {
+			valueSlots.write(node);
+			return true;
+		} catch (IOException e) {
+			logger.warn("Value slot file could not be extended, value changes are stored in the data file.", e);
+			valueSlots.close();
+			valueSlots = null;
+			return false;
+		}
+	}
+
+	/**
+	 * Stores the value of a boolean, int, float or long resource in its slot instead of appending a new entry to the
+	 * data file. Applicable only if the resource has an archive entry already, so that its structural data is
+	 * persistent.
+	 * 
+	 * @param node
+	 *            the node whose value has changed
+	 * @return false if the value couldn't be stored in place, the node has to be stored by
+	 *         {@link #storeResource(TreeElementImpl)} then.
+	 */
+	boolean storeValue(TreeElementImpl node) {
+		if (valueSlots == null || !isSlotValue(node) || !offsetByID.containsKey(node.resID))
+			return false;
+		return writeSlot(node);
+	}
+
+	/**
+	 * Forces the value slots to the storage device.
+	 */
+	void flushValues() {
+		if (valueSlots != null)
+			valueSlots.force();
+	}
+
+	/**
+	 * Removes the entry of a deleted resource from the directory.
+	 * 
+	 * @param id
+	 *            the id of the deleted resource
+	 */
+	void removeEntry(int id) {
+		offsetByID.remove(id);
+		journalDelta.put(id, DirectoryJournal.DELETED);
+		if (compaction != null)
+			compaction.changed.add(id);
+		if (valueSlots != null)
+			valueSlots.release(id);
 	}
 
 	/**
@@ -632,8 +903,11 @@ public class DBResourceIO {
 	 * 
 	 */
 	public void parseResources() {
-		if (parsed || (mapFile == null))
+		if (parsed || (mapFile == null)) {
+			if (valueSlots != null)
+				valueSlots.releaseUnused();
 			return;
+		}
 		/*
 		 * First read the directory structure
 		 */
@@ -649,26 +923,49 @@ public class DBResourceIO {
 			try {
 				dirRaf.seek(0);
 				int dirEntryCount = mapFile.entryCount;
+				Map<Integer, Integer> directory = new HashMap<>();
 				while (dirEntryCount > 0) {
 					int key = dirRaf.readInt();
 					int value = dirRaf.readInt();
-					dataRaf.seek(value);
-					endGarbage = (int) dataRaf.getFilePointer();
-					int tmpGarbage = endGarbage - beginGarbage;
-					if (tmpGarbage > 0)
-						garbage += tmpGarbage;
-					readEntry(dataRaf);
-					beginGarbage = (int) dataRaf.getFilePointer();
-					offsetByID.put(key, value);
+					directory.put(key, value);
 					dirEntryCount--;
 				}
+				/*
+				 * Apply the changes logged after the map file has been written.
+				 */
+				int replayed = DirectoryJournal.replay(journalFile, dirFiles.fileNew.getName(), dataFile.fileName,
+						dataRaf.length(), directory);
+				if (Configuration.LOGGING)
+					logger.debug("Directory journal entries replayed: " + replayed);
+				if (parserThreads > 0) {
+					parseMapped(directory, dataRaf);
+				}
+				else {
+					TreeMap<Integer, Integer> sortedOffsets = new TreeMap<Integer, Integer>(
+							new MapValueSorter(directory));
+					sortedOffsets.putAll(directory);
+					for (Entry<Integer, Integer> entry : sortedOffsets.entrySet()) {
+						int key = entry.getKey();
+						int value = entry.getValue();
+						dataRaf.seek(value);
+						endGarbage = (int) dataRaf.getFilePointer();
+						int tmpGarbage = endGarbage - beginGarbage;
+						if (tmpGarbage > 0)
+							garbage += tmpGarbage;
+						readEntry(dataRaf);
+						beginGarbage = (int) dataRaf.getFilePointer();
+						offsetByID.put(key, value);
+					}
+				}
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 		}
-		database.nextresourceID = maxID + 1;
+		database.nextresourceID.set(maxID + 1);
 
 		postProcess();
+		if (valueSlots != null)
+			valueSlots.releaseUnused();
 		if (Configuration.LOGGING)
 			logger.debug("...Resources parsed");
 		try {
@@ -681,6 +978,109 @@ public class DBResourceIO {
 		}
 	}
 
+	/**
+	 * Parses the entries referenced by the directory from the memory mapped data file. The entries are decoded in
+	 * parallel chunks of consecutive offsets, afterwards the decoded nodes are hooked up into the resource tree in the
+	 * order of their offsets, so the result is the same as that of the sequential parser. If an entry can't be decoded,
+	 * the entries behind it are skipped like the sequential parser does.
+	 */
+	private void parseMapped(Map<Integer, Integer> directory, RandomAccessFile dataRaf) throws IOException {
+		int count = directory.size();
+		// sort the entries by offset, the resource id is kept in the lower half
+		long[] entries = new long[count];
+		int n = 0;
+		for (Entry<Integer, Integer> entry : directory.entrySet()) {
+			entries[n++] = ((long) entry.getValue() << 32) | (entry.getKey() & 0xFFFFFFFFL);
+		}
+		Arrays.sort(entries);
+		final int[] offsets = new int[count];
+		final TreeElementImpl[] nodes = new TreeElementImpl[count];
+		final int[] ends = new int[count];
+		for (int i = 0; i < count; i++) {
+			offsets[i] = (int) (entries[i] >>> 32);
+		}
+		final MappedByteBuffer buffer = dataRaf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, dataRaf.length());
+		final IOException[] failures = new IOException[1];
+		int threads = Math.min(parserThreads, (count + MIN_ENTRIES_PER_PARSER_TASK - 1) / MIN_ENTRIES_PER_PARSER_TASK);
+		if (threads <= 1) {
+			failures[0] = decodeEntries(buffer, offsets, nodes, ends, 0, count);
+		}
+		else {
+			// more tasks than threads, so a thread finishing early can take over the remaining work
+			int tasks = threads * 4;
+			int chunk = (count + tasks - 1) / tasks;
+			ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+				int counter;
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "persistence-parser-" + counter++);
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			try {
+				List<Future<IOException>> results = new ArrayList<>(tasks);
+				for (int from = 0; from < count; from += chunk) {
+					final int start = from;
+					final int end = Math.min(count, from + chunk);
+					results.add(pool.submit(new Callable<IOException>() {
+
+						@Override
+						public IOException call() {
+							return decodeEntries(buffer, offsets, nodes, ends, start, end);
+						}
+					}));
+				}
+				for (Future<IOException> result : results) {
+					IOException e = result.get();
+					if (e != null && failures[0] == null)
+						failures[0] = e;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Parsing of the data file interrupted", e);
+			} catch (ExecutionException e) {
+				throw new IOException(e.getCause());
+			} finally {
+				pool.shutdownNow();
+			}
+		}
+		int end = 0;
+		for (int i = 0; i < count; i++) {
+			TreeElementImpl node = nodes[i];
+			if (node == null)
+				break;
+			int tmpGarbage = offsets[i] - end;
+			if (tmpGarbage > 0)
+				garbage += tmpGarbage;
+			end = ends[i];
+			registerEntry(node);
+			offsetByID.put((int) entries[i], offsets[i]);
+		}
+		if (failures[0] != null)
+			throw failures[0];
+	}
+
+	/*
+	 * Decodes the entries from index start to end, stops at the first entry that can't be decoded.
+	 */
+	private IOException decodeEntries(MappedByteBuffer buffer, int[] offsets, TreeElementImpl[] nodes, int[] ends,
+			int start, int end) {
+		MappedDataInput in = new MappedDataInput(((ByteBuffer) buffer).duplicate());
+		try {
+			for (int i = start; i < end; i++) {
+				in.position(offsets[i]);
+				nodes[i] = decodeEntry(in);
+				ends[i] = in.position();
+			}
+		} catch (IOException | RuntimeException e) {
+			return e instanceof IOException ? (IOException) e : new IOException(e);
+		}
+		return null;
+	}
+
 	private void postProcess() {
 		/*
 		 * Place the unsorted node in the tree.
@@ -726,70 +1126,84 @@ public class DBResourceIO {
 	/**
 	 * Read a resource from data base file into an resolved tree.
 	 * 
-	 * @param type
-	 * @param ifaces
-	 * @return
+	 * @param in
+	 *            the input positioned at the beginning of the entry
+	 * @return the node of the resource
 	 */
-	TreeElementImpl readEntry(RandomAccessFile raf) throws IOException, EOFException {
-		boolean clsLoaded = true;
-		@SuppressWarnings("unused")
+	TreeElementImpl readEntry(DataInput in) throws IOException, EOFException {
+		TreeElementImpl node = decodeEntry(in);
+		registerEntry(node);
+		return node;
+	}
+
+	/**
+	 * Decodes an entry of the data file. The decoding doesn't touch the state of the database, so entries may be
+	 * decoded by several threads in parallel, see {@link #parseMapped(Map, RandomAccessFile)}.
+	 */
+	TreeElementImpl decodeEntry(DataInput in) throws IOException, EOFException {
 		// 1. read header of the entry
 		TreeElementImpl node = new TreeElementImpl(database);
-		readHeader(node, raf);
+		readHeader(node, in);
 		// if the node is a reference no own value container is needed
 		int typeKey = node.typeKey;
-		setNodeType(node);
 		// check if the resource is a simple or a complex one
 		if (!node.isReference()) {
 			node.initDataContainer();
 			switch (typeKey) {
 			// read simple resource
 			case DBConstants.TYPE_KEY_BOOLEAN:
-				node.simpleValue.Z = raf.readBoolean();
+				((LeafValue.BooleanValue) node.simpleValue).load(in.readBoolean());
 				break;
 			case DBConstants.TYPE_KEY_FLOAT:
-				node.simpleValue.F = raf.readFloat();
+				((LeafValue.FloatValue) node.simpleValue).load(in.readFloat());
 				break;
 			case DBConstants.TYPE_KEY_INT:
-				node.simpleValue.I = raf.readInt();
+				((LeafValue.IntValue) node.simpleValue).I = in.readInt();
 				break;
 			case DBConstants.TYPE_KEY_STRING:
-				if (isNullString(raf))
-					node.simpleValue.S = null;
-				else
-					node.simpleValue.S = raf.readUTF();
+				((LeafValue.StringValue) node.simpleValue).S = readNullableUTF(in);
 				break;
 			case DBConstants.TYPE_KEY_LONG:
-				node.simpleValue.J = raf.readLong();
+				((LeafValue.LongValue) node.simpleValue).J = in.readLong();
 				break;
 			// read array resource
 			case DBConstants.TYPE_KEY_OPAQUE:
-				readAB(node);
+				readAB(node, in);
 				break;
 			case DBConstants.TYPE_KEY_INT_ARR:
-				readAI(node);
+				readAI(node, in);
 				break;
 			case DBConstants.TYPE_KEY_LONG_ARR:
-				readAJ(node);
+				readAJ(node, in);
 				break;
 			case DBConstants.TYPE_KEY_FLOAT_ARR:
-				readAF(node);
+				readAF(node, in);
 				break;
 			case DBConstants.TYPE_KEY_COMPLEX_ARR:
 				break;
 			case DBConstants.TYPE_KEY_BOOLEAN_ARR:
-				readAZ(node);
+				readAZ(node, in);
 				break;
 			case DBConstants.TYPE_KEY_STRING_ARR:
-				readAS(node);
-				break;
-			case DBConstants.TYPE_KEY_COMPLEX:
-				clsLoaded = false;
+				readAS(node, in);
 				break;
 			default:
 				break;
 			}
 		}
+		return node;
+	}
+
+	/**
+	 * Resolves the type of a decoded node and hooks it up into the resource tree. Not thread safe, the nodes are
+	 * registered in the order of their offsets in the data file.
+	 */
+	void registerEntry(TreeElementImpl node) {
+		maxID = java.lang.Math.max(maxID, node.resID);
+		boolean clsLoaded = node.isReference() || node.typeKey != DBConstants.TYPE_KEY_COMPLEX;
+		setNodeType(node);
+		if (!node.isReference() && valueSlots != null)
+			valueSlots.apply(node);
 
 		if (node.type != null) {
 			clsLoaded = true;
@@ -810,7 +1224,6 @@ public class DBResourceIO {
 			unloadableCustomResources.put(node.path, node);
 			logger.debug("Type couldn't be loaded: " + node.typeName);
 		}
-		return node;
 	}
 
 	private void setNodeType(TreeElementImpl node) {
@@ -864,7 +1277,7 @@ public class DBResourceIO {
 		}
 	}
 
-	void tryReadEntry(RandomAccessFile raf) throws IOException, EOFException {
+	void tryReadEntry(DataInput raf) throws IOException, EOFException {
 		// 1. read header of the entry
 		TreeElementImpl node = new TreeElementImpl(database);
 		readHeader(node, raf);
@@ -882,51 +1295,48 @@ public class DBResourceIO {
 		case DBConstants.TYPE_KEY_BOOLEAN:
 			node.initDataContainer();
 			node.type = DBConstants.CLASS_BOOL_TYPE;
-			node.simpleValue.Z = raf.readBoolean();
+			((LeafValue.BooleanValue) node.simpleValue).load(raf.readBoolean());
 			break;
 		case DBConstants.TYPE_KEY_FLOAT:
 			node.initDataContainer();
 			node.type = DBConstants.CLASS_FLOAT_TYPE;
-			node.simpleValue.F = raf.readFloat();
+			((LeafValue.FloatValue) node.simpleValue).load(raf.readFloat());
 			break;
 		case DBConstants.TYPE_KEY_INT:
 			node.initDataContainer();
 			node.type = DBConstants.CLASS_INT_TYPE;
-			node.simpleValue.I = raf.readInt();
+			((LeafValue.IntValue) node.simpleValue).I = raf.readInt();
 			break;
 		case DBConstants.TYPE_KEY_STRING:
 			node.initDataContainer();
 			node.type = DBConstants.CLASS_STRING_TYPE;
-			if (isNullString(raf))
-				node.simpleValue.S = null;
-			else
-				node.simpleValue.S = raf.readUTF();
+			((LeafValue.StringValue) node.simpleValue).S = readNullableUTF(raf);
 			break;
 		case DBConstants.TYPE_KEY_LONG:
 			node.initDataContainer();
 			node.type = DBConstants.CLASS_TIME_TYPE;
-			node.simpleValue.J = raf.readLong();
+			((LeafValue.LongValue) node.simpleValue).J = raf.readLong();
 			break;
 		// read array resource
 		case DBConstants.TYPE_KEY_OPAQUE:
 			node.initDataContainer();
 			node.type = DBConstants.CLASS_OPAQUE_TYPE;
-			readAB(node);
+			readAB(node, raf);
 			break;
 		case DBConstants.TYPE_KEY_INT_ARR:
 			node.initDataContainer();
 			node.type = DBConstants.CLASS_INT_ARR_TYPE;
-			readAI(node);
+			readAI(node, raf);
 			break;
 		case DBConstants.TYPE_KEY_LONG_ARR:
 			node.initDataContainer();
 			node.type = DBConstants.CLASS_TIME_ARR_TYPE;
-			readAJ(node);
+			readAJ(node, raf);
 			break;
 		case DBConstants.TYPE_KEY_FLOAT_ARR:
 			node.initDataContainer();
 			node.type = DBConstants.CLASS_FLOAT_ARR_TYPE;
-			readAF(node);
+			readAF(node, raf);
 			break;
 		case DBConstants.TYPE_KEY_COMPLEX_ARR:
 			node.type = DBConstants.CLASS_COMPLEX_ARR_TYPE;
@@ -934,12 +1344,12 @@ public class DBResourceIO {
 		case DBConstants.TYPE_KEY_BOOLEAN_ARR:
 			node.initDataContainer();
 			node.type = DBConstants.CLASS_BOOL_ARR_TYPE;
-			readAZ(node);
+			readAZ(node, raf);
 			break;
 		case DBConstants.TYPE_KEY_STRING_ARR:
 			node.initDataContainer();
 			node.type = DBConstants.CLASS_STRING_ARR_TYPE;
-			readAS(node);
+			readAS(node, raf);
 			break;
 		default:
 			break;
@@ -979,51 +1389,37 @@ public class DBResourceIO {
 
 	/*
 	 * If the string is null wrtiteUTF throws an exception. In order to encode this case correctly in the database -1 is
-	 * written instead of the UTF-8 string. During the parse process is this case to be evaluated. This method
+	 * written instead of the UTF-8 string. During the parse process is this case to be evaluated.
 	 */
-	private boolean isNullString(RandomAccessFile raf) {
-		try {
-			int strlen = raf.readShort();
-			if (strlen == -1) { // null string encoded
-				return true;
-			}
-			else { // valid utf-8 string encoded
-					// seek back to the beginning of the string so readUTF can work.
-				raf.seek(raf.getFilePointer() - 2);
-			}
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		return false;
+	private static String readNullableUTF(DataInput in) throws IOException {
+		int strlen = in.readShort();
+		if (strlen == -1) // null string encoded
+			return null;
+		return MappedDataInput.readUTF(in, strlen & 0xFFFF);
 	}
 
-	private void readAS(TreeElementImpl node) throws IOException {
-		RandomAccessFile raf = dataFile.raf;
+	private void readAS(TreeElementImpl node, DataInput raf) throws IOException {
 		int length = raf.readInt();
 		String sArr[] = new String[length];
 		String val = null;
-		node.simpleValue.aS = sArr;
+		((LeafValue.StringArrayValue) node.simpleValue).aS = sArr;
 		/*
 		 * Reset the number of valid entries to 0
 		 */
 		int arrLength = 0;
 		while (length > 0) {
-			if (isNullString(raf))
-				val = null;
-			else
-				val = raf.readUTF();
+			val = readNullableUTF(raf);
 			sArr[arrLength] = val;
 			arrLength++;
 			length--;
 		}
 	}
 
-	private void readAZ(TreeElementImpl node) throws IOException {
-		RandomAccessFile raf = dataFile.raf;
+	private void readAZ(TreeElementImpl node, DataInput raf) throws IOException {
 		int length = raf.readInt();
 		boolean zArr[] = new boolean[length];// node.simpleValue.aZ;
 		boolean val = false;
-		node.simpleValue.aZ = zArr;
+		((LeafValue.BooleanArrayValue) node.simpleValue).aZ = zArr;
 		/*
 		 * Reset the number of valid entries to 0
 		 */
@@ -1036,12 +1432,11 @@ public class DBResourceIO {
 		}
 	}
 
-	private void readAF(TreeElementImpl node) throws IOException {
-		RandomAccessFile raf = dataFile.raf;
+	private void readAF(TreeElementImpl node, DataInput raf) throws IOException {
 		int length = raf.readInt();
 		float fArr[] = new float[length];// node.simpleValue.aF;
 		float val = 0;
-		node.simpleValue.aF = fArr;
+		((LeafValue.FloatArrayValue) node.simpleValue).aF = fArr;
 		/*
 		 * Reset the number of valid entries to 0
 		 */
@@ -1054,12 +1449,11 @@ public class DBResourceIO {
 		}
 	}
 
-	private void readAJ(TreeElementImpl node) throws IOException {
-		RandomAccessFile raf = dataFile.raf;
+	private void readAJ(TreeElementImpl node, DataInput raf) throws IOException {
 		int length = raf.readInt();
 		long jArr[] = new long[length];// node.simpleValue.aJ;
 		long val = 0;
-		node.simpleValue.aJ = jArr;
+		((LeafValue.LongArrayValue) node.simpleValue).aJ = jArr;
 		/*
 		 * Reset the number of valid entries to 0
 		 */
@@ -1072,12 +1466,11 @@ public class DBResourceIO {
 		}
 	}
 
-	private void readAI(TreeElementImpl node) throws IOException {
-		RandomAccessFile raf = dataFile.raf;
+	private void readAI(TreeElementImpl node, DataInput raf) throws IOException {
 		int length = raf.readInt();
 		int iArr[] = new int[length];// node.simpleValue.aI;
 		int val = 0;
-		node.simpleValue.aI = iArr;
+		((LeafValue.IntArrayValue) node.simpleValue).aI = iArr;
 		/*
 		 * Reset the number of valid entries to 0
 		 */
@@ -1090,12 +1483,11 @@ public class DBResourceIO {
 		}
 	}
 
-	private void readAB(TreeElementImpl node) throws IOException {
-		RandomAccessFile raf = dataFile.raf;
+	private void readAB(TreeElementImpl node, DataInput raf) throws IOException {
 		int length = raf.readInt();
 		byte bArr[] = new byte[length]; // node.simpleValue.aB;
 		int val = 0;
-		node.simpleValue.aB = bArr;
+		((LeafValue.ByteArrayValue) node.simpleValue).aB = bArr;
 		/*
 		 * Reset the number of valid entries to 0
 		 */
@@ -1171,21 +1563,24 @@ public class DBResourceIO {
 		return true;
 	}
 
-	private void readHeader(TreeElementImpl entry, RandomAccessFile raf) throws IOException, EOFException {
+	private void readHeader(TreeElementImpl entry, DataInput raf) throws IOException, EOFException {
+		/*
+		 * Type names, app ids and the names of sub resources are shared by many nodes, their decoded strings are
+		 * interned so there is only one copy of each on the heap.
+		 */
 		/* 1. Set type ID */
-		entry.typeName = raf.readUTF();
+		entry.typeName = raf.readUTF().intern();
 		// 2. set resource ID
 		int id = raf.readInt();
 		entry.resID = id;
-		maxID = java.lang.Math.max(maxID, id);
 		// 3. set resources parent ID
 		entry.parentID = raf.readInt();
 		// 4. setFlags
-		entry.setFlags(raf.read());
+		entry.setFlags(raf.readUnsignedByte());
 		if (Configuration.LOGGING && entry.complexArray)
 			logger.debug("ResourceList name: " + entry.typeName);
 		// 5. setTypeKey
-		entry.typeKey = raf.read();
+		entry.typeKey = raf.readUnsignedByte();
 		// 6. set name and path strings
 		String path = raf.readUTF();
 		if (Configuration.LOGGING)
@@ -1194,11 +1589,11 @@ public class DBResourceIO {
 		// separate the name from path if its a sub resource
 		int index = path.lastIndexOf(DBConstants.RESOURCE_PATH_DELIMITER);
 		if (index != -1)
-			entry.name = path.substring(index + 1);
+			entry.name = path.substring(index + 1).intern();
 		else
 			entry.name = path;
 		// 7. set the owner app id
-		entry.appID = raf.readUTF();
+		entry.appID = raf.readUTF().intern();
 		// 8. set the id of any referenced node. If no node is referenced, the id is read as 0
 		entry.refID = raf.readInt();
 		// 9. set the lastmodified time stamp
@@ -1206,21 +1601,106 @@ public class DBResourceIO {
 	}
 
 	public void writeEntry() {
+		writeEntry(true);
+	}
+
+	/**
+	 * Writes the buffered entries to the data file.
+	 * 
+	 * @param sync
+	 *            true if the value slots and the data file are to be forced to the storage device, false if the
+	 *            synchronization is deferred to a later call of {@link #sync()}.
+	 */
+	void writeEntry(boolean sync) {
+		if (sync) {
+			syncData();
+			return;
+		}
+		try {
+			dataFile.out.flush();
+		} catch (IOException e) {
+			logger.warn("Resource data file could not be written.", e);
+		}
+	}
+
+	/**
+	 * Forces the value slots and the data file to the storage device.
+	 */
+	private void syncData() {
+		flushValues();
 		try {
 			dataFile.out.flush();
 			dataFile.fos.getFD().sync();
 		} catch (IOException e) {
+			logger.warn("Resource data file could not be synchronized.", e);
 		}
 	}
 
 	/**
-	 * After each change of the archive file by putting or removing of an entry, the part at the end of the file
-	 * containing the directory structure is to be updated. The file has to be truncated in case of deleting an entry.
-	 * 
-	 * @param offset
-	 *            the offset the directory is written at.
+	 * Forces the value slots, the data file and the directory journal to the storage device, in this order. Used to
+	 * synchronize the changes which have been written by {@link #writeEntry(boolean)} and
+	 * {@link #updateDirectory(boolean)} without synchronization.
+	 */
+	void sync() {
+		syncData();
+		if (journal != null) {
+			try {
+				journal.sync();
+			} catch (IOException e) {
+				logger.warn("Directory journal could not be synchronized.", e);
+			}
+		}
+	}
+
+	/**
+	 * After each change of the archive file by putting or removing of an entry, the directory is to be updated. The
+	 * changes are appended to the directory journal, the complete directory is written to a new map file only if
+	 * there is no journal for the current files yet or if the journal has grown too big.
 	 */
 	void updateDirectory() {
+		updateDirectory(true);
+	}
+
+	/**
+	 * @param sync
+	 *            true if an appended journal batch is to be forced to the storage device, a new map file is always
+	 *            synchronized, after the data file and the value slots.
+	 * @return the number of bytes written to the journal or the map file.
+	 */
+	int updateDirectory(boolean sync) {
+		if (journal != null && journal.dataFileName.equals(dataFile.fileName)
+				&& journal.entryCount + journalDelta.size() <= Math.max(journalCheckpointSize, offsetByID.size())) {
+			try {
+				int bytes = journalDelta.isEmpty() ? 0 : (journalDelta.size() << 3) + 8;
+				journal.append(journalDelta, sync);
+				journalDelta.clear();
+				return bytes;
+			} catch (IOException e) {
+				logger.warn("Appending to the directory journal failed, writing a new map file.", e);
+			}
+		}
+		// the new map file must not reach the storage device before the entries it refers to, even if the
+		// entries have been written without synchronization
+		syncData();
+		int bytes = writeDirectory();
+		journalDelta.clear();
+		if (journal != null)
+			journal.close();
+		journal = null;
+		try {
+			journal = new DirectoryJournal(journalFile, dirFiles.fileNew.getName(), dataFile.fileName);
+		} catch (IOException e) {
+			logger.warn("Directory journal could not be created.", e);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Writes the complete directory to a new map file.
+	 * 
+	 * @return the length of the map file
+	 */
+	int writeDirectory() {
 
 		TreeMap<Integer, Integer> sortedOffsets = new TreeMap<Integer, Integer>(sorter);
 		sortedOffsets.putAll(offsetByID);
@@ -1259,6 +1739,7 @@ public class DBResourceIO {
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		return dos.size();
 	}
 
 	int getCurrentOffset() {
@@ -1279,10 +1760,22 @@ public class DBResourceIO {
 		System.gc();
 		dirFiles.reset();
 		resDataFiles.reset();
+		if (journalFile.exists() && !journalFile.delete())
+			logger.info("File could not be deleted: " + journalFile.getName());
+		if (valueSlotsFile.exists() && !valueSlotsFile.delete())
+			logger.info("File could not be deleted: " + valueSlotsFile.getName());
 		initFiles();
 	}
 
 	void closeAll() {
+		if (compaction != null) {
+			compaction.cancel();
+			compaction = null;
+		}
+		if (valueSlots != null)
+			valueSlots.close();
+		if (journal != null)
+			journal.close();
 		if (mapFile != null)
 			mapFile.close();
 		if (dataFile != null)
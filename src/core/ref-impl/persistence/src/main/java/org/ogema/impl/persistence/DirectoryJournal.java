@@ -0,0 +1,211 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.slf4j.Logger;
+
+/**
+ * Append-only log of the changes of the resource directory since the last map file has been written. The journal
+ * is bound to a map file and a data file, whose names are stored in its header. Each storage period appends one
+ * batch of (id, offset) records, where an offset of {@link #DELETED} marks a removed resource. A batch is valid
+ * only if it is terminated by {@link #COMMIT}, so an incomplete batch at the end of the file is ignored on replay.
+ */
+public class DirectoryJournal {
+
+	private static final Logger logger = org.slf4j.LoggerFactory.getLogger("persistence");
+
+	static final int BUFFER_SIZE = 1024;
+
+	static final int MAGIC = 0xFEEDD1A1;
+
+	static final int COMMIT = 0xFEEDC0CA;
+
+	static final int DELETED = -1;
+
+	private final File file;
+
+	String mapFileName;
+
+	String dataFileName;
+
+	/**
+	 * Number of records appended since the journal has been created.
+	 */
+	int entryCount;
+
+	FileOutputStream fos;
+	DataOutputStream out;
+
+	/**
+	 * Creates an empty journal for the given map and data file, replacing any existing journal.
+	 */
+	public DirectoryJournal(File f, String mapFileName, String dataFileName) throws IOException {
+		this.file = f;
+		this.mapFileName = mapFileName;
+		this.dataFileName = dataFileName;
+		File tmp = new File(f.getParentFile(), f.getName() + ".tmp");
+		try (FileOutputStream tmpOut = new FileOutputStream(tmp)) {
+			DataOutputStream dos = new DataOutputStream(tmpOut);
+			dos.writeInt(MAGIC);
+			dos.writeUTF(mapFileName);
+			dos.writeUTF(dataFileName);
+			dos.flush();
+			tmpOut.getFD().sync();
+		}
+		Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		this.fos = new FileOutputStream(f, true);
+		this.out = new DataOutputStream(new BufferedOutputStream(fos, BUFFER_SIZE));
+	}
+
+	/**
+	 * Appends one batch of directory changes and forces it to the storage device.
+	 *
+	 * @param delta
+	 *            the new offsets by resource id, {@link #DELETED} for removed resources.
+	 */
+	void append(Map<Integer, Integer> delta) throws IOException {
+		append(delta, true);
+	}
+
+	/**
+	 * Appends one batch of directory changes.
+	 *
+	 * @param delta
+	 *            the new offsets by resource id, {@link #DELETED} for removed resources.
+	 * @param sync
+	 *            false if the batch is only handed over to the operating system, the journal has to be synchronized
+	 *            by {@link #sync()} later.
+	 */
+	void append(Map<Integer, Integer> delta, boolean sync) throws IOException {
+		if (delta.isEmpty())
+			return;
+		if (out == null)
+			throw new IOException("Journal is closed: " + file.getName());
+		out.writeInt(delta.size());
+		for (Entry<Integer, Integer> entry : delta.entrySet()) {
+			out.writeInt(entry.getKey());
+			out.writeInt(entry.getValue());
+		}
+		out.writeInt(COMMIT);
+		out.flush();
+		if (sync)
+			fos.getFD().sync();
+		entryCount += delta.size();
+	}
+
+	/**
+	 * Forces the appended batches to the storage device.
+	 */
+	void sync() throws IOException {
+		if (out == null)
+			return;
+		out.flush();
+		fos.getFD().sync();
+	}
+
+	/**
+	 * Applies the committed batches of the journal file to the directory read from a map file. Nothing is applied if
+	 * the journal does not belong to the given map and data file. Replay stops at the first incomplete batch or at
+	 * the first batch that refers to data beyond the end of the data file.
+	 *
+	 * @param f
+	 *            the journal file
+	 * @param mapFileName
+	 *            name of the map file the directory has been read from
+	 * @param dataFileName
+	 *            name of the data file
+	 * @param dataFileLength
+	 *            length of the data file
+	 * @param offsetByID
+	 *            the directory to be updated
+	 * @return the number of records applied
+	 */
+	static int replay(File f, String mapFileName, String dataFileName, long dataFileLength,
+			Map<Integer, Integer> offsetByID) {
+		if (!f.isFile())
+			return 0;
+		int applied = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), BUFFER_SIZE))) {
+			if (in.readInt() != MAGIC || !in.readUTF().equals(mapFileName) || !in.readUTF().equals(dataFileName))
+				return 0;
+			while (true) {
+				int count;
+				try {
+					count = in.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				if (count <= 0 || count > f.length() >> 3)
+					break;
+				int[] ids = new int[count];
+				int[] offsets = new int[count];
+				boolean valid = true;
+				for (int i = 0; i < count; i++) {
+					ids[i] = in.readInt();
+					offsets[i] = in.readInt();
+					if (offsets[i] >= dataFileLength || offsets[i] < DELETED)
+						valid = false;
+				}
+				if (in.readInt() != COMMIT || !valid)
+					break;
+				for (int i = 0; i < count; i++) {
+					if (offsets[i] == DELETED)
+						offsetByID.remove(ids[i]);
+					else
+						offsetByID.put(ids[i], offsets[i]);
+				}
+				applied += count;
+			}
+		} catch (EOFException e) {
+			// incomplete batch at the end of the journal, written during a crash
+		} catch (IOException e) {
+			logger.warn("Directory journal could not be read completely: " + f.getName(), e);
+		}
+		return applied;
+	}
+
+	public void close() {
+		if (out == null)
+			return;
+		try {
+			out.flush();
+			fos.getFD().sync();
+		} catch (IOException e) {
+			logger.warn("Directory journal could not be synchronized: " + file.getName(), e);
+		}
+		try {
+			out.close();
+		} catch (IOException e) {
+			logger.warn("Directory journal could not be closed: " + file.getName(), e);
+		}
+		out = null;
+	}
+
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import java.util.Arrays;
+
+/**
+ * Set of resource ids backed by an open addressing hash table of primitive ints, used by the secondary indexes of
+ * {@link ResourceDBImpl}. Resource ids are positive, 0 marks a free bucket. The modifications are synchronized, readers
+ * get a snapshot of the ids via {@link #toArray()}.
+ */
+public final class IdSet {
+
+	private static final int INITIAL_CAPACITY = 8;
+
+	private int[] table = new int[INITIAL_CAPACITY];
+	private int size;
+
+	private static int hash(int id, int mask) {
+		int h = id * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * @return true if the id hasn't been contained in the set before
+	 */
+	public synchronized boolean add(int id) {
+		if (id <= 0)
+			throw new IllegalArgumentException("Invalid resource id " + id);
+		int mask = table.length - 1;
+		int i = hash(id, mask);
+		while (table[i] != 0) {
+			if (table[i] == id)
+				return false;
+			i = (i + 1) & mask;
+		}
+		table[i] = id;
+		if (++size > (table.length >> 1) + (table.length >> 2))
+			rehash(table.length << 1);
+		return true;
+	}
+
+	/**
+	 * @return true if the id has been contained in the set
+	 */
+	public synchronized boolean remove(int id) {
+		int mask = table.length - 1;
+		int i = hash(id, mask);
+		while (table[i] != id) {
+			if (table[i] == 0)
+				return false;
+			i = (i + 1) & mask;
+		}
+		table[i] = 0;
+		size--;
+		// shift the following entries of the probe sequence back, so no entry gets unreachable
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			int moved = table[j];
+			if (moved == 0)
+				break;
+			int home = hash(moved, mask);
+			// move the entry if its home bucket isn't cyclically in (i, j]
+			if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+				table[i] = moved;
+				table[j] = 0;
+				i = j;
+			}
+		}
+		if (table.length > INITIAL_CAPACITY && size < table.length >> 3)
+			rehash(table.length >> 1);
+		return true;
+	}
+
+	public synchronized boolean contains(int id) {
+		int mask = table.length - 1;
+		int i = hash(id, mask);
+		while (table[i] != 0) {
+			if (table[i] == id)
+				return true;
+			i = (i + 1) & mask;
+		}
+		return false;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @return the ids contained in the set, in no particular order
+	 */
+	public synchronized int[] toArray() {
+		int[] result = new int[size];
+		int n = 0;
+		for (int id : table) {
+			if (id != 0)
+				result[n++] = id;
+		}
+		return result;
+	}
+
+	private void rehash(int capacity) {
+		int[] old = table;
+		table = new int[capacity];
+		int mask = capacity - 1;
+		for (int id : old) {
+			if (id == 0)
+				continue;
+			int i = hash(id, mask);
+			while (table[i] != 0)
+				i = (i + 1) & mask;
+			table[i] = id;
+		}
+	}
+
+	@Override
+	public String toString() {
+		int[] ids = toArray();
+		Arrays.sort(ids);
+		return Arrays.toString(ids);
+	}
+
+}
@@ -15,266 +15,545 @@
  */
 package org.ogema.impl.persistence;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
 import org.ogema.persistence.DBConstants;
 import org.ogema.persistence.PersistencePolicy.ChangeInfo;
 import org.ogema.resourcetree.SimpleResourceData;
 
+/**
+ * Value container of a simple or array resource. There is a specialized subclass for each type of value, which holds
+ * only the field of its type, the accessors of the other types throw an UnsupportedOperationException. Use
+ * {@link #create(TreeElementImpl)} to get the container matching the type key of a node. The single values support
+ * compare-and-set without locking, so atomic updates of a value inform the persistence policy once per successful
+ * update.
+ */
 public class LeafValue implements SimpleResourceData {
 
-	// Fields holding the value of the leaf.
-	// only one of them has an meaningful content.
-	// typeKey specify which variable holds the valid value.
-	volatile public boolean Z;// BoolenaResource
-	volatile public float F;// FloatResource
-	volatile public int I;// IntegerResource
-	volatile public long J;// TimeResource
-	volatile public String S;// StringResource
-
-	volatile public boolean aZ[];// BoolenaArrayResource
-	volatile public float aF[];// FloatArrayResource
-	volatile public int aI[];// IntegerArrayResource
-	volatile public long aJ[];// TimeArrayResource
-	volatile public String aS[];// StringArrayResource
-	volatile public byte aB[];// OpaqueResource
-	// int arrLength;
-	private TreeElementImpl owner;
-	int typeKey;
-	int footprint;
+	final TreeElementImpl owner;
 
 	public LeafValue(TreeElementImpl owner) {
 		this.owner = owner;
-		this.typeKey = owner.typeKey;
-		this.footprint = 0;
+	}
+
+	/**
+	 * Creates the value container for the type key of the node. Nodes with a type key that doesn't belong to a simple
+	 * or array resource get a container which doesn't support any value.
+	 */
+	static LeafValue create(TreeElementImpl owner) {
+		switch (owner.typeKey) {
+		case DBConstants.TYPE_KEY_BOOLEAN:
+			return new BooleanValue(owner);
+		case DBConstants.TYPE_KEY_FLOAT:
+			return new FloatValue(owner);
+		case DBConstants.TYPE_KEY_INT:
+			return new IntValue(owner);
+		case DBConstants.TYPE_KEY_LONG:
+			return new LongValue(owner);
+		case DBConstants.TYPE_KEY_STRING:
+			return new StringValue(owner);
+		case DBConstants.TYPE_KEY_BOOLEAN_ARR:
+			return new BooleanArrayValue(owner);
+		case DBConstants.TYPE_KEY_FLOAT_ARR:
+			return new FloatArrayValue(owner);
+		case DBConstants.TYPE_KEY_INT_ARR:
+			return new IntArrayValue(owner);
+		case DBConstants.TYPE_KEY_LONG_ARR:
+			return new LongArrayValue(owner);
+		case DBConstants.TYPE_KEY_STRING_ARR:
+			return new StringArrayValue(owner);
+		case DBConstants.TYPE_KEY_OPAQUE:
+			return new ByteArrayValue(owner);
+		default:
+			return new LeafValue(owner);
+		}
+	}
+
+	/*
+	 * inform persistence policy about the change if the persistence is active
+	 */
+	void changed() {
+		if (owner.db.activatePersistence && !owner.isNonpersistent())
+			owner.store(ChangeInfo.VALUE_CHANGED);
 	}
 
 	@Override
 	public boolean getBoolean() throws UnsupportedOperationException {
-		if (typeKey != DBConstants.TYPE_KEY_BOOLEAN)
-			throw new UnsupportedOperationException();
-		return Z;
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
 	public void setBoolean(boolean z) throws UnsupportedOperationException {
-		if (typeKey != DBConstants.TYPE_KEY_BOOLEAN)
-			throw new UnsupportedOperationException();
-		this.Z = z;
-		// inform persistence policy about the change
-		if (owner.db.activatePersistence && !owner.isNonpersistent())
-			owner.store(ChangeInfo.VALUE_CHANGED);
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean compareAndSetBoolean(boolean expect, boolean update) throws UnsupportedOperationException {
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
 	public float getFloat() throws UnsupportedOperationException {
-		if (typeKey != DBConstants.TYPE_KEY_FLOAT)
-			throw new UnsupportedOperationException();
-		return F;
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
 	public void setFloat(float f) throws UnsupportedOperationException {
-		if (typeKey != DBConstants.TYPE_KEY_FLOAT)
-			throw new UnsupportedOperationException();
-		this.F = f;
-		// inform persistence policy about the change if the persistence is
-		// active
-		if (owner.db.activatePersistence && !owner.isNonpersistent())
-			owner.store(ChangeInfo.VALUE_CHANGED);
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean compareAndSetFloat(float expect, float update) throws UnsupportedOperationException {
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
 	public int getInt() throws UnsupportedOperationException {
-		if (typeKey != DBConstants.TYPE_KEY_INT)
-			throw new UnsupportedOperationException();
-		return I;
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
 	public void setInt(int i) throws UnsupportedOperationException {
-		if (typeKey != DBConstants.TYPE_KEY_INT)
-			throw new UnsupportedOperationException();
-		this.I = i;
-		// inform persistence policy about the change
-		if (owner.db.activatePersistence && !owner.isNonpersistent())
-			owner.store(ChangeInfo.VALUE_CHANGED);
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean compareAndSetInt(int expect, int update) throws UnsupportedOperationException {
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
 	public long getLong() throws UnsupportedOperationException {
-		if (typeKey != DBConstants.TYPE_KEY_LONG)
-			throw new UnsupportedOperationException();
-		return J;
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
 	public void setLong(long j) throws UnsupportedOperationException {
-		if (typeKey != DBConstants.TYPE_KEY_LONG)
-			throw new UnsupportedOperationException();
-		this.J = j;
-		// inform persistence policy about the change
-		if (owner.db.activatePersistence && !owner.isNonpersistent())
-			owner.store(ChangeInfo.VALUE_CHANGED);
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean compareAndSetLong(long expect, long update) throws UnsupportedOperationException {
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
 	public String getString() throws UnsupportedOperationException {
-		if (typeKey != DBConstants.TYPE_KEY_STRING)
-			throw new UnsupportedOperationException();
-		return S;
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
 	public void setString(String s) throws UnsupportedOperationException {
-		if (typeKey != DBConstants.TYPE_KEY_STRING)
-			throw new UnsupportedOperationException();
-		this.S = s;
-		// inform persistence policy about the change
-		if (owner.db.activatePersistence && !owner.isNonpersistent())
-			owner.store(ChangeInfo.VALUE_CHANGED);
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean compareAndSetString(String expect, String update) throws UnsupportedOperationException {
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
 	public boolean[] getBooleanArr() throws UnsupportedOperationException {
-		if (typeKey != DBConstants.TYPE_KEY_BOOLEAN_ARR)
-			throw new UnsupportedOperationException();
-		return aZ;
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
 	public void setBooleanArr(boolean[] aZ) throws UnsupportedOperationException {
-		if (typeKey != DBConstants.TYPE_KEY_BOOLEAN_ARR)
-			throw new UnsupportedOperationException();
-		this.aZ = aZ;
-		this.footprint = aZ.length + 4;
-		// inform persistence policy about the change
-		if (owner.db.activatePersistence && !owner.isNonpersistent())
-			owner.store(ChangeInfo.VALUE_CHANGED);
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
 	public float[] getFloatArr() throws UnsupportedOperationException {
-		if (typeKey != DBConstants.TYPE_KEY_FLOAT_ARR)
-			throw new UnsupportedOperationException();
-		return aF;
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
 	public void setFloatArr(float[] aF) throws UnsupportedOperationException {
-		if (typeKey != DBConstants.TYPE_KEY_FLOAT_ARR)
-			throw new UnsupportedOperationException();
-		this.aF = aF;
-		this.footprint = aF.length + 4;
-		// inform persistence policy about the change
-		if (owner.db.activatePersistence && !owner.isNonpersistent())
-			owner.store(ChangeInfo.VALUE_CHANGED);
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
 	public int[] getIntArr() throws UnsupportedOperationException {
-		if (typeKey != DBConstants.TYPE_KEY_INT_ARR)
-			throw new UnsupportedOperationException();
-		return aI;
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
 	public void setIntArr(int[] aI) throws UnsupportedOperationException {
-		if (typeKey != DBConstants.TYPE_KEY_INT_ARR)
-			throw new UnsupportedOperationException();
-		this.aI = aI;
-		this.footprint = aI.length + 4;
-		// inform persistence policy about the change
-		if (owner.db.activatePersistence && !owner.isNonpersistent())
-			owner.store(ChangeInfo.VALUE_CHANGED);
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
 	public long[] getLongArr() throws UnsupportedOperationException {
-		if (typeKey != DBConstants.TYPE_KEY_LONG_ARR)
-			throw new UnsupportedOperationException();
-		return aJ;
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
 	public void setLongArr(long[] aJ) throws UnsupportedOperationException {
-		if (typeKey != DBConstants.TYPE_KEY_LONG_ARR)
-			throw new UnsupportedOperationException();
-		this.aJ = aJ;
-		this.footprint = aJ.length + 4;
-		// inform persistence policy about the change
-		if (owner.db.activatePersistence && !owner.isNonpersistent())
-			owner.store(ChangeInfo.VALUE_CHANGED);
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
 	public String[] getStringArr() throws UnsupportedOperationException {
-		if (typeKey != DBConstants.TYPE_KEY_STRING_ARR)
-			throw new UnsupportedOperationException();
-		return aS;
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
 	public void setStringArr(String[] aS) throws UnsupportedOperationException {
-		if (typeKey != DBConstants.TYPE_KEY_STRING_ARR)
-			throw new UnsupportedOperationException();
-		this.aS = aS;
-		int len = 0;
-		for (String str : aS) {
-			try {
-				len += str.length();
-			} catch (NullPointerException e) {
-			}
-		}
-		this.footprint = len + 4;
-		// inform persistence policy about the change
-		if (owner.db.activatePersistence && !owner.isNonpersistent())
-			owner.store(ChangeInfo.VALUE_CHANGED);
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
 	public byte[] getByteArr() throws UnsupportedOperationException {
-		if (typeKey != DBConstants.TYPE_KEY_OPAQUE)
-			throw new UnsupportedOperationException();
-		return aB;
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
 	public void setByteArr(byte[] aB) throws UnsupportedOperationException {
-		if (typeKey != DBConstants.TYPE_KEY_OPAQUE)
-			throw new UnsupportedOperationException();
-		this.aB = aB;
-		this.footprint = aB.length + 4;
-		// inform persistence policy about the change
-		if (owner.db.activatePersistence && !owner.isNonpersistent())
-			owner.store(ChangeInfo.VALUE_CHANGED);
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
 	public int getArrayLength() throws UnsupportedOperationException {
-		int res = 0;
-		switch (typeKey) {
-		case DBConstants.TYPE_KEY_OPAQUE:
-			res = aB == null ? 0 : aB.length;
-			break;
-		case DBConstants.TYPE_KEY_INT_ARR:
-			res = aI == null ? 0 : aI.length;
-			break;
-		case DBConstants.TYPE_KEY_FLOAT_ARR:
-			res = aF == null ? 0 : aF.length;
-			break;
-		case DBConstants.TYPE_KEY_BOOLEAN_ARR:
-			res = aZ == null ? 0 : aZ.length;
-			break;
-		case DBConstants.TYPE_KEY_STRING_ARR:
-			res = aS == null ? 0 : aS.length;
-			break;
-		case DBConstants.TYPE_KEY_LONG_ARR:
-			res = aJ == null ? 0 : aJ.length;
-			break;
-		//		case DBConstants.TYPE_KEY_COMPLEX_ARR:
-		//			break;
-		default:
-			throw new UnsupportedOperationException();
+		throw new UnsupportedOperationException();
+	}
+
+	static final class BooleanValue extends LeafValue {
+
+		private static final AtomicIntegerFieldUpdater<BooleanValue> UPDATER = AtomicIntegerFieldUpdater.newUpdater(
+				BooleanValue.class, "Z");
+
+		volatile public int Z;// BooleanResource, 1 for true
+
+		BooleanValue(TreeElementImpl owner) {
+			super(owner);
+		}
+
+		/*
+		 * sets the value read from the storage, without informing the persistence policy
+		 */
+		void load(boolean z) {
+			this.Z = z ? 1 : 0;
+		}
+
+		@Override
+		public boolean getBoolean() {
+			return Z != 0;
+		}
+
+		@Override
+		public void setBoolean(boolean z) {
+			this.Z = z ? 1 : 0;
+			changed();
+		}
+
+		@Override
+		public boolean compareAndSetBoolean(boolean expect, boolean update) {
+			if (!UPDATER.compareAndSet(this, expect ? 1 : 0, update ? 1 : 0))
+				return false;
+			changed();
+			return true;
+		}
+	}
+
+	static final class FloatValue extends LeafValue {
+
+		private static final AtomicIntegerFieldUpdater<FloatValue> UPDATER = AtomicIntegerFieldUpdater.newUpdater(
+				FloatValue.class, "F");
+
+		volatile public int F;// FloatResource, raw bits of the value
+
+		FloatValue(TreeElementImpl owner) {
+			super(owner);
+		}
+
+		/*
+		 * sets the value read from the storage, without informing the persistence policy
+		 */
+		void load(float f) {
+			this.F = Float.floatToRawIntBits(f);
+		}
+
+		@Override
+		public float getFloat() {
+			return Float.intBitsToFloat(F);
+		}
+
+		@Override
+		public void setFloat(float f) {
+			this.F = Float.floatToRawIntBits(f);
+			changed();
+		}
+
+		@Override
+		public boolean compareAndSetFloat(float expect, float update) {
+			final int expected = Float.floatToIntBits(expect);
+			final int bits = Float.floatToRawIntBits(update);
+			for (;;) {
+				final int current = F;
+				// compare the canonical bits, so any NaN matches NaN
+				if (Float.floatToIntBits(Float.intBitsToFloat(current)) != expected)
+					return false;
+				if (UPDATER.compareAndSet(this, current, bits)) {
+					changed();
+					return true;
+				}
+			}
+		}
+	}
+
+	static final class IntValue extends LeafValue {
+
+		private static final AtomicIntegerFieldUpdater<IntValue> UPDATER = AtomicIntegerFieldUpdater.newUpdater(
+				IntValue.class, "I");
+
+		volatile public int I;// IntegerResource
+
+		IntValue(TreeElementImpl owner) {
+			super(owner);
+		}
+
+		@Override
+		public int getInt() {
+			return I;
+		}
+
+		@Override
+		public void setInt(int i) {
+			this.I = i;
+			changed();
+		}
+
+		@Override
+		public boolean compareAndSetInt(int expect, int update) {
+			if (!UPDATER.compareAndSet(this, expect, update))
+				return false;
+			changed();
+			return true;
+		}
+	}
+
+	static final class LongValue extends LeafValue {
+
+		private static final AtomicLongFieldUpdater<LongValue> UPDATER = AtomicLongFieldUpdater.newUpdater(
+				LongValue.class, "J");
+
+		volatile public long J;// TimeResource
+
+		LongValue(TreeElementImpl owner) {
+			super(owner);
+		}
+
+		@Override
+		public long getLong() {
+			return J;
+		}
+
+		@Override
+		public void setLong(long j) {
+			this.J = j;
+			changed();
+		}
+
+		@Override
+		public boolean compareAndSetLong(long expect, long update) {
+			if (!UPDATER.compareAndSet(this, expect, update))
+				return false;
+			changed();
+			return true;
+		}
+	}
+
+	static final class StringValue extends LeafValue {
+
+		private static final AtomicReferenceFieldUpdater<StringValue, String> UPDATER = AtomicReferenceFieldUpdater
+				.newUpdater(StringValue.class, String.class, "S");
+
+		volatile public String S = "";// StringResource
+
+		StringValue(TreeElementImpl owner) {
+			super(owner);
+		}
+
+		@Override
+		public String getString() {
+			return S;
+		}
+
+		@Override
+		public void setString(String s) {
+			this.S = s;
+			changed();
+		}
+
+		@Override
+		public boolean compareAndSetString(String expect, String update) {
+			for (;;) {
+				final String current = S;
+				if (current == null ? expect != null : !current.equals(expect))
+					return false;
+				if (UPDATER.compareAndSet(this, current, update)) {
+					changed();
+					return true;
+				}
+			}
+		}
+	}
+
+	static final class BooleanArrayValue extends LeafValue {
+
+		volatile public boolean aZ[];// BooleanArrayResource
+
+		BooleanArrayValue(TreeElementImpl owner) {
+			super(owner);
+		}
+
+		@Override
+		public boolean[] getBooleanArr() {
+			return aZ;
+		}
+
+		@Override
+		public void setBooleanArr(boolean[] aZ) {
+			this.aZ = aZ;
+			changed();
+		}
+
+		@Override
+		public int getArrayLength() {
+			boolean[] arr = aZ;
+			return arr == null ? 0 : arr.length;
+		}
+	}
+
+	static final class FloatArrayValue extends LeafValue {
+
+		volatile public float aF[];// FloatArrayResource
+
+		FloatArrayValue(TreeElementImpl owner) {
+			super(owner);
+		}
+
+		@Override
+		public float[] getFloatArr() {
+			return aF;
+		}
+
+		@Override
+		public void setFloatArr(float[] aF) {
+			this.aF = aF;
+			changed();
+		}
+
+		@Override
+		public int getArrayLength() {
+			float[] arr = aF;
+			return arr == null ? 0 : arr.length;
+		}
+	}
+
+	static final class IntArrayValue extends LeafValue {
+
+		volatile public int aI[];// IntegerArrayResource
+
+		IntArrayValue(TreeElementImpl owner) {
+			super(owner);
+		}
+
+		@Override
+		public int[] getIntArr() {
+			return aI;
+		}
+
+		@Override
+		public void setIntArr(int[] aI) {
+			this.aI = aI;
+			changed();
+		}
+
+		@Override
+		public int getArrayLength() {
+			int[] arr = aI;
+			return arr == null ? 0 : arr.length;
+		}
+	}
+
+	static final class LongArrayValue extends LeafValue {
+
+		volatile public long aJ[];// TimeArrayResource
+
+		LongArrayValue(TreeElementImpl owner) {
+			super(owner);
+		}
+
+		@Override
+		public long[] getLongArr() {
+			return aJ;
+		}
+
+		@Override
+		public void setLongArr(long[] aJ) {
+			this.aJ = aJ;
+			changed();
+		}
+
+		@Override
+		public int getArrayLength() {
+			long[] arr = aJ;
+			return arr == null ? 0 : arr.length;
+		}
+	}
+
+	static final class StringArrayValue extends LeafValue {
+
+		volatile public String aS[];// StringArrayResource
+
+		StringArrayValue(TreeElementImpl owner) {
+			super(owner);
+		}
+
+		@Override
+		public String[] getStringArr() {
+			return aS;
+		}
+
+		@Override
+		public void setStringArr(String[] aS) {
+			this.aS = aS;
+			changed();
+		}
+
+		@Override
+		public int getArrayLength() {
+			String[] arr = aS;
+			return arr == null ? 0 : arr.length;
+		}
+	}
+
+	static final class ByteArrayValue extends LeafValue {
+
+		volatile public byte aB[];// OpaqueResource
+
+		ByteArrayValue(TreeElementImpl owner) {
+			super(owner);
+		}
+
+		@Override
+		public byte[] getByteArr() {
+			return aB;
+		}
+
+		@Override
+		public void setByteArr(byte[] aB) {
+			this.aB = aB;
+			changed();
+		}
+
+		@Override
+		public int getArrayLength() {
+			byte[] arr = aB;
+			return arr == null ? 0 : arr.length;
 		}
-		return res;
 	}
 }
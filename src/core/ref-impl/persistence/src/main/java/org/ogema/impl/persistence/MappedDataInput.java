@@ -0,0 +1,169 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link DataInput} view of a byte buffer, used to decode the entries of a memory mapped data file. Each parser
+ * thread uses its own instance on a duplicate of the mapped buffer, so the position of the buffer isn't shared.
+ */
+class MappedDataInput implements DataInput {
+
+	private final ByteBuffer buffer;
+
+	MappedDataInput(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	int position() {
+		return buffer.position();
+	}
+
+	void position(int position) throws EOFException {
+		if (position > buffer.limit())
+			throw new EOFException("Offset " + position + " behind the end of the data file");
+		buffer.position(position);
+	}
+
+	private void require(int count) throws EOFException {
+		if (buffer.remaining() < count)
+			throw new EOFException();
+	}
+
+	@Override
+	public void readFully(byte[] b) throws IOException {
+		readFully(b, 0, b.length);
+	}
+
+	@Override
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		require(len);
+		buffer.get(b, off, len);
+	}
+
+	@Override
+	public int skipBytes(int n) throws IOException {
+		int skipped = Math.min(n, buffer.remaining());
+		buffer.position(buffer.position() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		try {
+			return buffer.get();
+		} catch (BufferUnderflowException e) {
+			throw new EOFException();
+		}
+	}
+
+	@Override
+	public int readUnsignedByte() throws IOException {
+		return readByte() & 0xFF;
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		require(2);
+		return buffer.getShort();
+	}
+
+	@Override
+	public int readUnsignedShort() throws IOException {
+		return readShort() & 0xFFFF;
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		require(2);
+		return buffer.getChar();
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		require(4);
+		return buffer.getInt();
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		require(8);
+		return buffer.getLong();
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		require(4);
+		return buffer.getFloat();
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		require(8);
+		return buffer.getDouble();
+	}
+
+	@Override
+	public String readLine() throws IOException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String readUTF() throws IOException {
+		return readUTF(this, readUnsignedShort());
+	}
+
+	/**
+	 * Decodes a string in modified UTF-8 encoding whose length has already been read. Pure ASCII strings, which are
+	 * the common case for resource paths and type names, are decoded without the detour via
+	 * {@link DataInputStream#readUTF(DataInput)}.
+	 *
+	 * @param in
+	 *            the input positioned at the first byte of the string
+	 * @param utflen
+	 *            number of encoded bytes
+	 */
+	static String readUTF(DataInput in, int utflen) throws IOException {
+		byte[] bytes = new byte[utflen + 2];
+		in.readFully(bytes, 2, utflen);
+		boolean ascii = true;
+		for (int i = 2; i < bytes.length; i++) {
+			if (bytes[i] <= 0) {
+				ascii = false;
+				break;
+			}
+		}
+		if (ascii)
+			return new String(bytes, 2, utflen, StandardCharsets.US_ASCII);
+		bytes[0] = (byte) (utflen >>> 8);
+		bytes[1] = (byte) utflen;
+		return DataInputStream.readUTF(new DataInputStream(new ByteArrayInputStream(bytes)));
+	}
+
+}
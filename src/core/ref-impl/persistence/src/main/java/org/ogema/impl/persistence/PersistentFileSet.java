@@ -175,13 +175,27 @@ class PersistentFileSet {
 
 	public void setAsCurrentFile(String name) {
 		File f = getFileByName(name);
+		if (f != null && f == fileOld) {
+			/*
+			 * The newer file isn't referenced, e.g. because the storage was interrupted after a compaction. Keep it as
+			 * old file, so that it is replaced by the next shift instead of the current one.
+			 */
+			fileOld = fileNew;
+		}
 		fileNew = f;
 	}
 
+	/**
+	 * @return the file which is created by the next call of {@link #shiftF()}.
+	 */
+	public File getNextFile() {
+		return new File(directory, namePrefix + String.valueOf(nameSuffix));
+	}
+
 	public void shiftF() {
 		if (Configuration.LOGGING)
 			logger.debug("Create new file: {}", namePrefix);
-		File newFile = new File(directory, namePrefix + String.valueOf(nameSuffix));
+		File newFile = getNextFile();
 		nameSuffix++;
 		/*
 		 * Delete the old File
@@ -16,6 +16,7 @@
 package org.ogema.impl.persistence;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.security.AccessController;
@@ -27,14 +28,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.ogema.core.model.ModelModifiers;
 import org.ogema.core.model.Resource;
@@ -77,23 +77,27 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 	 * stored ids are observed and the counter are initialized with maximum detected id plus 1. nexttypeID starts at
 	 * 1024 so the range 0-1024 could be used for standard types constantly.
 	 */
-	int nextresourceID = 1;
+	final AtomicInteger nextresourceID = new AtomicInteger(1);
 
 	/**
 	 * Like the resource types the data of the resources are organized in a random access file.
 	 */
 	DBResourceIO resourceIO;
 
-	/**
-	 * Monitor objects for synchronized access to the types and resources tables.
-	 */
-	final Object tablesLock;
-
 	// FIXME make these final?
 	ConcurrentHashMap<String, Class<?>> typeClassByName;
 	ConcurrentHashMap<String, Integer> resIDByName; // actually by path
 	ConcurrentHashMap<Integer, TreeElementImpl> resNodeByID;
-	ConcurrentHashMap<String, Vector<Integer>> resIDsByType; // TODO replace Vector?
+	ConcurrentHashMap<String, IdSet> resIDsByType;
+	/*
+	 * Secondary indexes: ids of the resources by the app id of their owner, the types of the keys of resIDsByType and
+	 * the names of the registered types assignable to a type, i.e. the keys of resIDsByType to be looked up for a
+	 * query including sub types. The latter is a cache whose entries are valid as long as no further type has been
+	 * registered in indexedTypes, types are never removed from it.
+	 */
+	ConcurrentHashMap<String, IdSet> resIDsByOwner;
+	ConcurrentHashMap<String, Class<?>> indexedTypes;
+	final ConcurrentHashMap<Class<?>, SubTypes> subTypeNames;
 
 	final boolean activatePersistence;
 
@@ -103,6 +107,10 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 
 	String name;
 
+	/*
+	 * The monitor of the persistence policy. The tables don't need any lock, it is used solely to hand changes over
+	 * to the persistence policy consistently with the storage task.
+	 */
 	private Object storageLock;
 
 	private boolean inited;
@@ -123,8 +131,9 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 		resIDByName = new ConcurrentHashMap<>(INITIAL_MAP_SIZE);
 		resNodeByID = new ConcurrentHashMap<>(INITIAL_MAP_SIZE);
 		resIDsByType = new ConcurrentHashMap<>(INITIAL_MAP_SIZE);
-
-		tablesLock = new Object();
+		resIDsByOwner = new ConcurrentHashMap<>(INITIAL_MAP_SIZE);
+		indexedTypes = new ConcurrentHashMap<>(INITIAL_MAP_SIZE);
+		subTypeNames = new ConcurrentHashMap<>(INITIAL_MAP_SIZE);
 
 		// check if the property to activate persistence is set
 		String persActive = System.getProperty(DBConstants.PROP_NAME_PERSISTENCE_ACTIVE,
@@ -166,8 +175,12 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 		this.inited = true;
 	}
 
+	/*
+	 * Ids of deleted resources are not reused: handles of a deleted resource and ids held by applications must not
+	 * refer to a new resource.
+	 */
 	int getNextresourceID() {
-		return nextresourceID++;
+		return nextresourceID.getAndIncrement();
 	}
 
 	/**
@@ -184,12 +197,7 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 		if (!isValidType(type))
 			throw new InvalidResourceTypeException("Type definition couldn't be verified as valid: " + type.getName());
 		// check if the type already registered
-		String typeName = type.getName();
-		Class<?> regType = typeClassByName.get(typeName);
-		if (regType == null) {
-			typeClassByName.put(typeName, type);
-
-		}
+		typeClassByName.putIfAbsent(type.getName(), type);
 		return type.asSubclass(Resource.class);
 	}
 
@@ -449,7 +457,7 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 		// check if the Type is already registered
 		// ResourceList doesn't need to be registered, instead of its
 		// type the annotated Type of the elements of the array is registered.
-		if (!typeClassByName.containsValue(type) && (type != DBConstants.CLASS_COMPLEX_ARR_TYPE)) {
+		if (typeClassByName.get(type.getName()) != type && (type != DBConstants.CLASS_COMPLEX_ARR_TYPE)) {
 			addOrUpdateResourceType(type);
 		}
 		// init a node object for the top level resource
@@ -485,8 +493,10 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 		// setup the tree for this type only if itsn't a ComplexArrayResourse
 		if (type != DBConstants.CLASS_COMPLEX_ARR_TYPE)
 			createTree(e);
-		// put the generated tree in the table of the top level resources.
-		root.put(e.name, e);
+		// put the generated tree in the table of the top level resources, unless another thread has been faster
+		if (root.putIfAbsent(e.name, e) != null) {
+			throw new ResourceAlreadyExistsException("top level resource already exists: " + name);
+		}
 		registerRes(e);
 
 		// inform persistence policy about the change
@@ -500,9 +510,13 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 
 	/*
 	 * ResourceDBImpl registers all resources in a set of tables for different access strategies. This method registers
-	 * each resource created via addResource or addChild in these tables.
+	 * each resource created via addResource or addChild in these tables. The tables are concurrent maps and id sets,
+	 * so resources are registered by several threads in parallel. The node is registered by its id first, so a reader
+	 * which finds the id in one of the other tables finds the node too.
 	 */
-	synchronized void registerRes(TreeElementImpl e) {
+	void registerRes(TreeElementImpl e) {
+		// register in table of nodes by id as type
+		resNodeByID.put(e.resID, e);
 		// register in table of id's by name as key
 		resIDByName.put(e.path, e.resID);
 
@@ -517,18 +531,17 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 		if (type != null) {
 			String name = type.getName();
 			// register in table of id's by type as key
-			Vector<Integer> v = resIDsByType.get(name);
-			if (v == null) {
-				v = new Vector<Integer>();
-				resIDsByType.put(name, v);
+			IdSet ids = resIDsByType.get(name);
+			if (ids == null) {
+				// the type is known to the sub type queries before any resource of it is found in the index
+				indexedTypes.putIfAbsent(name, type);
+				ids = getOrCreateIdSet(resIDsByType, name);
 			}
-
-			if (!v.contains(e.resID))
-				v.add(e.resID);
+			ids.add(e.resID);
 		}
-
-		// register in table of nodes by id as type
-		resNodeByID.put(e.resID, e);
+		// register in table of id's by owner as key
+		if (e.appID != null)
+			getOrCreateIdSet(resIDsByOwner, e.appID).add(e.resID);
 	}
 
 	/*
@@ -536,10 +549,6 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 	 * this method.
 	 */
 	void unRegisterRes(TreeElementImpl e) {
-		// commit deletion of the resource to the storage policy.
-		if (activatePersistence)
-			persistence.store(e.resID, ChangeInfo.DELETED);
-
 		// unregister in table of id's by name as key
 		boolean exist = resIDByName.remove(e.path, e.resID);
 		if (!exist)
@@ -555,37 +564,78 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 
 		if (type != null) {
 			// register in table of id's by type as key
-			Vector<Integer> v = resIDsByType.get(type.getName());
-			if (v == null) {
+			IdSet ids = resIDsByType.get(type.getName());
+			if (ids == null) {
 				logger.error("Registration table resIDsByType is corrupted!");
 			}
 			else {
-				exist = v.remove(new Integer(e.resID));
+				exist = ids.remove(e.resID);
 				if (!exist)
 					logger.error("Registration table resIDByName is corrupted!");
 			}
 		}
+		if (e.appID != null) {
+			IdSet ids = resIDsByOwner.get(e.appID);
+			if (ids == null || !ids.remove(e.resID))
+				logger.error("Registration table resIDsByOwner is corrupted!");
+		}
+		// commit deletion of the resource to the storage policy and unregister in table of nodes by id as key. Both
+		// are done while the storage task is blocked, so it doesn't look up the node of a queued change after its
+		// removal.
 		synchronized (storageLock) {
-			// register in table of nodes by id as type
+			if (activatePersistence)
+				persistence.store(e.resID, ChangeInfo.DELETED);
 			exist = resNodeByID.remove(e.resID, e);
 		}
 		if (!exist)
 			logger.error("Registration table resNodeByID is corrupted!");
 	}
 
+	private static IdSet getOrCreateIdSet(ConcurrentHashMap<String, IdSet> index, String key) {
+		IdSet ids = index.get(key);
+		if (ids == null) {
+			ids = new IdSet();
+			IdSet existing = index.putIfAbsent(key, ids);
+			if (existing != null)
+				ids = existing;
+		}
+		return ids;
+	}
+
+	/*
+	 * Called if the owner of a registered resource is changed.
+	 */
+	void changeOwner(TreeElementImpl e, String oldAppID) {
+		if (!resNodeByID.containsKey(e.resID))
+			return;
+		if (oldAppID != null) {
+			IdSet ids = resIDsByOwner.get(oldAppID);
+			if (ids != null)
+				ids.remove(e.resID);
+		}
+		if (e.appID != null)
+			getOrCreateIdSet(resIDsByOwner, e.appID).add(e.resID);
+	}
+
 	@Override
 	public Collection<Class<?>> getTypeChildren(String name) {
 		Class<?> cls = typeClassByName.get(name);
 		if (cls == null)
 			return null;
 
-		Vector<Integer> v = resIDsByType.get(name);
-		if (v == null || v.size() == 0) {
+		IdSet ids = resIDsByType.get(name);
+		TreeElementImpl e = null;
+		if (ids != null) {
+			for (int id : ids.toArray()) {
+				e = resNodeByID.get(id);
+				if (e != null)
+					break;
+			}
+		}
+		if (e == null) {
 			return getTypeChildren0(cls);
 		}
 		else {
-			int id = v.iterator().next();
-			TreeElementImpl e = resNodeByID.get(id);
 			return Collections.unmodifiableCollection(e.typeChildren.values());
 		}
 	}
@@ -741,13 +791,13 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 
 			// Handle the case if the path is '*' or '/*' only
 			if (path.equals("/") || (path.equals("") && wc)) {
-				Collection<TreeElementImpl> tops = resNodeByID.values();
-				result.addAll(tops);
-				// if a type specified additionally filter the results
-				if (type != null)
-					filterByType(tops, type, result);
-				if (owner != null)
-					filterByOwner(result, owner);
+				// if a type is specified, the resources of the type and its sub types are looked up in the type index
+				Class<?> filtercls = type == null ? null : getTypeByName(type);
+				if (filtercls == null && owner == null) {
+					result.addAll(resNodeByID.values());
+					return result;
+				}
+				collect(filtercls == null ? null : getSubTypeIdSets(filtercls), getOwnerIdSet(owner), true, result);
 				return result;
 			}
 
@@ -776,67 +826,140 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 
 		// 2. filter by type (path is null)
 		if (type != null) {
-			Vector<Integer> ids = resIDsByType.get(type);
+			IdSet ids = resIDsByType.get(type);
 			if (ids != null)
-				for (int id : ids) {
-					TreeElementImpl e = resNodeByID.get(id);
-					if (owner != null) {
-						if (e.appID.equals(owner))
-							if (!e.reference) {
-								if (!e.isToplevel())
-                                    result.add(e);
-									// ??? result.add(e.topLevelParent);
-								else
-									result.add(e);
-							}
-					}
-					else if (!e.reference) {
-						if (!e.isToplevel())
-                            result.add(e);
-							// ??? result.add(e.topLevelParent);
-						else
-							result.add(e);
-					}
-				}
+				collect(Collections.singletonList(ids), getOwnerIdSet(owner), false, result);
 			return result;
 		}
 		else
 		// 3. filter by owner (path and type is null)
 		if (owner != null) {
-			Set<Entry<String, TreeElementImpl>> tops = root.entrySet();
-			for (Entry<String, TreeElementImpl> entry : tops) {
-				TreeElementImpl te = entry.getValue();
-				if (te.appID.equals(owner))
-					if (!te.reference)
+			IdSet ids = resIDsByOwner.get(owner);
+			if (ids != null)
+				for (int id : ids.toArray()) {
+					TreeElementImpl te = resNodeByID.get(id);
+					if (te != null && te.toplevel && !te.reference)
 						result.add(te);
-			}
+				}
+		}
+		return result;
+	}
+
+	@Override
+	public Collection<TreeElement> getElementsByType(Class<? extends Resource> type, boolean includeSubTypes) {
+		if (type == null)
+			type = Resource.class;
+		List<IdSet> sets;
+		if (includeSubTypes)
+			sets = getSubTypeIdSets(type);
+		else {
+			IdSet ids = resIDsByType.get(type.getName());
+			sets = ids == null ? Collections.<IdSet> emptyList() : Collections.singletonList(ids);
 		}
+		List<TreeElement> result = new ArrayList<>();
+		collect(sets, null, false, result);
 		return result;
 	}
 
-	private void filterByOwner(HashSet<TreeElement> result, String owner) {
-		Iterator<TreeElement> it = result.iterator();
-		while (it.hasNext()) {
-			TreeElement te = it.next();
-			if (!te.getAppID().equals(owner))
-				result.remove(te);
+	/*
+	 * Adds the nodes whose ids are contained in one of the id sets and in the id set of the owner to the result. A
+	 * null argument means no restriction, at least one of both has to be non null. The smaller side is iterated,
+	 * the other one is probed.
+	 */
+	private void collect(List<IdSet> sets, IdSet ownerIds, boolean references, Collection<TreeElement> result) {
+		int size = 0;
+		if (sets != null)
+			for (IdSet ids : sets)
+				size += ids.size();
+		if (ownerIds != null && (sets == null || ownerIds.size() < size)) {
+			for (int id : ownerIds.toArray()) {
+				if (sets == null || contains(sets, id))
+					addNode(id, references, result);
+			}
+		}
+		else {
+			for (IdSet ids : sets)
+				for (int id : ids.toArray()) {
+					if (ownerIds == null || ownerIds.contains(id))
+						addNode(id, references, result);
+				}
 		}
 	}
 
-	private void filterByType(Collection<TreeElementImpl> tops, String type, Collection<TreeElement> result) {
-		Class<?> filtercls = null;
+	private static boolean contains(List<IdSet> sets, int id) {
+		for (IdSet ids : sets)
+			if (ids.contains(id))
+				return true;
+		return false;
+	}
+
+	private void addNode(int id, boolean references, Collection<TreeElement> result) {
+		TreeElementImpl e = resNodeByID.get(id);
+		if (e != null && (references || !e.reference))
+			result.add(e);
+	}
+
+	/*
+	 * Id set of the resources owned by the app, an empty set if the app doesn't own any resource. Null if the owner is
+	 * null.
+	 */
+	private IdSet getOwnerIdSet(String owner) {
+		if (owner == null)
+			return null;
+		IdSet ids = resIDsByOwner.get(owner);
+		return ids == null ? new IdSet() : ids;
+	}
+
+	private Class<?> getTypeByName(String type) {
+		Class<?> cls = indexedTypes.get(type);
+		if (cls != null)
+			return cls;
 		try {
-			filtercls = Class.forName(type);
+			return Class.forName(type);
 		} catch (ClassNotFoundException e) {
-			return;
+			return null;
 		}
-		Iterator<TreeElementImpl> it = tops.iterator();
-		while (it.hasNext()) {
-			TreeElementImpl te = it.next();
-			Class<?> cls = te.getType();
-			if (!filtercls.isAssignableFrom(cls))
-				result.remove(te);
+	}
+
+	/*
+	 * Names of the indexed types assignable to a type, valid as long as the number of indexed types is unchanged.
+	 */
+	static final class SubTypes {
+		final int typeCount;
+		final String[] names;
+
+		SubTypes(int typeCount, String[] names) {
+			this.typeCount = typeCount;
+			this.names = names;
+		}
+	}
+
+	/*
+	 * Id sets of the resources of the type and all of its sub types. The names of the matching types are cached until
+	 * the next type is registered in the type index.
+	 */
+	private List<IdSet> getSubTypeIdSets(Class<?> type) {
+		Map<String, Class<?>> types = indexedTypes;
+		SubTypes subTypes = subTypeNames.get(type);
+		if (subTypes == null || subTypes.typeCount != types.size()) {
+			// the count is read before the types are iterated, so a type added concurrently invalidates the entry
+			int count = types.size();
+			List<String> list = new ArrayList<>();
+			for (Entry<String, Class<?>> entry : types.entrySet()) {
+				if (type.isAssignableFrom(entry.getValue()))
+					list.add(entry.getKey());
+			}
+			subTypes = new SubTypes(count, list.toArray(new String[list.size()]));
+			subTypeNames.put(type, subTypes);
+		}
+		String[] names = subTypes.names;
+		List<IdSet> result = new ArrayList<>(names.length);
+		for (String name : names) {
+			IdSet ids = resIDsByType.get(name);
+			if (ids != null)
+				result.add(ids);
 		}
+		return result;
 	}
 
 	@Override
@@ -938,6 +1061,9 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 		resIDByName.clear();
 		resNodeByID.clear();
 		resIDsByType.clear();
+		resIDsByOwner.clear();
+		indexedTypes.clear();
+		subTypeNames.clear();
 		// resTable.clear();
 	}
 
@@ -970,6 +1096,9 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 		resIDByName = new ConcurrentHashMap<>(INITIAL_MAP_SIZE);
 		resNodeByID = new ConcurrentHashMap<>(INITIAL_MAP_SIZE);
 		resIDsByType = new ConcurrentHashMap<>(INITIAL_MAP_SIZE);
+		resIDsByOwner = new ConcurrentHashMap<>(INITIAL_MAP_SIZE);
+		indexedTypes = new ConcurrentHashMap<>(INITIAL_MAP_SIZE);
+		subTypeNames.clear();
 		init();
 	}
 
@@ -1205,6 +1334,29 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 		childFlags.put(type, flagsMap);
 	}
 
+	/**
+	 * Writes a binary snapshot of the resource database, which can be restored at start up by setting the property
+	 * {@link DBConstants#PROP_NAME_PERSISTENCE_SNAPSHOT_RESTORE}. The pending changes are stored before the snapshot
+	 * is taken, the storage is blocked only while the directory and the value slots are copied. If a transaction is
+	 * in progress, the snapshot reflects the state before the transaction.
+	 * 
+	 * @param file
+	 *            the snapshot file, an existing file is replaced when the snapshot is complete.
+	 * @return the number of resource entries contained in the snapshot
+	 * @throws IOException
+	 *             if the snapshot couldn't be written
+	 */
+	public int exportSnapshot(File file) throws IOException {
+		if (!activatePersistence)
+			throw new IllegalStateException("Persistence is not active");
+		Snapshot snapshot;
+		synchronized (storageLock) {
+			persistence.triggerStorage();
+			snapshot = resourceIO.createSnapshot();
+		}
+		return snapshot.write(file);
+	}
+
 	@Override
 	public void doStorage() {
 		if (activatePersistence)
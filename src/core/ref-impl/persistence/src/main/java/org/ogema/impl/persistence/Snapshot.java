@@ -0,0 +1,225 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.slf4j.Logger;
+
+/**
+ * Binary image of the resource database, used for backups and migrations. A snapshot consists of the live entries of
+ * the data file in the format they are stored in the data file, each of them preceded by the resource id and its
+ * length, followed by a copy of the value slots. The directory and the value slots are taken while the storage task
+ * is blocked, the entries are copied afterwards while the storage task keeps appending to the data file, which
+ * doesn't affect the copied entries.<br>
+ * Layout: {@link #MAGIC}, {@link #VERSION}, creation time, entry count, entries (id, length, data), length of the value
+ * slots, value slots, {@link #MAGIC}.
+ */
+class Snapshot {
+
+	private static final Logger logger = org.slf4j.LoggerFactory.getLogger("persistence");
+
+	static final int MAGIC = 0xFEED5AFE;
+
+	static final int VERSION = 1;
+
+	static final int BUFFER_SIZE = 1 << 16;
+
+	private final DBResourceIO io;
+	private final RandomAccessFile source;
+	private final int length;
+	private final Map<Integer, Integer> directory;
+	private final byte[] slots;
+
+	/**
+	 * To be called by the storage task or while it is blocked.
+	 *
+	 * @param source
+	 *            the current data file
+	 * @param length
+	 *            the length of the data file, all entries of the directory are located before
+	 * @param directory
+	 *            a copy of the current directory
+	 * @param slots
+	 *            a copy of the value slot file, null if there are no value slots
+	 */
+	Snapshot(DBResourceIO io, File source, int length, Map<Integer, Integer> directory, byte[] slots)
+			throws IOException {
+		this.io = io;
+		// opened now, so the file is readable even if it is replaced by a compaction before it is copied
+		this.source = new RandomAccessFile(source, "r");
+		this.length = length;
+		this.directory = directory;
+		this.slots = slots;
+	}
+
+	/**
+	 * Writes the snapshot to a temporary file, which is moved to the target when it is complete.
+	 *
+	 * @return the number of entries written
+	 */
+	int write(File target) throws IOException {
+		// copy the entries in the order of the data file, the resource id is kept in the lower half
+		long[] entries = new long[directory.size()];
+		int n = 0;
+		for (Entry<Integer, Integer> entry : directory.entrySet())
+			entries[n++] = ((long) entry.getValue() << 32) | (entry.getKey() & 0xFFFFFFFFL);
+		Arrays.sort(entries, 0, n);
+		File tmp = new File(target.getAbsoluteFile().getParentFile(), target.getName() + ".tmp");
+		try {
+			MappedByteBuffer buffer = source.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+			MappedDataInput in = new MappedDataInput(((ByteBuffer) buffer).duplicate());
+			ByteBuffer data = ((ByteBuffer) buffer).duplicate();
+			byte[] bytes = new byte[1024];
+			try (FileOutputStream fos = new FileOutputStream(tmp)) {
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, BUFFER_SIZE));
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(System.currentTimeMillis());
+				out.writeInt(n);
+				for (int i = 0; i < n; i++) {
+					int offset = (int) (entries[i] >>> 32);
+					in.position(offset);
+					io.tryReadEntry(in);
+					int size = in.position() - offset;
+					if (bytes.length < size)
+						bytes = new byte[Math.max(size, bytes.length << 1)];
+					data.position(offset);
+					data.get(bytes, 0, size);
+					out.writeInt((int) entries[i]);
+					out.writeInt(size);
+					out.write(bytes, 0, size);
+				}
+				out.writeInt(slots == null ? 0 : slots.length);
+				if (slots != null)
+					out.write(slots);
+				out.writeInt(MAGIC);
+				out.flush();
+				fos.getFD().sync();
+			}
+			Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			source.close();
+			if (tmp.exists() && !tmp.delete())
+				logger.info("File could not be deleted: " + tmp.getName());
+		}
+		return n;
+	}
+
+	/**
+	 * Unpacks a snapshot into a data file, a map file and a value slot file, which are parsed as usual afterwards.
+	 * The files are deleted again, if the snapshot is incomplete.
+	 *
+	 * @param snapshot
+	 *            the snapshot to be restored
+	 * @param dataFile
+	 *            the data file to be created
+	 * @param mapFile
+	 *            the map file to be created
+	 * @param slotFile
+	 *            the value slot file to be created
+	 * @return the number of restored entries
+	 */
+	static int restore(File snapshot, File dataFile, File mapFile, File slotFile) throws IOException {
+		boolean success = false;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot),
+				BUFFER_SIZE))) {
+			if (in.readInt() != MAGIC)
+				throw new IOException("Not a resource database snapshot: " + snapshot);
+			int version = in.readInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported snapshot version " + version + ": " + snapshot);
+			in.readLong();
+			int count = in.readInt();
+			Map<Integer, Integer> offsets = new HashMap<>(count * 4 / 3 + 1);
+			int[] ids = new int[count];
+			try (FileOutputStream fos = new FileOutputStream(dataFile)) {
+				BufferedOutputStream out = new BufferedOutputStream(fos, BUFFER_SIZE);
+				byte[] bytes = new byte[1024];
+				int offset = 0;
+				for (int i = 0; i < count; i++) {
+					int id = in.readInt();
+					int size = in.readInt();
+					if (size < 0)
+						throw new IOException("Corrupted snapshot: " + snapshot);
+					if (bytes.length < size)
+						bytes = new byte[Math.max(size, bytes.length << 1)];
+					in.readFully(bytes, 0, size);
+					out.write(bytes, 0, size);
+					ids[i] = id;
+					offsets.put(id, offset);
+					offset += size;
+				}
+				out.flush();
+				fos.getFD().sync();
+			}
+			byte[] slots = new byte[in.readInt()];
+			in.readFully(slots);
+			if (in.readInt() != MAGIC)
+				throw new IOException("Incomplete snapshot: " + snapshot);
+			if (slots.length > 0) {
+				try (FileOutputStream fos = new FileOutputStream(slotFile)) {
+					fos.write(slots);
+					fos.getFD().sync();
+				}
+			}
+			else if (slotFile.exists() && !slotFile.delete())
+				throw new IOException("File could not be deleted: " + slotFile);
+			// the entries of the data file are ordered by offset, so the ids are written in this order too
+			MapFile map = new MapFile(mapFile, dataFile.getName());
+			DataOutputStream dos = map.out;
+			for (int id : ids) {
+				dos.writeInt(id);
+				dos.writeInt(offsets.get(id));
+			}
+			dos.writeUTF(map.dataFileName);
+			dos.writeInt(count);
+			dos.writeInt(MapFile.MAGIC1);
+			dos.writeInt(MapFile.MAGIC2);
+			dos.flush();
+			map.fos.getFD().sync();
+			dos.close();
+			success = true;
+			return count;
+		} finally {
+			if (!success) {
+				for (File f : new File[] { dataFile, mapFile, slotFile }) {
+					if (f.exists() && !f.delete())
+						logger.info("File could not be deleted: " + f.getName());
+				}
+			}
+		}
+	}
+
+}
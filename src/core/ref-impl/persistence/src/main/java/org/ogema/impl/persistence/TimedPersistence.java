@@ -20,22 +20,77 @@ import java.util.TimerTask;
 
 import org.ogema.persistence.DBConstants;
 import org.ogema.persistence.PersistencePolicy;
+import org.slf4j.Logger;
 
 public class TimedPersistence implements PersistencePolicy {
 
+	private static final Logger logger = org.slf4j.LoggerFactory.getLogger("persistence");
+
 	static final int DEFAULT_STOREPERIOD = 10 * 1000; // milliseconds
+	static final int DEFAULT_SYNC_CHANGES = 1000;
+	static final int MIN_ADAPTIVE_PERIOD = 100; // milliseconds
+
+	enum Durability {
+		THROUGHPUT, STRICT, ADAPTIVE
+	}
+
 	final Timer timer;
 	int storePeriod;
 
+	final Durability durability;
+	/*
+	 * Throughput mode: maximum time in ms and maximum number of changes between two synchronizations. Adaptive mode:
+	 * the number of changes a storage cycle should process, the storage period is kept between minPeriod and
+	 * maxPeriod.
+	 */
+	final int syncPeriod;
+	final int syncChanges;
+	final int minPeriod;
+	final int maxPeriod;
+
 	private ResourceDBImpl db;
 
 	volatile boolean inTX;
 	volatile boolean running;
 
+	/*
+	 * State of the storage cycles, accessed by the storage task only.
+	 */
+	private long lastCycle = System.currentTimeMillis();
+	private long nextCycle;
+	private long lastSync = System.currentTimeMillis();
+	private int unsyncedChanges;
+
+	/*
+	 * Statistics for monitoring purposes.
+	 */
+	private volatile int lastQueueDepth;
+	private volatile long lastCycleDuration = -1;
+	private volatile long bytesWritten;
+	private volatile int cycleCount;
+	private volatile int syncCount;
+
 	public TimedPersistence(ResourceDBImpl db) {
 		this.db = db;
 		// check if the property to activate persistence debugging is set
 		storePeriod = Integer.getInteger(DBConstants.PROP_NAME_TIMEDPERSISTENCE_PERIOD, DEFAULT_STOREPERIOD);
+		String policy = System.getProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_POLICY,
+				DBConstants.PROP_VALUE_TIMEDPERSISTENCE_THROUGHPUT);
+		if (policy.equals(DBConstants.PROP_VALUE_TIMEDPERSISTENCE_STRICT))
+			durability = Durability.STRICT;
+		else if (policy.equals(DBConstants.PROP_VALUE_TIMEDPERSISTENCE_ADAPTIVE))
+			durability = Durability.ADAPTIVE;
+		else {
+			if (!policy.equals(DBConstants.PROP_VALUE_TIMEDPERSISTENCE_THROUGHPUT))
+				logger.warn("Unknown persistence policy " + policy + ", using "
+						+ DBConstants.PROP_VALUE_TIMEDPERSISTENCE_THROUGHPUT);
+			durability = Durability.THROUGHPUT;
+		}
+		syncPeriod = Integer.getInteger(DBConstants.PROP_NAME_TIMEDPERSISTENCE_SYNC_PERIOD, storePeriod);
+		syncChanges = Math.max(1, Integer.getInteger(DBConstants.PROP_NAME_TIMEDPERSISTENCE_SYNC_CHANGES,
+				DEFAULT_SYNC_CHANGES));
+		minPeriod = Math.max(storePeriod / 10, MIN_ADAPTIVE_PERIOD);
+		maxPeriod = Math.max(storePeriod * 6, minPeriod);
 		this.timer = new Timer("Storage-TimedPersistence-" + db.name);
 	}
 
@@ -43,48 +98,181 @@ public class TimedPersistence implements PersistencePolicy {
 
 		@Override
 		synchronized public void run() {
+			runCycle(false);
+		}
+	};
+
+	/**
+	 * Stores the queued changes. Has to be called while holding the monitor of the storage task.
+	 * 
+	 * @param forced
+	 *            true if the changes are to be stored and synchronized regardless of the policy, e.g. on shutdown.
+	 */
+	void runCycle(boolean forced) {
+		/*
+		 * If the previous storage not yet finished or resource management has reported a transaction, no storage
+		 * must be triggered.
+		 */
+		if (running || inTX || db.resourceIO == null)
+			return;
+		long now = System.currentTimeMillis();
+		int queued = db.resourceIO.changes.size();
+		if (queued <= 0) {
+			// changes written without synchronization before may be due now
+			if (unsyncedChanges > 0 && (forced || now - lastSync >= syncPeriod)) {
+				db.resourceIO.sync();
+				synced(now);
+			}
+			return;
+		}
+		// in adaptive mode the timer fires with the minimum period, the cycle is due after the current period or
+		// if enough changes have been queued
+		if (!forced && durability == Durability.ADAPTIVE && now < nextCycle && queued < syncChanges)
+			return;
+		running = true;
+		long start = System.nanoTime();
+		try {
 			/*
-			 * If the previous storage not yet finished or resource management has reported a transaction, no storage
-			 * must be triggered.
+			 * The policy for the compaction of the data archive file decides if a compaction is required.
 			 */
-			if (running || inTX || db.resourceIO == null || db.resourceIO.changes.size() <= 0)
-				return;
-			running = true;
-			try {
-				/*
-				 * The policy for the compaction of the data archive file decides if a compaction is required.
-				 */
-				db.resourceIO.check4Compaction();
-
-				boolean fileChanged = false;
-				Change ch = null;
-				while ((ch = db.resourceIO.fifo.poll()) != null) {
-					if (ch.status == ChangeInfo.DELETED) {
-						db.resourceIO.offsetByID.remove(ch.id);
-						// db.resourceIO.changes.remove(ch.id);
-						fileChanged = true;
-						continue;
-					}
-					TreeElementImpl e = db.resNodeByID.get(ch.id);
-                    if (e.isNonpersistent() && ch.status == ChangeInfo.VALUE_CHANGED) {
-                        assert false : "NonPersistent resource has ChangeInfo.VALUE_CHANGED";
-                        continue;
-                    }
-					db.resourceIO.storeResource(e);
+			db.resourceIO.check4Compaction();
+
+			int offset = db.resourceIO.getCurrentOffset();
+			boolean fileChanged = false;
+			boolean valuesChanged = false;
+			int processed = 0;
+			long bytes = 0;
+			Change ch = null;
+			while ((ch = db.resourceIO.fifo.poll()) != null) {
+				processed++;
+				if (ch.status == ChangeInfo.DELETED) {
+					db.resourceIO.removeEntry(ch.id);
+					// db.resourceIO.changes.remove(ch.id);
 					fileChanged = true;
+					continue;
 				}
-				if (fileChanged) {
-					db.resourceIO.writeEntry();
-					db.resourceIO.updateDirectory();
+				TreeElementImpl e = db.resNodeByID.get(ch.id);
+                if (e.isNonpersistent() && ch.status == ChangeInfo.VALUE_CHANGED) {
+                    assert false : "NonPersistent resource has ChangeInfo.VALUE_CHANGED";
+                    continue;
+                }
+				// value changes of primitive resources are stored in place
+				if (ch.status == ChangeInfo.VALUE_CHANGED && db.resourceIO.storeValue(e)) {
+					valuesChanged = true;
+					bytes += ValueSlotFile.SLOT_SIZE;
+					continue;
 				}
-				running = false;
-				db.resourceIO.changes.clear();
-			} catch (Throwable e) {
-				e.printStackTrace();
-				running = false;
+				db.resourceIO.storeResource(e);
+				fileChanged = true;
 			}
+			boolean sync = forced || durability != Durability.THROUGHPUT || now - lastSync >= syncPeriod
+					|| unsyncedChanges + processed >= syncChanges;
+			if (fileChanged) {
+				db.resourceIO.writeEntry(sync);
+				bytes += db.resourceIO.getCurrentOffset() - offset;
+				bytes += db.resourceIO.updateDirectory(sync);
+			}
+			else if (sync && (valuesChanged || unsyncedChanges > 0))
+				db.resourceIO.sync();
+			if (sync)
+				synced(now);
+			else
+				unsyncedChanges += processed;
+			db.resourceIO.changes.clear();
+			long duration = (System.nanoTime() - start) / 1000000;
+			if (durability == Durability.ADAPTIVE) {
+				storePeriod = (int) adaptPeriod(storePeriod, now - lastCycle, queued, duration, syncChanges,
+						minPeriod, maxPeriod);
+				nextCycle = now + storePeriod;
+				if (Configuration.LOGGING)
+					logger.debug("Storage cycle with " + queued + " changes took " + duration
+							+ " ms, next cycle in " + storePeriod + " ms");
+			}
+			lastCycle = now;
+			lastQueueDepth = queued;
+			lastCycleDuration = duration;
+			bytesWritten += bytes;
+			cycleCount++;
+		} catch (Throwable e) {
+			e.printStackTrace();
+		} finally {
+			running = false;
 		}
-	};
+	}
+
+	private void synced(long now) {
+		lastSync = now;
+		unsyncedChanges = 0;
+		syncCount++;
+	}
+
+	/**
+	 * Computes the storage period of the adaptive mode. The period is chosen so that a cycle processes about the
+	 * target number of changes at the current change rate, but the storage task shouldn't be busy for more than a
+	 * tenth of the time. The result is averaged with the current period to smooth out bursts.
+	 * 
+	 * @param period
+	 *            the current period in ms
+	 * @param interval
+	 *            time in ms since the previous cycle
+	 * @param queued
+	 *            the number of changes stored by this cycle
+	 * @param duration
+	 *            duration of this cycle in ms
+	 * @param target
+	 *            the number of changes a cycle should process
+	 * @return the next period in ms, between min and max
+	 */
+	static long adaptPeriod(long period, long interval, int queued, long duration, int target, long min, long max) {
+		long next = queued > 0 ? Math.max(interval, 1) * target / queued : max;
+		next = Math.max(next, duration * 10);
+		next = Math.min(next, max);
+		next = (period + next + (next > period ? 1 : 0)) / 2;
+		return Math.min(Math.max(next, min), max);
+	}
+
+	/**
+	 * @return the number of changes currently queued for the next storage cycle.
+	 */
+	public int getQueueDepth() {
+		DBResourceIO io = db.resourceIO;
+		return io == null ? 0 : io.changes.size();
+	}
+
+	/**
+	 * @return the number of changes processed by the last storage cycle.
+	 */
+	public int getLastQueueDepth() {
+		return lastQueueDepth;
+	}
+
+	/**
+	 * @return duration of the last storage cycle in ms, or -1 if no changes have been stored yet.
+	 */
+	public long getLastCycleDuration() {
+		return lastCycleDuration;
+	}
+
+	/**
+	 * @return the number of bytes written to the data file, the value slots and the directory since startup.
+	 */
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	/**
+	 * @return the number of storage cycles since startup which stored changes.
+	 */
+	public int getCycleCount() {
+		return cycleCount;
+	}
+
+	/**
+	 * @return the number of synchronizations with the storage device since startup.
+	 */
+	public int getSyncCount() {
+		return syncCount;
+	}
 
 	public int getStorePeriod() {
 		return storePeriod;
@@ -100,8 +288,10 @@ public class TimedPersistence implements PersistencePolicy {
 			// check if the resource with this is is already queued
 			Change change = db.resourceIO.changes.get(resID);
 			if (change != null) {
-				// change the status of the change object only if it wasn't deleted before
-				if (change.status != ChangeInfo.DELETED)
+				// change the status of the change object only if it wasn't deleted before, a value change doesn't
+				// supersede a structural change
+				if (change.status != ChangeInfo.DELETED
+						&& (changeInfo != ChangeInfo.VALUE_CHANGED || change.status == ChangeInfo.VALUE_CHANGED))
 					change.status = changeInfo;
 			}
 			else {
@@ -116,6 +306,9 @@ public class TimedPersistence implements PersistencePolicy {
 	@Override
 	public void finishTransaction(int toplevel) {
 		this.inTX = false;
+		// in strict mode a finished transaction is persistent when the call returns
+		if (durability == Durability.STRICT)
+			triggerStorage();
 	}
 
 	@Override
@@ -137,7 +330,9 @@ public class TimedPersistence implements PersistencePolicy {
 
 	@Override
 	public void startStorage() {
-		timer.schedule(storageTask, storePeriod, storePeriod);
+		int period = durability == Durability.ADAPTIVE ? minPeriod : storePeriod;
+		nextCycle = System.currentTimeMillis() + storePeriod;
+		timer.schedule(storageTask, period, period);
 	}
 
 	@Override
@@ -153,6 +348,8 @@ public class TimedPersistence implements PersistencePolicy {
 
 	@Override
 	public void triggerStorage() {
-		storageTask.run();
+		synchronized (storageTask) {
+			runCycle(true);
+		}
 	}
 }
@@ -119,7 +119,9 @@ public class TreeElementImpl implements TreeElement {
 	}
 
 	public void setAppID(String appID) {
+		String oldAppID = this.appID;
 		this.appID = appID;
+		db.changeOwner(this, oldAppID);
 		if (db.activatePersistence) {
 			store(ChangeInfo.STATUS_CHANGED);
 		}
@@ -652,37 +654,9 @@ public class TreeElementImpl implements TreeElement {
 		// For complex and complex array resources is nothing todo
 		if (typeKey == DBConstants.TYPE_KEY_COMPLEX || typeKey == DBConstants.TYPE_KEY_COMPLEX_ARR)
 			return;
-		// if this is a reference than addChild to the reference
-		TreeElementImpl node = this;
-		LeafValue value = new LeafValue(this);
-		node.dataContainer = (SimpleResourceData) value;// (SimpleResourceData)
-		// instance;
-		node.simpleValue = value;
-
-		switch (typeKey) {
-		case DBConstants.TYPE_KEY_BOOLEAN:
-			value.footprint = 1;
-		case DBConstants.TYPE_KEY_FLOAT:
-		case DBConstants.TYPE_KEY_INT:
-			value.footprint = 4;
-			break;
-		case DBConstants.TYPE_KEY_LONG:
-			value.footprint = 8;
-			break; // nothing to do
-		case DBConstants.TYPE_KEY_STRING:
-			value.S = "";
-			break;
-		case DBConstants.TYPE_KEY_OPAQUE:
-		case DBConstants.TYPE_KEY_INT_ARR:
-		case DBConstants.TYPE_KEY_FLOAT_ARR:
-		case DBConstants.TYPE_KEY_BOOLEAN_ARR:
-		case DBConstants.TYPE_KEY_STRING_ARR:
-		case DBConstants.TYPE_KEY_LONG_ARR:
-		case DBConstants.TYPE_KEY_COMPLEX_ARR:
-			break;
-		default:
-			break;
-		}
+		LeafValue value = LeafValue.create(this);
+		dataContainer = value;
+		simpleValue = value;
 	}
 
 	@Override
@@ -811,7 +785,8 @@ public class TreeElementImpl implements TreeElement {
 	public void setLastModified(long time) {
 		this.lastModified = time;
 		if (db.activatePersistence) {
-			store(ChangeInfo.STATUS_CHANGED);
+			// the time stamp is stored along with the value, see DBResourceIO#storeValue
+			store(nonpersistent ? ChangeInfo.STATUS_CHANGED : ChangeInfo.VALUE_CHANGED);
 		}
 	}
 
@@ -0,0 +1,276 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Set;
+
+import org.ogema.persistence.DBConstants;
+
+/**
+ * Memory mapped file of fixed size slots, which hold the values of boolean, int, float and long resources. A value
+ * change of such a resource overwrites its slot instead of appending a new entry to the data file. The archive entry
+ * of the resource remains valid for its structural data, the value and the last modification time of the slot take
+ * precedence over those of the archive entry.<br>
+ * Slot layout: resource id (0 for a free slot), type key, value bits, last modification time.<br>
+ * The slots are always written before the data file is synchronized, so a slot never holds an older value than the
+ * archive entry of its resource. Not thread safe, the slots are accessed by the storage task only.
+ */
+public class ValueSlotFile {
+
+	static final int MAGIC = 0xFEEDB10C;
+
+	static final int HEADER_SIZE = 16;
+
+	static final int SLOT_SIZE = 24;
+
+	private static final int INITIAL_SLOT_COUNT = 1024;
+
+	private final File file;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private MappedByteBuffer buffer;
+	private int slotCount;
+
+	private final Map<Integer, Integer> slotByID = new HashMap<>();
+	private final Queue<Integer> freeSlots = new ArrayDeque<>();
+	/*
+	 * Resource ids whose slot has been applied to a parsed node. Null after the parsing has been finished.
+	 */
+	private Set<Integer> applied = new HashSet<>();
+	private boolean dirty;
+
+	public ValueSlotFile(File f) throws IOException {
+		this.file = f;
+		this.raf = new RandomAccessFile(f, "rw");
+		this.channel = raf.getChannel();
+		long length = raf.length();
+		boolean valid = length >= HEADER_SIZE && (length - HEADER_SIZE) % SLOT_SIZE == 0 && raf.readInt() == MAGIC
+				&& raf.readInt() == SLOT_SIZE;
+		if (!valid) {
+			raf.setLength(0);
+			raf.seek(0);
+			raf.writeInt(MAGIC);
+			raf.writeInt(SLOT_SIZE);
+			raf.setLength(HEADER_SIZE + (long) INITIAL_SLOT_COUNT * SLOT_SIZE);
+			length = raf.length();
+		}
+		map(length);
+		for (int slot = 0; slot < slotCount; slot++) {
+			int id = buffer.getInt(position(slot));
+			if (id == 0 || slotByID.containsKey(id))
+				freeSlot(slot);
+			else
+				slotByID.put(id, slot);
+		}
+	}
+
+	private void map(long length) throws IOException {
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+		slotCount = (int) ((length - HEADER_SIZE) / SLOT_SIZE);
+	}
+
+	private static int position(int slot) {
+		return HEADER_SIZE + slot * SLOT_SIZE;
+	}
+
+	private void freeSlot(int slot) {
+		buffer.putInt(position(slot), 0);
+		freeSlots.offer(slot);
+	}
+
+	/**
+	 * @return true if the values of resources with the given type key fit into a slot.
+	 */
+	static boolean isSlotType(int typeKey) {
+		switch (typeKey) {
+		case DBConstants.TYPE_KEY_BOOLEAN:
+		case DBConstants.TYPE_KEY_FLOAT:
+		case DBConstants.TYPE_KEY_INT:
+		case DBConstants.TYPE_KEY_LONG:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Overwrites the value of a node read from the data file with the value of its slot, if there is one.
+	 */
+	void apply(TreeElementImpl node) {
+		Integer slot = slotByID.get(node.resID);
+		if (slot == null || applied == null || node.simpleValue == null)
+			return;
+		int pos = position(slot);
+		if (buffer.getInt(pos + 4) != node.typeKey)
+			return;
+		long bits = buffer.getLong(pos + 8);
+		switch (node.typeKey) {
+		case DBConstants.TYPE_KEY_BOOLEAN:
+			((LeafValue.BooleanValue) node.simpleValue).load(bits != 0);
+			break;
+		case DBConstants.TYPE_KEY_FLOAT:
+			((LeafValue.FloatValue) node.simpleValue).F = (int) bits;
+			break;
+		case DBConstants.TYPE_KEY_INT:
+			((LeafValue.IntValue) node.simpleValue).I = (int) bits;
+			break;
+		case DBConstants.TYPE_KEY_LONG:
+			((LeafValue.LongValue) node.simpleValue).J = bits;
+			break;
+		default:
+			return;
+		}
+		node.lastModified = buffer.getLong(pos + 16);
+		applied.add(node.resID);
+	}
+
+	/**
+	 * Frees all slots that haven't been applied to a parsed node. To be called after the resources are parsed.
+	 */
+	void releaseUnused() {
+		if (applied == null)
+			return;
+		Iterator<Entry<Integer, Integer>> it = slotByID.entrySet().iterator();
+		while (it.hasNext()) {
+			Entry<Integer, Integer> entry = it.next();
+			if (!applied.contains(entry.getKey())) {
+				freeSlot(entry.getValue());
+				it.remove();
+				dirty = true;
+			}
+		}
+		applied = null;
+	}
+
+	boolean hasSlot(int resID) {
+		return slotByID.containsKey(resID);
+	}
+
+	/**
+	 * Writes the current value of the node into its slot. A slot is allocated if the node doesn't have one yet.
+	 */
+	void write(TreeElementImpl node) throws IOException {
+		long bits;
+		switch (node.typeKey) {
+		case DBConstants.TYPE_KEY_BOOLEAN:
+			bits = node.simpleValue.getBoolean() ? 1 : 0;
+			break;
+		case DBConstants.TYPE_KEY_FLOAT:
+			bits = Float.floatToRawIntBits(node.simpleValue.getFloat());
+			break;
+		case DBConstants.TYPE_KEY_INT:
+			bits = node.simpleValue.getInt();
+			break;
+		case DBConstants.TYPE_KEY_LONG:
+			bits = node.simpleValue.getLong();
+			break;
+		default:
+			throw new IllegalArgumentException("Not a slot type: " + node.typeKey);
+		}
+		Integer slot = slotByID.get(node.resID);
+		boolean newSlot = slot == null;
+		if (newSlot) {
+			if (freeSlots.isEmpty())
+				grow();
+			slot = freeSlots.poll();
+		}
+		int pos = position(slot);
+		buffer.putLong(pos + 8, bits);
+		buffer.putLong(pos + 16, node.lastModified);
+		if (newSlot) {
+			// bind the slot after its content is written
+			buffer.putInt(pos + 4, node.typeKey);
+			buffer.putInt(pos, node.resID);
+			slotByID.put(node.resID, slot);
+		}
+		dirty = true;
+	}
+
+	private void grow() throws IOException {
+		int oldCount = slotCount;
+		long length = HEADER_SIZE + 2L * oldCount * SLOT_SIZE;
+		buffer.force();
+		raf.setLength(length);
+		map(length);
+		for (int slot = oldCount; slot < slotCount; slot++) {
+			freeSlots.offer(slot);
+		}
+	}
+
+	/**
+	 * Frees the slot of the resource, if it has one.
+	 */
+	void release(int resID) {
+		Integer slot = slotByID.remove(resID);
+		if (slot == null)
+			return;
+		freeSlot(slot);
+		dirty = true;
+	}
+
+	/**
+	 * Forces the modified slots to the storage device.
+	 */
+	void force() {
+		if (!dirty)
+			return;
+		buffer.force();
+		dirty = false;
+	}
+
+	int size() {
+		return slotByID.size();
+	}
+
+	/**
+	 * @return a copy of the complete file including the header, as it is currently mapped.
+	 */
+	byte[] toByteArray() {
+		ByteBuffer b = ((ByteBuffer) buffer).duplicate();
+		b.clear();
+		byte[] result = new byte[b.remaining()];
+		b.get(result);
+		return result;
+	}
+
+	public void close() {
+		try {
+			force();
+			channel.close();
+			raf.close();
+		} catch (IOException e) {
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ValueSlotFile[" + file.getName() + ", slots: " + slotCount + ", used: " + slotByID.size() + "]";
+	}
+
+}
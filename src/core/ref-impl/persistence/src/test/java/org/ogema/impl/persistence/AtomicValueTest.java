@@ -0,0 +1,163 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ogema.core.model.Resource;
+import org.ogema.core.model.simple.BooleanResource;
+import org.ogema.core.model.simple.FloatResource;
+import org.ogema.core.model.simple.IntegerResource;
+import org.ogema.core.model.simple.StringResource;
+import org.ogema.core.model.simple.TimeResource;
+import org.ogema.model.sensors.TemperatureSensor;
+import org.ogema.persistence.DBConstants;
+import org.ogema.resourcetree.SimpleResourceData;
+import org.ogema.resourcetree.TreeElement;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the compare-and-set operations of the value containers. The storage period is set to one hour, so the
+ * storage cycles are started by the tests only.
+ */
+public class AtomicValueTest extends DBBasicTest {
+
+	private static final int THREADS = 4;
+
+	private String testAppID = "/persistence/target/persistence-2.0-SNAPSHOT.jar";
+
+	private TreeElement sensor;
+
+	@BeforeClass
+	public static void init() {
+		System.setProperty("org.ogema.persistence", "active");
+	}
+
+	@Before
+	public void before() throws InterruptedException {
+		System.setProperty(DBConstants.DB_PATH_PROP, "./target/atomicValueTest");
+		System.setProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_PERIOD, "3600000");
+		db = new ResourceDBImpl();
+		db.setName("AtomicValueTest");
+		db.resourceIO.reset();
+		db.restart();
+		sensor = db.addResource("sensor", TemperatureSensor.class, testAppID);
+	}
+
+	@After
+	public void after() {
+		System.clearProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_PERIOD);
+	}
+
+	private SimpleResourceData addValue(String name, Class<? extends Resource> type) {
+		TreeElement el = sensor.addChild(name, type, true);
+		db.doStorage();
+		return el.getData();
+	}
+
+	private int queueDepth() {
+		return ((TimedPersistence) db.persistence).getQueueDepth();
+	}
+
+	@Test
+	public void compareAndSetWorks() {
+		SimpleResourceData i = addValue("int", IntegerResource.class);
+		SimpleResourceData f = addValue("float", FloatResource.class);
+		SimpleResourceData j = addValue("long", TimeResource.class);
+		SimpleResourceData z = addValue("bool", BooleanResource.class);
+		SimpleResourceData s = addValue("string", StringResource.class);
+		TestCase.assertFalse(i.compareAndSetInt(1, 2));
+		TestCase.assertFalse(f.compareAndSetFloat(1, 2));
+		TestCase.assertFalse(j.compareAndSetLong(1, 2));
+		TestCase.assertFalse(z.compareAndSetBoolean(true, false));
+		TestCase.assertFalse(s.compareAndSetString("a", "b"));
+		// failed updates are not stored
+		TestCase.assertEquals(0, queueDepth());
+		TestCase.assertTrue(i.compareAndSetInt(0, 2));
+		TestCase.assertTrue(f.compareAndSetFloat(0, Float.NaN));
+		TestCase.assertTrue(f.compareAndSetFloat(Float.NaN, 2.5f));
+		TestCase.assertTrue(j.compareAndSetLong(0, 2));
+		TestCase.assertTrue(z.compareAndSetBoolean(false, true));
+		TestCase.assertTrue(s.compareAndSetString(new String(""), "b"));
+		TestCase.assertEquals(5, queueDepth());
+		TestCase.assertEquals(2, i.getInt());
+		TestCase.assertEquals(2.5f, f.getFloat());
+		TestCase.assertEquals(2, j.getLong());
+		TestCase.assertTrue(z.getBoolean());
+		TestCase.assertEquals("b", s.getString());
+		try {
+			i.compareAndSetFloat(0, 1);
+			TestCase.fail("compareAndSetFloat on an integer value");
+		} catch (UnsupportedOperationException expected) {
+		}
+		restartAndCompareDynamicData();
+		checkDynamicData();
+		TreeElement restored = db.getToplevelResource("sensor");
+		TestCase.assertEquals(2.5f, restored.getChild("float").getData().getFloat());
+		TestCase.assertTrue(restored.getChild("bool").getData().getBoolean());
+	}
+
+	@Test
+	public void concurrentIncrementsAreAtomic() throws Exception {
+		final SimpleResourceData i = addValue("int", IntegerResource.class);
+		final SimpleResourceData f = addValue("float", FloatResource.class);
+		final int increments = 10000;
+		ExecutorService exec = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < THREADS; t++) {
+				futures.add(exec.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() {
+						for (int k = 0; k < increments; k++) {
+							int iv;
+							do {
+								iv = i.getInt();
+							} while (!i.compareAndSetInt(iv, iv + 1));
+							float fv;
+							do {
+								fv = f.getFloat();
+							} while (!f.compareAndSetFloat(fv, fv + 1));
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<?> future : futures)
+				future.get();
+		} finally {
+			exec.shutdown();
+		}
+		TestCase.assertEquals(THREADS * increments, i.getInt());
+		TestCase.assertEquals(THREADS * increments, f.getFloat(), 0f);
+		TestCase.assertEquals(2, queueDepth());
+		restartAndCompareDynamicData();
+		TestCase.assertEquals(THREADS * increments, db.getToplevelResource("sensor").getChild("int").getData()
+				.getInt());
+	}
+
+}
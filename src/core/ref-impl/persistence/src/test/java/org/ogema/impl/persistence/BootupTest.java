@@ -27,7 +27,6 @@ import java.util.Collection;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.junit.After;
@@ -80,7 +79,8 @@ public class BootupTest {
 	@Before
 	public void before() throws InterruptedException {
 		System.setProperty("org.ogema.persistence", "active");
-		System.setProperty(DBConstants.DB_PATH_PROP, "./src/test/resources/" + path);
+		// work on copies of the test files, outside of the source tree
+		System.setProperty(DBConstants.DB_PATH_PROP, "./target/" + path);
 		System.setProperty(DBConstants.PROP_NAME_PERSISTENCE_COMPACTION_START_SIZE, "100");
 		removeFiles(executionOrder, path);
 		copyFiles(executionOrder, path);
@@ -92,14 +92,14 @@ public class BootupTest {
 
 	private void copyFiles(int order, String path) {
 		File dir = new File("./src/test/resources/test" + order);
-		Path targetDir = FileSystems.getDefault().getPath("./src", "test", "resources", path);
+		Path targetDir = FileSystems.getDefault().getPath("./target", path);
 		try {
 			Files.createDirectories(targetDir);
 			String files[] = dir.list();
 			for (String file : files) {
 				Path source = FileSystems.getDefault().getPath("./src", "test", "resources", "test" + order, file);
 				if (!Files.isDirectory(source, LinkOption.NOFOLLOW_LINKS)) {
-					Path targetFile = FileSystems.getDefault().getPath("./src", "test", "resources", path, file);
+					Path targetFile = FileSystems.getDefault().getPath("./target", path, file);
 					Files.copy(source, targetFile, StandardCopyOption.REPLACE_EXISTING);
 				}
 			}
@@ -109,9 +109,9 @@ public class BootupTest {
 	}
 
 	private void removeFiles(int order, String path) {
-		File dir = new File("./src/test/resources/" + path);
+		File dir = new File("./target/" + path);
 		if (!dir.exists())
-			dir.mkdir();
+			dir.mkdirs();
 		String files[] = dir.list();
 		for (String file : files) {
 			new File(dir, file).delete();
@@ -206,7 +206,7 @@ public class BootupTest {
 		ConcurrentHashMap<String, Class<?>> typeClassByName = db.typeClassByName;
 		ConcurrentHashMap<String, Integer> resIDByName = db.resIDByName;
 		ConcurrentHashMap<Integer, TreeElementImpl> resNodeByID = db.resNodeByID;
-		ConcurrentHashMap<String, Vector<Integer>> resIDsByType = db.resIDsByType;
+		ConcurrentHashMap<String, IdSet> resIDsByType = db.resIDsByType;
 		// reinit the resource db
 		db.restart();
 		// compare the contents of the maps before and after the reinit
@@ -300,15 +300,15 @@ public class BootupTest {
 
 		// 5. resIDsByType list
 		{
-			Set<Entry<String, Vector<Integer>>> tlrs = resIDsByType.entrySet();
-			for (Map.Entry<String, Vector<Integer>> entry : tlrs) {
+			Set<Entry<String, IdSet>> tlrs = resIDsByType.entrySet();
+			for (Map.Entry<String, IdSet> entry : tlrs) {
 				String clsOld = entry.getKey();
 				// if (!db.resIDsByType.containsKey(clsOld)) {
 				// success = false;
 				// break;
 				// }
-				Vector<Integer> oldValues = entry.getValue();
-				Vector<Integer> newValues = db.resIDsByType.get(clsOld);
+				IdSet oldValues = entry.getValue();
+				IdSet newValues = db.resIDsByType.get(clsOld);
 				if (oldValues == null && newValues != null) {
 					success = false;
 					break;
@@ -322,7 +322,7 @@ public class BootupTest {
 					break;
 				}
 				if (oldValues != null && newValues != null)
-					for (int oldID : oldValues) {
+					for (int oldID : oldValues.toArray()) {
 						if (!newValues.contains(oldID)) {
 							success = false;
 							break;
@@ -344,23 +344,23 @@ public class BootupTest {
 				switch (typeKey) {
 				// compare simple resource value
 				case DBConstants.TYPE_KEY_BOOLEAN:
-					if (node.simpleValue.Z != resNew.simpleValue.Z)
+					if (node.simpleValue.getBoolean() != resNew.simpleValue.getBoolean())
 						TestCase.assertTrue(false);
 					break;
 				case DBConstants.TYPE_KEY_FLOAT:
-					if (node.simpleValue.F != resNew.simpleValue.F)
+					if (node.simpleValue.getFloat() != resNew.simpleValue.getFloat())
 						TestCase.assertTrue(false);
 					break;
 				case DBConstants.TYPE_KEY_INT:
-					if (node.simpleValue.I != resNew.simpleValue.I)
+					if (node.simpleValue.getInt() != resNew.simpleValue.getInt())
 						TestCase.assertTrue(false);
 					break;
 				case DBConstants.TYPE_KEY_STRING:
-					if (!node.simpleValue.S.equals(resNew.simpleValue.S))
+					if (!node.simpleValue.getString().equals(resNew.simpleValue.getString()))
 						TestCase.assertTrue(false);
 					break;
 				case DBConstants.TYPE_KEY_LONG:
-					if (node.simpleValue.J != resNew.simpleValue.J)
+					if (node.simpleValue.getLong() != resNew.simpleValue.getLong())
 						TestCase.assertTrue(false);
 					break;
 				// read array resource
@@ -368,28 +368,28 @@ public class BootupTest {
 					length = node.simpleValue.getArrayLength();
 					if (length != resNew.simpleValue.getArrayLength())
 						TestCase.assertTrue(false);
-					if (!Arrays.equals(node.simpleValue.aB, resNew.simpleValue.aB))
+					if (!Arrays.equals(node.simpleValue.getByteArr(), resNew.simpleValue.getByteArr()))
 						TestCase.assertTrue(false);
 					break;
 				case DBConstants.TYPE_KEY_INT_ARR:
 					length = node.simpleValue.getArrayLength();
 					if (length != resNew.simpleValue.getArrayLength())
 						TestCase.assertTrue(false);
-					if (!Arrays.equals(node.simpleValue.aI, resNew.simpleValue.aI))
+					if (!Arrays.equals(node.simpleValue.getIntArr(), resNew.simpleValue.getIntArr()))
 						TestCase.assertTrue(false);
 					break;
 				case DBConstants.TYPE_KEY_LONG_ARR:
 					length = node.simpleValue.getArrayLength();
 					if (length != resNew.simpleValue.getArrayLength())
 						TestCase.assertTrue(false);
-					if (!Arrays.equals(node.simpleValue.aJ, resNew.simpleValue.aJ))
+					if (!Arrays.equals(node.simpleValue.getLongArr(), resNew.simpleValue.getLongArr()))
 						TestCase.assertTrue(false);
 					break;
 				case DBConstants.TYPE_KEY_FLOAT_ARR:
 					length = node.simpleValue.getArrayLength();
 					if (length != resNew.simpleValue.getArrayLength())
 						TestCase.assertTrue(false);
-					if (!Arrays.equals(node.simpleValue.aF, resNew.simpleValue.aF))
+					if (!Arrays.equals(node.simpleValue.getFloatArr(), resNew.simpleValue.getFloatArr()))
 						TestCase.assertTrue(false);
 					break;
 				case DBConstants.TYPE_KEY_COMPLEX_ARR:
@@ -398,14 +398,14 @@ public class BootupTest {
 					length = node.simpleValue.getArrayLength();
 					if (length != resNew.simpleValue.getArrayLength())
 						TestCase.assertTrue(false);
-					if (!Arrays.equals(node.simpleValue.aZ, resNew.simpleValue.aZ))
+					if (!Arrays.equals(node.simpleValue.getBooleanArr(), resNew.simpleValue.getBooleanArr()))
 						TestCase.assertTrue(false);
 					break;
 				case DBConstants.TYPE_KEY_STRING_ARR:
 					length = node.simpleValue.getArrayLength();
 					if (length != resNew.simpleValue.getArrayLength())
 						TestCase.assertTrue(false);
-					if (!Arrays.equals(node.simpleValue.aS, resNew.simpleValue.aS))
+					if (!Arrays.equals(node.simpleValue.getStringArr(), resNew.simpleValue.getStringArr()))
 						TestCase.assertTrue(false);
 					break;
 				case DBConstants.TYPE_KEY_COMPLEX:
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ogema.core.model.simple.StringResource;
+import org.ogema.persistence.DBConstants;
+import org.ogema.resourcetree.TreeElement;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the background compaction of the data file, see {@link Compaction}.
+ */
+public class CompactionTest extends DBBasicTest {
+
+	private String testAppID = "/persistence/target/persistence-2.0-SNAPSHOT.jar";
+
+	@BeforeClass
+	public static void init() {
+		System.setProperty("org.ogema.persistence", "active");
+		System.setProperty(DBConstants.PROP_NAME_PERSISTENCE_COMPACTION_START_SIZE, "4");
+		System.setProperty(DBConstants.PROP_NAME_PERSISTENCE_COMPACTION_START_SIZE_GARBAGE, "40");
+	}
+
+	@AfterClass
+	public static void cleanUp() {
+		System.clearProperty(DBConstants.PROP_NAME_PERSISTENCE_COMPACTION_START_SIZE);
+		System.clearProperty(DBConstants.PROP_NAME_PERSISTENCE_COMPACTION_START_SIZE_GARBAGE);
+	}
+
+	@Before
+	public void before() throws InterruptedException {
+		System.setProperty(DBConstants.DB_PATH_PROP, "./target/compactionTest");
+		db = new ResourceDBImpl();
+		db.setName("CompactionTest");
+		db.resourceIO.reset();
+		db.restart();
+	}
+
+	private static String value(int k) {
+		StringBuilder sb = new StringBuilder("value" + k);
+		while (sb.length() < 200)
+			sb.append('x');
+		return sb.toString();
+	}
+
+	@Test
+	public void compactionRunsInBackground() throws InterruptedException {
+		DBResourceIO io = db.resourceIO;
+		TreeElement s = db.addResource("compactedString", StringResource.class, testAppID);
+		TreeElement tmp = null;
+		int k = 0;
+		int lengthBefore = 0;
+		// changes are stored while the compaction is running, until the storage task switches to the new file
+		while (io.getCompactionCount() == 0) {
+			TestCase.assertTrue("No compaction after " + k + " storage periods", k < 1000);
+			s.getData().setString(value(k));
+			if (tmp != null)
+				db.deleteResource(tmp);
+			tmp = db.addResource("compactionTmp" + k, StringResource.class, testAppID);
+			tmp.getData().setString(value(k));
+			lengthBefore = io.getCurrentOffset();
+			db.doStorage();
+			k++;
+			if (io.isCompactionRunning())
+				Thread.sleep(10);
+		}
+		TestCase.assertTrue(io.getReclaimedBytes() > 0);
+		TestCase.assertTrue(io.getLastCompactionDuration() >= 0);
+		TestCase.assertTrue(io.getCurrentOffset() < lengthBefore);
+		TestCase.assertTrue(io.dataFile.fileName.equals(io.resDataFiles.fileNew.getName()));
+		restartAndCompareDynamicData();
+		TestCase.assertEquals(value(k - 1), db.getToplevelResource("compactedString").getData().getString());
+		TestCase.assertNotNull(db.getToplevelResource("compactionTmp" + (k - 1)));
+		TestCase.assertNull(db.getToplevelResource("compactionTmp" + (k - 2)));
+	}
+
+}
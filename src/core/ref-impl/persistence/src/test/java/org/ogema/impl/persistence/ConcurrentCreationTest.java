@@ -0,0 +1,199 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ogema.core.model.simple.FloatResource;
+import org.ogema.core.model.simple.StringResource;
+import org.ogema.core.resourcemanager.ResourceAlreadyExistsException;
+import org.ogema.core.resourcemanager.ResourceNotFoundException;
+import org.ogema.model.sensors.Sensor;
+import org.ogema.model.sensors.TemperatureSensor;
+import org.ogema.persistence.DBConstants;
+import org.ogema.resourcetree.TreeElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the creation and deletion of resources by several threads in parallel. The benchmark runs only if the
+ * system property org.ogema.persistence.benchmark is true; the number of sensors it creates can be set with the system
+ * property org.ogema.persistence.benchmark.size.
+ */
+public class ConcurrentCreationTest extends DBBasicTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(ConcurrentCreationTest.class);
+
+	private static final int THREADS = 4;
+
+	private String testAppID = "/persistence/target/persistence-2.0-SNAPSHOT.jar";
+
+	@BeforeClass
+	public static void init() {
+		System.setProperty("org.ogema.persistence", "active");
+	}
+
+	@Before
+	public void before() throws InterruptedException {
+		System.setProperty(DBConstants.DB_PATH_PROP, "./target/concurrentCreationTest");
+		db = new ResourceDBImpl();
+		db.setName("ConcurrentCreationTest");
+		db.resourceIO.reset();
+		db.restart();
+	}
+
+	private void create(String prefix, int first, int count) {
+		for (int k = first; k < first + count; k++) {
+			TreeElement sensor = db.addResource(prefix + k, TemperatureSensor.class, testAppID);
+			sensor.addChild("name", StringResource.class, false).getData().setString(prefix + k);
+			sensor.addChild("calibration", FloatResource.class, true).getData().setFloat(k);
+		}
+	}
+
+	/*
+	 * Creates count sensors by the given number of threads and returns the duration in ms.
+	 */
+	private long createParallel(int threads, final String prefix, final int count) throws Exception {
+		ExecutorService exec = Executors.newFixedThreadPool(threads);
+		try {
+			final int share = count / threads;
+			List<Future<?>> futures = new ArrayList<>();
+			long start = System.nanoTime();
+			for (int t = 0; t < threads; t++) {
+				final int first = t * share;
+				futures.add(exec.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() {
+						create(prefix, first, share);
+						return null;
+					}
+				}));
+			}
+			for (Future<?> f : futures)
+				f.get();
+			return (System.nanoTime() - start) / 1000000;
+		} finally {
+			exec.shutdown();
+		}
+	}
+
+	@Test
+	public void parallelCreationYieldsUniqueIds() throws Exception {
+		createParallel(THREADS, "sensor", 400);
+		// each sensor with its name and calibration
+		TestCase.assertEquals(1200, db.resNodeByID.size());
+		TestCase.assertEquals(1200, db.resIDByName.size());
+		Set<Integer> ids = new HashSet<>();
+		for (TreeElementImpl e : db.resNodeByID.values())
+			TestCase.assertTrue(ids.add(e.resID));
+		TestCase.assertEquals(400, db.getElementsByType(Sensor.class, true).size());
+		// the sub resources inherit the owner
+		TestCase.assertEquals(1200, db.resIDsByOwner.get(testAppID).size());
+		checkDynamicData();
+		restartAndCompareDynamicData();
+		checkDynamicData();
+	}
+
+	@Test
+	public void concurrentCreationOfSameResourceFails() throws Exception {
+		ExecutorService exec = Executors.newFixedThreadPool(THREADS);
+		final AtomicInteger failures = new AtomicInteger();
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < THREADS; t++) {
+				futures.add(exec.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() {
+						for (int k = 0; k < 100; k++) {
+							try {
+								db.addResource("shared" + k, TemperatureSensor.class, testAppID);
+							} catch (ResourceAlreadyExistsException e) {
+								failures.incrementAndGet();
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<?> f : futures)
+				f.get();
+		} finally {
+			exec.shutdown();
+		}
+		TestCase.assertEquals((THREADS - 1) * 100, failures.get());
+		TestCase.assertEquals(100, db.root.size());
+		TestCase.assertEquals(db.resNodeByID.size(), db.resIDByName.size());
+		checkDynamicData();
+	}
+
+	@Test
+	public void staleHandleDoesNotAffectNewResource() {
+		create("sensor", 0, 10);
+		db.doStorage();
+		TreeElement sensor = db.getToplevelResource("sensor5");
+		Set<Integer> deleted = new HashSet<>();
+		deleted.add(sensor.getResID());
+		for (TreeElement child : sensor.getChildren())
+			deleted.add(child.getResID());
+		db.deleteResource(sensor);
+		db.doStorage();
+		create("other", 0, 1);
+		TreeElement other = db.getToplevelResource("other0");
+		TestCase.assertFalse(deleted.contains(other.getResID()));
+		for (TreeElement child : other.getChildren())
+			TestCase.assertFalse(deleted.contains(child.getResID()));
+		// deleting through the handle of the deleted resource leaves the new resource alone
+		try {
+			db.deleteResource(sensor);
+			TestCase.fail("Deleted resource deleted again");
+		} catch (ResourceNotFoundException expected) {
+		}
+		TestCase.assertSame(other, db.getByID(other.getResID()));
+		TestCase.assertNull(db.getByID(sensor.getResID()));
+		restartAndCompareDynamicData();
+		checkDynamicData();
+		TestCase.assertNotNull(db.getToplevelResource("other0"));
+		TestCase.assertNull(db.getToplevelResource("sensor5"));
+	}
+
+	@Test
+	public void creationBenchmark() throws Exception {
+		Assume.assumeTrue(Boolean.getBoolean("org.ogema.persistence.benchmark"));
+		int count = Integer.getInteger("org.ogema.persistence.benchmark.size", 20000);
+		count -= count % THREADS;
+		long single = createParallel(1, "single", count);
+		long parallel = createParallel(THREADS, "parallel", count);
+		TestCase.assertEquals(2 * count, db.root.size());
+		logger.info("Creation of {} sensors: 1 thread {} ms, {} threads {} ms", count, single, THREADS, parallel);
+	}
+
+}
@@ -19,7 +19,6 @@ import java.util.Arrays;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
 
 import junit.framework.TestCase;
@@ -37,7 +36,7 @@ public class DBBasicTest {
 		ConcurrentHashMap<String, Class<?>> typeClassByName = db.typeClassByName;
 		ConcurrentHashMap<String, Integer> resIDByName = db.resIDByName;
 		ConcurrentHashMap<Integer, TreeElementImpl> resNodeByID = db.resNodeByID;
-		ConcurrentHashMap<String, Vector<Integer>> resIDsByType = db.resIDsByType;
+		ConcurrentHashMap<String, IdSet> resIDsByType = db.resIDsByType;
 		// check the consistency of the maps
 		boolean success = true;
 		// 1. root list
@@ -81,12 +80,12 @@ public class DBBasicTest {
 		}
 		// 5. resIDsByType list
 		{
-			Set<Entry<String, Vector<Integer>>> tlrs = resIDsByType.entrySet();
-			for (Map.Entry<String, Vector<Integer>> entry : tlrs) {
+			Set<Entry<String, IdSet>> tlrs = resIDsByType.entrySet();
+			for (Map.Entry<String, IdSet> entry : tlrs) {
 				String cls = entry.getKey();
-				Vector<Integer> values = entry.getValue();
+				IdSet values = entry.getValue();
 
-				for (int ID : values) {
+				for (int ID : values.toArray()) {
 					TreeElementImpl res = resNodeByID.get(ID);
 					if (res.resID != ID) {
 						success = false;
@@ -117,7 +116,7 @@ public class DBBasicTest {
 		ConcurrentHashMap<String, Class<?>> typeClassByName = db.typeClassByName;
 		ConcurrentHashMap<String, Integer> resIDByName = db.resIDByName;
 		ConcurrentHashMap<Integer, TreeElementImpl> resNodeByID = db.resNodeByID;
-		ConcurrentHashMap<String, Vector<Integer>> resIDsByType = db.resIDsByType;
+		ConcurrentHashMap<String, IdSet> resIDsByType = db.resIDsByType;
 		// reinit the resource db
 		db.restart();
 		// compare the contents of the maps before and after the reinit
@@ -215,15 +214,15 @@ public class DBBasicTest {
 
 		// 5. resIDsByType list
 		{
-			Set<Entry<String, Vector<Integer>>> tlrs = resIDsByType.entrySet();
-			for (Map.Entry<String, Vector<Integer>> entry : tlrs) {
+			Set<Entry<String, IdSet>> tlrs = resIDsByType.entrySet();
+			for (Map.Entry<String, IdSet> entry : tlrs) {
 				String clsOld = entry.getKey();
 				// if (!db.resIDsByType.containsKey(clsOld)) {
 				// success = false;
 				// break;
 				// }
-				Vector<Integer> oldValues = entry.getValue();
-				Vector<Integer> newValues = db.resIDsByType.get(clsOld);
+				IdSet oldValues = entry.getValue();
+				IdSet newValues = db.resIDsByType.get(clsOld);
 				if (oldValues == null && newValues != null) {
 					success = false;
 					break;
@@ -237,7 +236,7 @@ public class DBBasicTest {
 					break;
 				}
 				if (oldValues != null && newValues != null)
-					for (int oldID : oldValues) {
+					for (int oldID : oldValues.toArray()) {
 						if (!newValues.contains(oldID)) {
 							success = false;
 							break;
@@ -260,23 +259,23 @@ public class DBBasicTest {
 					switch (typeKey) {
 					// compare simple resource value
 					case DBConstants.TYPE_KEY_BOOLEAN:
-						if (node.simpleValue.Z != resNew.simpleValue.Z)
+						if (node.simpleValue.getBoolean() != resNew.simpleValue.getBoolean())
 							TestCase.assertTrue(false);
 						break;
 					case DBConstants.TYPE_KEY_FLOAT:
-						if (node.simpleValue.F != resNew.simpleValue.F)
+						if (node.simpleValue.getFloat() != resNew.simpleValue.getFloat())
 							TestCase.assertTrue(false);
 						break;
 					case DBConstants.TYPE_KEY_INT:
-						if (node.simpleValue.I != resNew.simpleValue.I)
+						if (node.simpleValue.getInt() != resNew.simpleValue.getInt())
 							TestCase.assertTrue(false);
 						break;
 					case DBConstants.TYPE_KEY_STRING:
-						if (!node.simpleValue.S.equals(resNew.simpleValue.S))
+						if (!node.simpleValue.getString().equals(resNew.simpleValue.getString()))
 							TestCase.assertTrue(false);
 						break;
 					case DBConstants.TYPE_KEY_LONG:
-						if (node.simpleValue.J != resNew.simpleValue.J)
+						if (node.simpleValue.getLong() != resNew.simpleValue.getLong())
 							TestCase.assertTrue(false);
 						break;
 					// read array resource
@@ -284,28 +283,28 @@ public class DBBasicTest {
 						length = node.simpleValue.getArrayLength();
 						if (length != resNew.simpleValue.getArrayLength())
 							TestCase.assertTrue(false);
-						if (!Arrays.equals(node.simpleValue.aB, resNew.simpleValue.aB))
+						if (!Arrays.equals(node.simpleValue.getByteArr(), resNew.simpleValue.getByteArr()))
 							TestCase.assertTrue(false);
 						break;
 					case DBConstants.TYPE_KEY_INT_ARR:
 						length = node.simpleValue.getArrayLength();
 						if (length != resNew.simpleValue.getArrayLength())
 							TestCase.assertTrue(false);
-						if (!Arrays.equals(node.simpleValue.aI, resNew.simpleValue.aI))
+						if (!Arrays.equals(node.simpleValue.getIntArr(), resNew.simpleValue.getIntArr()))
 							TestCase.assertTrue(false);
 						break;
 					case DBConstants.TYPE_KEY_LONG_ARR:
 						length = node.simpleValue.getArrayLength();
 						if (length != resNew.simpleValue.getArrayLength())
 							TestCase.assertTrue(false);
-						if (!Arrays.equals(node.simpleValue.aJ, resNew.simpleValue.aJ))
+						if (!Arrays.equals(node.simpleValue.getLongArr(), resNew.simpleValue.getLongArr()))
 							TestCase.assertTrue(false);
 						break;
 					case DBConstants.TYPE_KEY_FLOAT_ARR:
 						length = node.simpleValue.getArrayLength();
 						if (length != resNew.simpleValue.getArrayLength())
 							TestCase.assertTrue(false);
-						if (!Arrays.equals(node.simpleValue.aF, resNew.simpleValue.aF))
+						if (!Arrays.equals(node.simpleValue.getFloatArr(), resNew.simpleValue.getFloatArr()))
 							TestCase.assertTrue(false);
 						break;
 					case DBConstants.TYPE_KEY_COMPLEX_ARR:
@@ -314,14 +313,14 @@ public class DBBasicTest {
 						length = node.simpleValue.getArrayLength();
 						if (length != resNew.simpleValue.getArrayLength())
 							TestCase.assertTrue(false);
-						if (!Arrays.equals(node.simpleValue.aZ, resNew.simpleValue.aZ))
+						if (!Arrays.equals(node.simpleValue.getBooleanArr(), resNew.simpleValue.getBooleanArr()))
 							TestCase.assertTrue(false);
 						break;
 					case DBConstants.TYPE_KEY_STRING_ARR:
 						length = node.simpleValue.getArrayLength();
 						if (length != resNew.simpleValue.getArrayLength())
 							TestCase.assertTrue(false);
-						if (!Arrays.equals(node.simpleValue.aS, resNew.simpleValue.aS))
+						if (!Arrays.equals(node.simpleValue.getStringArr(), resNew.simpleValue.getStringArr()))
 							TestCase.assertTrue(false);
 						break;
 					case DBConstants.TYPE_KEY_COMPLEX:
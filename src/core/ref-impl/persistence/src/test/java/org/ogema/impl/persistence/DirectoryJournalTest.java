@@ -0,0 +1,112 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ogema.core.model.simple.FloatResource;
+import org.ogema.core.model.simple.StringResource;
+import org.ogema.persistence.DBConstants;
+import org.ogema.resourcetree.TreeElement;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the incremental update of the resource directory, see {@link DirectoryJournal}.
+ */
+public class DirectoryJournalTest extends DBBasicTest {
+
+	private String testAppID = "/persistence/target/persistence-2.0-SNAPSHOT.jar";
+
+	@BeforeClass
+	public static void init() {
+		System.setProperty("org.ogema.persistence", "active");
+	}
+
+	@Before
+	public void before() throws InterruptedException {
+		System.setProperty(DBConstants.DB_PATH_PROP, "./target/directoryJournalTest");
+		db = new ResourceDBImpl();
+		db.setName("DirectoryJournalTest");
+		db.resourceIO.reset();
+		db.restart();
+	}
+
+	private TreeElement createValue(String name) {
+		TreeElement value = db.addResource(name, FloatResource.class, testAppID);
+		value.getData().setFloat(1.f);
+		return value;
+	}
+
+	// values of string resources are not stored in place but in the data file, see ValueSlotFile
+	private TreeElement createString(String name) {
+		TreeElement value = db.addResource(name, StringResource.class, testAppID);
+		value.getData().setString("initial");
+		return value;
+	}
+
+	@Test
+	public void valueChangesAreAppendedToJournal() {
+		TreeElement value = createString("journalValue");
+		db.doStorage();
+		String mapFile = db.resourceIO.dirFiles.fileNew.getName();
+		TestCase.assertTrue(db.resourceIO.journalFile.exists());
+		for (int i = 0; i < 10; i++) {
+			value.getData().setString("value" + i);
+			db.doStorage();
+		}
+		// no new map file has been written
+		TestCase.assertEquals(mapFile, db.resourceIO.dirFiles.fileNew.getName());
+		TestCase.assertEquals(10, db.resourceIO.journal.entryCount);
+		restartAndCompareDynamicData();
+		TestCase.assertEquals("value9", db.getToplevelResource("journalValue").getData().getString());
+	}
+
+	@Test
+	public void deletedResourcesAreNotRestored() {
+		createValue("journalValue1");
+		TreeElement value = createValue("journalValue2");
+		db.doStorage();
+		db.deleteResource(value);
+		restartAndCompareDynamicData();
+		TestCase.assertNotNull(db.getToplevelResource("journalValue1"));
+		TestCase.assertNull(db.getToplevelResource("journalValue2"));
+	}
+
+	@Test
+	public void incompleteBatchIsIgnored() throws IOException {
+		TreeElement value = createString("journalValue");
+		db.doStorage();
+		value.getData().setString("committed");
+		db.doStorage();
+		db.stopStorage();
+		db.resourceIO.closeAll();
+		// simulate a crash while a batch is written
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(db.resourceIO.journalFile, true))) {
+			out.writeInt(2);
+			out.writeInt(value.getResID());
+			out.writeInt(0);
+		}
+		db.restart();
+		TestCase.assertEquals("committed", db.getToplevelResource("journalValue").getData().getString());
+	}
+
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ogema.core.model.simple.FloatResource;
+import org.ogema.model.sensors.TemperatureSensor;
+import org.ogema.persistence.DBConstants;
+import org.ogema.resourcetree.TreeElement;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the durability policies of {@link TimedPersistence}. The storage period is set to one hour, so the
+ * storage cycles are started by the tests only.
+ */
+public class DurabilityPolicyTest extends DBBasicTest {
+
+	private String testAppID = "/persistence/target/persistence-2.0-SNAPSHOT.jar";
+
+	@BeforeClass
+	public static void init() {
+		System.setProperty("org.ogema.persistence", "active");
+	}
+
+	@Before
+	public void before() throws InterruptedException {
+		System.setProperty(DBConstants.DB_PATH_PROP, "./target/durabilityPolicyTest");
+		System.setProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_PERIOD, "3600000");
+		db = new ResourceDBImpl();
+		db.setName("DurabilityPolicyTest");
+		db.resourceIO.reset();
+	}
+
+	@After
+	public void after() {
+		System.clearProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_PERIOD);
+		System.clearProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_POLICY);
+		System.clearProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_SYNC_CHANGES);
+	}
+
+	private TimedPersistence restartWithPolicy(String policy) {
+		System.setProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_POLICY, policy);
+		db.restart();
+		return (TimedPersistence) db.persistence;
+	}
+
+	private void generate(int first, int count) {
+		for (int k = first; k < first + count; k++) {
+			TreeElement sensor = db.addResource("sensor" + k, TemperatureSensor.class, testAppID);
+			sensor.addChild("calibration", FloatResource.class, true).getData().setFloat(k);
+		}
+	}
+
+	private void runCycle(TimedPersistence persistence) {
+		synchronized (persistence.getStorageLock()) {
+			persistence.runCycle(false);
+		}
+	}
+
+	@Test
+	public void throughputDefersSync() {
+		TimedPersistence persistence = restartWithPolicy(DBConstants.PROP_VALUE_TIMEDPERSISTENCE_THROUGHPUT);
+		TestCase.assertEquals(TimedPersistence.Durability.THROUGHPUT, persistence.durability);
+		generate(0, 10);
+		TestCase.assertEquals(20, persistence.getQueueDepth());
+		runCycle(persistence);
+		// the changes are written, but the sync period hasn't elapsed yet
+		TestCase.assertEquals(0, persistence.getQueueDepth());
+		TestCase.assertEquals(20, persistence.getLastQueueDepth());
+		TestCase.assertEquals(1, persistence.getCycleCount());
+		TestCase.assertEquals(0, persistence.getSyncCount());
+		TestCase.assertTrue(persistence.getBytesWritten() > 0);
+		TestCase.assertTrue(persistence.getLastCycleDuration() >= 0);
+		// a triggered storage synchronizes the changes written before
+		persistence.triggerStorage();
+		TestCase.assertEquals(1, persistence.getSyncCount());
+		restartAndCompareDynamicData();
+		checkDynamicData();
+	}
+
+	@Test
+	public void throughputSyncsAfterSyncChanges() {
+		System.setProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_SYNC_CHANGES, "30");
+		TimedPersistence persistence = restartWithPolicy(DBConstants.PROP_VALUE_TIMEDPERSISTENCE_THROUGHPUT);
+		generate(0, 10);
+		runCycle(persistence);
+		TestCase.assertEquals(0, persistence.getSyncCount());
+		generate(10, 5);
+		runCycle(persistence);
+		TestCase.assertEquals(1, persistence.getSyncCount());
+		TestCase.assertEquals(2, persistence.getCycleCount());
+		restartAndCompareDynamicData();
+	}
+
+	@Test
+	public void strictStoresOnFinishedTransaction() {
+		TimedPersistence persistence = restartWithPolicy(DBConstants.PROP_VALUE_TIMEDPERSISTENCE_STRICT);
+		TestCase.assertEquals(TimedPersistence.Durability.STRICT, persistence.durability);
+		db.startTransaction();
+		generate(0, 10);
+		// no storage during the transaction
+		runCycle(persistence);
+		TestCase.assertEquals(20, persistence.getQueueDepth());
+		TestCase.assertEquals(0, persistence.getCycleCount());
+		db.finishTransaction();
+		TestCase.assertEquals(0, persistence.getQueueDepth());
+		TestCase.assertEquals(1, persistence.getSyncCount());
+		// each cycle is synchronized
+		db.getToplevelResource("sensor0").getChild("calibration").getData().setFloat(-1);
+		runCycle(persistence);
+		TestCase.assertEquals(2, persistence.getSyncCount());
+		restartAndCompareDynamicData();
+		checkDynamicData();
+	}
+
+	@Test
+	public void adaptiveCycleStartsWithEnoughChanges() {
+		System.setProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_SYNC_CHANGES, "30");
+		TimedPersistence persistence = restartWithPolicy(DBConstants.PROP_VALUE_TIMEDPERSISTENCE_ADAPTIVE);
+		TestCase.assertEquals(360000, persistence.minPeriod);
+		generate(0, 10);
+		// the period hasn't elapsed yet
+		runCycle(persistence);
+		TestCase.assertEquals(0, persistence.getCycleCount());
+		generate(10, 5);
+		runCycle(persistence);
+		TestCase.assertEquals(1, persistence.getCycleCount());
+		TestCase.assertEquals(1, persistence.getSyncCount());
+		// the period is shortened due to the high change rate
+		TestCase.assertTrue(persistence.getStorePeriod() < 3600000);
+	}
+
+	@Test
+	public void adaptivePeriodFollowsChangeRate() {
+		// 1000 changes per second, 500 changes per cycle requested
+		TestCase.assertEquals(750, TimedPersistence.adaptPeriod(1000, 1000, 1000, 10, 500, 100, 6000));
+		// few changes let the period grow up to the maximum
+		long period = 1000;
+		for (int i = 0; i < 20; i++)
+			period = TimedPersistence.adaptPeriod(period, period, 5, 10, 500, 100, 6000);
+		TestCase.assertEquals(6000, period);
+		// no changes at all
+		TestCase.assertEquals(6000, TimedPersistence.adaptPeriod(6000, 6000, 0, 0, 500, 100, 6000));
+		// a burst shortens the period down to the minimum
+		for (int i = 0; i < 20; i++)
+			period = TimedPersistence.adaptPeriod(period, period, 100000, 10, 500, 100, 6000);
+		TestCase.assertEquals(100, period);
+		// slow storage cycles prolong the period
+		TestCase.assertEquals(3500, TimedPersistence.adaptPeriod(1000, 1000, 100000, 600, 500, 100, 6000));
+	}
+
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ogema.core.model.simple.BooleanResource;
+import org.ogema.core.model.simple.FloatResource;
+import org.ogema.core.model.simple.IntegerResource;
+import org.ogema.core.model.simple.StringResource;
+import org.ogema.model.sensors.TemperatureSensor;
+import org.ogema.persistence.DBConstants;
+import org.ogema.resourcetree.TreeElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import junit.framework.TestCase;
+
+/**
+ * Measures the heap used by the nodes of a large resource tree after it has been parsed at start up. Runs only if the
+ * system property org.ogema.persistence.benchmark is true; the size of the generated tree can be set with the system
+ * property org.ogema.persistence.benchmark.size (number of sensors, each of them with 4 simple sub resources).
+ */
+public class MemoryFootprintTest extends DBBasicTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(MemoryFootprintTest.class);
+
+	private String testAppID = "/persistence/target/persistence-2.0-SNAPSHOT.jar";
+
+	@BeforeClass
+	public static void init() {
+		System.setProperty("org.ogema.persistence", "active");
+	}
+
+	@Before
+	public void before() throws InterruptedException {
+		System.setProperty(DBConstants.DB_PATH_PROP, "./target/memoryFootprintTest");
+		db = new ResourceDBImpl();
+		db.setName("MemoryFootprintTest");
+		db.resourceIO.reset();
+		db.restart();
+	}
+
+	private static long usedHeap() throws InterruptedException {
+		Runtime rt = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			Thread.sleep(20);
+			used = Math.min(used, rt.totalMemory() - rt.freeMemory());
+		}
+		return used;
+	}
+
+	@Test
+	public void heapPerResource() throws InterruptedException {
+		Assume.assumeTrue(Boolean.getBoolean("org.ogema.persistence.benchmark"));
+		int count = Integer.getInteger("org.ogema.persistence.benchmark.size", 10000);
+		for (int k = 0; k < count; k++) {
+			TreeElement sensor = db.addResource("sensor" + k, TemperatureSensor.class, testAppID);
+			sensor.addChild("name", StringResource.class, false).getData().setString("sensor " + k);
+			sensor.addChild("value", FloatResource.class, true).getData().setFloat(k);
+			sensor.addChild("count", IntegerResource.class, true).getData().setInt(k);
+			sensor.addChild("on", BooleanResource.class, true).getData().setBoolean(k % 2 == 0);
+		}
+		db.doStorage();
+		db.stopStorage();
+		db.restart();
+		int resources = db.resNodeByID.size();
+		TestCase.assertEquals(5 * count, resources);
+		long withTree = usedHeap();
+		db.stopStorage();
+		db.resourceIO.closeAll();
+		db.root.clear();
+		db.resIDByName.clear();
+		db.resNodeByID.clear();
+		db.resIDsByType.clear();
+		long withoutTree = usedHeap();
+		logger.info("Heap used by {} parsed resources: {} KB, {} bytes per resource", resources,
+				(withTree - withoutTree) >> 10, (withTree - withoutTree) / resources);
+	}
+
+}
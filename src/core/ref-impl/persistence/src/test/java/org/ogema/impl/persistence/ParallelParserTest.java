@@ -0,0 +1,152 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ogema.core.model.array.FloatArrayResource;
+import org.ogema.core.model.array.StringArrayResource;
+import org.ogema.core.model.simple.IntegerResource;
+import org.ogema.core.model.simple.StringResource;
+import org.ogema.model.sensors.TemperatureSensor;
+import org.ogema.persistence.DBConstants;
+import org.ogema.resourcetree.TreeElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the parallel parsing of the memory mapped data file at start up, including a comparison of the start up
+ * time with the sequential parser. The comparison runs only if the system property org.ogema.persistence.benchmark is
+ * true; the size of the generated database can be set with the system property org.ogema.persistence.benchmark.size
+ * (number of sensors, each of them stored in 5 entries).
+ */
+public class ParallelParserTest extends DBBasicTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(ParallelParserTest.class);
+
+	private String testAppID = "/persistence/target/persistence-2.0-SNAPSHOT.jar";
+
+	@BeforeClass
+	public static void init() {
+		System.setProperty("org.ogema.persistence", "active");
+	}
+
+	@Before
+	public void before() throws InterruptedException {
+		System.setProperty(DBConstants.DB_PATH_PROP, "./target/parallelParserTest");
+		db = new ResourceDBImpl();
+		db.setName("ParallelParserTest");
+		db.resourceIO.reset();
+		db.restart();
+	}
+
+	@After
+	public void after() {
+		System.clearProperty(DBConstants.PROP_NAME_PERSISTENCE_PARSER_THREADS);
+	}
+
+	private void generate(int count) {
+		TreeElement previous = null;
+		for (int k = 0; k < count; k++) {
+			TreeElement sensor = db.addResource("sensor" + k, TemperatureSensor.class, testAppID);
+			sensor.addChild("name", StringResource.class, false).getData().setString(
+					k % 3 == 0 ? "Küche " + k : "sensor " + k);
+			sensor.addChild("count", IntegerResource.class, true).getData().setInt(k);
+			sensor.addChild("values", FloatArrayResource.class, true).getData().setFloatArr(
+					new float[] { k, k + .5f, -k });
+			sensor.addChild("labels", StringArrayResource.class, true).getData().setStringArr(
+					new String[] { "a" + k, "€" + k });
+			if (previous != null)
+				sensor.addReference(previous, "previous", true);
+			previous = sensor;
+		}
+		db.doStorage();
+	}
+
+	private void restartWithParserThreads(int threads) {
+		db.doStorage();
+		db.stopStorage();
+		System.setProperty(DBConstants.PROP_NAME_PERSISTENCE_PARSER_THREADS, String.valueOf(threads));
+		db.restart();
+		TestCase.assertEquals(threads, db.resourceIO.parserThreads);
+	}
+
+	private void checkSensor(int k) {
+		TreeElement sensor = db.getToplevelResource("sensor" + k);
+		TestCase.assertNotNull(sensor);
+		TestCase.assertEquals(k % 3 == 0 ? "Küche " + k : "sensor " + k, sensor.getChild("name").getData()
+				.getString());
+		TestCase.assertEquals(k, sensor.getChild("count").getData().getInt());
+		TestCase.assertEquals(k + .5f, sensor.getChild("values").getData().getFloatArr()[1]);
+		TestCase.assertEquals("€" + k, sensor.getChild("labels").getData().getStringArr()[1]);
+		if (k > 0)
+			TestCase.assertEquals("sensor" + (k - 1), sensor.getChild("previous").getReference().getPath());
+	}
+
+	@Test
+	public void parallelParserRestoresTree() {
+		int count = 2000;
+		generate(count);
+		System.setProperty(DBConstants.PROP_NAME_PERSISTENCE_PARSER_THREADS, "4");
+		restartAndCompareDynamicData();
+		checkDynamicData();
+		for (int k = 0; k < count; k++)
+			checkSensor(k);
+		// the sequential parser reads the same tree
+		int resources = db.resNodeByID.size();
+		restartWithParserThreads(0);
+		TestCase.assertEquals(resources, db.resNodeByID.size());
+		checkSensor(count - 1);
+	}
+
+	@Test
+	public void startupBenchmark() {
+		Assume.assumeTrue(Boolean.getBoolean("org.ogema.persistence.benchmark"));
+		int count = Integer.getInteger("org.ogema.persistence.benchmark.size", 5000);
+		generate(count);
+		int resources = db.resNodeByID.size();
+		int threads = Runtime.getRuntime().availableProcessors();
+		long[] sequential = new long[3];
+		long[] parallel = new long[3];
+		// alternate the parsers, so both profit from the warm up in the same way
+		for (int i = 0; i < sequential.length; i++) {
+			long start = System.nanoTime();
+			restartWithParserThreads(0);
+			sequential[i] = System.nanoTime() - start;
+			TestCase.assertEquals(resources, db.resNodeByID.size());
+			start = System.nanoTime();
+			restartWithParserThreads(threads);
+			parallel[i] = System.nanoTime() - start;
+			TestCase.assertEquals(resources, db.resNodeByID.size());
+		}
+		checkSensor(count - 1);
+		logger.info("Start up with {} resources: sequential parser {} ms, mapped parser ({} threads) {} ms", resources,
+				min(sequential) / 1000000, threads, min(parallel) / 1000000);
+	}
+
+	private static long min(long[] values) {
+		long result = Long.MAX_VALUE;
+		for (long value : values)
+			result = Math.min(result, value);
+		return result;
+	}
+
+}
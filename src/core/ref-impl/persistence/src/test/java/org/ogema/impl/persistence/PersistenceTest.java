@@ -71,7 +71,7 @@ public class PersistenceTest extends DBBasicTest {
 	public void before() throws InterruptedException {
 
 		System.setProperty(DBConstants.DB_PATH_PROP,
-				"persistenceTest" + params[executionOrder][0] + params[executionOrder][1]);
+				"./target/persistenceTest" + params[executionOrder][0] + params[executionOrder][1]);
 		executionOrder++;
 		db = new ResourceDBImpl();
 		db.setName("PersistenceTest");
@@ -0,0 +1,143 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ogema.core.model.Resource;
+import org.ogema.core.model.simple.FloatResource;
+import org.ogema.model.locations.Room;
+import org.ogema.model.sensors.Sensor;
+import org.ogema.model.sensors.TemperatureSensor;
+import org.ogema.persistence.DBConstants;
+import org.ogema.resourcetree.TreeElement;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the secondary indexes by type and by owner used by the filtered queries of {@link ResourceDBImpl}.
+ */
+public class ResourceIndexTest extends DBBasicTest {
+
+	private static final String APP1 = "/persistence/target/app1.jar";
+	private static final String APP2 = "/persistence/target/app2.jar";
+
+	@BeforeClass
+	public static void init() {
+		System.setProperty("org.ogema.persistence", "active");
+	}
+
+	@Before
+	public void before() throws InterruptedException {
+		System.setProperty(DBConstants.DB_PATH_PROP, "./target/resourceIndexTest");
+		db = new ResourceDBImpl();
+		db.setName("ResourceIndexTest");
+		db.resourceIO.reset();
+		db.restart();
+	}
+
+	private void generate() {
+		for (int k = 0; k < 10; k++) {
+			TreeElement sensor = db.addResource("sensor" + k, TemperatureSensor.class, k < 4 ? APP1 : APP2);
+			sensor.addChild("calibration", FloatResource.class, true);
+		}
+		for (int k = 0; k < 3; k++)
+			db.addResource("room" + k, Room.class, APP1);
+	}
+
+	private static Map<String, String> filter(String... keysAndValues) {
+		Map<String, String> dict = new HashMap<>();
+		for (int i = 0; i < keysAndValues.length; i += 2)
+			dict.put(keysAndValues[i], keysAndValues[i + 1]);
+		return dict;
+	}
+
+	@Test
+	public void idSetAddRemoveContains() {
+		IdSet ids = new IdSet();
+		for (int id = 1; id <= 1000; id++)
+			TestCase.assertTrue(ids.add(id));
+		TestCase.assertFalse(ids.add(500));
+		TestCase.assertEquals(1000, ids.size());
+		for (int id = 2; id <= 1000; id += 2)
+			TestCase.assertTrue(ids.remove(id));
+		TestCase.assertFalse(ids.remove(2));
+		TestCase.assertEquals(500, ids.size());
+		for (int id = 1; id <= 1000; id++)
+			TestCase.assertEquals(id % 2 == 1, ids.contains(id));
+		for (int id = 1; id <= 1000; id += 2)
+			ids.remove(id);
+		TestCase.assertEquals(0, ids.toArray().length);
+	}
+
+	@Test
+	public void elementsByTypeIncludeSubTypes() {
+		generate();
+		TestCase.assertEquals(10, db.getElementsByType(TemperatureSensor.class, false).size());
+		TestCase.assertEquals(10, db.getElementsByType(Sensor.class, true).size());
+		TestCase.assertTrue(db.getElementsByType(Sensor.class, false).isEmpty());
+		TestCase.assertEquals(3, db.getElementsByType(Room.class, true).size());
+		// all resources including the sub resources
+		TestCase.assertEquals(db.resNodeByID.size(), db.getElementsByType(Resource.class, true).size());
+		// a new sub type registered after the first query has to be found too
+		db.addResource("first", Sensor.class, APP2);
+		TestCase.assertEquals(11, db.getElementsByType(Sensor.class, true).size());
+	}
+
+	@Test
+	public void filteredNodesByOwnerAndType() {
+		generate();
+		Collection<TreeElement> owned = db.getFilteredNodes(filter("owner", APP1));
+		TestCase.assertEquals(7, owned.size());
+		for (TreeElement e : owned)
+			TestCase.assertTrue(e.isToplevel());
+		Collection<TreeElement> sensors = db.getFilteredNodes(filter("path", "*", "type", Sensor.class.getName(),
+				"owner", APP1));
+		TestCase.assertEquals(4, sensors.size());
+		for (TreeElement e : sensors)
+			TestCase.assertEquals(TemperatureSensor.class, e.getType());
+		TestCase.assertEquals(6, db.getFilteredNodes(
+				filter("type", TemperatureSensor.class.getName(), "owner", APP2)).size());
+		TestCase.assertTrue(db.getFilteredNodes(filter("owner", "unknown")).isEmpty());
+		// change of the owner
+		db.getToplevelResource("room0").setAppID(APP2);
+		TestCase.assertEquals(6, db.getFilteredNodes(filter("owner", APP1)).size());
+		TestCase.assertEquals(1, db.getFilteredNodes(filter("type", Room.class.getName(), "owner", APP2)).size());
+	}
+
+	@Test
+	public void deletedResourcesAreRemovedFromIndexes() {
+		generate();
+		TreeElement sensor = db.getToplevelResource("sensor0");
+		int id = sensor.getResID();
+		db.deleteResource(sensor);
+		TestCase.assertFalse(db.resIDsByType.get(TemperatureSensor.class.getName()).contains(id));
+		TestCase.assertFalse(db.resIDsByOwner.get(APP1).contains(id));
+		TestCase.assertEquals(9, db.getElementsByType(Sensor.class, true).size());
+		TestCase.assertEquals(6, db.getFilteredNodes(filter("owner", APP1)).size());
+		// the indexes are rebuilt at start up
+		restartAndCompareDynamicData();
+		checkDynamicData();
+		TestCase.assertEquals(9, db.getElementsByType(Sensor.class, true).size());
+		TestCase.assertEquals(6, db.getFilteredNodes(filter("owner", APP1)).size());
+	}
+
+}
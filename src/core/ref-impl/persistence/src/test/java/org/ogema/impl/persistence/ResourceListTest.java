@@ -71,7 +71,7 @@ public class ResourceListTest {
 	@Before
 	public void before() throws InterruptedException {
 		System.setProperty("org.ogema.persistence", "active");
-		System.setProperty(DBConstants.DB_PATH_PROP, "./src/test/resources/" + path);
+		System.setProperty(DBConstants.DB_PATH_PROP, "./target/" + path);
 		System.setProperty(DBConstants.PROP_NAME_PERSISTENCE_COMPACTION_START_SIZE, "100");
 		System.setProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_PERIOD, "1000000");
 		removeFiles(executionOrder, path);
@@ -85,14 +85,14 @@ public class ResourceListTest {
 
 	private void copyFiles(int order, String path) {
 		File dir = new File("./src/test/resources/test" + order);
-		Path targetDir = FileSystems.getDefault().getPath("./src", "test", "resources", path);
+		Path targetDir = FileSystems.getDefault().getPath("./target", path);
 		try {
 			Files.createDirectories(targetDir);
 			String files[] = dir.list();
 			for (String file : files) {
 				Path source = FileSystems.getDefault().getPath("./src", "test", "resources", "test" + order, file);
 				if (!Files.isDirectory(source, LinkOption.NOFOLLOW_LINKS)) {
-					Path targetFile = FileSystems.getDefault().getPath("./src", "test", "resources", path, file);
+					Path targetFile = FileSystems.getDefault().getPath("./target", path, file);
 					Files.copy(source, targetFile, StandardCopyOption.REPLACE_EXISTING);
 				}
 			}
@@ -102,9 +102,9 @@ public class ResourceListTest {
 	}
 
 	private void removeFiles(int order, String path) {
-		File dir = new File("./src/test/resources/" + path);
+		File dir = new File("./target/" + path);
 		if (!dir.exists())
-			dir.mkdir();
+			dir.mkdirs();
 		String files[] = dir.list();
 		for (String file : files) {
 			new File(dir, file).delete();
@@ -0,0 +1,200 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ogema.core.model.array.StringArrayResource;
+import org.ogema.core.model.simple.FloatResource;
+import org.ogema.core.model.simple.IntegerResource;
+import org.ogema.core.model.simple.StringResource;
+import org.ogema.model.sensors.TemperatureSensor;
+import org.ogema.persistence.DBConstants;
+import org.ogema.resourcetree.TreeElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the export of binary snapshots and their restoration at start up. The benchmark runs only if the system
+ * property org.ogema.persistence.benchmark is true; the size of the database it generates can be set with the system
+ * property org.ogema.persistence.benchmark.size (number of sensors, each of them with 4 sub resources).
+ */
+public class SnapshotTest extends DBBasicTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(SnapshotTest.class);
+
+	private static final String RESTORE_DIR = "./target/snapshotTestRestore";
+
+	private String testAppID = "/persistence/target/persistence-2.0-SNAPSHOT.jar";
+
+	private final File snapshotFile = new File("./target/snapshotTest.snapshot");
+
+	private ResourceDBImpl restored;
+
+	@BeforeClass
+	public static void init() {
+		System.setProperty("org.ogema.persistence", "active");
+	}
+
+	@Before
+	public void before() throws InterruptedException {
+		System.setProperty(DBConstants.DB_PATH_PROP, "./target/snapshotTest");
+		db = new ResourceDBImpl();
+		db.setName("SnapshotTest");
+		db.resourceIO.reset();
+		db.restart();
+	}
+
+	@After
+	public void after() {
+		System.clearProperty(DBConstants.PROP_NAME_PERSISTENCE_SNAPSHOT_RESTORE);
+		if (restored != null) {
+			restored.stopStorage();
+			restored.resourceIO.closeAll();
+		}
+		deleteDirectory(new File(RESTORE_DIR));
+		snapshotFile.delete();
+	}
+
+	private static void deleteDirectory(File dir) {
+		File[] files = dir.listFiles();
+		if (files != null)
+			for (File f : files)
+				f.delete();
+		dir.delete();
+	}
+
+	private void generate(int count) {
+		TreeElement previous = null;
+		for (int k = 0; k < count; k++) {
+			TreeElement sensor = db.addResource("sensor" + k, TemperatureSensor.class, testAppID);
+			sensor.addChild("name", StringResource.class, false).getData().setString("Küche " + k);
+			sensor.addChild("calibration", FloatResource.class, true).getData().setFloat(k);
+			sensor.addChild("count", IntegerResource.class, true).getData().setInt(k);
+			sensor.addChild("labels", StringArrayResource.class, true).getData().setStringArr(
+					new String[] { "a" + k, "€" + k });
+			if (previous != null)
+				sensor.addReference(previous, "previous", true);
+			previous = sensor;
+		}
+		db.doStorage();
+	}
+
+	private ResourceDBImpl restore(File snapshot) {
+		deleteDirectory(new File(RESTORE_DIR));
+		System.setProperty(DBConstants.DB_PATH_PROP, RESTORE_DIR);
+		System.setProperty(DBConstants.PROP_NAME_PERSISTENCE_SNAPSHOT_RESTORE, snapshot.getPath());
+		restored = new ResourceDBImpl();
+		restored.setName("SnapshotTestRestore");
+		return restored;
+	}
+
+	private static void checkSensor(ResourceDBImpl db, int k, int count) {
+		TreeElement sensor = db.getToplevelResource("sensor" + k);
+		TestCase.assertNotNull(sensor);
+		TestCase.assertEquals("Küche " + k, sensor.getChild("name").getData().getString());
+		TestCase.assertEquals(k == 0 ? -1f : k, sensor.getChild("calibration").getData().getFloat());
+		TestCase.assertEquals(count, sensor.getChild("count").getData().getInt());
+		TestCase.assertEquals("€" + k, sensor.getChild("labels").getData().getStringArr()[1]);
+		if (k > 0)
+			TestCase.assertEquals("sensor" + (k - 1), sensor.getChild("previous").getReference().getPath());
+	}
+
+	@Test
+	public void exportedSnapshotIsRestored() throws IOException {
+		int count = 100;
+		generate(count);
+		// value changes stored in the value slots
+		db.getToplevelResource("sensor0").getChild("calibration").getData().setFloat(-1);
+		for (int k = 0; k < count; k++)
+			db.getToplevelResource("sensor" + k).getChild("count").getData().setInt(count);
+		int entries = db.exportSnapshot(snapshotFile);
+		TestCase.assertEquals(db.resNodeByID.size(), entries);
+		// modifications after the export don't affect the snapshot
+		db.getToplevelResource("sensor1").getChild("name").getData().setString("changed");
+		db.doStorage();
+
+		ResourceDBImpl copy = restore(snapshotFile);
+		TestCase.assertEquals(entries, copy.resNodeByID.size());
+		for (int k = 0; k < count; k++)
+			checkSensor(copy, k, count);
+		TestCase.assertEquals(db.nextresourceID.get(), copy.nextresourceID.get());
+		// the restored database is persistent by itself
+		TreeElement added = copy.addResource("added", TemperatureSensor.class, testAppID);
+		copy.doStorage();
+		copy.restart();
+		TestCase.assertNotNull(copy.getToplevelResource("added"));
+		TestCase.assertEquals(added.getResID(), copy.getToplevelResource("added").getResID());
+		checkSensor(copy, 1, count);
+	}
+
+	@Test
+	public void snapshotNotRestoredIntoExistingDatabase() throws IOException {
+		generate(10);
+		db.exportSnapshot(snapshotFile);
+		ResourceDBImpl copy = restore(snapshotFile);
+		copy.addResource("other", TemperatureSensor.class, testAppID);
+		copy.doStorage();
+		copy.stopStorage();
+		copy.restart();
+		TestCase.assertNotNull(copy.getToplevelResource("other"));
+		TestCase.assertNotNull(copy.getToplevelResource("sensor9"));
+		// the existing database isn't replaced by the snapshot on the next start up
+		copy.deleteResource(copy.getToplevelResource("sensor9"));
+		copy.doStorage();
+		copy.stopStorage();
+		copy.restart();
+		TestCase.assertNull(copy.getToplevelResource("sensor9"));
+	}
+
+	@Test
+	public void incompleteSnapshotIsRejected() throws IOException {
+		generate(10);
+		db.exportSnapshot(snapshotFile);
+		try (RandomAccessFile raf = new RandomAccessFile(snapshotFile, "rw")) {
+			raf.setLength(raf.length() - 4);
+		}
+		ResourceDBImpl copy = restore(snapshotFile);
+		TestCase.assertTrue(copy.getAllToplevelResources().isEmpty());
+	}
+
+	@Test
+	public void snapshotBenchmark() throws IOException {
+		Assume.assumeTrue(Boolean.getBoolean("org.ogema.persistence.benchmark"));
+		int count = Integer.getInteger("org.ogema.persistence.benchmark.size", 5000);
+		generate(count);
+		int resources = db.resNodeByID.size();
+		long start = System.nanoTime();
+		TestCase.assertEquals(resources, db.exportSnapshot(snapshotFile));
+		long export = System.nanoTime() - start;
+		start = System.nanoTime();
+		ResourceDBImpl copy = restore(snapshotFile);
+		long restore = System.nanoTime() - start;
+		TestCase.assertEquals(resources, copy.resNodeByID.size());
+		logger.info("Snapshot of {} resources ({} KB): export {} ms, restore including start up {} ms", resources,
+				snapshotFile.length() >> 10, export / 1000000, restore / 1000000);
+	}
+
+}
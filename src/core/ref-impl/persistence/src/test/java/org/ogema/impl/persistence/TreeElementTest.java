@@ -194,7 +194,7 @@ public class TreeElementTest extends DBBasicTest {
 		// is the deleted resource removed from all internal tables too?
 		TestCase.assertTrue(db.resIDByName.get(name) == null);
 		TestCase.assertTrue(db.resNodeByID.get(id) == null);
-		TestCase.assertFalse(db.resIDsByType.get(cls).contains(new Integer(id)));
+		TestCase.assertFalse(db.resIDsByType.get(cls).contains(id));
 	}
 
 	@Test
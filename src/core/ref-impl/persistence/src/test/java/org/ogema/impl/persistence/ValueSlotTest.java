@@ -0,0 +1,107 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ogema.core.model.simple.FloatResource;
+import org.ogema.core.model.simple.IntegerResource;
+import org.ogema.core.model.simple.StringResource;
+import org.ogema.persistence.DBConstants;
+import org.ogema.resourcetree.TreeElement;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the in-place storage of primitive resource values, see {@link ValueSlotFile}.
+ */
+public class ValueSlotTest extends DBBasicTest {
+
+	private String testAppID = "/persistence/target/persistence-2.0-SNAPSHOT.jar";
+
+	@BeforeClass
+	public static void init() {
+		System.setProperty("org.ogema.persistence", "active");
+	}
+
+	@Before
+	public void before() throws InterruptedException {
+		System.setProperty(DBConstants.DB_PATH_PROP, "./target/valueSlotTest");
+		db = new ResourceDBImpl();
+		db.setName("ValueSlotTest");
+		db.resourceIO.reset();
+		db.restart();
+	}
+
+	@Test
+	public void valueChangesDoNotGrowDataFile() {
+		TreeElement f = db.addResource("slotFloat", FloatResource.class, testAppID);
+		TreeElement i = db.addResource("slotInt", IntegerResource.class, testAppID);
+		db.doStorage();
+		int offset = db.resourceIO.getCurrentOffset();
+		for (int k = 0; k < 100; k++) {
+			f.getData().setFloat(k / 2.f);
+			f.setLastModified(1000 + k);
+			i.getData().setInt(k);
+			db.doStorage();
+		}
+		TestCase.assertEquals(offset, db.resourceIO.getCurrentOffset());
+		TestCase.assertEquals(2, db.resourceIO.valueSlots.size());
+		restartAndCompareDynamicData();
+		f = db.getToplevelResource("slotFloat");
+		TestCase.assertEquals(49.5f, f.getData().getFloat());
+		TestCase.assertEquals(1099, f.getLastModified());
+		TestCase.assertEquals(99, db.getToplevelResource("slotInt").getData().getInt());
+	}
+
+	@Test
+	public void structuralChangesGoThroughDataFile() {
+		TreeElement f = db.addResource("slotFloat", FloatResource.class, testAppID);
+		TreeElement s = db.addResource("slotString", StringResource.class, testAppID);
+		db.doStorage();
+		f.getData().setFloat(5.f);
+		db.doStorage();
+		int offset = db.resourceIO.getCurrentOffset();
+		// value and status change in one storage period
+		f.getData().setFloat(6.f);
+		f.setActive(true);
+		s.getData().setString("changed");
+		db.doStorage();
+		TestCase.assertTrue(db.resourceIO.getCurrentOffset() > offset);
+		restartAndCompareDynamicData();
+		f = db.getToplevelResource("slotFloat");
+		TestCase.assertEquals(6.f, f.getData().getFloat());
+		TestCase.assertTrue(f.isActive());
+		TestCase.assertEquals("changed", db.getToplevelResource("slotString").getData().getString());
+	}
+
+	@Test
+	public void slotsOfDeletedResourcesAreReleased() {
+		TreeElement f = db.addResource("slotFloat", FloatResource.class, testAppID);
+		db.doStorage();
+		f.getData().setFloat(3.f);
+		db.doStorage();
+		TestCase.assertEquals(1, db.resourceIO.valueSlots.size());
+		db.deleteResource(f);
+		db.doStorage();
+		TestCase.assertEquals(0, db.resourceIO.valueSlots.size());
+		restartAndCompareDynamicData();
+		TestCase.assertNull(db.getToplevelResource("slotFloat"));
+		TestCase.assertEquals(0, db.resourceIO.valueSlots.size());
+	}
+
+}
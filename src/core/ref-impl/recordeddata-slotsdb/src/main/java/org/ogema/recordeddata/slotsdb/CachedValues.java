@@ -0,0 +1,104 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+
+/**
+ * Immutable log data of one file, as stored in the {@link SlotsDbCache}. Values are kept in primitive arrays,
+ * {@link SampledValue} objects are only created on access.
+ */
+final class CachedValues extends AbstractList<SampledValue> implements RandomAccess {
+
+	// array headers and object overhead, roughly
+	private static final int OVERHEAD = 80;
+	private final long[] timestamps;
+	private final double[] values;
+	private final byte[] qualities;
+
+	/**
+	 * @param values
+	 * 		sorted by timestamp
+	 */
+	CachedValues(List<SampledValue> values) {
+		final int size = values.size();
+		this.timestamps = new long[size];
+		this.values = new double[size];
+		this.qualities = new byte[size];
+		int i = 0;
+		for (SampledValue sv : values) {
+			timestamps[i] = sv.getTimestamp();
+			this.values[i] = sv.getValue().getDoubleValue();
+			qualities[i] = (byte) sv.getQuality().getQuality();
+			i++;
+		}
+	}
+
+	@Override
+	public SampledValue get(int index) {
+		return new SampledValue(DoubleValues.of(values[index]), timestamps[index], Quality.getQuality(qualities[index]));
+	}
+
+	@Override
+	public int size() {
+		return timestamps.length;
+	}
+
+	long getTimestamp(int index) {
+		return timestamps[index];
+	}
+
+	/**
+	 * @return
+	 * 		the index of the first value with a timestamp greater or equal to the given one,
+	 * 		or {@link #size()} if there is none
+	 */
+	int lowerBound(long timestamp) {
+		int low = 0;
+		int high = timestamps.length - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			if (timestamps[mid] < timestamp)
+				low = mid + 1;
+			else
+				high = mid - 1;
+		}
+		return low;
+	}
+
+	/**
+	 * @return
+	 * 		the index of the first value with a timestamp greater than the given one,
+	 * 		or {@link #size()} if there is none
+	 */
+	int upperBound(long timestamp) {
+		return timestamp == Long.MAX_VALUE ? timestamps.length : lowerBound(timestamp + 1);
+	}
+
+	/**
+	 * @return
+	 * 		approximate heap size in bytes
+	 */
+	int getWeight() {
+		return OVERHEAD + timestamps.length * 17;
+	}
+
+}
@@ -0,0 +1,365 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+
+/**
+ * Read-only file object for closed days, storing the log data as compressed columnar blocks.<br>
+ * <br>
+ * File layout: <br>
+ * startTimeStamp (8 bytes) | storagePeriod (8 bytes) | magic (4 bytes) | block count (4 bytes) | block index |
+ * blocks <br>
+ * <br>
+ * Each block index entry consists of first timestamp (8), last timestamp (8), number of samples (4), number of NaN
+ * samples (4), offset (4) and length (4) of the block. Blocks are encoded by {@link SegmentCodec}. The storage period
+ * of the original file is retained in the header (-1 for flexible interval files); values are stored with explicit
+ * timestamps in either case.
+ * <br>
+ * The gaps of constant interval files are not stored. NaN samples of flexible interval files are kept, and like the
+ * reader of the original file, the readers of a compressed file skip them.
+ */
+public class CompressedFileObject extends FileObject {
+
+	static final String PREFIX = "z";
+	static final int MAGIC = 0x534c5a32; // "SLZ2"
+	static final int BLOCK_SIZE = 1024;
+	private static final int INDEX_ENTRY_SIZE = 8 + 8 + 4 + 4 + 4 + 4;
+
+	// set in readHeader, which is called from the super constructor; hence no initializers here
+	private long[] blockFirst;
+	private long[] blockLast;
+	private int[] blockCount;
+	private int[] blockNaNs;
+	private int[] blockOffset;
+	private int[] blockLength;
+	private int totalCount;
+
+	protected CompressedFileObject(File file, RecordedDataCache cache) throws IOException {
+		super(file, cache);
+		if (blockFirst == null)
+			throw new IOException("Compressed slotsdb file " + file + " has no valid header");
+	}
+
+	protected CompressedFileObject(String fileName, RecordedDataCache cache) throws IOException {
+		this(new File(fileName), cache);
+	}
+
+	@Override
+	void readHeader(DataInputStream dis) throws IOException {
+		startTimeStamp = dis.readLong();
+		storagePeriod = dis.readLong();
+		if (dis.readInt() != MAGIC)
+			throw new IOException("Not a compressed slotsdb file: " + dataFile);
+		final int blocks = dis.readInt();
+		blockFirst = new long[blocks];
+		blockLast = new long[blocks];
+		blockCount = new int[blocks];
+		blockNaNs = new int[blocks];
+		blockOffset = new int[blocks];
+		blockLength = new int[blocks];
+		int total = 0;
+		for (int i = 0; i < blocks; i++) {
+			blockFirst[i] = dis.readLong();
+			blockLast[i] = dis.readLong();
+			blockCount[i] = dis.readInt();
+			blockNaNs[i] = dis.readInt();
+			blockOffset[i] = dis.readInt();
+			blockLength[i] = dis.readInt();
+			total += blockCount[i];
+		}
+		totalCount = total;
+	}
+
+	@Override
+	boolean isReadOnly() {
+		return true;
+	}
+
+	@Override
+	public void append(double value, long timestamp, byte flag) throws IOException {
+		throw new IOException("Compressed slotsdb file " + dataFile + " is read-only");
+	}
+
+	@Override
+	public long getStoringPeriod() {
+		return storagePeriod;
+	}
+
+	@Override
+	protected long getTimestampForLatestValueInternal() {
+		if (blockLast.length == 0)
+			return startTimeStamp;
+		return blockLast[blockLast.length - 1];
+	}
+
+	@Override
+	protected int getDataSetCountInternal() {
+		return totalCount;
+	}
+
+	@Override
+	protected int getDataSetCountInternal(long start, long end) throws IOException {
+		int cnt = 0;
+		for (int b = firstBlockEndingAfter(start); b < blockFirst.length && blockFirst[b] <= end; b++) {
+			if (blockFirst[b] >= start && blockLast[b] <= end) {
+				cnt += blockCount[b] - blockNaNs[b];
+				continue;
+			}
+			final Block block = decodeBlock(b);
+			for (int i = 0; i < block.count; i++) {
+				if (block.timestamps[i] >= start && block.timestamps[i] <= end && !block.isNaN(i))
+					cnt++;
+			}
+		}
+		return cnt;
+	}
+
+	@Override
+	protected List<SampledValue> readInternal(long start, long end) throws IOException {
+		final List<SampledValue> toReturn = new ArrayList<>();
+		for (int b = firstBlockEndingAfter(start); b < blockFirst.length && blockFirst[b] <= end; b++) {
+			final Block block = decodeBlock(b);
+			for (int i = 0; i < block.count; i++) {
+				final long t = block.timestamps[i];
+				if (t < start)
+					continue;
+				if (t > end)
+					break;
+				if (!block.isNaN(i))
+					toReturn.add(block.getValue(i));
+			}
+		}
+		return toReturn;
+	}
+
+	@Override
+	protected List<SampledValue> readFullyInternal() throws IOException {
+		final List<SampledValue> toReturn = new ArrayList<>(totalCount);
+		for (int b = 0; b < blockFirst.length; b++) {
+			final Block block = decodeBlock(b);
+			for (int i = 0; i < block.count; i++) {
+				if (!block.isNaN(i))
+					toReturn.add(block.getValue(i));
+			}
+		}
+		return toReturn;
+	}
+
+	@Override
+	public SampledValue read(long timestamp) throws IOException {
+		final int b = firstBlockEndingAfter(timestamp);
+		if (b >= blockFirst.length || blockFirst[b] > timestamp)
+			return null;
+		final Block block = decodeBlock(b);
+		final int idx = block.indexOf(timestamp);
+		return idx >= 0 && !block.isNaN(idx) ? block.getValue(idx) : null;
+	}
+
+	@Override
+	public SampledValue readNextValue(long timestamp) throws IOException {
+		for (int b = firstBlockEndingAfter(timestamp); b < blockFirst.length; b++) {
+			if (blockNaNs[b] == blockCount[b])
+				continue;
+			final Block block = decodeBlock(b);
+			int idx = block.indexOf(timestamp);
+			if (idx < 0)
+				idx = -idx - 1;
+			for (; idx < block.count; idx++) {
+				if (!block.isNaN(idx))
+					return block.getValue(idx);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public SampledValue readPreviousValue(long timestamp) throws IOException {
+		final int b = firstBlockEndingAfter(timestamp);
+		int candidate = b;
+		if (b >= blockFirst.length || blockFirst[b] > timestamp)
+			candidate = b - 1;
+		for (; candidate >= 0; candidate--) {
+			if (blockNaNs[candidate] == blockCount[candidate])
+				continue;
+			final Block block = decodeBlock(candidate);
+			int idx = block.indexOf(timestamp);
+			if (idx < 0)
+				idx = -idx - 2;
+			for (; idx >= 0; idx--) {
+				if (!block.isNaN(idx))
+					return block.getValue(idx);
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Binary search on the block index: returns the index of the first block whose last timestamp
+	 * is greater than or equal to the passed timestamp, or the number of blocks if there is none.
+	 */
+	private int firstBlockEndingAfter(long timestamp) {
+		int low = 0;
+		int high = blockLast.length - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			if (blockLast[mid] < timestamp)
+				low = mid + 1;
+			else
+				high = mid - 1;
+		}
+		return low;
+	}
+
+	private Block decodeBlock(int b) throws IOException {
+		final Block block = new Block(blockCount[b]);
+		if (useMappedReads()) {
+			final byte[] encoded = new byte[blockLength[b]];
+			final ByteBuffer mapped = getMappedBuffer().duplicate();
+			((Buffer) mapped).position(blockOffset[b]); // cast for compatibility with Java 8, see ConstantIntervalFileObject
+			mapped.get(encoded);
+			SegmentCodec.decode(encoded, blockFirst[b], block.count, block.timestamps, block.values, block.flags);
+			return block;
+		}
+		if (!canRead) {
+			enableInput();
+		}
+		final FileChannel channel = fis.getChannel();
+		final ByteBuffer buffer = ByteBuffer.allocate(blockLength[b]);
+		long position = blockOffset[b];
+		while (buffer.hasRemaining()) {
+			final int read = channel.read(buffer, position);
+			if (read < 0)
+				throw new IOException("Unexpected end of compressed slotsdb file " + dataFile);
+			position += read;
+		}
+		SegmentCodec.decode(buffer.array(), blockFirst[b], block.count, block.timestamps, block.values, block.flags);
+		return block;
+	}
+
+	private static final class Block {
+
+		final int count;
+		final long[] timestamps;
+		final double[] values;
+		final byte[] flags;
+
+		Block(int count) {
+			this.count = count;
+			this.timestamps = new long[count];
+			this.values = new double[count];
+			this.flags = new byte[count];
+		}
+
+		int indexOf(long timestamp) {
+			return Arrays.binarySearch(timestamps, 0, count, timestamp);
+		}
+
+		boolean isNaN(int idx) {
+			return Double.isNaN(values[idx]);
+		}
+
+		SampledValue getValue(int idx) {
+			return new SampledValue(DoubleValues.of(values[idx]), timestamps[idx], Quality.getQuality(flags[idx]));
+		}
+
+	}
+
+	/**
+	 * Writes the values stored in source into a new compressed file, including NaN samples of flexible interval
+	 * files. The target file must not exist yet.
+	 *
+	 * @param source
+	 * @param target
+	 * @return number of samples written
+	 * @throws IOException
+	 */
+	static int compress(FileObject source, File target) throws IOException {
+		final List<SampledValue> values = source.readStoredValues();
+		final int n = values.size();
+		final long[] timestamps = new long[n];
+		final double[] doubles = new double[n];
+		final byte[] flags = new byte[n];
+		for (int i = 0; i < n; i++) {
+			final SampledValue sv = values.get(i);
+			timestamps[i] = sv.getTimestamp();
+			doubles[i] = sv.getValue().getDoubleValue();
+			flags[i] = (byte) sv.getQuality().getQuality();
+		}
+		final int blocks = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		final List<byte[]> encoded = new ArrayList<>(blocks);
+		for (int b = 0; b < blocks; b++) {
+			final int offset = b * BLOCK_SIZE;
+			encoded.add(SegmentCodec.encode(timestamps, doubles, flags, offset, Math.min(BLOCK_SIZE, n - offset)));
+		}
+		target.getParentFile().mkdirs();
+		if (!target.createNewFile())
+			throw new IOException("Target file exists already: " + target);
+		final FileOutputStream fos = new FileOutputStream(target);
+		final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(fos));
+		try {
+			dos.writeLong(source.getStartTimeStamp());
+			dos.writeLong(source.getStoringPeriod());
+			dos.writeInt(MAGIC);
+			dos.writeInt(blocks);
+			int position = 16 + 4 + 4 + blocks * INDEX_ENTRY_SIZE;
+			for (int b = 0; b < blocks; b++) {
+				final int offset = b * BLOCK_SIZE;
+				final int count = Math.min(BLOCK_SIZE, n - offset);
+				dos.writeLong(timestamps[offset]);
+				dos.writeLong(timestamps[offset + count - 1]);
+				dos.writeInt(count);
+				dos.writeInt(countNaNs(doubles, offset, count));
+				dos.writeInt(position);
+				dos.writeInt(encoded.get(b).length);
+				position += encoded.get(b).length;
+			}
+			for (byte[] block : encoded) {
+				dos.write(block);
+			}
+			dos.flush();
+			// make sure the data is on disk before the original file is removed
+			fos.getFD().sync();
+		} finally {
+			dos.close();
+		}
+		return n;
+	}
+
+	private static int countNaNs(double[] values, int offset, int count) {
+		int nans = 0;
+		for (int i = offset; i < offset + count; i++) {
+			if (Double.isNaN(values[i]))
+				nans++;
+		}
+		return nans;
+	}
+
+}
@@ -160,20 +160,36 @@ public class ConstantIntervalFileObject extends FileObject {
 
 		if ((timestamp - startTimeStamp) % storagePeriod == 0) {
 			if (timestamp >= startTimeStamp && timestamp <= getTimestampForLatestValueInternal()) {
-				if (!canRead) {
-					enableInput();
-				}
-				fis.getChannel().position(getBytePosition(timestamp));
-				Double toReturn = dis.readDouble();
-				if (!Double.isNaN(toReturn)) {
-
-					return new SampledValue(DoubleValues.of(toReturn), timestamp, Quality.getQuality(dis.readByte()));
-				}
+				return readSlot(timestamp);
 			}
 		}
 		return null;
 	}
 
+	/*
+	 * Reads the value stored in the slot for timestamp; returns null if the slot contains NaN.
+	 * Timestamp must be within the file.
+	 */
+	private SampledValue readSlot(long timestamp) throws IOException {
+		final long position = getBytePosition(timestamp);
+		if (useMappedReads()) {
+			final ByteBuffer bb = getMappedBuffer();
+			final double d = bb.getDouble((int) position);
+			if (Double.isNaN(d))
+				return null;
+			return new SampledValue(DoubleValues.of(d), timestamp, Quality.getQuality(bb.get((int) position + 8)));
+		}
+		if (!canRead) {
+			enableInput();
+		}
+		fis.getChannel().position(position);
+		Double toReturn = dis.readDouble();
+		if (!Double.isNaN(toReturn)) {
+			return new SampledValue(DoubleValues.of(toReturn), timestamp, Quality.getQuality(dis.readByte()));
+		}
+		return null;
+	}
+
 	/**
 	 * Returns a List of Value Objects containing the measured Values between provided start and end timestamp
 	 *
@@ -201,25 +217,34 @@ public class ConstantIntervalFileObject extends FileObject {
 				endRounded = getTimestampForLatestValueInternal();
 			}
 
-			if (!canRead) {
-				enableInput();
-			}
 			long timestampcounter = start;
 			long startPos = getBytePosition(start);
 			long endPos = getBytePosition(endRounded);
 
-			fis.getChannel().position(startPos);
-
-			byte[] b = new byte[(int) (endPos - startPos) + 9];
-			dis.read(b, 0, b.length);
-			ByteBuffer bb = ByteBuffer.wrap(b);
-			// casting is a hack to avoid incompatibility when building this on Java >=9 and run on Java <=8
-			// ByteBuffer#rewind used to return a Buffer in Jdk8, but from Java 9 on returns a ByteBuffer
-			((Buffer) bb).rewind();
+			final ByteBuffer bb;
+			final int offset;
+			if (useMappedReads()) {
+				bb = getMappedBuffer();
+				offset = (int) startPos;
+			}
+			else {
+				if (!canRead) {
+					enableInput();
+				}
+				fis.getChannel().position(startPos);
+	
+				byte[] b = new byte[(int) (endPos - startPos) + 9];
+				dis.read(b, 0, b.length);
+				bb = ByteBuffer.wrap(b);
+				// casting is a hack to avoid incompatibility when building this on Java >=9 and run on Java <=8
+				// ByteBuffer#rewind used to return a Buffer in Jdk8, but from Java 9 on returns a ByteBuffer
+				((Buffer) bb).rewind();
+				offset = 0;
+			}
 
 			for (int i = 0; i <= (endPos - startPos) / 9; i++) {
-				double d = bb.getDouble();
-				Quality s = Quality.getQuality(bb.get());
+				double d = bb.getDouble(offset + i * 9);
+				Quality s = Quality.getQuality(bb.get(offset + i * 9 + 8));
 				if (!Double.isNaN(d)) {
 					if (timestampcounter <= end) {
 						toReturn.add(new SampledValue(DoubleValues.of(d), timestampcounter, s));
@@ -250,13 +275,9 @@ public class ConstantIntervalFileObject extends FileObject {
 		long endPos = getBytePosition(getTimestampForLatestValueInternal());
 		for (int i = 0; i <= (endPos - startPos) / 9; i++) {
 			if (timestamp >= startTimeStamp && timestamp <= getTimestampForLatestValueInternal()) {
-				if (!canRead) {
-					enableInput();
-				}
-				fis.getChannel().position(getBytePosition(timestamp));
-				Double toReturn = dis.readDouble();
-				if (!Double.isNaN(toReturn)) {
-					return new SampledValue(DoubleValues.of(toReturn), timestamp, Quality.getQuality(dis.readByte()));
+				final SampledValue sv = readSlot(timestamp);
+				if (sv != null) {
+					return sv;
 				}
 				timestamp += storagePeriod;
 			}
@@ -273,13 +294,9 @@ public class ConstantIntervalFileObject extends FileObject {
 
 		for (int i = 0; i <= (endPos - startPos) / 9; i++) {
 			if (timestamp >= startTimeStamp && timestamp <= getTimestampForLatestValueInternal()) {
-				if (!canRead) {
-					enableInput();
-				}
-				fis.getChannel().position(getBytePosition(timestamp));
-				Double toReturn = dis.readDouble();
-				if (!Double.isNaN(toReturn)) {
-					return new SampledValue(DoubleValues.of(toReturn), timestamp, Quality.getQuality(dis.readByte()));
+				final SampledValue sv = readSlot(timestamp);
+				if (sv != null) {
+					return sv;
 				}
 				timestamp -= storagePeriod;
 			}
@@ -22,8 +22,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 import org.ogema.core.channelmanager.measurements.SampledValue;
@@ -43,6 +46,18 @@ public abstract class FileObject {
 	protected FileInputStream fis;
 	protected boolean canWrite;
 	protected boolean canRead;
+	/*
+	 * If true, data is read from a memory-mapped buffer, see #getMappedBuffer
+	 */
+	protected boolean mappedReads;
+	/*
+	 * Set once the file has been opened for appending. Mapping a file which is being written to would
+	 * require a flush and a new mapping for every read, so such files are read through streams.
+	 */
+	private volatile boolean appending;
+	// guarded by this
+	private MappedByteBuffer mappedBuffer;
+	private long mappedLength;
 	
 	private final RecordedDataCache cache;
 
@@ -127,6 +142,46 @@ public abstract class FileObject {
 		}
 	}
 
+	void setMappedReads(boolean mappedReads) {
+		this.mappedReads = mappedReads;
+	}
+
+	/**
+	 * @return true if reads use the memory-mapped buffer: mapped reads are enabled and the file has not been
+	 * 		opened for appending.
+	 */
+	protected boolean useMappedReads() {
+		return mappedReads && !appending;
+	}
+
+	RecordedDataCache getRecordedDataCache() {
+		return cache;
+	}
+
+	/**
+	 * Returns a read-only buffer mapping the complete file, including the header. The mapping is
+	 * reused as long as the file length does not change, so that closed files are mapped only once.
+	 * Only used for files which are not appended to, see {@link #useMappedReads()}.
+	 * The underlying channel is closed immediately, hence no file handle is kept open.
+	 * Callers must only use absolute get methods on the buffer, since it is shared between threads.
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	protected synchronized ByteBuffer getMappedBuffer() throws IOException {
+		if (dos != null) {
+			flush();
+		}
+		final long fileLength = dataFile.length();
+		if (mappedBuffer == null || mappedLength != fileLength) {
+			try (final FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ)) {
+				mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileLength);
+				mappedLength = fileLength;
+			}
+		}
+		return mappedBuffer;
+	}
+
 	protected void enableOutput() throws IOException {
 		/*
 		 * Close Input Streams, for enabling output.
@@ -140,6 +195,13 @@ public abstract class FileObject {
 			fis = null;
 		}
 
+		if (!appending) {
+			appending = true;
+			synchronized (this) {
+				mappedBuffer = null;
+			}
+		}
+
 		/*
 		 * enabling output
 		 */
@@ -226,33 +288,34 @@ public abstract class FileObject {
 			return values;
 		values = readFullyInternal();
 		// store until next write access
-		cache.cache(Collections.unmodifiableList(values));
+		cache.cache(values);
 		return values;
 	}
 	
+	/**
+	 * All samples stored in the file, as needed for copying it; by default the samples returned by
+	 * {@link #readFully()}.
+	 */
+	List<SampledValue> readStoredValues() throws IOException {
+		return readFully();
+	}
+
 	public List<SampledValue> read(long start, long end) throws IOException {
 		if (start <= startTimeStamp && end >= getTimestampForLatestValue()) {
 			return readFully(); // caches values
 		}
-		final List<SampledValue> values = cache.getCache();
+		final CachedValues values = cache.getCache();
 		if (values != null) {
-			final List<SampledValue> copy = new ArrayList<>(values.size());
-			for (final SampledValue sv : values) {
-				final long t = sv.getTimestamp();
-				if (t < start)
-					continue;
-				if (t > end)
-					break;
-				copy.add(sv);
-			}
-			return copy;
+			final int from = values.lowerBound(start);
+			final int to = values.upperBound(end);
+			return from < to ? new ArrayList<>(values.subList(from, to)) : new ArrayList<SampledValue>(0);
 		}
 		return readInternal(start, end);
 	};
 
 
 	public int getDataSetCount() {
-		final List<SampledValue> values = cache.getCache();
+		final CachedValues values = cache.getCache();
 		if (values != null) {	
 			return values.size();
 		}
@@ -260,33 +323,18 @@ public abstract class FileObject {
 	};
 	
 	public int getDataSetCount(long start, long end) throws IOException {
-		final List<SampledValue> values = cache.getCache();
+		final CachedValues values = cache.getCache();
 		if (values != null) {
-			if (start <= startTimeStamp && !values.isEmpty()) {
-				long endTimeStamp = values.get(values.size()-1).getTimestamp();
-				if (end >= endTimeStamp) {
-					return values.size();
-				}
-			}
-			int cnt = 0;
-			for (final SampledValue sv : values) {
-				final long t = sv.getTimestamp();
-				if (t < start)
-					continue;
-				if (t > end)
-					break;
-				cnt++;
-			}
-			return cnt;
+			return Math.max(0, values.upperBound(end) - values.lowerBound(start));
 		}
 		return getDataSetCountInternal(start, end);
 	};
 
 
 	public long getTimestampForLatestValue() {
-		final List<SampledValue> values = cache.getCache();
+		final CachedValues values = cache.getCache();
 		if (values != null && !values.isEmpty()) {
-			return values.get(values.size()-1).getTimestamp();
+			return values.getTimestamp(values.size()-1);
 		}
 		return getTimestampForLatestValueInternal();
 	};
@@ -310,6 +358,13 @@ public abstract class FileObject {
 	
 	public abstract long getStoringPeriod();
 
+	/**
+	 * @return true if values cannot be appended to this file, e.g. because it has been compressed.
+	 */
+	boolean isReadOnly() {
+		return false;
+	}
+
 	/**
 	 * Closes and Flushes underlying Input- and OutputStreams
 	 * 
@@ -318,6 +373,9 @@ public abstract class FileObject {
 	public void close() throws IOException {
 		canRead = false;
 		canWrite = false;
+		synchronized (this) {
+			mappedBuffer = null;
+		}
 		if (dos != null) {
 			cache.invalidate();
 			assert cache.getCache() == null : "Invalidated cache is still alive";
@@ -352,6 +410,24 @@ public abstract class FileObject {
 		}
 	}
 
+	/**
+	 * Flushes the underlying Data Streams and forces the file content to the storage device.
+	 * Also applicable to closed files.
+	 * 
+	 * @throws IOException
+	 */
+	public void sync() throws IOException {
+		if (fos != null) {
+			flush();
+			fos.getFD().sync();
+		}
+		else if (dataFile.exists()) {
+			try (final FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.WRITE)) {
+				channel.force(false);
+			}
+		}
+	}
+
 	/**
 	 * Return the Timestamp of the first stored Value in this File.
 	 */
@@ -366,6 +442,9 @@ public abstract class FileObject {
 		else if (fileName.startsWith("f")) {
 			return new FlexibleIntervalFileObject(fileName, cache);
 		}
+		else if (fileName.startsWith(CompressedFileObject.PREFIX)) {
+			return new CompressedFileObject(fileName, cache);
+		}
 		else {
 			throw new IOException("Invalid filename for SlotsDB-File");
 		}
@@ -378,6 +457,9 @@ public abstract class FileObject {
 		else if (file.getName().startsWith("f")) {
 			return new FlexibleIntervalFileObject(file, cache);
 		}
+		else if (file.getName().startsWith(CompressedFileObject.PREFIX)) {
+			return new CompressedFileObject(file, cache);
+		}
 		else {
 			throw new IOException("Invalid file for SlotsDB-File. Invalid filename.");
 		}
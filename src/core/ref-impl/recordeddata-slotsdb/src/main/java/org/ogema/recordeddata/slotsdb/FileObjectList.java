@@ -42,6 +42,10 @@ public final class FileObjectList {
 	private String foldername;
 	private long firstTS;
 	private int size;
+	// files of days before this one (yyyyMMdd) are mapped, null if files are not mapped
+	private final String mapDaysBefore;
+	// aggregated values, only used if rollups are enabled; see Rollups#get(FileObjectList)
+	private volatile Rollups rollups;
 	
 	/**
 	 * Creates a FileObjectList<br>
@@ -51,15 +55,49 @@ public final class FileObjectList {
 	 * @throws IOException
 	 */
 	public FileObjectList(String foldername, SlotsDbCache cache, String encodedId) throws IOException {
+		this(foldername, cache, encodedId, null);
+	}
+
+	/**
+	 * Creates a FileObjectList<br>
+	 * and creates a FileObject for every File
+	 * 
+	 * @param foldername
+	 * @param mapDaysBefore
+	 * 		the current day of the framework clock in yyyyMMdd format, if the FileObjects of days before it shall read
+	 * 		their data from a memory-mapped buffer; null if no files are mapped
+	 * @throws IOException
+	 */
+	public FileObjectList(String foldername, SlotsDbCache cache, String encodedId, String mapDaysBefore) throws IOException {
 		// File folder = new File(foldername);
 		this.foldername = foldername;
+		this.mapDaysBefore = mapDaysBefore;
 		reLoadFolder(cache, encodedId);
 	}
 	
+	/*
+	 * Folder structure: rootnode/yyyyMMdd/label; day folder names compare like the dates
+	 */
+	private static boolean isPastDay(File folder, String currentDay) {
+		final File dayFolder = folder.getParentFile();
+		if (dayFolder == null)
+			return false;
+		final String day = dayFolder.getName();
+		return day.length() == currentDay.length() && day.compareTo(currentDay) < 0;
+	}
+
 	public String getFolderName() {
 		return foldername;
 	}
 
+	Rollups getRollups() {
+		return rollups;
+	}
+
+	void setRollups(Rollups rollups) {
+		this.rollups = rollups;
+	}
+
 	/**
 	 * Reloads the List
 	 * 
@@ -68,6 +106,8 @@ public final class FileObjectList {
 	public void reLoadFolder(SlotsDbCache cache, String encodedId) throws IOException {
 
 		File folder = new File(foldername);
+		// the files of the current day are still appended to, only closed days are mapped
+		final boolean mapFiles = mapDaysBefore != null && isPastDay(folder, mapDaysBefore);
 
 		files = new Vector<FileObject>(1);
 		if (folder.isDirectory()) {
@@ -77,7 +117,9 @@ public final class FileObjectList {
 					final String filename = file.getName();
 					String[] split = filename.split("\\.");
 					if (("." + split[split.length - 1]).equals(SlotsDb.FILE_EXTENSION)) {
-						files.add(FileObject.getFileObject(file, cache.getCache(encodedId, filename)));
+						final FileObject fo = FileObject.getFileObject(file, cache.getCache(encodedId, filename));
+						fo.setMappedReads(mapFiles);
+						files.add(fo);
 					}
 				}
 				else {
@@ -165,6 +207,9 @@ public final class FileObjectList {
 		for (FileObject f : files) {
 			f.close();
 		}
+		final Rollups rollups = this.rollups;
+		if (rollups != null)
+			rollups.write();
 	}
 
 	/**
@@ -280,5 +325,8 @@ public final class FileObjectList {
 		for (FileObject f : files) {
 			f.flush();
 		}
+		final Rollups rollups = this.rollups;
+		if (rollups != null)
+			rollups.write();
 	}
 }
@@ -18,43 +18,48 @@ package org.ogema.recordeddata.slotsdb;
 import java.io.File;
 import java.io.IOException;
 import java.net.URLEncoder;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.ogema.core.administration.FrameworkClock;
+import org.ogema.core.channelmanager.measurements.IllegalConversionException;
 import org.ogema.core.channelmanager.measurements.SampledValue;
 import org.ogema.core.recordeddata.RecordedDataConfiguration;
 import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+import org.ogema.core.recordeddata.ReductionMode;
 import org.ogema.recordeddata.DataRecorderException;
+import org.ogema.recordeddata.slotsdb.reduction.StreamingReduction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.CacheStats;
+
 // FIXME implementation is problematic... creates FileObjectList instances without keeping track of them.
 // Hence, it is impossible to reliably close all folders and execute delete jobs, for instance
 public final class FileObjectProxy {
 
 	private static final int FLEXIBLE_STORING_PERIOD = -1;
+	// must be a power of 2
+	private static final int LABEL_LOCK_STRIPES = 64;
 
 	final static Logger logger = LoggerFactory.getLogger(FileObjectProxy.class);
 	
@@ -64,29 +69,37 @@ public final class FileObjectProxy {
 	}
 	
 	/**
-	 * For creation and deletion (write lock), resp. parsing (read lock), of folders
+	 * For operations affecting all day folders, such as deletion of old folders (write lock). All operations 
+	 * on a single label hold the read lock, plus the respective label lock, see {@link #getLabelLock(String)}.
+	 * Lock order: folderLock before label lock.
 	 */
 	final ReadWriteLock folderLock = new ReentrantReadWriteLock();
+	/**
+	 * Striped locks for the individual labels: for creation of files and folders and closing of files (write lock), 
+	 * resp. reading and appending (read lock).
+	 */
+	private final ReadWriteLock[] labelLocks = new ReadWriteLock[LABEL_LOCK_STRIPES];
 
 	private final File rootNode;
 	/**
-	 *  guarded by folderLock; note: this is cleaned up at certain times... do not rely on this
-	 *  to contain all available files
+	 *  entries guarded by the label lock of the respective label; note: this is cleaned up at certain times... 
+	 *  do not rely on this to contain all available files
 	 */
-	private final HashMap<String, FileObjectList> openFilesHM = new HashMap<>();
+	private final ConcurrentMap<String, FileObjectList> openFilesHM = new ConcurrentHashMap<>();
 	private final ConcurrentMap<String, String> encodedLabels = new ConcurrentHashMap<>();
 	private final static Date min;
 	private final static Date max;
 	private final static long minL;
 	private final static long maxL;
-	private final Date date;
 	private final Timer timer;
-	// guarded by folder lock TODO check
-	private List<File> days;
+	// day and label folders; days are only removed or reloaded while holding the folder write lock
+	private final FolderCatalog catalog;
 	// can be null, if data is written to disk immediately
 	private final Flusher flusher;
 	private final DeleteJob deleteJob;
 	private final SizeWatcher sizeWatcher;
+	// null if compression is disabled
+	private final CompressionJob compressionJob;
 	// guarded by folderLock
 	private long size;
 	private final FrameworkClock clock;
@@ -95,17 +108,27 @@ public final class FileObjectProxy {
 	 * Flush Period in Seconds. if flush_period == 0 -> write directly to disk.
 	 */
 	private final int flush_period;
+	/*
+	 * If true, log files are read through a memory-mapped buffer instead of streams.
+	 */
+	private final boolean mappedReads;
+	/*
+	 * If true, aggregated values are maintained per label folder, see Rollups.
+	 */
+	private final boolean rollups;
+	/*
+	 * If true, the folder catalog is stored on closing and restored on startup.
+	 */
+	private final boolean catalogSnapshot;
 	private final int limit_days;
 	private final int limit_size;
+	private final int compression_days;
 	private final int max_open_files;
 
-	private final Object currentDayLock = new Object();
-	// following three guarded by currentDayLock
-	private String strCurrentDay;
-	private long currentDayFirstTS;
-	private long currentDayLastTS;
+	// the day most recently converted by getStrDate
+	private volatile Day currentDay;
 	
-	private final SlotsDbCache cache = new SlotsDbCache();
+	private final SlotsDbCache cache;
 	
 	static {
 		try {
@@ -134,7 +157,9 @@ public final class FileObjectProxy {
 	public FileObjectProxy(String rootNodePath, FrameworkClock clock) {
 		this.clock = clock;
 		timer = new Timer();
-		date = new Date();
+		for (int i = 0; i < LABEL_LOCK_STRIPES; i++) {
+			labelLocks[i] = new ReentrantReadWriteLock();
+		}
 
 		if (!rootNodePath.endsWith("/")) {
 			rootNodePath += "/";
@@ -143,7 +168,18 @@ public final class FileObjectProxy {
 		rootNode = new File(rootNodePath);
 		rootNode.mkdirs();
 
-		loadDays();
+		final int cacheSize = Math.max(0, Integer.getInteger(SlotsDb.CACHE_SIZE, SlotsDb.CACHE_SIZE_DEFAULT));
+		cache = new SlotsDbCache(cacheSize * 1024L * 1024L);
+		logger.info("Log data cache size: " + cacheSize + " MB.");
+		catalog = new FolderCatalog(rootNode);
+		this.catalogSnapshot = Boolean.getBoolean(SlotsDb.CATALOG_SNAPSHOT);
+		if (catalogSnapshot) {
+			final int restored = catalog.loadSnapshot();
+			logger.info("Folder catalog restored for " + restored + " days.");
+		}
+		else {
+			catalog.reload();
+		}
 		
 		Integer flush_period = Integer.getInteger(SlotsDb.class.getPackage().getName().toLowerCase() + ".flushperiod");
 //		if (SlotsDb.FLUSH_PERIOD != null) {
@@ -157,6 +193,13 @@ public final class FileObjectProxy {
 			this.flush_period = 0;
 		}
 
+		this.mappedReads = Boolean.getBoolean(SlotsDb.class.getPackage().getName().toLowerCase() + ".mmap");
+		if (mappedReads)
+			logger.info("Reading log data through memory-mapped files.");
+		this.rollups = Boolean.getBoolean(SlotsDb.ROLLUPS);
+		if (rollups)
+			logger.info("Maintaining aggregated log data for reductions.");
+
 		if (SlotsDb.DATA_LIFETIME_IN_DAYS != null) {
 			limit_days = Integer.parseInt(SlotsDb.DATA_LIFETIME_IN_DAYS);
 			logger.info("Maximum lifetime of stored Values: " + limit_days + " Days.");
@@ -182,6 +225,16 @@ public final class FileObjectProxy {
 		}
 		this.limit_size = limit_size;
 
+		if (SlotsDb.COMPRESSION_AGE_IN_DAYS != null) {
+			compression_days = Math.max(1, Integer.parseInt(SlotsDb.COMPRESSION_AGE_IN_DAYS));
+			logger.info("Compressing log data older than " + compression_days + " Days.");
+			compressionJob = createScheduledCompressionJob();
+		}
+		else {
+			compression_days = 0;
+			compressionJob = null;
+		}
+
 		if (SlotsDb.MAX_OPEN_FOLDERS != null) {
 			max_open_files = Integer.parseInt(SlotsDb.MAX_OPEN_FOLDERS);
 			logger.info("Maximum open Files for Database changed to: " + max_open_files);
@@ -196,11 +249,15 @@ public final class FileObjectProxy {
 		stopTask(flusher);
 		stopTask(deleteJob);
 		stopTask(sizeWatcher);
+		if (compressionJob != null)
+			compressionJob.cancel();
 		timer.cancel();
 		folderLock.writeLock().lock();
 		try {
 			cache.clearCache();
 			clearOpenFilesHashMap();
+			if (catalogSnapshot)
+				catalog.writeSnapshot();
 		} catch (IOException e) {
 			logger.warn("Closing log files failed",e);
 		} finally {
@@ -236,43 +293,37 @@ public final class FileObjectProxy {
 		return true;
 	}
 
+	/**
+	 * Returns the lock for the passed label, see {@link #folderLock}. Different labels may share the same lock.
+	 * @param labelEncoded
+	 * @return
+	 */
+	ReadWriteLock getLabelLock(String labelEncoded) {
+		int h = labelEncoded.hashCode();
+		h ^= (h >>> 16);
+		return labelLocks[h & (LABEL_LOCK_STRIPES - 1)];
+	}
+
 	/*
-	 * loads a sorted list of all days in SLOTSDB. Necessary for search- and delete jobs.
+	 * Acquires the folder read lock and the label read lock; release via unlock(Lock)
 	 */
-	private void loadDays() {
-		final SimpleDateFormat sdf = getDateFormat();
-		days = new Vector<File>();
-		for (File f : rootNode.listFiles()) {
-			if (f.isDirectory()) {
-				try {
-					sdf.parse(f.getName()).getTime();
-				} catch (Exception e) {
-					continue;
-				}
-				days.add(f);
-			}
-		}
-		days = sortFolders(days);
+	private Lock lockForReading(String labelEncoded) {
+		folderLock.readLock().lock();
+		final Lock lock = getLabelLock(labelEncoded).readLock();
+		lock.lock();
+		return lock;
 	}
 
-	private List<File> sortFolders(List<File> days) {
-		final SimpleDateFormat sdf = getDateFormat();
-		Collections.sort(days, new Comparator<File>() {
+	private void unlock(Lock labelLock) {
+		labelLock.unlock();
+		folderLock.readLock().unlock();
+	}
 
-			@Override
-			public int compare(File f1, File f2) {
-				int i = 0;
-				try {
-					i = Long.valueOf(sdf.parse(f1.getName()).getTime()).compareTo(sdf.parse(f2.getName()).getTime());
-				} catch (ParseException | NumberFormatException e) {
-					logger.error("Error during sorting Files: Folder doesn't match yyyymmdd Format?");
-				}
-				return i;
-			}
-		});
-		return days;
+	private static String getLabel(FileObjectList list) {
+		return new File(list.getFolderName()).getName();
 	}
 
+
 	/**
 	 * Creates a Thread, that causes Data Streams to be flushed every x-seconds.<br>
 	 * Define flush-period in seconds with JVM flag: org.ogema.recordeddata.slotsdb.flushperiod
@@ -356,7 +407,7 @@ public final class FileObjectProxy {
 			Calendar limit = Calendar.getInstance();
 			limit.setTimeInMillis(start);
 			final SimpleDateFormat sdf = getDateFormat();
-			final Iterator<File> iterator = days.iterator();
+			final Iterator<File> iterator = catalog.getDayFolders().iterator();
 			try {
 				while (iterator.hasNext()) {
 					File curElement = iterator.next();
@@ -372,6 +423,9 @@ public final class FileObjectProxy {
 						if (curElement.exists()) {
 							logger.warn("Folder deletion failed... still exists: {}", curElement);
 						}
+						else {
+							catalog.removeDay(curElement.getName());
+						}
 					}
 					else {
 						/* oldest existing Folder is not to be deleted yet */
@@ -379,7 +433,6 @@ public final class FileObjectProxy {
 							break;
 					}
 				}
-				loadDays();
 			} catch (ParseException e) {
 				logger.error("Error during sorting Files: Any Folder doesn't match yyyymmdd Format?");
 			}
@@ -391,7 +444,7 @@ public final class FileObjectProxy {
 	 */
 	void deleteFutureFolders() throws IOException {
 		clearOpenFilesHashMap();
-		loadDays();
+		catalog.reload();
 		final long now = clock != null ? clock.getExecutionTime() : System.currentTimeMillis();
 		final DeleteJob delete = deleteJob != null ? deleteJob : new DeleteJob();
 		delete.deleteFoldersFrom(now, false);
@@ -418,7 +471,7 @@ public final class FileObjectProxy {
 			running = true;
 			folderLock.writeLock().lock();
 			try {
-				while ((getDiskUsage(rootNode) / 1000000 > limit_size) && (days.size() >= 2)) { /*
+				while ((getDiskUsage(rootNode) / 1000000 > limit_size) && (catalog.getDayFolders().size() >= 2)) { /*
 																								 * avoid deleting
 																								 * current folder
 																								 */
@@ -433,16 +486,144 @@ public final class FileObjectProxy {
 		}
 
 		private void deleteOldestFolder() throws IOException {
+			final List<File> days = catalog.getDayFolders();
 			if (days.size() >= 2) {
 				logger.info("Exceeded Maximum Database Size: " + limit_size + " MB. Current size: " + (size / 1000000)
 						+ " MB. Deleting: " + days.get(0).getCanonicalPath());
 				deleteRecursiveFolder(days.get(0));
-				days.remove(0);
+				catalog.removeDay(days.get(0).getName());
 				clearOpenFilesHashMap();
 			}
 		}
 	}
 
+	private CompressionJob createScheduledCompressionJob() {
+		CompressionJob cj = new CompressionJob();
+		timer.schedule(cj, SlotsDb.INITIAL_DELAY, SlotsDb.DATA_EXPIRATION_CHECK_INTERVAL);
+		return cj;
+	}
+
+	/**
+	 * Converts the files of closed days into the compressed format, see {@link CompressedFileObject}.
+	 */
+	class CompressionJob extends InfoTask {
+
+		private volatile boolean running = false;
+
+		@Override
+		boolean isRunning() {
+			return running;
+		}
+
+		@Override
+		public void run() {
+			running = true;
+			try {
+				final long now = clock != null ? clock.getExecutionTime() : System.currentTimeMillis();
+				compressFoldersBefore(now - (86400000L * compression_days));
+			} catch (Exception e) {
+				logger.error("Compressing old Data failed: " + e.getMessage());
+			} finally {
+				running = false;
+			}
+		}
+
+	}
+
+	/*
+	 * Compresses all day folders which end before limit. Acquires the label write lock
+	 * once per label folder, so other labels are not affected.
+	 */
+	void compressFoldersBefore(final long limit) throws IOException {
+		final SimpleDateFormat sdf = getDateFormat();
+		final List<File> candidates = new ArrayList<>();
+		folderLock.readLock().lock();
+		try {
+			for (File day : catalog.getDayFolders()) {
+				try {
+					if (sdf.parse(day.getName()).getTime() + 86400000 > limit)
+						break;
+				} catch (ParseException e) {
+					continue;
+				}
+				candidates.add(day);
+			}
+		} finally {
+			folderLock.readLock().unlock();
+		}
+		for (File day : candidates) {
+			final File[] labelFolders = day.listFiles();
+			if (labelFolders == null)
+				continue;
+			for (File labelFolder : labelFolders) {
+				if (!labelFolder.isDirectory())
+					continue;
+				folderLock.readLock().lock();
+				final Lock labelLock = getLabelLock(labelFolder.getName()).writeLock();
+				labelLock.lock();
+				try {
+					compressLabelFolder(day.getName(), labelFolder);
+				} finally {
+					labelLock.unlock();
+					folderLock.readLock().unlock();
+				}
+			}
+		}
+	}
+
+	/*
+	 * requires folder read lock and label write lock
+	 */
+	private void compressLabelFolder(final String strDate, final File folder) throws IOException {
+		final String label = folder.getName();
+		final FileObjectList openList = openFilesHM.remove(label + strDate);
+		if (openList != null)
+			openList.closeAllFiles();
+		final File[] files = folder.listFiles();
+		if (files == null)
+			return;
+		final long dataSize = Rollups.getDataSize(folder);
+		for (File file : files) {
+			final String name = file.getName();
+			if (!name.endsWith(SlotsDb.FILE_EXTENSION) || name.startsWith(CompressedFileObject.PREFIX) || file.length() < 16)
+				continue;
+			final File target = new File(folder, CompressedFileObject.PREFIX + name.substring(1));
+			if (target.exists())
+				continue;
+			final File tmp = new File(folder, target.getName() + ".tmp");
+			tmp.delete();
+			final RecordedDataCache fileCache = cache.getCache(label, name);
+			try {
+				final FileObject source = FileObject.getFileObject(file, fileCache);
+				try {
+					CompressedFileObject.compress(source, tmp);
+				} finally {
+					source.close();
+					fileCache.invalidate();
+				}
+			} catch (IOException | RuntimeException e) {
+				logger.warn("Compression of log file {} failed", file, e);
+				tmp.delete();
+				continue;
+			}
+			if (!tmp.renameTo(target)) {
+				logger.warn("Compressed log file could not be renamed: {}", tmp);
+				tmp.delete();
+				continue;
+			}
+			if (!file.delete()) {
+				logger.warn("Log file could not be deleted after compression: {}", file);
+				target.delete();
+				continue;
+			}
+			TimestampIndex.getIndexFile(file).delete();
+			fileCache.setIndex(null);
+			logger.trace("Compressed log file {}", file);
+		}
+		if (rollups) // the content of the log files is unchanged
+			Rollups.revalidate(folder, dataSize);
+	}
+
 	private static void deleteRecursiveFolder(File folder) {
 		if (folder.exists()) {
 			for (File f : folder.listFiles()) {
@@ -489,11 +670,70 @@ public final class FileObjectProxy {
 	 * @throws IOException
 	 */
 	public void appendValue(String id, double value, long timestamp, byte state, RecordedDataConfiguration configuration) throws IOException {
-		appendValue(id, value, timestamp, state, configuration, false);
+		final String labelEncoded = encodeLabel(id);
+		folderLock.readLock().lock();
+		final Lock labelLock = getLabelLock(labelEncoded).writeLock();
+		labelLock.lock();
+		try {
+			appendValueInternal(labelEncoded, value, timestamp, state, configuration, flusher == null);
+		} finally {
+			labelLock.unlock();
+			folderLock.readLock().unlock();
+		}
 	}
 
-	private void appendValue(final String label0, double value, long timestamp, byte state,
-			RecordedDataConfiguration configuration, boolean hasWriteLock) throws IOException {
+	/**
+	 * Appends several values for the same id, acquiring the locks only once. Each file
+	 * written to is flushed at most once, after all values have been appended.
+	 * 
+	 * @param id
+	 * @param values
+	 * @param configuration
+	 * @param sync
+	 * 		if true, the files written to are flushed and forced to the storage device, independently of the flush period;
+	 * 		otherwise they are flushed only if no flush period is set.
+	 * @throws IOException
+	 */
+	public void appendValues(String id, List<SampledValue> values, RecordedDataConfiguration configuration, boolean sync) throws IOException {
+		final String labelEncoded = encodeLabel(id);
+		final Set<FileObject> written = Collections.newSetFromMap(new IdentityHashMap<FileObject, Boolean>());
+		folderLock.readLock().lock();
+		final Lock labelLock = getLabelLock(labelEncoded).writeLock();
+		labelLock.lock();
+		try {
+			for (SampledValue value : values) {
+				final double d;
+				try {
+					d = value.getValue().getDoubleValue();
+				} catch (IllegalConversionException e) {
+					logger.error("Value {} cannot be logged for {}", value, id, e);
+					continue;
+				}
+				final FileObject fo = appendValueInternal(labelEncoded, d, value.getTimestamp(), 
+						(byte) value.getQuality().getQuality(), configuration, false);
+				if (fo != null)
+					written.add(fo);
+			}
+			if (sync || flusher == null) {
+				for (FileObject fo : written) {
+					if (sync)
+						fo.sync();
+					else
+						fo.flush();
+				}
+			}
+		} finally {
+			labelLock.unlock();
+			folderLock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * requires folder read lock and label write lock
+	 * @return the file the value has been written to, or null
+	 */
+	private FileObject appendValueInternal(final String labelEncoded, double value, long timestamp, byte state,
+			RecordedDataConfiguration configuration, boolean flush) throws IOException {
 
 		long storingPeriod;
 		if (configuration.getStorageType().equals(StorageType.FIXED_INTERVAL)) {
@@ -506,127 +746,121 @@ public final class FileObjectProxy {
 		}
 
 		FileObject toStoreIn = null;
-		final String labelEncoded = encodeLabel(label0);
 		String strDate = getStrDate(timestamp);
 		
-		final boolean requiresNewFolder;
-		if (!hasWriteLock) 
-			folderLock.readLock().lock();
-		try {
-			requiresNewFolder = !openFilesHM.containsKey(labelEncoded + strDate)|| openFilesHM.get(labelEncoded + strDate).size() == 0;
-			// in this case we need to abort the current operation and start again, this time holding the write lock
-			if (requiresNewFolder && !hasWriteLock) {
-				hasWriteLock = true; // required to avoid releasing the read lock twice (see finally block)
-				folderLock.readLock().unlock();
-				folderLock.writeLock().lock();
-				try {
-					appendValue(label0, value, timestamp, state, configuration, true);
-				} finally {
-					folderLock.writeLock().unlock();
-				}
-				return;
-			}
+		final boolean requiresNewFolder = !openFilesHM.containsKey(labelEncoded + strDate)|| openFilesHM.get(labelEncoded + strDate).size() == 0;
+
+		/*
+		 * If there is no FileObjectList for this folder, a new one will be created. (This will be the first value
+		 * stored for this day) Eventually existing FileObjectLists from the day before will be flushed and closed. Also
+		 * the Hashtable size will be monitored, to not have too many opened Filestreams.
+		 */
+		if (requiresNewFolder) {
+			closeEntryFromLastDay(timestamp, labelEncoded);
+			controlHashtableSize();
+			FileObjectList first = new FileObjectList(rootNode.getPath() + "/" + strDate + "/" + labelEncoded, cache, labelEncoded, getMapDaysBefore());
+			openFilesHM.put(labelEncoded + strDate, first);
 
 			/*
-			 * If there is no FileObjectList for this folder, a new one will be created. (This will be the first value
-			 * stored for this day) Eventually existing FileObjectLists from the day before will be flushed and closed. Also
-			 * the Hashtable size will be monitored, to not have too many opened Filestreams.
+			 * If FileObjectList for this label does not contain any FileObjects yet, a new one will be created. Data
+			 * will be stored and List reloaded for next Value to store.
 			 */
-			if (requiresNewFolder) {
-				deleteEntryFromLastDay(timestamp, labelEncoded);
-				controlHashtableSize();
-				FileObjectList first = new FileObjectList(rootNode.getPath() + "/" + strDate + "/" + labelEncoded, cache, labelEncoded);
-				openFilesHM.put(labelEncoded + strDate, first);
-	
-				/*
-				 * If FileObjectList for this label does not contain any FileObjects yet, a new one will be created. Data
-				 * will be stored and List reloaded for next Value to store.
-				 */
-				if (first.size() == 0) {
-	
-					if (configuration.getStorageType().equals(StorageType.FIXED_INTERVAL)) {
-						// fixed interval
-						toStoreIn = new ConstantIntervalFileObject(rootNode.getPath() + "/" + strDate + "/" + labelEncoded + "/c"
-								+ timestamp + SlotsDb.FILE_EXTENSION, cache.getCache(labelEncoded, "c" + timestamp  + SlotsDb.FILE_EXTENSION));
-					}
-					else {
-						/* flexible interval */
-						toStoreIn = new FlexibleIntervalFileObject(rootNode.getPath() + "/" + strDate + "/" + labelEncoded + "/f"
-								+ timestamp + SlotsDb.FILE_EXTENSION, cache.getCache(labelEncoded, "f" + timestamp  + SlotsDb.FILE_EXTENSION));
-					}
-	
-					long roundedTimestamp = getRoundedTimestamp(timestamp, configuration);
-					toStoreIn.createFileAndHeader(roundedTimestamp, storingPeriod);
-					toStoreIn.append(value, roundedTimestamp, state);
-					
-					toStoreIn.close(); /* close() also calls flush(). */
-					
-					openFilesHM.get(labelEncoded + strDate).reLoadFolder(cache, labelEncoded);
-					return;
+			if (first.size() == 0) {
+
+				if (configuration.getStorageType().equals(StorageType.FIXED_INTERVAL)) {
+					// fixed interval
+					toStoreIn = new ConstantIntervalFileObject(rootNode.getPath() + "/" + strDate + "/" + labelEncoded + "/c"
+							+ timestamp + SlotsDb.FILE_EXTENSION, cache.getCache(labelEncoded, "c" + timestamp  + SlotsDb.FILE_EXTENSION));
 				}
+				else {
+					/* flexible interval */
+					toStoreIn = new FlexibleIntervalFileObject(rootNode.getPath() + "/" + strDate + "/" + labelEncoded + "/f"
+							+ timestamp + SlotsDb.FILE_EXTENSION, cache.getCache(labelEncoded, "f" + timestamp  + SlotsDb.FILE_EXTENSION));
+				}
+
+				long roundedTimestamp = getRoundedTimestamp(timestamp, configuration);
+				toStoreIn.createFileAndHeader(roundedTimestamp, storingPeriod);
+				toStoreIn.append(value, roundedTimestamp, state);
+				
+				toStoreIn.close(); /* close() also calls flush(). */
+				catalog.addLabel(strDate, labelEncoded);
+				
+				openFilesHM.get(labelEncoded + strDate).reLoadFolder(cache, labelEncoded);
+				updateRollups(labelEncoded + strDate, roundedTimestamp, value, state);
+				return toStoreIn;
 			}
-	
+		}
+
+		/*
+		 * There is a FileObjectList for this day.
+		 */
+		FileObjectList listToStoreIn = openFilesHM.get(labelEncoded + strDate);
+		if (listToStoreIn.size() > 0) {
+			toStoreIn = listToStoreIn.getCurrentFileObject();
+
 			/*
-			 * There is a FileObjectList for this day.
+			 * If StartTimeStamp is newer then the Timestamp of the value to store, this value can't be stored.
 			 */
-			FileObjectList listToStoreIn = openFilesHM.get(labelEncoded + strDate);
-			if (listToStoreIn.size() > 0) {
-				toStoreIn = listToStoreIn.getCurrentFileObject();
-	
-				/*
-				 * If StartTimeStamp is newer then the Timestamp of the value to store, this value can't be stored.
-				 */
-				long roundedTimestamp = getRoundedTimestamp(timestamp, configuration);
-				if (toStoreIn.getStartTimeStamp() > roundedTimestamp) {
-					return;
-				}
+			long roundedTimestamp = getRoundedTimestamp(timestamp, configuration);
+			if (toStoreIn.getStartTimeStamp() > roundedTimestamp) {
+				return null;
 			}
-	
-			if (toStoreIn == null) {
-				throw new IllegalStateException("could not find log file"); // FIXME
+		}
+
+		if (toStoreIn == null) {
+			throw new IllegalStateException("could not find log file"); // FIXME
+		}
+
+		/*
+		 * The storing Period may have changed. In this case, a new FileObject must be created.
+		 */
+		if (!toStoreIn.isReadOnly() && (toStoreIn.getStoringPeriod() == storingPeriod || toStoreIn.getStoringPeriod() == 0)) {
+			toStoreIn = openFilesHM.get(labelEncoded + strDate).getCurrentFileObject();
+			long roundedTimestamp = getRoundedTimestamp(timestamp, configuration);
+			toStoreIn.append(value, roundedTimestamp, state);
+			if (flush) {
+				toStoreIn.flush();
 			}
-	
+			updateRollups(labelEncoded + strDate, roundedTimestamp, value, state);
+			return toStoreIn;
+		}
+		else {
 			/*
-			 * The storing Period may have changed. In this case, a new FileObject must be created.
+			 * Intervall changed or file compressed -> create new File (if there are no newer values for this day, or file)
 			 */
-			if (toStoreIn.getStoringPeriod() == storingPeriod || toStoreIn.getStoringPeriod() == 0) {
-				toStoreIn = openFilesHM.get(labelEncoded + strDate).getCurrentFileObject();
-				long roundedTimestamp = getRoundedTimestamp(timestamp, configuration);
-				toStoreIn.append(value, roundedTimestamp, state);
-				if (flusher == null) {
-					toStoreIn.flush();
+			if (toStoreIn.getTimestampForLatestValue() < timestamp) {
+				if (storingPeriod != FLEXIBLE_STORING_PERIOD) { /* constant intervall */
+					toStoreIn = new ConstantIntervalFileObject(rootNode.getPath() + "/" + strDate + "/" + labelEncoded + "/c"
+							+ timestamp + SlotsDb.FILE_EXTENSION, cache.getCache(labelEncoded, "c" + timestamp  + SlotsDb.FILE_EXTENSION));
 				}
-				else {
-					return;
+				else { /* flexible intervall */
+					toStoreIn = new FlexibleIntervalFileObject(rootNode.getPath() + "/" + strDate + "/" + labelEncoded + "/f"
+							+ timestamp + SlotsDb.FILE_EXTENSION, cache.getCache(labelEncoded, "f" + timestamp  + SlotsDb.FILE_EXTENSION));
 				}
-			}
-			else {
-				/*
-				 * Intervall changed -> create new File (if there are no newer values for this day, or file)
-				 */
-				if (toStoreIn.getTimestampForLatestValue() < timestamp) {
-					if (storingPeriod != FLEXIBLE_STORING_PERIOD) { /* constant intervall */
-						toStoreIn = new ConstantIntervalFileObject(rootNode.getPath() + "/" + strDate + "/" + labelEncoded + "/c"
-								+ timestamp + SlotsDb.FILE_EXTENSION, cache.getCache(labelEncoded, "c" + timestamp  + SlotsDb.FILE_EXTENSION));
-					}
-					else { /* flexible intervall */
-						toStoreIn = new FlexibleIntervalFileObject(rootNode.getPath() + "/" + strDate + "/" + labelEncoded + "/f"
-								+ timestamp + SlotsDb.FILE_EXTENSION, cache.getCache(labelEncoded, "f" + timestamp  + SlotsDb.FILE_EXTENSION));
-					}
-					toStoreIn.createFileAndHeader(timestamp, storingPeriod);
-					toStoreIn.append(value, timestamp, state);
-					if (flusher == null) {
-						toStoreIn.flush();
-					}
-					openFilesHM.get(labelEncoded + strDate).reLoadFolder(cache, labelEncoded);
+				toStoreIn.createFileAndHeader(timestamp, storingPeriod);
+				toStoreIn.append(value, timestamp, state);
+				if (flush) {
+					toStoreIn.flush();
 				}
+				openFilesHM.get(labelEncoded + strDate).reLoadFolder(cache, labelEncoded);
+				updateRollups(labelEncoded + strDate, timestamp, value, state);
+				return toStoreIn;
 			}
-		} finally {
-			if (!hasWriteLock)
-				folderLock.readLock().unlock();
+			return null;
 		}
 	}
 
+	/*
+	 * requires folder read lock and label write lock
+	 */
+	private void updateRollups(String key, long timestamp, double value, byte state) throws IOException {
+		if (!rollups)
+			return;
+		final FileObjectList list = openFilesHM.get(key);
+		if (list != null)
+			Rollups.get(list).add(timestamp, value, state);
+	}
+
 	/**
 	 * Rounds the timestamp to the next matching interval.
 	 * 
@@ -696,7 +930,7 @@ public final class FileObjectProxy {
 //		if(days.isEmpty()) return null;
 		FileObjectList folder;
 		SampledValue result = null;
-		folderLock.readLock().lock();
+		final Lock labelLock = lockForReading(labelEncoded);
 		try {
 			 folder = getNextFolder(labelEncoded, timestamp);
 		
@@ -734,7 +968,7 @@ public final class FileObjectProxy {
 				// is available
 			}
 		} finally {
-			folderLock.readLock().unlock();
+			unlock(labelLock);
 		}
 		// this can happen if rounding takes place
 		if (result != null && result.getTimestamp() < t) {
@@ -756,7 +990,7 @@ public final class FileObjectProxy {
 		final String labelEncoded = encodeLabel(label0);
 		final List<FileObjectList> days;
 		SampledValue result= null;
-		folderLock.readLock().lock();
+		final Lock labelLock = lockForReading(labelEncoded);
 		try {
 			days = getFoldersForIntervalSorted(labelEncoded, Long.MIN_VALUE, timestamp);
 		
@@ -787,7 +1021,7 @@ public final class FileObjectProxy {
 				// is available
 			}
 		} finally {
-			folderLock.readLock().unlock();
+			unlock(labelLock);
 		}
 		// this can happen if rounding takes place
 		if (result != null && result.getTimestamp() > t) {
@@ -803,7 +1037,7 @@ public final class FileObjectProxy {
 
 	}
 	
-	// requires folder read lock
+	// requires folder read lock and label read lock
 	private final FileObjectList getFileObjectList(final String label, final long timestamp) throws IOException {
 		final FileObjectList fol = openFilesHM.get(label + getStrDate(timestamp));
 		if (fol != null)
@@ -829,7 +1063,7 @@ public final class FileObjectProxy {
 //			openFilesHM.put(label + strDate, fol);
 //		}
 		final FileObject toReadFrom;
-		folderLock.readLock().lock();
+		final Lock labelLock = lockForReading(label);
 		try {
 			final FileObjectList fol = getFileObjectList(label, timestamp);
 			if (fol == null)
@@ -840,125 +1074,90 @@ public final class FileObjectProxy {
 				// is available
 			}
 		} finally {
-			folderLock.readLock().unlock();
+			unlock(labelLock);
 		}
 		return null;
 	}
 	
-	// requires folder read lock 
+	// requires folder read lock and label read lock 
 	private List<FileObjectList> getFoldersForIntervalSorted(String label, long start, long end) throws IOException {
-		List<FileObjectList> days = new Vector<FileObjectList>();
 		/*
-		 * Check for Folders matching criteria: Folder contains data between start & end timestamp. Folder contains
-		 * label.
+		 * Folders matching criteria: Folder contains data between start & end timestamp. Folder contains
+		 * label. The catalog returns them sorted, which is required, otherwise data output wouldn't be sorted.
 		 */
-		String strSubfolder;
-		for (File folder : rootNode.listFiles()) {
-			if (folder.isDirectory()) {
-				if (isFolderBetweenStartAndEnd(folder.getName(), start, end)) {
-					if (Arrays.asList(folder.list()).contains(label)) {
-						strSubfolder = rootNode.getPath() + "/" + folder.getName() + "/" + label;
-						days.add(new FileObjectList(strSubfolder, cache, label));
-						logger.trace(strSubfolder + " contains " + SlotsDb.FILE_EXTENSION + " files to read from.");
-					}
-					else if (Arrays.asList(folder.list()).contains(URLEncoder.encode(label,"UTF-8"))) {
-						strSubfolder = rootNode.getPath() + "/" + folder.getName() + "/" + URLEncoder.encode(label,"UTF-8");
-						days.add(new FileObjectList(strSubfolder, cache, label));
-						logger.trace(strSubfolder + " contains " + SlotsDb.FILE_EXTENSION + " files to read from.");
-					}
-				}
-			}
+		final SimpleDateFormat sdf = getDateFormat();
+		final List<String> folders = catalog.getLabelFolders(label, sdf.format(new Date(checkForExtremeValues(start))),
+				sdf.format(new Date(checkForExtremeValues(end))));
+		final List<FileObjectList> days = new ArrayList<>(folders.size());
+		final String mapDaysBefore = getMapDaysBefore();
+		for (String folder : folders) {
+			final String strSubfolder = rootNode.getPath() + "/" + folder;
+			days.add(new FileObjectList(strSubfolder, cache, label, mapDaysBefore));
+			logger.trace(strSubfolder + " contains " + SlotsDb.FILE_EXTENSION + " files to read from.");
 		}
-		/*
-		 * Sort days, because rootNode.listFiles() is unsorted. FileObjectLists MUST be sorted, otherwise data
-		 * output wouldn't be sorted.
-		 */
-		Collections.sort(days, new Comparator<FileObjectList>() {
-
-			@Override
-			public int compare(FileObjectList f1, FileObjectList f2) {
-				return Long.valueOf(f1.getFirstTS()).compareTo(f2.getFirstTS());
-			}
-		});
-
 		return days;
 	}
 	
 	
-	// requires folder read lock
+	// requires folder read lock and label read lock
 	// label must be encoded already
 	FileObjectList getNextFolder(String label, long start) throws IOException {
-		/*
-		 * Check for Folders matching criteria: Folder contains data between start & end timestamp. Folder contains
-		 * label.
-		 */
-		String strSubfolder;
-		List<File> folders = Arrays.asList(rootNode.listFiles());
-		Collections.sort(folders);
-		// TODO avoid iteration over all folders, use heuristics to guess start element, in case of large lists of folders
-		for (File folder : folders) {
-			if (folder.isDirectory()) {
-				if (isFolderBetweenStartAndEnd(folder.getName(), start, Long.MAX_VALUE)) {
-					if (Arrays.asList(folder.list()).contains(label)) {
-						strSubfolder = rootNode.getPath() + "/" + folder.getName() + "/" + label;
-						if (logger.isTraceEnabled())
-							logger.trace(strSubfolder + " contains " + SlotsDb.FILE_EXTENSION + " files to read from.");
-						return new FileObjectList(strSubfolder, cache, label);
-					}
-					else if (Arrays.asList(folder.list()).contains(URLEncoder.encode(label,"UTF-8"))) {
-						strSubfolder = rootNode.getPath() + "/" + folder.getName() + "/" + URLEncoder.encode(label,"UTF-8");
-						if (logger.isTraceEnabled())
-							logger.trace(strSubfolder + " contains " + SlotsDb.FILE_EXTENSION + " files to read from.");
-						return new FileObjectList(strSubfolder, cache, label);
-					}
-				}
-			}
-		}
-		return null;
+		final String day = getDateFormat().format(new Date(checkForExtremeValues(start)));
+		return openLabelFolder(catalog.getNextLabelFolder(label, day, true), label);
 	}
 
-	// requires folder read lock 
+	// requires folder read lock and label read lock 
 	// label must be encoded
 	FileObjectList getNextFolder(String label, FileObjectList folder) throws IOException {
-		String currentDate = folder.getFolderName();
-		int lastIdx = currentDate.lastIndexOf('/');
-		if (lastIdx < 0)
-			lastIdx = currentDate.lastIndexOf('\\');
-		if (lastIdx < 0) // XXX isn't his an error?
+		final File day = new File(folder.getFolderName()).getParentFile();
+		if (day == null) // XXX isn't his an error?
 			return null;
-		currentDate = currentDate.substring(0, lastIdx);
-		Path current = Paths.get(currentDate);
-		
-		List<File> folders = Arrays.asList(rootNode.listFiles());
-		Collections.sort(folders);
-		File f;
-		int i = Integer.MIN_VALUE;
-		for (int idx = 0; idx < folders.size(); idx++) {
-			f = folders.get(idx);
-			if (Files.isSameFile(current, Paths.get(f.toString()))) {
-				i = idx;
-				break;
-			}
-		}
-		if (i < 0)
+		return openLabelFolder(catalog.getNextLabelFolder(label, day.getName(), false), label);
+	}
+
+	/*
+	 * @param folder
+	 * 		path of the label folder relative to the root folder, or null
+	 */
+	private FileObjectList openLabelFolder(String folder, String label) throws IOException {
+		if (folder == null)
 			return null;
-		for (int j=i+1;j<folders.size();j++) {
-			f = folders.get(j);
-			if (f.isDirectory() && Arrays.asList(f.list()).contains(label)) {
-				String strSubfolder = rootNode.getPath() + "/" + f.getName() + "/" + label;
-				if (logger.isTraceEnabled())
-					logger.trace(strSubfolder + " contains " + SlotsDb.FILE_EXTENSION + " files to read from.");
-				return new FileObjectList(strSubfolder, cache, label);
-			} else if (f.isDirectory() && Arrays.asList(f.list()).contains(URLEncoder.encode(label,"UTF-8"))) {
-				String strSubfolder = rootNode.getPath() + "/" + f.getName() + "/" + URLEncoder.encode(label,"UTF-8");
-				if (logger.isTraceEnabled())
-					logger.trace(strSubfolder + " contains " + SlotsDb.FILE_EXTENSION + " files to read from.");
-				return new FileObjectList(strSubfolder, cache, label);
-			}
-		}
-		
-		return null;
-		
+		final String strSubfolder = rootNode.getPath() + "/" + folder;
+		if (logger.isTraceEnabled())
+			logger.trace(strSubfolder + " contains " + SlotsDb.FILE_EXTENSION + " files to read from.");
+		return new FileObjectList(strSubfolder, cache, label, getMapDaysBefore());
+	}
+
+	/**
+	 * @return
+	 * 		number of label folder lookups answered by the folder catalog without a directory listing
+	 */
+	public long getCatalogHits() {
+		return catalog.getHits();
+	}
+
+	/**
+	 * @return
+	 * 		number of label folder lookups that required a directory listing
+	 */
+	public long getCatalogMisses() {
+		return catalog.getMisses();
+	}
+
+	/**
+	 * @return
+	 * 		statistics of the log data cache: hit rate, evictions, etc.
+	 */
+	public CacheStats getCacheStats() {
+		return cache.getStats();
+	}
+
+	/**
+	 * @return
+	 * 		approximate heap size of the log data cache in bytes
+	 */
+	public long getCacheResidentBytes() {
+		return cache.getResidentBytes();
 	}
 	
 	static List<SampledValue> readFolder(FileObjectList folder) throws IOException {
@@ -1013,7 +1212,7 @@ public final class FileObjectProxy {
 		String strEndDate = getStrDate(end);
 		List<FileObject> toRead = new Vector<FileObject>();
 
-		folderLock.readLock().lock();
+		final Lock labelLock = lockForReading(label);
 		try {
 			if (!strStartDate.equals(strEndDate)) {
 				logger.trace("Reading Multiple Days. Scanning for Folders.");
@@ -1038,14 +1237,10 @@ public final class FileObjectProxy {
 				toRead.removeAll(Collections.singleton(null));
 			}
 			else { // Start == End Folder -> only 1 FileObjectList must be read.
-				File folder = new File(rootNode.getPath() + "/" + strStartDate + "/" + label);
-				FileObjectList fol;
-				if (folder.list() != null) {
-					if (folder.list().length > 0) { // Are there Files in the
-						// folder, that should be read?
-						fol = new FileObjectList(rootNode.getPath() + "/" + strStartDate + "/" + label, cache, label);
-						toRead.addAll(fol.getFileObjectsFromTo(start, end));
-					}
+				final String folder = catalog.getLabelFolder(strStartDate, label);
+				if (folder != null) {
+					final FileObjectList fol = new FileObjectList(rootNode.getPath() + "/" + strStartDate + "/" + folder, cache, label, getMapDaysBefore());
+					toRead.addAll(fol.getFileObjectsFromTo(start, end));
 				}
 			}
 		
@@ -1079,7 +1274,7 @@ public final class FileObjectProxy {
 				}
 			}
 		} finally {
-			folderLock.readLock().unlock();
+			unlock(labelLock);
 		}
 		logger.trace("Selected " + SlotsDb.FILE_EXTENSION + " files contain " + toReturn.size() + " Values.");
 		return toReturn;
@@ -1117,49 +1312,67 @@ public final class FileObjectProxy {
 		return false;
 	}
 
+	/*
+	 * The current day of the framework clock if files are mapped, otherwise null; only the files of past days are
+	 * closed, see FileObjectList
+	 */
+	private String getMapDaysBefore() throws IOException {
+		if (!mappedReads)
+			return null;
+		final long now = clock != null ? clock.getExecutionTime() : System.currentTimeMillis();
+		return getStrDate(now);
+	}
+
 	/*
 	 * strCurrentDay holds the current Day in yyyyMMdd format, because SimpleDateFormat uses a lot cpu-time.
 	 * currentDayFirstTS and ... currentDayLastTS mark the first and last timestamp of this day. If a TS exceeds this
 	 * range, strCurrentDay, currentDayFirstTS, currentDayLastTS will be updated.
 	 */
 	private String getStrDate(long timestamp) throws IOException {
-		synchronized (currentDayLock) {
-			if (strCurrentDay != null) {
-				if (timestamp >= currentDayFirstTS && timestamp <= currentDayLastTS) {
-					return strCurrentDay;
-				}
-			}
-			final SimpleDateFormat sdf = getDateFormat();
-			/*
-			 * timestamp for other day or not initialized yet.
-			 */
-			date.setTime(timestamp);
-			strCurrentDay = sdf.format(date);
-			
-			try {
-				currentDayFirstTS = sdf.parse(strCurrentDay).getTime();
-			} catch (ParseException e) {
-				logger.error("Unable to parse Timestamp from: " + currentDayFirstTS + " String.");
-			}
-			currentDayLastTS = currentDayFirstTS + 86399999;
-			return strCurrentDay;
+		final Day day = currentDay;
+		if (day != null && timestamp >= day.firstTS && timestamp <= day.lastTS) {
+			return day.strDay;
 		}
+		final SimpleDateFormat sdf = getDateFormat();
+		/*
+		 * timestamp for other day or not initialized yet.
+		 */
+		final String strDay = sdf.format(new Date(timestamp));
+		try {
+			final long firstTS = sdf.parse(strDay).getTime();
+			currentDay = new Day(strDay, firstTS, firstTS + 86399999);
+		} catch (ParseException e) {
+			logger.error("Unable to parse Timestamp from: " + strDay + " String.");
+		}
+		return strDay;
+	}
+
+	private static final class Day {
+
+		final String strDay;
+		final long firstTS;
+		final long lastTS;
+
+		Day(String strDay, long firstTS, long lastTS) {
+			this.strDay = strDay;
+			this.firstTS = firstTS;
+			this.lastTS = lastTS;
+		}
+
 	}
 
 	/** 
-	 * requires folder write lock
+	 * requires label write lock
 	 */
-	private void deleteEntryFromLastDay(long timestamp, String label) throws IOException {
+	private void closeEntryFromLastDay(long timestamp, String label) throws IOException {
 		String strDate = getStrDate(timestamp - 86400000);
-		if (openFilesHM.containsKey(label + strDate)) {
+		final FileObjectList lastDay = openFilesHM.remove(label + strDate);
+		if (lastDay != null) {
 			/*
-			 * Value for new day has been registered! Close and flush all connections! Empty Hashtable!
+			 * Value for new day has been registered! Close and flush the files of the last day.
 			 */
-			clearOpenFilesHashMap();
-			logger.info("Started logging to a new Day. <" + strDate
-					+ "> Folder has been closed and flushed completely.");
-			/* reload days */
-			loadDays();
+			lastDay.closeAllFiles();
+			logger.debug("Started logging to a new Day for {}. <{}> Folder has been closed and flushed.", label, strDate);
 		}
 	}
 
@@ -1177,7 +1390,7 @@ public final class FileObjectProxy {
 	public int size(String label, long start, long end) throws DataRecorderException, IOException {
 		label = encodeLabel(label);
 		int size = 0;
-		folderLock.readLock().lock();
+		final Lock labelLock = lockForReading(label);
 		try {
 			List<FileObjectList> folders = getFoldersForIntervalSorted(label, start, end);
 			for (FileObjectList folder: folders) {
@@ -1189,12 +1402,13 @@ public final class FileObjectProxy {
 		} catch (IOException e) {
 			throw new DataRecorderException("",e);
 		} finally {
-			folderLock.readLock().unlock();
+			unlock(labelLock);
 		}
 	}
 
 	/** 
-	 * requires folder write lock 
+	 * requires folder read lock and label write lock; entries of labels which are currently in use 
+	 * by other threads are skipped.
 	 */
 	private void controlHashtableSize() throws IOException {
 		/*
@@ -1206,8 +1420,8 @@ public final class FileObjectProxy {
 		if (openFilesHM.size() > max_open_files) {
 			logger.debug("More then " + max_open_files
 					+ " DataStreams are opened. Flushing and closing some to not exceed OS-Limit.");
-			Iterator<FileObjectList> itr = openFilesHM.values().iterator();
-			for (int i = 0; i < (max_open_files / 5); i++) { // randomly kick
+			Iterator<Map.Entry<String, FileObjectList>> itr = openFilesHM.entrySet().iterator();
+			for (int i = 0; i < (max_open_files / 5) && itr.hasNext();) { // randomly kick
 				// out some of
 				// the
 				// FileObjectLists.
@@ -1216,8 +1430,18 @@ public final class FileObjectProxy {
 				// reinitialized,
 				// no problem
 				// here.
-				itr.next().closeAllFiles();
-				itr.remove();
+				final Map.Entry<String, FileObjectList> entry = itr.next();
+				final Lock lock = getLabelLock(getLabel(entry.getValue())).writeLock();
+				if (!lock.tryLock())
+					continue;
+				try {
+					if (openFilesHM.remove(entry.getKey(), entry.getValue())) {
+						entry.getValue().closeAllFiles();
+						i++;
+					}
+				} finally {
+					lock.unlock();
+				}
 			}
 		}
 	}
@@ -1228,18 +1452,72 @@ public final class FileObjectProxy {
 	 * @throws IOException
 	 */
 	public void flush() throws IOException {
-		folderLock.writeLock().lock();
+		folderLock.readLock().lock();
 		try {
 			Iterator<FileObjectList> itr = openFilesHM.values().iterator();
 			while (itr.hasNext()) {
-				itr.next().flush();
+				final FileObjectList list = itr.next();
+				final Lock lock = getLabelLock(getLabel(list)).writeLock();
+				lock.lock();
+				try {
+					list.flush();
+				} finally {
+					lock.unlock();
+				}
 			}
 			logger.debug("Data from {} folders flushed to disk.",openFilesHM.size());
 		} finally {
-			folderLock.writeLock().unlock();
+			folderLock.readLock().unlock();
 		}
 	}
 	
+	/**
+	 * Returns the tier of aggregated values to be used for a reduction, or 0 if aggregated values are
+	 * disabled or no tier matches the arguments.
+	 * 
+	 * @param start
+	 * @param end
+	 * 		exclusive
+	 * @param intervalSize
+	 */
+	long getRollupTier(long start, long end, long intervalSize) {
+		if (!rollups)
+			return 0;
+		return Rollups.getTier(start, end, intervalSize);
+	}
+
+	/**
+	 * Reduces the log data in [start, end] using the aggregated values of the given tier, see 
+	 * {@link #getRollupTier(long, long, long)}.
+	 * 
+	 * @param label
+	 * @param start
+	 * @param end
+	 * 		inclusive
+	 * @param tier
+	 * @param intervalSize
+	 * @param mode
+	 * @return
+	 * 		the reduced values, or an empty list if there is no log data in the period
+	 * @throws IOException
+	 */
+	List<SampledValue> reduce(String label, long start, long end, long tier, long intervalSize, ReductionMode mode) throws IOException {
+		label = encodeLabel(label);
+		final StreamingReduction reduction = new StreamingReduction(start, end, intervalSize, mode);
+		final Lock labelLock = lockForReading(label);
+		try {
+			final List<FileObjectList> days = getFoldersForIntervalSorted(label, checkForExtremeValues(start), checkForExtremeValues(end));
+			for (FileObjectList day : days) {
+				// values not yet flushed are only contained in the aggregates of the open list
+				final FileObjectList open = openFilesHM.get(label + new File(day.getFolderName()).getParentFile().getName());
+				Rollups.get(open != null ? open : day).reduce(tier, start, end, reduction);
+			}
+		} finally {
+			unlock(labelLock);
+		}
+		return reduction.getResult();
+	}
+
 	// ensure year strings have no more than four digits and are positive
 	private static long checkForExtremeValues(long timestamp) {
 		if (timestamp < minL)
@@ -22,6 +22,7 @@ import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -33,6 +34,10 @@ public class FlexibleIntervalFileObject extends FileObject {
 
 	private long lastTimestamp;
 	private static final long headerend = 16;
+	// shared with other file objects for the same file, see #getIndex
+	private TimestampIndex index;
+	// set on the first append
+	private boolean indexInitialized;
 
 	protected FlexibleIntervalFileObject(File file, RecordedDataCache cache) throws IOException {
 		super(file, cache);
@@ -59,6 +64,10 @@ public class FlexibleIntervalFileObject extends FileObject {
 		if (!canWrite) {
 			enableOutput();
 		}
+		if (!indexInitialized) {
+			initIndex();
+			indexInitialized = true;
+		}
 
 		// FIXME really? only write to time series if new values timestamp is greater than last one? -> this is for log data, so it makes sense
 		if (timestamp > lastTimestamp) {
@@ -66,8 +75,60 @@ public class FlexibleIntervalFileObject extends FileObject {
 			dos.writeDouble(value);
 			dos.writeByte(flag);
 			lastTimestamp = timestamp;
+			index.add(timestamp, value);
+		}
+
+	}
+
+	/*
+	 * Called before the first value is appended by this file object. Indexes the existing records, 
+	 * and determines the latest timestamp in the file, which may have been written before a restart.
+	 */
+	private void initIndex() throws IOException {
+		dos.flush();
+		try (final FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ)) {
+			final int recordCount = getRecordCount();
+			final long last = getIndex(channel, recordCount).update(channel, recordCount);
+			if (last > lastTimestamp)
+				lastTimestamp = last;
 		}
+	}
 
+	/*
+	 * The index is shared with all file objects for the same file, via the cache. If it
+	 * is not available yet, it is loaded from the index file.
+	 */
+	private TimestampIndex getIndex(FileChannel channel, int recordCount) {
+		if (index == null) {
+			final RecordedDataCache cache = getRecordedDataCache();
+			TimestampIndex index = cache.getIndex();
+			if (index == null) {
+				index = TimestampIndex.load(dataFile, channel, recordCount);
+				cache.setIndex(index);
+			}
+			this.index = index;
+		}
+		return index;
+	}
+
+	// number of records in the file, without values not yet flushed
+	private int getRecordCount() {
+		return (int) ((dataFile.length() - headerend) / getDataSetSize());
+	}
+
+	private FileChannel getReadChannel() throws IOException {
+		if (!canRead) {
+			enableInput();
+		}
+		return fis.getChannel();
+	}
+
+	@Override
+	public void close() throws IOException {
+		super.close();
+		if (index != null) {
+			index.write(dataFile);
+		}
 	}
 
 	@Override
@@ -79,69 +140,55 @@ public class FlexibleIntervalFileObject extends FileObject {
 		// this is only a quickfix so that it works... @author of this class: if there
 		// is a better solution pls fix this... otherwise delete all comments in here
 		// and lets stick to this solution for now:
-		int dataSetCount = getDataSetCountInternal();
-		if (dataSetCount > 1) {
+		if (useMappedReads()) {
 			try {
-				if (!canRead) {
-					enableInput();
-				}
-				fis.getChannel().position(headerend);
-				byte[] b = new byte[(int) (dataFile.length() - headerend)];
-				dis.read(b, 0, b.length);
-				ByteBuffer bb = ByteBuffer.wrap(b);
-				// set position to last entries timestamp (Long, Double and Byte size in bits
-				// so divide through Byte.SIZE to get size in bytes)
-				// casting is a hack to avoid incompatibility when building this on Java 9 and run on Java 8
-				// ByteBuffer#position used to return a Buffer in Jdk8, but from Java 9 on returns a ByteBuffer
-				((Buffer) bb).position((dataSetCount - 1) * getDataSetSize());
-				long l = bb.getLong();
-				return l;
+				final ByteBuffer bb = getMappedBuffer();
+				final int count = getDataSetCount(bb);
+				return count > 0 ? timestampAt(bb, count - 1) : startTimeStamp;
 			} catch (IOException e) {
 				logger.error(e.getMessage(), e);
-				// FIXME return negative value to signalize error? for now simply
-				// return startTimeStamp ...
+				return startTimeStamp;
 			}
 		}
+		try {
+			final FileChannel channel = getReadChannel();
+			final int recordCount = getRecordCount();
+			if (recordCount > 0)
+				return TimestampIndex.readRecords(channel, recordCount - 1, recordCount).getLong();
+		} catch (IOException e) {
+			logger.error(e.getMessage(), e);
+			// FIXME return negative value to signalize error? for now simply
+			// return startTimeStamp ...
+		}
 		return startTimeStamp;
 	}
 
 	@Override
 	protected List<SampledValue> readInternal(long start, long end) throws IOException {
-
-//		List<SampledValue> toReturn = new Vector<SampledValue>();
-		final List<SampledValue> toReturn = new ArrayList<>(getDataSetCount());
-		if (!canRead) {
-			enableInput();
-		}
-
-		long startpos = headerend;
-
-		fis.getChannel().position(startpos);
-		byte[] b = new byte[(int) (dataFile.length() - headerend)];
-		dis.read(b, 0, b.length);
-		ByteBuffer bb = ByteBuffer.wrap(b);
-		// casting is a hack to avoid incompatibility when building this on Java 9 and run on Java 8
-		// ByteBuffer#rewind used to return a Buffer in Jdk8, but from Java 9 on returns a ByteBuffer
-		((Buffer) bb).rewind();
-
-		for (int i = 0; i < getDataSetCountInternal(); i++) {
-			long timestamp = bb.getLong();
-			double d = bb.getDouble();
-			Quality s = Quality.getQuality(bb.get());
-			if (!Double.isNaN(d)) {
-				if (timestamp >= start && timestamp <= end) {
-					toReturn.add(new SampledValue(DoubleValues.of(d), timestamp, s));
-				}
-
-			}
+		if (useMappedReads())
+			return readMapped(start, end);
+
+		final FileChannel channel = getReadChannel();
+		final int recordCount = getRecordCount();
+		final TimestampIndex index = getIndex(channel, recordCount);
+		final int from = start <= startTimeStamp ? 0 : index.lowerBound(channel, recordCount, start);
+		final int to = end == Long.MAX_VALUE ? recordCount : index.lowerBound(channel, recordCount, end + 1);
+		final List<SampledValue> toReturn = new ArrayList<>(Math.max(to - from, 0));
+		if (to <= from)
+			return toReturn;
+		final ByteBuffer bb = TimestampIndex.readRecords(channel, from, to);
+		for (int i = 0; i < to - from; i++) {
+			final SampledValue sv = decode(bb, i * getDataSetSize());
+			if (sv != null)
+				toReturn.add(sv);
 		}
-
-		// TODO iterate through file and extract the required values.
 		return toReturn;
 	}
 
 	@Override
 	protected List<SampledValue> readFullyInternal() throws IOException {
+		if (useMappedReads())
+			return readMapped(Long.MIN_VALUE, Long.MAX_VALUE);
 //		List<SampledValue> toReturn = new Vector<SampledValue>();
 		final List<SampledValue> toReturn = new ArrayList<>(getDataSetCountInternal());
 
@@ -159,8 +206,10 @@ public class FlexibleIntervalFileObject extends FileObject {
 		ByteBuffer bb = ByteBuffer.wrap(b);
 		((Buffer) bb).rewind();
         */
-        MappedByteBuffer bb = fis.getChannel().map(FileChannel.MapMode.READ_ONLY, startpos, dataFile.length() - headerend);
-		int countOfDataSets = (int) ((dataFile.length() - headerend) / getDataSetSize());
+        // the file may grow concurrently, so its length must be determined only once
+        final long dataLength = dataFile.length() - headerend;
+        MappedByteBuffer bb = fis.getChannel().map(FileChannel.MapMode.READ_ONLY, startpos, dataLength);
+		int countOfDataSets = (int) (dataLength / getDataSetSize());
 		for (int i = 0; i < countOfDataSets; i++) {
 			long timestamp = bb.getLong();
 			double d = bb.getDouble();
@@ -173,32 +222,42 @@ public class FlexibleIntervalFileObject extends FileObject {
 		return toReturn;
 	}
 
+	/**
+	 * Unlike the readers, includes the NaN samples.
+	 */
 	@Override
-	public SampledValue read(long timestamp) throws IOException {
-		// TODO Search the special value
-		if (!canRead) {
-			enableInput();
+	List<SampledValue> readStoredValues() throws IOException {
+		final FileChannel channel = getReadChannel();
+		final int recordCount = getRecordCount();
+		final List<SampledValue> toReturn = new ArrayList<>(recordCount);
+		if (recordCount == 0)
+			return toReturn;
+		final ByteBuffer bb = TimestampIndex.readRecords(channel, 0, recordCount);
+		for (int i = 0; i < recordCount; i++) {
+			final int pos = i * getDataSetSize();
+			toReturn.add(new SampledValue(DoubleValues.of(bb.getDouble(pos + 8)), bb.getLong(pos),
+					Quality.getQuality(bb.get(pos + 16))));
 		}
+		return toReturn;
+	}
 
-		long startpos = headerend;
-
-		fis.getChannel().position(startpos);
-		byte[] b = new byte[(int) (dataFile.length() - headerend)];
-		dis.read(b, 0, b.length);
-		ByteBuffer bb = ByteBuffer.wrap(b);
-		((Buffer) bb).rewind();
-		int countOfDataSets = (int) ((dataFile.length() - headerend) / 17);
-		for (int i = 0; i < countOfDataSets; i++) {
-			long timestamp2 = bb.getLong();
-			double d = bb.getDouble();
-			Quality s = Quality.getQuality(bb.get());
-			if (timestamp < timestamp2) {
-				return null;
-			}
-			if (!Double.isNaN(d) && timestamp == timestamp2) {
-				return new SampledValue(DoubleValues.of(d), timestamp2, s);
-			}
+	@Override
+	public SampledValue read(long timestamp) throws IOException {
+		if (useMappedReads()) {
+			final ByteBuffer bb = getMappedBuffer();
+			final int idx = lowerBound(bb, timestamp);
+			if (idx < getDataSetCount(bb) && timestampAt(bb, idx) == timestamp)
+				return valueAt(bb, idx);
+			return null;
 		}
+		final FileChannel channel = getReadChannel();
+		final int recordCount = getRecordCount();
+		final int idx = getIndex(channel, recordCount).lowerBound(channel, recordCount, timestamp);
+		if (idx == recordCount)
+			return null;
+		final SampledValue sv = decode(TimestampIndex.readRecords(channel, idx, idx + 1), 0);
+		if (sv != null && sv.getTimestamp() == timestamp)
+			return sv;
 		return null;
 	}
 
@@ -209,24 +268,26 @@ public class FlexibleIntervalFileObject extends FileObject {
 
 	@Override
 	public SampledValue readNextValue(long timestamp) throws IOException {
-		if (!canRead) {
-			enableInput();
+		if (useMappedReads()) {
+			final ByteBuffer bb = getMappedBuffer();
+			final int count = getDataSetCount(bb);
+			for (int i = lowerBound(bb, timestamp); i < count; i++) {
+				final SampledValue sv = valueAt(bb, i);
+				if (sv != null)
+					return sv;
+			}
+			return null;
 		}
-
-		long startpos = headerend;
-
-		fis.getChannel().position(startpos);
-		byte[] b = new byte[(int) (dataFile.length() - headerend)];
-		dis.read(b, 0, b.length);
-		ByteBuffer bb = ByteBuffer.wrap(b);
-		((Buffer) bb).rewind();
-		int countOfDataSets = (int) ((dataFile.length() - headerend) / getDataSetSize());
-		for (int i = 0; i < countOfDataSets; i++) {
-			long timestamp2 = bb.getLong();
-			double d = bb.getDouble();
-			Quality s = Quality.getQuality(bb.get());
-			if (!Double.isNaN(d) && timestamp <= timestamp2) {
-				return new SampledValue(DoubleValues.of(d), timestamp2, s);
+		final FileChannel channel = getReadChannel();
+		final int recordCount = getRecordCount();
+		final int idx = getIndex(channel, recordCount).lowerBound(channel, recordCount, timestamp);
+		for (int from = idx; from < recordCount; from += TimestampIndex.STEP) {
+			final int to = Math.min(from + TimestampIndex.STEP, recordCount);
+			final ByteBuffer bb = TimestampIndex.readRecords(channel, from, to);
+			for (int i = 0; i < to - from; i++) {
+				final SampledValue sv = decode(bb, i * getDataSetSize());
+				if (sv != null)
+					return sv;
 			}
 		}
 		return null;
@@ -234,35 +295,33 @@ public class FlexibleIntervalFileObject extends FileObject {
 
 	@Override
 	public SampledValue readPreviousValue(long timestamp) throws IOException {
-		if (!canRead) {
-			enableInput();
+		if (useMappedReads()) {
+			final ByteBuffer bb = getMappedBuffer();
+			final int count = getDataSetCount(bb);
+			int i = lowerBound(bb, timestamp);
+			if (i == count || timestampAt(bb, i) > timestamp)
+				i--;
+			for (; i >= 0; i--) {
+				final SampledValue sv = valueAt(bb, i);
+				if (sv != null)
+					return sv;
+			}
+			return null;
 		}
-		long startpos = headerend;
-
-		fis.getChannel().position(startpos);
-		byte[] b = new byte[(int) (dataFile.length() - headerend)];
-		dis.read(b, 0, b.length);
-		ByteBuffer bb = ByteBuffer.wrap(b);
-		((Buffer) bb).rewind();
-		int countOfDataSets = (int) ((dataFile.length() - headerend) / getDataSetSize());
-		long tcand = Long.MIN_VALUE;
-		double dcand = Double.NaN;
-		Quality qcand = null;
-		for (int i = 0; i < countOfDataSets; i++) {
-			long timestamp2 = bb.getLong();
-			double d = bb.getDouble();
-			Quality s = Quality.getQuality(bb.get());
-			if (!Double.isNaN(d) && timestamp >= timestamp2) {
-				tcand = timestamp2;
-				dcand = d;
-				qcand = s;
-//				candidate = new SampledValue(DoubleValues.of(d), timestamp2, s);
+		final FileChannel channel = getReadChannel();
+		final int recordCount = getRecordCount();
+		// index of the first record newer than timestamp
+		final int idx = timestamp == Long.MAX_VALUE ? recordCount 
+				: getIndex(channel, recordCount).lowerBound(channel, recordCount, timestamp + 1);
+		for (int to = idx; to > 0; to -= TimestampIndex.STEP) {
+			final int from = Math.max(to - TimestampIndex.STEP, 0);
+			final ByteBuffer bb = TimestampIndex.readRecords(channel, from, to);
+			for (int i = to - from - 1; i >= 0; i--) {
+				final SampledValue sv = decode(bb, i * getDataSetSize());
+				if (sv != null)
+					return sv;
 			}
-			else if (timestamp < timestamp2)
-				break;
 		}
-		if (!Double.isNaN(dcand))
-			return new SampledValue(DoubleValues.of(dcand), tcand, qcand);
 		return null;
 	}
 
@@ -278,28 +337,87 @@ public class FlexibleIntervalFileObject extends FileObject {
 			return getDataSetCountInternal();
 		else if (start > fileEnd || end < startTimeStamp)
 			return 0;
-		if (!canRead) {
-			enableInput();
-		}
-		long startpos = headerend;
-		fis.getChannel().position(startpos);
-		byte[] b = new byte[(int) (dataFile.length() - headerend)];
-		dis.read(b, 0, b.length);
-		ByteBuffer bb = ByteBuffer.wrap(b);
-		((Buffer) bb).rewind();
-		int cnt = 0;
-		int countOfDataSets = getDataSetCountInternal();
-		for (int i = 0; i < countOfDataSets; i++) {
-			long timestamp2 = bb.getLong();
-			double d = bb.getDouble();
-			if (timestamp2 > end)
-				return cnt;
-			if (!Double.isNaN(d) && timestamp2 >= start) {
-				cnt++;
+		if (useMappedReads()) {
+			final ByteBuffer bb = getMappedBuffer();
+			final int count = getDataSetCount(bb);
+			int cnt = 0;
+			for (int i = lowerBound(bb, start); i < count; i++) {
+				final int pos = (int) headerend + i * getDataSetSize();
+				if (bb.getLong(pos) > end)
+					break;
+				if (!Double.isNaN(bb.getDouble(pos + 8)))
+					cnt++;
 			}
-			bb.get();
+			return cnt;
+		}
+		final FileChannel channel = getReadChannel();
+		final int recordCount = getRecordCount();
+		final TimestampIndex index = getIndex(channel, recordCount);
+		final int from = index.lowerBound(channel, recordCount, start);
+		final int to = end == Long.MAX_VALUE ? recordCount : index.lowerBound(channel, recordCount, end + 1);
+		return index.countValues(channel, recordCount, from, to);
+	}
+
+	/*
+	 * Methods for memory-mapped reads; timestamps in a file are strictly increasing (see #append),
+	 * so records can be located by binary search. Only absolute get methods are used on the shared buffer.
+	 */
+
+	private List<SampledValue> readMapped(long start, long end) throws IOException {
+		final ByteBuffer bb = getMappedBuffer();
+		final int count = getDataSetCount(bb);
+		int i = start <= startTimeStamp ? 0 : lowerBound(bb, start);
+		final List<SampledValue> toReturn = new ArrayList<>(count - i);
+		for (; i < count; i++) {
+			if (timestampAt(bb, i) > end)
+				break;
+			final SampledValue sv = valueAt(bb, i);
+			if (sv != null)
+				toReturn.add(sv);
+		}
+		return toReturn;
+	}
+
+	private static int getDataSetCount(ByteBuffer bb) {
+		return (int) ((bb.capacity() - headerend) / getDataSetSize());
+	}
+
+	private static long timestampAt(ByteBuffer bb, int idx) {
+		return bb.getLong((int) headerend + idx * getDataSetSize());
+	}
+
+	/*
+	 * Returns null if the value at idx is NaN
+	 */
+	private static SampledValue valueAt(ByteBuffer bb, int idx) {
+		return decode(bb, (int) headerend + idx * getDataSetSize());
+	}
+
+	/*
+	 * Returns the record at the given buffer position, or null if its value is NaN
+	 */
+	private static SampledValue decode(ByteBuffer bb, int pos) {
+		final double d = bb.getDouble(pos + 8);
+		if (Double.isNaN(d))
+			return null;
+		return new SampledValue(DoubleValues.of(d), bb.getLong(pos), Quality.getQuality(bb.get(pos + 16)));
+	}
+
+	/*
+	 * Returns the index of the first record with timestamp greater or equal to the passed timestamp,
+	 * or the number of records if there is none.
+	 */
+	private static int lowerBound(ByteBuffer bb, long timestamp) {
+		int low = 0;
+		int high = getDataSetCount(bb) - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			if (timestampAt(bb, mid) < timestamp)
+				low = mid + 1;
+			else
+				high = mid - 1;
 		}
-		return cnt;
+		return low;
 	}
 
 	private final static int getDataSetSize() {
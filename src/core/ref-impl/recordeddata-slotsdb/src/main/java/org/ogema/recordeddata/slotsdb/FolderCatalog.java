@@ -0,0 +1,381 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory catalog of the day folders of a {@link FileObjectProxy} and the label folders they contain,
+ * so that lookups do not require directory listings. The label folders of a day are listed once, on
+ * first access, and kept up to date afterwards via {@link #addLabel(String, String)}; day folders are
+ * removed via {@link #removeDay(String)}. Day folders created by other means are detected by a change of
+ * the modification time of the root folder, other external changes are not detected until the next
+ * {@link #reload()}.<br>
+ * <br>
+ * Optionally, the catalog is stored on closing and restored on startup, see {@link SlotsDb#CATALOG_SNAPSHOT}.
+ * Restored label lists are used only for day folders whose modification time has not changed since.
+ */
+final class FolderCatalog {
+
+	private final static Logger logger = LoggerFactory.getLogger(FolderCatalog.class);
+
+	static final String SNAPSHOT_FILE = "catalog.snapshot";
+	private static final int MAGIC = 0x534c4331; // "SLC1"
+
+	private final File rootNode;
+	// day folder name (yyyyMMdd) -> day; names are ordered chronologically
+	private volatile ConcurrentNavigableMap<String, Day> days = new ConcurrentSkipListMap<>();
+	// modification time of the root folder when it has been listed
+	private volatile long rootModified;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	FolderCatalog(File rootNode) {
+		this.rootNode = rootNode;
+	}
+
+	/**
+	 * Scans the root folder for day folders. Label folders are listed on demand.
+	 */
+	synchronized void reload() {
+		final ConcurrentNavigableMap<String, Day> days = new ConcurrentSkipListMap<>();
+		addDays(days);
+		this.days = days;
+	}
+
+	/*
+	 * Adds day folders created by other means than addLabel. Days are never removed here, since a concurrent
+	 * writer may have registered a day folder after the root folder has been listed.
+	 */
+	private void checkForNewDays() {
+		if (rootNode.lastModified() == rootModified)
+			return;
+		synchronized (this) {
+			if (rootNode.lastModified() != rootModified)
+				addDays(days);
+		}
+	}
+
+	private void addDays(ConcurrentNavigableMap<String, Day> days) {
+		// read the modification time first, so that later changes are detected
+		rootModified = rootNode.lastModified();
+		final File[] folders = rootNode.listFiles();
+		if (folders == null)
+			return;
+		final SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd");
+		for (File f : folders) {
+			if (!f.isDirectory() || days.containsKey(f.getName()))
+				continue;
+			try {
+				sdf.parse(f.getName());
+			} catch (ParseException e) {
+				continue;
+			}
+			days.putIfAbsent(f.getName(), new Day(f));
+		}
+	}
+
+	/**
+	 * @return
+	 * 		the day folders, sorted chronologically
+	 */
+	List<File> getDayFolders() {
+		checkForNewDays();
+		final List<File> folders = new ArrayList<>(days.size());
+		for (Day day : days.values()) {
+			folders.add(day.folder);
+		}
+		return folders;
+	}
+
+	/**
+	 * To be called after a label folder has been created.
+	 * @param day
+	 * @param labelFolder
+	 */
+	void addLabel(String day, String labelFolder) {
+		final ConcurrentNavigableMap<String, Day> days = this.days;
+		Day d = days.get(day);
+		if (d == null) {
+			final Day newDay = new Day(new File(rootNode, day));
+			d = days.putIfAbsent(day, newDay);
+			if (d == null)
+				d = newDay;
+		}
+		d.add(labelFolder);
+	}
+
+	/**
+	 * To be called after a day folder has been deleted.
+	 * @param day
+	 */
+	void removeDay(String day) {
+		days.remove(day);
+	}
+
+	/**
+	 * Returns the name of the folder for the label in the given day, or null if there is none.
+	 * @param day
+	 * @param label
+	 * 		encoded label
+	 * @return
+	 * @throws UnsupportedEncodingException
+	 */
+	String getLabelFolder(String day, String label) throws UnsupportedEncodingException {
+		checkForNewDays();
+		final Day d = days.get(day);
+		if (d == null)
+			return null;
+		return getLabelFolder(d, label);
+	}
+
+	private String getLabelFolder(Day day, String label) throws UnsupportedEncodingException {
+		final Set<String> labels = day.getLabels();
+		if (labels.contains(label))
+			return label;
+		// legacy folders
+		final String encoded = URLEncoder.encode(label, "UTF-8");
+		if (labels.contains(encoded))
+			return encoded;
+		return null;
+	}
+
+	/**
+	 * Returns the paths of the label folders for the label in the days [firstDay, lastDay], relative
+	 * to the root folder and sorted chronologically.
+	 * @param label
+	 * 		encoded label
+	 * @param firstDay
+	 * @param lastDay
+	 * @return
+	 * @throws UnsupportedEncodingException
+	 */
+	List<String> getLabelFolders(String label, String firstDay, String lastDay) throws UnsupportedEncodingException {
+		if (firstDay.compareTo(lastDay) > 0)
+			return Collections.emptyList();
+		checkForNewDays();
+		final List<String> folders = new ArrayList<>();
+		for (Day day : days.subMap(firstDay, true, lastDay, true).values()) {
+			final String folder = getLabelFolder(day, label);
+			if (folder != null)
+				folders.add(day.folder.getName() + "/" + folder);
+		}
+		return folders;
+	}
+
+	/**
+	 * Returns the path of the first label folder for the label in a day after the given one,
+	 * relative to the root folder, or null if there is none.
+	 * @param label
+	 * 		encoded label
+	 * @param day
+	 * @param inclusive
+	 * 		if true, the given day is considered, too
+	 * @return
+	 * @throws UnsupportedEncodingException
+	 */
+	String getNextLabelFolder(String label, String day, boolean inclusive) throws UnsupportedEncodingException {
+		checkForNewDays();
+		for (Day d : days.tailMap(day, inclusive).values()) {
+			final String folder = getLabelFolder(d, label);
+			if (folder != null)
+				return d.folder.getName() + "/" + folder;
+		}
+		return null;
+	}
+
+	/**
+	 * @return
+	 * 		number of label folder lookups answered from memory
+	 */
+	long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return
+	 * 		number of label folder lookups that required a directory listing
+	 */
+	long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Stores the catalog in the root folder.
+	 */
+	void writeSnapshot() {
+		File tmp = null;
+		try {
+			tmp = File.createTempFile(SNAPSHOT_FILE, ".tmp", rootNode);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+				final List<Day> days = new ArrayList<>(this.days.values());
+				out.writeInt(MAGIC);
+				out.writeInt(days.size());
+				for (Day day : days) {
+					final String[] labels = day.getLabelsIfLoaded();
+					out.writeUTF(day.folder.getName());
+					out.writeLong(day.lastModified);
+					out.writeInt(labels == null ? -1 : labels.length);
+					if (labels != null) {
+						for (String label : labels) {
+							out.writeUTF(label);
+						}
+					}
+				}
+			}
+			Files.move(tmp.toPath(), new File(rootNode, SNAPSHOT_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			logger.warn("Failed to store folder catalog", e);
+			if (tmp != null)
+				tmp.delete();
+		}
+	}
+
+	/**
+	 * Scans the root folder for day folders, like {@link #reload()}, and takes over the label folders
+	 * from the stored catalog for all days that have not been modified since.
+	 * @return
+	 * 		number of days restored from the snapshot
+	 */
+	int loadSnapshot() {
+		reload();
+		final File file = new File(rootNode, SNAPSHOT_FILE);
+		if (!file.isFile())
+			return 0;
+		final Map<String, Day> stored = new HashMap<>();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC)
+				return 0;
+			final int nrDays = in.readInt();
+			for (int i = 0; i < nrDays; i++) {
+				final String name = in.readUTF();
+				final long lastModified = in.readLong();
+				final int nrLabels = in.readInt();
+				if (nrLabels < 0)
+					continue;
+				final String[] labels = new String[nrLabels];
+				for (int j = 0; j < nrLabels; j++) {
+					labels[j] = in.readUTF();
+				}
+				stored.put(name, new Day(new File(rootNode, name), lastModified, labels));
+			}
+		} catch (IOException e) {
+			logger.warn("Failed to load folder catalog", e);
+			return 0;
+		}
+		int cnt = 0;
+		for (Day day : days.values()) {
+			final Day old = stored.get(day.folder.getName());
+			if (old != null && old.lastModified == day.folder.lastModified()) {
+				days.replace(day.folder.getName(), day, old);
+				cnt++;
+			}
+		}
+		return cnt;
+	}
+
+	@Override
+	public String toString() {
+		return "FolderCatalog[days: " + days.size() + ", hits: " + hits.get() + ", misses: " + misses.get() + "]";
+	}
+
+	private final class Day {
+
+		final File folder;
+		// modification time of the folder when the labels have been listed
+		volatile long lastModified;
+		// null until the folder has been listed
+		private volatile Set<String> labels;
+
+		Day(File folder) {
+			this.folder = folder;
+		}
+
+		Day(File folder, long lastModified, String[] labels) {
+			this.folder = folder;
+			this.lastModified = lastModified;
+			this.labels = newSet(labels);
+		}
+
+		Set<String> getLabels() {
+			final Set<String> labels = this.labels;
+			if (labels != null) {
+				hits.incrementAndGet();
+				return labels;
+			}
+			return listLabels();
+		}
+
+		String[] getLabelsIfLoaded() {
+			final Set<String> labels = this.labels;
+			return labels == null ? null : labels.toArray(new String[labels.size()]);
+		}
+
+		private synchronized Set<String> listLabels() {
+			if (labels != null)
+				return labels;
+			misses.incrementAndGet();
+			// read the modification time first, so that later changes are detected
+			lastModified = folder.lastModified();
+			final String[] names = folder.list();
+			final Set<String> labels = newSet(names == null ? new String[0] : names);
+			this.labels = labels;
+			return labels;
+		}
+
+		synchronized void add(String label) {
+			final Set<String> labels = this.labels;
+			if (labels != null)
+				labels.add(label);
+		}
+
+		private Set<String> newSet(String[] labels) {
+			final Set<String> set = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+			set.addAll(Arrays.asList(labels));
+			return set;
+		}
+
+	}
+
+}
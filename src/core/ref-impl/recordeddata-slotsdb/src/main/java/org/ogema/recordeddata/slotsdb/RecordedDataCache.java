@@ -29,6 +29,19 @@ public interface RecordedDataCache {
 	 * @return
 	 * 		null, if no cached information is available
 	 */
-	List<SampledValue> getCache();
+	CachedValues getCache();
+
+	/**
+	 * The timestamp index is not affected by {@link #invalidate()}.
+	 * @return
+	 * 		null, if no index is available
+	 */
+	TimestampIndex getIndex();
+
+	/**
+	 * @param index
+	 * 		may be null
+	 */
+	void setIndex(TimestampIndex index);
 
 }
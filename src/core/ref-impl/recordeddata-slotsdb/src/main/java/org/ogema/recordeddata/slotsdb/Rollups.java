@@ -0,0 +1,389 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Calendar;
+
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.recordeddata.slotsdb.reduction.StreamingReduction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pre-aggregated log data of one label folder. For each tier in {@link #TIERS} the values are aggregated
+ * per interval: number of values, and number, sum, minimum and maximum of the values of quality GOOD. NaN
+ * values are skipped, as on reading.
+ * Intervals are aligned to the start of the day in the default time zone, like the day folders: the intervals of
+ * the shorter tiers are multiples of the tier length since the start of the day, and the daily tier has a single
+ * interval per day folder, which is 23 to 25 hours long on days with a daylight saving time change.<br>
+ * <br>
+ * The aggregates are kept in memory for open folders, updated on every append, and stored in the file
+ * {@link #FILE_NAME} when the folder is flushed or closed. The file records the total size of the log files
+ * it has been calculated from; if this does not match, the aggregates are recalculated from the log data.<br>
+ * <br>
+ * File layout: <br>
+ * magic (4 bytes) | size of log files (8) | last timestamp (8) | number of tiers (4) | tiers <br>
+ * Each tier consists of the tier length (8), the number of intervals (4) and for each interval its start (8),
+ * number of values (4), number of good values (4), sum (8), minimum (8) and maximum (8).
+ */
+final class Rollups {
+
+	private final static Logger logger = LoggerFactory.getLogger(Rollups.class);
+
+	static final String FILE_NAME = "rollups.dat";
+	static final long[] TIERS = { 15 * 60 * 1000L, 60 * 60 * 1000L, 24 * 60 * 60 * 1000L };
+	private static final long DAY = 24 * 60 * 60 * 1000L;
+	private static final int MAGIC = 0x534c5232; // "SLR2"
+
+	private final File folder;
+	private final Tier[] tiers;
+	// values with smaller or equal timestamps are not written by the file objects, hence ignored here, too
+	private long lastTimestamp = Long.MIN_VALUE;
+	// the day of the last value added
+	private long dayStart;
+	private long nextDayStart = Long.MIN_VALUE;
+	private boolean dirty;
+
+	private Rollups(File folder) {
+		this.folder = folder;
+		this.tiers = new Tier[TIERS.length];
+		for (int i = 0; i < TIERS.length; i++) {
+			tiers[i] = new Tier(TIERS[i]);
+		}
+	}
+
+	/**
+	 * Returns the aggregates for the folder, loading or recalculating them if necessary.
+	 * Requires at least the label read lock.
+	 * @param list
+	 * @return
+	 * @throws IOException
+	 */
+	static Rollups get(FileObjectList list) throws IOException {
+		Rollups rollups = list.getRollups();
+		if (rollups != null)
+			return rollups;
+		final File folder = new File(list.getFolderName());
+		rollups = load(folder);
+		if (rollups == null) {
+			rollups = new Rollups(folder);
+			for (SampledValue value : FileObjectProxy.readFolder(list)) {
+				rollups.add(value.getTimestamp(), value.getValue().getDoubleValue(), value.getQuality() == Quality.GOOD);
+			}
+			rollups.dirty = true;
+			rollups.write();
+		}
+		list.setRollups(rollups);
+		return rollups;
+	}
+
+	/**
+	 * Returns the tier to be used for a reduction, i.e. the largest tier whose length divides intervalSize and whose
+	 * interval boundaries include start, end and all boundaries of the reduction intervals; or 0 if there is none.
+	 * @param start
+	 * @param end
+	 * 		exclusive
+	 * @param intervalSize
+	 * @return
+	 */
+	static long getTier(long start, long end, long intervalSize) {
+		if (intervalSize <= 0 || end <= start)
+			return 0;
+		for (int i = TIERS.length - 1; i >= 0; i--) {
+			final long tier = TIERS[i];
+			if (intervalSize % tier == 0 && isAligned(start, end, intervalSize, tier))
+				return tier;
+		}
+		return 0;
+	}
+
+	private static boolean isAligned(long start, long end, long intervalSize, long tier) {
+		if (!isBoundary(end, getDayStart(end), tier))
+			return false;
+		long dayStart = getDayStart(start);
+		long nextDayStart = getNextDayStart(dayStart);
+		for (long t = start;; t += intervalSize) {
+			if (t >= nextDayStart) {
+				dayStart = getDayStart(t);
+				nextDayStart = getNextDayStart(dayStart);
+			}
+			if (!isBoundary(t, dayStart, tier))
+				return false;
+			if (end - t <= intervalSize)
+				return true;
+		}
+	}
+
+	private static boolean isBoundary(long t, long dayStart, long tier) {
+		return tier == DAY ? t == dayStart : (t - dayStart) % tier == 0;
+	}
+
+	/**
+	 * Start of the day containing t in the default time zone, which is also used for the names of the day folders.
+	 */
+	static long getDayStart(long t) {
+		final Calendar cal = Calendar.getInstance();
+		cal.setTimeInMillis(t);
+		cal.set(Calendar.HOUR_OF_DAY, 0);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		return cal.getTimeInMillis();
+	}
+
+	private static long getNextDayStart(long dayStart) {
+		final Calendar cal = Calendar.getInstance();
+		cal.setTimeInMillis(dayStart);
+		cal.add(Calendar.DAY_OF_MONTH, 1);
+		return cal.getTimeInMillis();
+	}
+
+	void add(long timestamp, double value, byte flag) {
+		add(timestamp, value, Quality.getQuality(flag) == Quality.GOOD);
+	}
+
+	// NaN marks a gap and is skipped by readers, values of bad quality are counted but not aggregated
+	private void add(long timestamp, double value, boolean good) {
+		if (timestamp <= lastTimestamp)
+			return;
+		lastTimestamp = timestamp;
+		if (Double.isNaN(value))
+			return;
+		if (timestamp >= nextDayStart || timestamp < dayStart) {
+			dayStart = getDayStart(timestamp);
+			nextDayStart = getNextDayStart(dayStart);
+		}
+		for (Tier tier : tiers) {
+			tier.add(timestamp, dayStart, value, good);
+		}
+		dirty = true;
+	}
+
+	/**
+	 * Passes the intervals of the given tier starting in [start, end] to the reduction.
+	 */
+	void reduce(long tierLength, long start, long end, StreamingReduction reduction) {
+		for (Tier tier : tiers) {
+			if (tier.length != tierLength)
+				continue;
+			for (int i = 0; i < tier.size; i++) {
+				final long t = tier.start[i];
+				if (t < start)
+					continue;
+				if (t > end)
+					break;
+				reduction.add(t, tier.total[i], tier.good[i], tier.sum[i], tier.min[i], tier.max[i]);
+			}
+			return;
+		}
+		throw new IllegalArgumentException("No such tier: " + tierLength);
+	}
+
+	/**
+	 * Stores the aggregates, if they have changed. The log files must have been flushed before.
+	 */
+	void write() {
+		if (!dirty)
+			return;
+		File tmp = null;
+		try {
+			tmp = File.createTempFile(FILE_NAME, ".tmp", folder);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+				out.writeInt(MAGIC);
+				out.writeLong(getDataSize(folder));
+				out.writeLong(lastTimestamp);
+				out.writeInt(tiers.length);
+				for (Tier tier : tiers) {
+					tier.write(out);
+				}
+			}
+			Files.move(tmp.toPath(), new File(folder, FILE_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			dirty = false;
+		} catch (IOException e) {
+			// not critical, the aggregates will be recalculated when needed
+			logger.debug("Failed to store aggregated log data in {}", folder, e);
+			if (tmp != null)
+				tmp.delete();
+		}
+	}
+
+	/**
+	 * Must be called after the log files of the folder have been replaced without changing their content,
+	 * such as by compression. Requires the label write lock.
+	 * @param folder
+	 * @param dataSize
+	 * 		size of the log files before the change
+	 */
+	static void revalidate(File folder, long dataSize) {
+		final Rollups rollups = load(folder, dataSize);
+		if (rollups == null)
+			return;
+		rollups.dirty = true;
+		rollups.write();
+	}
+
+	/**
+	 * @return null if there is no valid file
+	 */
+	private static Rollups load(File folder) {
+		return load(folder, getDataSize(folder));
+	}
+
+	private static Rollups load(File folder, long dataSize) {
+		final File file = new File(folder, FILE_NAME);
+		if (!file.isFile())
+			return null;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readLong() != dataSize)
+				return null;
+			final Rollups rollups = new Rollups(folder);
+			rollups.lastTimestamp = in.readLong();
+			if (in.readInt() != TIERS.length)
+				return null;
+			for (Tier tier : rollups.tiers) {
+				if (!tier.read(in))
+					return null;
+			}
+			return rollups;
+		} catch (IOException e) {
+			logger.debug("Failed to load aggregated log data from {}", folder, e);
+			return null;
+		}
+	}
+
+	static long getDataSize(File folder) {
+		final File[] files = folder.listFiles();
+		if (files == null)
+			return 0;
+		long size = 0;
+		for (File file : files) {
+			if (file.getName().endsWith(SlotsDb.FILE_EXTENSION))
+				size += file.length();
+		}
+		return size;
+	}
+
+	private static final class Tier {
+
+		final long length;
+		int size;
+		long[] start;
+		int[] total;
+		int[] good;
+		double[] sum;
+		double[] min;
+		double[] max;
+
+		Tier(long length) {
+			this.length = length;
+			// a day folder covers 23 to 25 hours
+			allocate((int) Math.min(25 * 60 * 60 * 1000L / length + 2, 128));
+		}
+
+		private void allocate(int capacity) {
+			start = new long[capacity];
+			total = new int[capacity];
+			good = new int[capacity];
+			sum = new double[capacity];
+			min = new double[capacity];
+			max = new double[capacity];
+		}
+
+		private void grow() {
+			final int capacity = start.length * 2;
+			start = Arrays.copyOf(start, capacity);
+			total = Arrays.copyOf(total, capacity);
+			good = Arrays.copyOf(good, capacity);
+			sum = Arrays.copyOf(sum, capacity);
+			min = Arrays.copyOf(min, capacity);
+			max = Arrays.copyOf(max, capacity);
+		}
+
+		// timestamps are strictly increasing, so only the last interval may be updated
+		void add(long timestamp, long dayStart, double value, boolean isGood) {
+			final long intervalStart = length == DAY ? dayStart : dayStart + (timestamp - dayStart) / length * length;
+			if (size == 0 || start[size - 1] != intervalStart) {
+				if (size == start.length)
+					grow();
+				start[size] = intervalStart;
+				total[size] = 0;
+				good[size] = 0;
+				sum[size] = 0;
+				min[size] = Double.POSITIVE_INFINITY;
+				max[size] = Double.NEGATIVE_INFINITY;
+				size++;
+			}
+			final int idx = size - 1;
+			total[idx]++;
+			if (!isGood)
+				return;
+			good[idx]++;
+			sum[idx] += value;
+			if (value < min[idx])
+				min[idx] = value;
+			if (value > max[idx])
+				max[idx] = value;
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			out.writeLong(length);
+			out.writeInt(size);
+			for (int i = 0; i < size; i++) {
+				out.writeLong(start[i]);
+				out.writeInt(total[i]);
+				out.writeInt(good[i]);
+				out.writeDouble(sum[i]);
+				out.writeDouble(min[i]);
+				out.writeDouble(max[i]);
+			}
+		}
+
+		boolean read(DataInputStream in) throws IOException {
+			if (in.readLong() != length)
+				return false;
+			final int size = in.readInt();
+			if (size < 0)
+				return false;
+			if (size > start.length)
+				allocate(size);
+			for (int i = 0; i < size; i++) {
+				start[i] = in.readLong();
+				total[i] = in.readInt();
+				good[i] = in.readInt();
+				sum[i] = in.readDouble();
+				min[i] = in.readDouble();
+				max[i] = in.readDouble();
+			}
+			this.size = size;
+			return true;
+		}
+
+	}
+
+}
@@ -0,0 +1,262 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Encoder and decoder for a single block of a {@link CompressedFileObject}.<br>
+ * <br>
+ * Block layout: <br>
+ * varint length of quality section | quality section | bit stream <br>
+ * <br>
+ * The quality section is run-length encoded (varint run length, flag byte). The bit stream
+ * contains the timestamps as delta-of-delta values and the values XOR-encoded against their
+ * predecessor (Gorilla-style). The first timestamp and the number of samples are stored in the
+ * block index, not in the block itself.
+ */
+final class SegmentCodec {
+
+	private SegmentCodec() {}
+
+	static byte[] encode(long[] timestamps, double[] values, byte[] flags, int offset, int count) {
+		final ByteArrayOutputStream qualities = new ByteArrayOutputStream();
+		int run = 0;
+		byte lastFlag = 0;
+		for (int i = offset; i < offset + count; i++) {
+			if (run > 0 && flags[i] != lastFlag) {
+				writeVarInt(qualities, run);
+				qualities.write(lastFlag);
+				run = 0;
+			}
+			lastFlag = flags[i];
+			run++;
+		}
+		if (run > 0) {
+			writeVarInt(qualities, run);
+			qualities.write(lastFlag);
+		}
+		final BitWriter bits = new BitWriter(count * 2 + 16);
+		long lastTimestamp = timestamps[offset];
+		long lastDelta = 0;
+		long lastBits = Double.doubleToRawLongBits(values[offset]);
+		int lastLeading = Integer.MAX_VALUE;
+		int lastTrailing = 0;
+		bits.write(lastBits, 64);
+		for (int i = offset + 1; i < offset + count; i++) {
+			final long delta = timestamps[i] - lastTimestamp;
+			final long dod = delta - lastDelta;
+			if (dod == 0) {
+				bits.write(0, 1);
+			}
+			else if (dod >= -63 && dod <= 64) {
+				bits.write(0b10, 2);
+				bits.write(dod + 63, 7);
+			}
+			else if (dod >= -255 && dod <= 256) {
+				bits.write(0b110, 3);
+				bits.write(dod + 255, 9);
+			}
+			else if (dod >= -2047 && dod <= 2048) {
+				bits.write(0b1110, 4);
+				bits.write(dod + 2047, 12);
+			}
+			else if (dod >= Integer.MIN_VALUE && dod <= Integer.MAX_VALUE) {
+				bits.write(0b11110, 5);
+				bits.write(dod, 32);
+			}
+			else {
+				bits.write(0b11111, 5);
+				bits.write(dod, 64);
+			}
+			lastDelta = delta;
+			lastTimestamp = timestamps[i];
+
+			final long valueBits = Double.doubleToRawLongBits(values[i]);
+			final long xor = valueBits ^ lastBits;
+			if (xor == 0) {
+				bits.write(0, 1);
+			}
+			else {
+				int leading = Long.numberOfLeadingZeros(xor);
+				final int trailing = Long.numberOfTrailingZeros(xor);
+				if (leading > 31)
+					leading = 31;
+				if (leading >= lastLeading && trailing >= lastTrailing) {
+					// meaningful bits fit into the previous window
+					bits.write(0b10, 2);
+					bits.write(xor >>> lastTrailing, 64 - lastLeading - lastTrailing);
+				}
+				else {
+					final int meaningful = 64 - leading - trailing;
+					bits.write(0b11, 2);
+					bits.write(leading, 5);
+					bits.write(meaningful - 1, 6);
+					bits.write(xor >>> trailing, meaningful);
+					lastLeading = leading;
+					lastTrailing = trailing;
+				}
+			}
+			lastBits = valueBits;
+		}
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(qualities.size() + bits.length() + 5);
+		writeVarInt(out, qualities.size());
+		final byte[] q = qualities.toByteArray();
+		out.write(q, 0, q.length);
+		final byte[] b = bits.toByteArray();
+		out.write(b, 0, b.length);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodes a block into the passed arrays, starting at index 0.
+	 */
+	static void decode(byte[] block, long firstTimestamp, int count, long[] timestamps, double[] values, byte[] flags) throws IOException {
+		final int[] pos = new int[] { 0 };
+		final int qualityLength = readVarInt(block, pos);
+		final int qualityEnd = pos[0] + qualityLength;
+		int idx = 0;
+		while (pos[0] < qualityEnd) {
+			final int run = readVarInt(block, pos);
+			final byte flag = block[pos[0]++];
+			for (int i = 0; i < run && idx < count; i++)
+				flags[idx++] = flag;
+		}
+		if (idx != count)
+			throw new IOException("Corrupt quality section in compressed slotsdb block");
+		final BitReader bits = new BitReader(block, qualityEnd);
+		long lastTimestamp = firstTimestamp;
+		long lastDelta = 0;
+		long lastBits = bits.read(64);
+		int lastLeading = 0;
+		int lastTrailing = 0;
+		timestamps[0] = firstTimestamp;
+		values[0] = Double.longBitsToDouble(lastBits);
+		for (int i = 1; i < count; i++) {
+			final long dod;
+			if (bits.read(1) == 0)
+				dod = 0;
+			else if (bits.read(1) == 0)
+				dod = bits.read(7) - 63;
+			else if (bits.read(1) == 0)
+				dod = bits.read(9) - 255;
+			else if (bits.read(1) == 0)
+				dod = bits.read(12) - 2047;
+			else if (bits.read(1) == 0)
+				dod = (int) bits.read(32);
+			else
+				dod = bits.read(64);
+			lastDelta = lastDelta + dod;
+			lastTimestamp = lastTimestamp + lastDelta;
+			timestamps[i] = lastTimestamp;
+
+			if (bits.read(1) != 0) {
+				if (bits.read(1) == 0) {
+					lastBits ^= bits.read(64 - lastLeading - lastTrailing) << lastTrailing;
+				}
+				else {
+					lastLeading = (int) bits.read(5);
+					final int meaningful = (int) bits.read(6) + 1;
+					lastTrailing = 64 - lastLeading - meaningful;
+					lastBits ^= bits.read(meaningful) << lastTrailing;
+				}
+			}
+			values[i] = Double.longBitsToDouble(lastBits);
+		}
+	}
+
+	private static void writeVarInt(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private static int readVarInt(byte[] in, int[] pos) {
+		int result = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = in[pos[0]++];
+			result |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return result;
+	}
+
+	private static final class BitWriter {
+
+		private byte[] buffer;
+		private long bitPosition = 0;
+
+		BitWriter(int initialSize) {
+			buffer = new byte[initialSize];
+		}
+
+		// writes the nrBits least significant bits of value, most significant first
+		void write(long value, int nrBits) {
+			for (int i = nrBits - 1; i >= 0; i--) {
+				final int byteIdx = (int) (bitPosition >>> 3);
+				if (byteIdx >= buffer.length) {
+					final byte[] newBuffer = new byte[buffer.length * 2];
+					System.arraycopy(buffer, 0, newBuffer, 0, buffer.length);
+					buffer = newBuffer;
+				}
+				if (((value >>> i) & 1) != 0)
+					buffer[byteIdx] |= (byte) (0x80 >>> (bitPosition & 7));
+				bitPosition++;
+			}
+		}
+
+		int length() {
+			return (int) ((bitPosition + 7) >>> 3);
+		}
+
+		byte[] toByteArray() {
+			final byte[] result = new byte[length()];
+			System.arraycopy(buffer, 0, result, 0, result.length);
+			return result;
+		}
+
+	}
+
+	private static final class BitReader {
+
+		private final byte[] buffer;
+		private long bitPosition;
+
+		BitReader(byte[] buffer, int byteOffset) {
+			this.buffer = buffer;
+			this.bitPosition = ((long) byteOffset) << 3;
+		}
+
+		long read(int nrBits) throws IOException {
+			long result = 0;
+			for (int i = 0; i < nrBits; i++) {
+				final int byteIdx = (int) (bitPosition >>> 3);
+				if (byteIdx >= buffer.length)
+					throw new IOException("Unexpected end of compressed slotsdb block");
+				result = (result << 1) | ((buffer[byteIdx] >>> (7 - (bitPosition & 7))) & 1);
+				bitPosition++;
+			}
+			return result;
+		}
+
+	}
+
+}
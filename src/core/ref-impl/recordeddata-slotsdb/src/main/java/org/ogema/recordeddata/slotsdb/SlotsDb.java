@@ -26,8 +26,13 @@ import java.security.PrivilegedAction;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
@@ -42,6 +47,7 @@ import org.ogema.core.administration.FrameworkClock.ClockChangeListener;
 import org.ogema.core.administration.FrameworkClock.ClockChangedEvent;
 import org.ogema.core.channelmanager.measurements.SampledValue;
 import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.ReductionMode;
 import org.ogema.recordeddata.DataRecorder;
 import org.ogema.recordeddata.DataRecorderException;
 import org.ogema.recordeddata.RecordedDataStorage;
@@ -134,6 +140,65 @@ public class SlotsDb implements DataRecorder, ClockChangeListener {
 		
 	});
 	
+	/*
+	 * configures after how many days the log data of a day is converted into the compressed
+	 * file format (see CompressedFileObject). Unset this System Property to disable compression.
+	 * Must be at least 1, the current day is never compressed.
+	 */
+	public final static String COMPRESSION_AGE_IN_DAYS = AccessController.doPrivileged(new PrivilegedAction<String>() {
+
+		@Override
+		public String run() {
+			return System.getProperty("org.ogema.recordeddata.slotsdb.compress_after_days");
+		}
+		
+	});
+	
+	/*
+	 * if set to true, log data is written asynchronously and in batches, see WriteBuffer. 
+	 */
+	public final static String ASYNC_WRITES = "org.ogema.recordeddata.slotsdb.async";
+
+	/*
+	 * maximum number of values waiting to be written if ASYNC_WRITES is enabled. If the buffer 
+	 * is full, inserting threads are blocked.
+	 */
+	public final static String ASYNC_CAPACITY = "org.ogema.recordeddata.slotsdb.async_capacity";
+
+	public final static int ASYNC_CAPACITY_DEFAULT = 4096;
+
+	/*
+	 * if set to true, each batch of asynchronously written values is forced to the storage device. 
+	 * Otherwise data is flushed according to the flush period.
+	 */
+	public final static String ASYNC_FSYNC = "org.ogema.recordeddata.slotsdb.async_fsync";
+
+	/*
+	 * if set to true, aggregated values (count, sum, minimum, maximum) per 15 minutes, hour and day are 
+	 * maintained alongside the log data and used for reductions with matching intervals, see Rollups.
+	 */
+	public final static String ROLLUPS = "org.ogema.recordeddata.slotsdb.rollups";
+
+	/*
+	 * if set to true, the catalog of day and label folders is stored on shutdown and restored on startup,
+	 * so that unchanged day folders need not be listed again, see FolderCatalog.
+	 */
+	public final static String CATALOG_SNAPSHOT = "org.ogema.recordeddata.slotsdb.catalog_snapshot";
+
+	/*
+	 * maximum heap size (in MB) of log data cached in memory, see SlotsDbCache. Set to 0 to disable caching.
+	 */
+	public final static String CACHE_SIZE = "org.ogema.recordeddata.slotsdb.cache_size";
+
+	public final static int CACHE_SIZE_DEFAULT = 32;
+
+	/*
+	 * maximum number of threads reading log data in parallel for multi-series requests, see 
+	 * getValues(List, long, long, long, ReductionMode). Defaults to the number of processors; 
+	 * set to 1 to read on the calling thread.
+	 */
+	public final static String READ_PARALLELISM = "org.ogema.recordeddata.slotsdb.read_parallelism";
+
 	/*
 	 * configures the maximum Database Size (in MB).
 	 */
@@ -175,6 +240,8 @@ public class SlotsDb implements DataRecorder, ClockChangeListener {
     
 	private String dbRootFolder; // quasi-final
 	private FileObjectProxy proxy; // quasi-final
+	private volatile WriteBuffer writeBuffer; // null if values are written synchronously
+	private ForkJoinPool readPool; // created on demand; guarded by this
 	private String SLOTS_DB_STORAGE_ID_PATH; // quasi-final
 	private final Map<String, SlotsDbStorage> slotsDbStorages = new HashMap<String, SlotsDbStorage>();
 	
@@ -210,6 +277,31 @@ public class SlotsDb implements DataRecorder, ClockChangeListener {
 		SLOTS_DB_STORAGE_ID_PATH = baseFolder + "/slotsDbStorageIDs.ser";
 		this.proxy = new FileObjectProxy(baseFolder, clock);
 		readPersistedSlotsDbStorages();
+		final boolean async = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+
+			@Override
+			public Boolean run() {
+				return Boolean.getBoolean(ASYNC_WRITES);
+			}
+		});
+		if (async) {
+			final int capacity = AccessController.doPrivileged(new PrivilegedAction<Integer>() {
+
+				@Override
+				public Integer run() {
+					return Integer.getInteger(ASYNC_CAPACITY, ASYNC_CAPACITY_DEFAULT);
+				}
+			});
+			final boolean fsync = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+
+				@Override
+				public Boolean run() {
+					return Boolean.getBoolean(ASYNC_FSYNC);
+				}
+			});
+			FileObjectProxy.logger.info("Writing log data asynchronously, buffer capacity: {}, fsync: {}", capacity, fsync);
+			this.writeBuffer = new WriteBuffer(Math.max(capacity, 1), fsync);
+		}
 	}
 
 	@Activate
@@ -220,6 +312,13 @@ public class SlotsDb implements DataRecorder, ClockChangeListener {
 
 	@Deactivate
 	protected synchronized void deactivate(Map<String, Object> config) {
+		final WriteBuffer writeBuffer = this.writeBuffer;
+		if (writeBuffer != null)
+			writeBuffer.close();
+		this.writeBuffer = null;
+		if (readPool != null)
+			readPool.shutdown();
+		readPool = null;
 		if (proxy != null)
 			proxy.close();
 		synchronized (slotsDbStorages) {
@@ -237,6 +336,13 @@ public class SlotsDb implements DataRecorder, ClockChangeListener {
 		return proxy;
 	}
 	
+	/**
+	 * @return null if values are written synchronously
+	 */
+	final WriteBuffer getWriteBuffer() {
+		return writeBuffer;
+	}
+	
 	/**
 	 * Persist the all SlotsDbStorage objects
 	 */
@@ -348,6 +454,82 @@ public class SlotsDb implements DataRecorder, ClockChangeListener {
 		}
 		return ids;
 	}
+
+	@Override
+	public Map<String, List<SampledValue>> getValues(final List<String> ids, final long startTime, final long endTime,
+			final long intervalSize, final ReductionMode mode) {
+		final Map<String, RecordedDataStorage> storages = new LinkedHashMap<>();
+		synchronized (slotsDbStorages) {
+			for (String id : ids) {
+				final RecordedDataStorage storage = slotsDbStorages.get(id);
+				if (storage != null)
+					storages.put(id, storage);
+			}
+		}
+		final Map<String, List<SampledValue>> result = new LinkedHashMap<>();
+		final ForkJoinPool pool = storages.size() > 1 ? getReadPool() : null;
+		if (pool == null) {
+			for (Map.Entry<String, RecordedDataStorage> entry : storages.entrySet()) {
+				result.put(entry.getKey(), entry.getValue().getValues(startTime, endTime, intervalSize, mode));
+			}
+			return result;
+		}
+		final List<Callable<List<SampledValue>>> tasks = new ArrayList<>(storages.size());
+		for (final RecordedDataStorage storage : storages.values()) {
+			tasks.add(new Callable<List<SampledValue>>() {
+
+				@Override
+				public List<SampledValue> call() throws Exception {
+					return storage.getValues(startTime, endTime, intervalSize, mode);
+				}
+			});
+		}
+		final List<Future<List<SampledValue>>> futures = pool.invokeAll(tasks);
+		final Iterator<Future<List<SampledValue>>> it = futures.iterator();
+		try {
+			for (String id : storages.keySet()) {
+				result.put(id, it.next().get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while reading log data", e);
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+		return result;
+	}
+
+	/**
+	 * @return null if log data is to be read on the calling thread
+	 */
+	private synchronized ForkJoinPool getReadPool() {
+		if (readPool != null)
+			return readPool;
+		if (proxy == null) // not active
+			return null;
+		final int parallelism = AccessController.doPrivileged(new PrivilegedAction<Integer>() {
+
+			@Override
+			public Integer run() {
+				return Integer.getInteger(READ_PARALLELISM, Runtime.getRuntime().availableProcessors());
+			}
+		});
+		if (parallelism <= 1)
+			return null;
+		readPool = AccessController.doPrivileged(new PrivilegedAction<ForkJoinPool>() {
+
+			@Override
+			public ForkJoinPool run() {
+				return new ForkJoinPool(parallelism);
+			}
+		});
+		return readPool;
+	}
 	
 	@Override
 	public void clockChanged(ClockChangedEvent e) {
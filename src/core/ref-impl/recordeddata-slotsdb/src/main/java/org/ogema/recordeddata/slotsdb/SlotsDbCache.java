@@ -16,37 +16,96 @@
 package org.ogema.recordeddata.slotsdb;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.ogema.core.channelmanager.measurements.SampledValue;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
 
+/**
+ * Cache for the content of log files, bounded by the approximate heap size of the cached values.
+ * Least recently used files are evicted first.
+ */
 class SlotsDbCache {
 
 	/*
 	 *Map< encoded recorded data id + "/" + filename -> values> 
 	 */
-	private final Cache<String, List<SampledValue>> valueCache = CacheBuilder.newBuilder().softValues().build();
+	private final Cache<String, CachedValues> valueCache;
+	private final AtomicLong residentBytes = new AtomicLong();
+	/*
+	 *Map< encoded recorded data id + "/" + filename -> timestamp index>; only used for flexible interval files 
+	 */
+	private final Cache<String, TimestampIndex> indexCache = CacheBuilder.newBuilder().softValues().build();
+	
+	/**
+	 * @param maxBytes
+	 * 		maximum approximate heap size of the cached values; 0 disables the value cache
+	 */
+	SlotsDbCache(long maxBytes) {
+		this.valueCache = CacheBuilder.newBuilder()
+				.maximumWeight(maxBytes)
+				.weigher(new Weigher<String, CachedValues>() {
+
+					@Override
+					public int weigh(String key, CachedValues values) {
+						return values.getWeight();
+					}
+				})
+				.removalListener(new RemovalListener<String, CachedValues>() {
+
+					@Override
+					public void onRemoval(RemovalNotification<String, CachedValues> notification) {
+						residentBytes.addAndGet(-notification.getValue().getWeight());
+					}
+				})
+				.recordStats()
+				.build();
+	}
 	
 	private final void cache(final String accessToken, final List<SampledValue> values) {
-		valueCache.put(accessToken, values);
+		final CachedValues cached = values instanceof CachedValues ? (CachedValues) values : new CachedValues(values);
+		// added before the put, since the removal listener may be invoked immediately
+		residentBytes.addAndGet(cached.getWeight());
+		valueCache.put(accessToken, cached);
 	}
 	
 	private final void invalidate(final String accessToken) {
 		valueCache.invalidate(accessToken);
 	}
 	
-	private final List<SampledValue> getCache(final String accessToken) {
+	private final CachedValues getCache(final String accessToken) {
 		return valueCache.getIfPresent(accessToken);
 	}
 	
+	/**
+	 * @return
+	 * 		hit and miss counts, evictions etc. of the value cache
+	 */
+	CacheStats getStats() {
+		return valueCache.stats();
+	}
+	
+	/**
+	 * @return
+	 * 		approximate heap size of the cached values in bytes
+	 */
+	long getResidentBytes() {
+		return residentBytes.get();
+	}
+	
 	final RecordedDataCache getCache(String encodedRecordedData, String filename) {
 		return new RecordedDataCacheImpl(this, encodedRecordedData, filename);
 	}
 	
 	void clearCache() {
 		valueCache.invalidateAll();
+		indexCache.invalidateAll();
 	}
 	
 	/**
@@ -72,10 +131,21 @@ class SlotsDbCache {
 			globalCache.invalidate(key);
 		}
 		
-		public List<SampledValue> getCache() {
+		public CachedValues getCache() {
 			return globalCache.getCache(key);
 		}
 		
+		public TimestampIndex getIndex() {
+			return globalCache.indexCache.getIfPresent(key);
+		}
+		
+		public void setIndex(TimestampIndex index) {
+			if (index == null)
+				globalCache.indexCache.invalidate(key);
+			else
+				globalCache.indexCache.put(key, index);
+		}
+		
 	}
 	
 }
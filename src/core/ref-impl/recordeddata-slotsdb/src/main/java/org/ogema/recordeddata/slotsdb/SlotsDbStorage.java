@@ -22,6 +22,7 @@ import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -33,8 +34,7 @@ import org.ogema.core.recordeddata.ReductionMode;
 import org.ogema.core.timeseries.InterpolationMode;
 import org.ogema.recordeddata.DataRecorderException;
 import org.ogema.recordeddata.RecordedDataStorage;
-import org.ogema.recordeddata.slotsdb.reduction.Reduction;
-import org.ogema.recordeddata.slotsdb.reduction.ReductionFactory;
+import org.ogema.recordeddata.slotsdb.reduction.StreamingReduction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,6 +46,8 @@ class SlotsDbStorage implements RecordedDataStorage {
 	private final SlotsDb recorder;
 	
 	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	// number of values in the write buffer, see WriteBuffer
+	final AtomicInteger pendingWrites = new AtomicInteger();
 	
 	private final static Logger logger = LoggerFactory.getLogger(SlotsDbStorage.class);
 
@@ -62,7 +64,16 @@ class SlotsDbStorage implements RecordedDataStorage {
 
 	@Override
 	public void insertValue(final SampledValue value) throws DataRecorderException {
-
+		final WriteBuffer buffer = recorder.getWriteBuffer();
+		if (buffer != null) {
+			try {
+				if (buffer.add(this, value))
+					return;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new DataRecorderException("Interrupted while waiting for the write buffer", e);
+			}
+		}
 		try {
 			AccessController.doPrivileged(new PrivilegedExceptionAction<Void>() {
 
@@ -97,7 +108,28 @@ class SlotsDbStorage implements RecordedDataStorage {
 
 	@Override
 	public void insertValues(final List<SampledValue> values) throws DataRecorderException {
-
+		final WriteBuffer buffer = recorder.getWriteBuffer();
+		if (buffer != null) {
+			int cnt = 0;
+			try {
+				for (SampledValue value : values) {
+					if (!buffer.add(this, value))
+						break;
+					cnt++;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new DataRecorderException("Interrupted while waiting for the write buffer", e);
+			}
+			if (cnt == values.size())
+				return;
+			insertValuesDirectly(values.subList(cnt, values.size()));
+			return;
+		}
+		insertValuesDirectly(values);
+	}
+	
+	private void insertValuesDirectly(final List<SampledValue> values) throws DataRecorderException {
 		try {
 			AccessController.doPrivileged(new PrivilegedExceptionAction<Void>() {
 
@@ -106,16 +138,10 @@ class SlotsDbStorage implements RecordedDataStorage {
 					lock.writeLock().lock();
 					try {
 						if (configuration != null) {
-
-							for (SampledValue value : values) {
-								recorder.getProxy().appendValue(id, value.getValue().getDoubleValue(), value.getTimestamp(),
-										(byte) value.getQuality().getQuality(), configuration);
-							}
+							recorder.getProxy().appendValues(id, values, configuration, false);
 						}
 					} catch (IOException e) {
 						logger.error("", e);
-					} catch (IllegalConversionException e) {
-						logger.error("", e);
 					} finally {
 						lock.writeLock().unlock();
 					}
@@ -128,8 +154,44 @@ class SlotsDbStorage implements RecordedDataStorage {
 		}
 	}
 
+	/**
+	 * Writes the values of this storage pending in the write buffer, called by the buffer thread.
+	 * @param values
+	 * @param sync
+	 * @throws IOException
+	 */
+	void commit(final List<SampledValue> values, final boolean sync) throws IOException {
+		lock.writeLock().lock();
+		try {
+			if (configuration != null) {
+				recorder.getProxy().appendValues(id, values, configuration, sync);
+			}
+		} finally {
+			lock.writeLock().unlock();
+			pendingWrites.addAndGet(-values.size());
+		}
+	}
+	
+	/*
+	 * Waits for values of this storage pending in the write buffer, so they are visible to readers. 
+	 * Must not be called while holding the lock.
+	 */
+	private void awaitPendingWrites() {
+		if (pendingWrites.get() == 0)
+			return;
+		final WriteBuffer buffer = recorder.getWriteBuffer();
+		if (buffer == null)
+			return;
+		try {
+			buffer.sync();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
 	@Override
 	public List<SampledValue> getValues(final long startTime) {
+		awaitPendingWrites();
 
 		try {
 			return AccessController
@@ -167,7 +229,7 @@ class SlotsDbStorage implements RecordedDataStorage {
 
 	@Override
 	public List<SampledValue> getValues(final long startTime, final long endTime) {
-
+		awaitPendingWrites();
 		try {
 			return AccessController
 					.doPrivileged(new PrivilegedExceptionAction<List<SampledValue>>() {
@@ -203,7 +265,7 @@ class SlotsDbStorage implements RecordedDataStorage {
 
 	@Override
 	public SampledValue getValue(final long timestamp) {
-
+		awaitPendingWrites();
 		try {
 			return AccessController.doPrivileged(new PrivilegedExceptionAction<SampledValue>() {
 
@@ -237,6 +299,7 @@ class SlotsDbStorage implements RecordedDataStorage {
 	@Override
 	public List<SampledValue> getValues(final long startTime, final long endTime, final long intervalSize,
 			final ReductionMode mode) {
+		awaitPendingWrites();
 
 		// last timestamp is exclusive and therefore not part of the request
 		final long endTimeMinusOne = endTime - 1;
@@ -250,20 +313,11 @@ class SlotsDbStorage implements RecordedDataStorage {
 
 							// ----------------
 
-							// TODO could cause crash? extremely long requested time period of very small sampled values
 							List<SampledValue> returnValues = new ArrayList<SampledValue>();
-
-							if (validateArguments(startTime, endTimeMinusOne, intervalSize)) {
-
-								// Issues to consider:
-								// a) calling the for each subinterval will slow down the reduction (many file accesses)
-								// b) calling the read for the whole requested time period might be problematic -
-								// especially when requested
-								// time
-								// period is large and the log interval was very small (large number of values)
-								// Compromise: When the requested time period covers multiple days and therefore
-								// multiple log files, then a
-								// separate read data processing is performed for each file.
+							if (!validateArguments(startTime, endTimeMinusOne, intervalSize)) {
+								return returnValues;
+							}
+							if (mode.equals(ReductionMode.NONE)) {
 								final List<SampledValue> loggedValues;
 								lock.readLock().lock();
 								try {
@@ -271,22 +325,24 @@ class SlotsDbStorage implements RecordedDataStorage {
 								} finally {
 									lock.readLock().unlock();
 								}
-//								List<SampledValue> loggedValues = removeQualityBad(loggedValuesRaw);
-
-								if (loggedValues.isEmpty()) {
-									// return an empty list since there are no logged values, so it doesn't make sense
-									// to aggregate anything
-									return returnValues;
-								}
-
-								if (mode.equals(ReductionMode.NONE)) {
-									return removeQualityBad(loggedValues);
+								return removeQualityBad(loggedValues);
+							}
+							if (intervalSize == 0) {
+								logger.warn("Invalid arguments: interval must be > 0");
+								return returnValues;
+							}
+							final long tier = recorder.getProxy().getRollupTier(startTime, endTime, intervalSize);
+							if (tier > 0) {
+								lock.readLock().lock();
+								try {
+									return recorder.getProxy().reduce(id, startTime, endTimeMinusOne, tier, intervalSize, mode);
+								} finally {
+									lock.readLock().unlock();
 								}
-
-								List<Interval> intervals = generateIntervals(startTime, endTimeMinusOne, intervalSize);
-								returnValues = generateReducedData(intervals, loggedValues.iterator(), mode);
-
 							}
+							// log data is read day by day and reduced on the fly, without collecting all values
+							final Iterator<SampledValue> loggedValues = new SlotsDbIterator(id, recorder, lock, startTime, endTimeMinusOne);
+							returnValues = StreamingReduction.reduce(loggedValues, startTime, endTimeMinusOne, intervalSize, mode);
 
 							return returnValues;
 
@@ -301,144 +357,6 @@ class SlotsDbStorage implements RecordedDataStorage {
 		}
 	}
 
-	/**
-	 * Generates equidistant intervals starting from periodStart till periodEnd. The last interval might have a
-	 * different length than intervalSize.
-	 * 
-	 * ASSUMPTION: Arguments are valid (see validateArguments method)
-	 * 
-	 * @return List of intervals which cover the entire period
-	 */
-	private static List<Interval> generateIntervals(long periodStart, long periodEnd, long intervalSize) {
-
-		final List<Interval> intervals = new ArrayList<Interval>();
-
-		long start = periodStart;
-		long end;
-		do {
-			end = start + intervalSize - 1;
-			if (end > periodEnd) {
-				end = periodEnd;
-			}
-			intervals.add(new Interval(start, end));
-			start = end + 1;
-		} while (end != periodEnd);
-
-		return intervals;
-	}
-
-	private static List<SampledValue> generateReducedData(List<Interval> intervals, List<SampledValue> loggedValues, ReductionMode mode) {
-
-		final List<SampledValue> returnValues = new ArrayList<SampledValue>();
-		List<SampledValue> reducedValues;
-
-		ReductionFactory reductionFactory = new ReductionFactory();
-		Reduction reduction = reductionFactory.getReduction(mode);
-
-		int index = 0; // used to move forwards in the loggedValues list
-		int maxIndex = loggedValues.size() - 1;
-		SampledValue loggedValue = loggedValues.get(index);
-		long timestamp = loggedValue.getTimestamp();
-
-		Iterator<Interval> it = intervals.iterator();
-		Interval interval;
-
-		while (it.hasNext()) {
-
-			interval = it.next();
-
-			while (timestamp >= interval.getStart() && timestamp <= interval.getEnd()) {
-
-				if (loggedValue.getQuality() == Quality.GOOD)
-					interval.add(loggedValue);
-
-				if (index < maxIndex) {
-					index++;
-					loggedValue = loggedValues.get(index);
-					timestamp = loggedValue.getTimestamp();
-				}
-				else {
-					// complete loggedValues list is processed
-					break;
-				}
-			}
-
-			reducedValues = reduction.performReduction(interval.getValues(), interval.getStart());
-			returnValues.addAll(reducedValues);
-
-		}
-
-		// debug_printIntervals(intervals);
-
-		return returnValues;
-	}
-	
-	// ignores bad quality values
-	private static List<SampledValue> generateReducedData(List<Interval> intervals, Iterator<SampledValue> loggedValues, ReductionMode mode) {
-
-		final List<SampledValue> returnValues = new ArrayList<SampledValue>();
-		if (!loggedValues.hasNext())
-			return returnValues;
-		List<SampledValue> reducedValues;
-
-		final ReductionFactory reductionFactory = new ReductionFactory();
-		final Reduction reduction = reductionFactory.getReduction(mode);
-
-		
-		SampledValue loggedValue = loggedValues.next();
-		long timestamp = loggedValue.getTimestamp();
-
-		Iterator<Interval> it = intervals.iterator();
-		Interval interval;
-		boolean done = false;
-		while (it.hasNext()) {
-
-			interval = it.next();
-			
-			while (   timestamp >= interval.getStart() && timestamp <= interval.getEnd()) {
-
-				if (loggedValue.getQuality() == Quality.GOOD)
-					interval.add(loggedValue);
-				if (!loggedValues.hasNext()) {
-					done = true;
-					break;
-				}
-				loggedValue = loggedValues.next();
-				timestamp = loggedValue.getTimestamp();
-				
-			}
-
-			reducedValues = reduction.performReduction(interval.getValues(), interval.getStart());
-			returnValues.addAll(reducedValues);
-			if (done) 
-				break;
-		}
-		while (it.hasNext()) {
-			interval = it.next();
-			reducedValues = reduction.performReduction(interval.getValues(), interval.getStart());
-			returnValues.addAll(reducedValues);
-		}
-
-		// debug_printIntervals(intervals);
-
-		return returnValues;
-	}
-
-	
-	@SuppressWarnings("unused")
-	private static void debug_printIntervals(List<Interval> intervals) {
-
-		Iterator<Interval> it2 = intervals.iterator();
-		Interval interval2;
-
-		int i = 1;
-		while (it2.hasNext()) {
-			interval2 = it2.next();
-			System.out.println(i + ": " + interval2.getValues().toString());
-			i++;
-		}
-	}
-
 	private static boolean validateArguments(long startTime, long endTime, long interval) {
 		boolean result = false;
 
@@ -530,7 +448,7 @@ class SlotsDbStorage implements RecordedDataStorage {
 
 	@Override
 	public SampledValue getNextValue(final long time) {
-
+		awaitPendingWrites();
 		try {
 			return AccessController.doPrivileged(new PrivilegedExceptionAction<SampledValue>() {
 
@@ -562,6 +480,7 @@ class SlotsDbStorage implements RecordedDataStorage {
 	
 	@Override
 	public SampledValue getPreviousValue(final long time) {
+		awaitPendingWrites();
 		try {
 			return AccessController.doPrivileged(new PrivilegedExceptionAction<SampledValue>() {
 
@@ -620,6 +539,7 @@ class SlotsDbStorage implements RecordedDataStorage {
 
 	@Override
 	public int size(final long startTime, final long endTime) {
+		awaitPendingWrites();
 		try {
 			return AccessController.doPrivileged(new PrivilegedExceptionAction<Integer>() {
 
@@ -642,41 +562,14 @@ class SlotsDbStorage implements RecordedDataStorage {
 
 	@Override
 	public Iterator<SampledValue> iterator() {
+		awaitPendingWrites();
 		return new SlotsDbIterator(id, recorder, lock);
 	}
 
 	@Override
 	public Iterator<SampledValue> iterator(long startTime, long endTime) {
+		awaitPendingWrites();
 		return new SlotsDbIterator(id, recorder, lock, startTime, endTime);
 	}
 
 }
-
-class Interval {
-
-	final List<SampledValue> values = new ArrayList<SampledValue>();
-
-	private final long start;
-	private final long end;
-
-	public Interval(long start, long end) {
-		this.start = start;
-		this.end = end;
-	}
-
-	public long getEnd() {
-		return end;
-	}
-
-	public long getStart() {
-		return start;
-	}
-
-	public void add(SampledValue value) {
-		values.add(value);
-	}
-
-	public List<SampledValue> getValues() {
-		return values;
-	}
-}
@@ -0,0 +1,316 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sparse index of the records of a {@link FlexibleIntervalFileObject}: the timestamp of every {@link #STEP}th record,
+ * and the number of NaN values preceding it. A record is located by a binary search over the index entries, followed
+ * by a single read of at most {@link #STEP} records, so that lookups do not need to read the whole file.<br>
+ * <br>
+ * The index is shared by all file objects for the same file via the {@link RecordedDataCache}, and kept up to date
+ * by the writing file object. Records not yet indexed, e.g. after a restart, are indexed on the next lookup.
+ * On closing a file object the index is stored next to the log file (file extension {@link #FILE_EXTENSION}).<br>
+ * <br>
+ * File layout: <br>
+ * magic (4 bytes) | number of records (4) | last timestamp (8) | number of NaN values (4) | number of entries (4) |
+ * entries <br>
+ * Each entry consists of a timestamp (8) and the number of preceding NaN values (4).
+ */
+final class TimestampIndex {
+
+	private final static Logger logger = LoggerFactory.getLogger(TimestampIndex.class);
+
+	static final String FILE_EXTENSION = ".idx";
+	// records per index entry
+	static final int STEP = 128;
+	private static final int MAGIC = 0x534c4931; // "SLI1"
+	private static final int HEADER_SIZE = 16;
+	private static final int RECORD_SIZE = 17;
+
+	private long[] timestamps = new long[16];
+	private int[] nanBefore = new int[16];
+	// number of indexed records
+	private int count;
+	private int nanCount;
+	private long lastTimestamp = Long.MIN_VALUE;
+	private boolean dirty;
+
+	/**
+	 * Returns the index file belonging to a log file.
+	 */
+	static File getIndexFile(File dataFile) {
+		String name = dataFile.getName();
+		if (name.endsWith(SlotsDb.FILE_EXTENSION))
+			name = name.substring(0, name.length() - SlotsDb.FILE_EXTENSION.length());
+		return new File(dataFile.getParentFile(), name + FILE_EXTENSION);
+	}
+
+	/**
+	 * Loads the index of a log file; if there is no valid index file, an empty index is returned.
+	 * @param dataFile
+	 * @param channel
+	 * 		a channel for reading the log file
+	 * @param recordCount
+	 * 		number of records in the log file
+	 * @return
+	 */
+	static TimestampIndex load(File dataFile, FileChannel channel, int recordCount) {
+		final File file = getIndexFile(dataFile);
+		if (!file.isFile())
+			return new TimestampIndex();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC)
+				return new TimestampIndex();
+			final int count = in.readInt();
+			final long lastTimestamp = in.readLong();
+			final int nanCount = in.readInt();
+			final int entries = in.readInt();
+			if (count < 0 || count > recordCount || entries != (count + STEP - 1) / STEP)
+				return new TimestampIndex();
+			// the log file may have been replaced
+			if (count > 0 && readRecords(channel, count - 1, count).getLong() != lastTimestamp)
+				return new TimestampIndex();
+			final TimestampIndex index = new TimestampIndex();
+			index.ensureCapacity(entries);
+			for (int i = 0; i < entries; i++) {
+				index.timestamps[i] = in.readLong();
+				index.nanBefore[i] = in.readInt();
+			}
+			index.count = count;
+			index.lastTimestamp = lastTimestamp;
+			index.nanCount = nanCount;
+			return index;
+		} catch (IOException e) {
+			logger.debug("Failed to load timestamp index {}", file, e);
+			return new TimestampIndex();
+		}
+	}
+
+	/**
+	 * Stores the index, if it has changed since it has been loaded or stored.
+	 */
+	synchronized void write(File dataFile) {
+		if (!dirty)
+			return;
+		final File folder = dataFile.getParentFile();
+		File tmp = null;
+		try {
+			tmp = File.createTempFile(dataFile.getName(), ".tmp", folder);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(count);
+				out.writeLong(lastTimestamp);
+				out.writeInt(nanCount);
+				final int entries = getEntries(count);
+				out.writeInt(entries);
+				for (int i = 0; i < entries; i++) {
+					out.writeLong(timestamps[i]);
+					out.writeInt(nanBefore[i]);
+				}
+			}
+			Files.move(tmp.toPath(), getIndexFile(dataFile).toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			dirty = false;
+		} catch (IOException e) {
+			// not critical, the index will be recreated when needed
+			logger.debug("Failed to store timestamp index for {}", dataFile, e);
+			if (tmp != null)
+				tmp.delete();
+		}
+	}
+
+	/**
+	 * To be called for every record appended to the log file.
+	 * @param timestamp
+	 * @param value
+	 */
+	synchronized void add(long timestamp, double value) {
+		if (count % STEP == 0) {
+			final int entry = count / STEP;
+			ensureCapacity(entry + 1);
+			timestamps[entry] = timestamp;
+			nanBefore[entry] = nanCount;
+		}
+		count++;
+		if (Double.isNaN(value))
+			nanCount++;
+		lastTimestamp = timestamp;
+		dirty = true;
+	}
+
+	/**
+	 * Indexes all records of the log file that have not been indexed yet.
+	 * @param channel
+	 * @param recordCount
+	 * 		number of records in the log file
+	 * @return
+	 * 		the timestamp of the last record, or Long.MIN_VALUE if there are no records.
+	 * @throws IOException
+	 */
+	synchronized long update(FileChannel channel, int recordCount) throws IOException {
+		while (count < recordCount) {
+			final int to = Math.min(recordCount, count + 16 * STEP);
+			final ByteBuffer bb = readRecords(channel, count, to);
+			for (int i = count; i < to; i++) {
+				final long t = bb.getLong();
+				final double d = bb.getDouble();
+				bb.get();
+				add(t, d);
+			}
+		}
+		if (count == recordCount)
+			return lastTimestamp;
+		// the writer is ahead of the file content
+		return recordCount == 0 ? Long.MIN_VALUE : readRecords(channel, recordCount - 1, recordCount).getLong();
+	}
+
+	/**
+	 * Returns the index of the first record with a timestamp greater or equal to the given one,
+	 * or recordCount if there is none.
+	 * @param channel
+	 * @param recordCount
+	 * 		number of records in the log file
+	 * @param timestamp
+	 * @return
+	 * @throws IOException
+	 */
+	synchronized int lowerBound(FileChannel channel, int recordCount, long timestamp) throws IOException {
+		update(channel, recordCount);
+		final int n = Math.min(count, recordCount);
+		if (n == 0)
+			return 0;
+		// last entry with a timestamp smaller than the requested one
+		int low = 0;
+		int high = getEntries(n) - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			if (timestamps[mid] < timestamp)
+				low = mid + 1;
+			else
+				high = mid - 1;
+		}
+		final int entry = high;
+		if (entry < 0)
+			return 0;
+		final int from = entry * STEP;
+		final int to = Math.min(from + STEP, n);
+		final ByteBuffer bb = readRecords(channel, from, to);
+		for (int i = from; i < to; i++) {
+			final int pos = (i - from) * RECORD_SIZE;
+			final long t = bb.getLong(pos);
+			if (i == from && t != timestamps[entry]) { // should not happen; e.g. the file has been replaced
+				logger.warn("Timestamp index for log file out of sync, recreating it");
+				reset();
+				return lowerBound(channel, recordCount, timestamp);
+			}
+			if (t >= timestamp)
+				return i;
+		}
+		return to;
+	}
+
+	/**
+	 * Returns the number of records in [from, to) that are not NaN.
+	 * @param channel
+	 * @param recordCount
+	 * 		number of records in the log file
+	 * @param from
+	 * @param to
+	 * @return
+	 * @throws IOException
+	 */
+	synchronized int countValues(FileChannel channel, int recordCount, int from, int to) throws IOException {
+		if (to <= from)
+			return 0;
+		update(channel, recordCount);
+		return to - from - (getNanCount(channel, to) - getNanCount(channel, from));
+	}
+
+	// number of NaN values in the records [0, idx)
+	private int getNanCount(FileChannel channel, int idx) throws IOException {
+		if (idx == count)
+			return nanCount;
+		final int entry = idx / STEP;
+		int nans = nanBefore[entry];
+		final int from = entry * STEP;
+		if (idx == from)
+			return nans;
+		final ByteBuffer bb = readRecords(channel, from, idx);
+		for (int i = 0; i < idx - from; i++) {
+			if (Double.isNaN(bb.getDouble(i * RECORD_SIZE + 8)))
+				nans++;
+		}
+		return nans;
+	}
+
+	private void reset() {
+		count = 0;
+		nanCount = 0;
+		lastTimestamp = Long.MIN_VALUE;
+		dirty = true;
+	}
+
+	private void ensureCapacity(int entries) {
+		if (timestamps.length >= entries)
+			return;
+		final int capacity = Math.max(entries, timestamps.length * 2);
+		timestamps = Arrays.copyOf(timestamps, capacity);
+		nanBefore = Arrays.copyOf(nanBefore, capacity);
+	}
+
+	private static int getEntries(int records) {
+		return (records + STEP - 1) / STEP;
+	}
+
+	/**
+	 * Reads the records [from, to) of a flexible interval log file.
+	 * @return
+	 * 		a buffer positioned at the first record
+	 * @throws IOException
+	 */
+	static ByteBuffer readRecords(FileChannel channel, int from, int to) throws IOException {
+		final ByteBuffer bb = ByteBuffer.allocate((to - from) * RECORD_SIZE);
+		long position = HEADER_SIZE + (long) from * RECORD_SIZE;
+		while (bb.hasRemaining()) {
+			final int read = channel.read(bb, position);
+			if (read < 0)
+				throw new IOException("Unexpected end of log file");
+			position += read;
+		}
+		// casting is a hack to avoid incompatibility when building this on Java 9 and run on Java 8
+		((Buffer) bb).flip();
+		return bb;
+	}
+
+}
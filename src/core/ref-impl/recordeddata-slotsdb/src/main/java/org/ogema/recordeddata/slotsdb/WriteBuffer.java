@@ -0,0 +1,199 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous ingestion of log data. Values for all storages of one {@link SlotsDb} are collected
+ * in a bounded queue and written by a single thread in batches, so that each file is written and
+ * flushed only once per batch. If the queue is full, inserting threads block until space is available.
+ * Storages with pending values wait for the buffer before reading, see {@link #sync()}.
+ */
+final class WriteBuffer implements Runnable {
+
+	private final static Logger logger = LoggerFactory.getLogger(WriteBuffer.class);
+	// signals the writer thread to terminate
+	private final static Entry STOP = new Entry(null, null, null);
+
+	private final BlockingQueue<Entry> queue;
+	private final int maxBatchSize;
+	private final boolean fsync;
+	private final Thread thread;
+	// held in read mode while adding entries, and in write mode to close the buffer, so that
+	// no entry can be added after STOP
+	private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+	private volatile boolean closed = false;
+
+	/**
+	 * @param capacity
+	 * 		maximum number of values waiting to be written
+	 * @param fsync
+	 * 		if true, each batch is forced to the storage device, otherwise data is flushed
+	 * 		according to the flush period of the {@link FileObjectProxy}.
+	 */
+	WriteBuffer(int capacity, boolean fsync) {
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.maxBatchSize = capacity;
+		this.fsync = fsync;
+		this.thread = new Thread(this, "slotsdb-write-buffer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Adds a value to the buffer, waiting for space if necessary.
+	 * @param storage
+	 * @param value
+	 * @return
+	 * 		false if the buffer has been closed; in this case the value must be written directly. 
+	 * 		Values added before are written by then.
+	 * @throws InterruptedException
+	 */
+	boolean add(SlotsDbStorage storage, SampledValue value) throws InterruptedException {
+		closeLock.readLock().lockInterruptibly();
+		try {
+			if (closed) {
+				thread.join(30000);
+				return false;
+			}
+			storage.pendingWrites.incrementAndGet();
+			try {
+				queue.put(new Entry(storage, value, null));
+			} catch (InterruptedException e) {
+				storage.pendingWrites.decrementAndGet();
+				throw e;
+			}
+			return true;
+		} finally {
+			closeLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Waits until all values added before this call have been written.
+	 * @throws InterruptedException
+	 */
+	void sync() throws InterruptedException {
+		if (Thread.currentThread() == thread)
+			return;
+		final CountDownLatch latch = new CountDownLatch(1);
+		closeLock.readLock().lockInterruptibly();
+		try {
+			if (closed)
+				return;
+			queue.put(new Entry(null, null, latch));
+		} finally {
+			closeLock.readLock().unlock();
+		}
+		while (!latch.await(1, TimeUnit.SECONDS)) {
+			if (!thread.isAlive())
+				return;
+		}
+	}
+
+	/**
+	 * Writes all pending values and stops the writer thread.
+	 */
+	void close() {
+		// waits for concurrent add() calls, which may be blocked until the writer thread has made space
+		closeLock.writeLock().lock();
+		try {
+			if (closed)
+				return;
+			closed = true;
+		} finally {
+			closeLock.writeLock().unlock();
+		}
+		try {
+			queue.put(STOP);
+			thread.join(30000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void run() {
+		final List<Entry> batch = new ArrayList<>();
+		boolean stopped = false;
+		while (!stopped) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				continue;
+			}
+			queue.drainTo(batch, maxBatchSize - 1);
+			// STOP is always the last entry
+			stopped = batch.contains(STOP);
+			commit(batch);
+			batch.clear();
+		}
+	}
+
+	private void commit(final List<Entry> batch) {
+		final Map<SlotsDbStorage, List<SampledValue>> values = new LinkedHashMap<>();
+		for (Entry entry : batch) {
+			if (entry.storage == null)
+				continue;
+			List<SampledValue> list = values.get(entry.storage);
+			if (list == null) {
+				list = new ArrayList<>();
+				values.put(entry.storage, list);
+			}
+			list.add(entry.value);
+		}
+		for (Map.Entry<SlotsDbStorage, List<SampledValue>> entry : values.entrySet()) {
+			try {
+				entry.getKey().commit(entry.getValue(), fsync);
+			} catch (Exception e) {
+				logger.error("Failed to write log data for {}", entry.getKey().getPath(), e);
+			}
+		}
+		for (Entry entry : batch) {
+			if (entry.barrier != null)
+				entry.barrier.countDown();
+		}
+	}
+
+	private static final class Entry {
+
+		final SlotsDbStorage storage;
+		final SampledValue value;
+		final CountDownLatch barrier;
+
+		Entry(SlotsDbStorage storage, SampledValue value, CountDownLatch barrier) {
+			this.storage = storage;
+			this.value = value;
+			this.barrier = barrier;
+		}
+
+	}
+
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb.reduction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.ReductionMode;
+import org.ogema.recordeddata.slotsdb.DoubleValues;
+
+/**
+ * Single pass reduction of log data. The values are consumed in temporal order and aggregated
+ * per interval in primitive fields, so neither the values of an interval nor the intervals
+ * themselves are collected. The result equals the one of the {@link Reduction} implementations
+ * applied to equidistant intervals: only values of quality GOOD are taken into account, and for
+ * intervals without such values a value of quality BAD is returned.
+ */
+public final class StreamingReduction {
+
+	// upper bound for the initial capacity of the result list
+	private static final int MAX_INITIAL_CAPACITY = 1 << 16;
+
+	private final ReductionMode mode;
+	private final long start;
+	private final long end;
+	private final long intervalSize;
+	private final List<SampledValue> result;
+	private long intervalStart;
+	private long intervalEnd;
+	private int count;
+	private double sum;
+	private double min;
+	private double max;
+	private boolean empty = true;
+
+	/**
+	 * Creates a reduction of the period [start, end] to one value per interval (two for
+	 * {@link ReductionMode#MIN_MAX_VALUE}). The intervals start at start and have length intervalSize,
+	 * except for the last one, which ends at end. Values or aggregates must be added in temporal order,
+	 * then the result is obtained from {@link #getResult()}.
+	 *
+	 * @param start
+	 * 		period start, inclusive
+	 * @param end
+	 * 		period end, inclusive
+	 * @param intervalSize
+	 * 		must be positive
+	 * @param mode
+	 * 		any mode but {@link ReductionMode#NONE}
+	 * @throws IllegalArgumentException
+	 * 		if mode is {@link ReductionMode#NONE}, intervalSize is not positive, or end is smaller than start
+	 */
+	public StreamingReduction(long start, long end, long intervalSize, ReductionMode mode) {
+		if (mode == ReductionMode.NONE)
+			throw new IllegalArgumentException("Mode " + mode.toString() + " not supported");
+		if (intervalSize <= 0)
+			throw new IllegalArgumentException("Interval size must be positive, got " + intervalSize);
+		if (end < start)
+			throw new IllegalArgumentException("End " + end + " is smaller than start " + start);
+		this.mode = mode;
+		this.start = start;
+		this.end = end;
+		this.intervalSize = intervalSize;
+		long nrIntervals = (end - start) / intervalSize + 1;
+		if (nrIntervals <= 0 || nrIntervals > MAX_INITIAL_CAPACITY) // may overflow for very long periods
+			nrIntervals = MAX_INITIAL_CAPACITY;
+		final int valuesPerInterval = mode == ReductionMode.MIN_MAX_VALUE ? 2 : 1;
+		this.result = new ArrayList<>((int) nrIntervals * valuesPerInterval);
+		this.intervalStart = start;
+		this.intervalEnd = getIntervalEnd(start);
+		reset();
+	}
+
+	/**
+	 * Reduces the values in the period [start, end], see {@link #StreamingReduction(long, long, long, ReductionMode)}.
+	 *
+	 * @param values
+	 * 		log data sorted by timestamp; values outside the period are ignored
+	 * @param start
+	 * @param end
+	 * @param intervalSize
+	 * @param mode
+	 * @return
+	 * 		the reduced values, or an empty list if there are no values in the period at all
+	 * @throws IllegalArgumentException
+	 * 		if mode is {@link ReductionMode#NONE}, intervalSize is not positive, or end is smaller than start
+	 */
+	public static List<SampledValue> reduce(final Iterator<SampledValue> values, final long start, final long end,
+			final long intervalSize, final ReductionMode mode) {
+		final StreamingReduction reduction = new StreamingReduction(start, end, intervalSize, mode);
+		while (values.hasNext()) {
+			final SampledValue value = values.next();
+			if (value.getTimestamp() > end)
+				break;
+			reduction.add(value);
+		}
+		return reduction.getResult();
+	}
+
+	/**
+	 * Adds a single value; values outside the period are ignored.
+	 * @param value
+	 */
+	public void add(SampledValue value) {
+		final long t = value.getTimestamp();
+		if (t < start || t > end)
+			return;
+		moveTo(t);
+		if (value.getQuality() == Quality.GOOD)
+			add(value.getValue().getDoubleValue());
+	}
+
+	/**
+	 * Adds pre-aggregated values, which must all belong to the same interval as timestamp;
+	 * aggregates outside the period are ignored.
+	 * @param timestamp
+	 * @param nrValues
+	 * 		number of values, including those of bad quality
+	 * @param nrGoodValues
+	 * 		number of values of quality GOOD; sum, min and max refer to these
+	 * @param sum
+	 * @param min
+	 * @param max
+	 */
+	public void add(long timestamp, int nrValues, int nrGoodValues, double sum, double min, double max) {
+		if (nrValues == 0 || timestamp < start || timestamp > end)
+			return;
+		moveTo(timestamp);
+		if (nrGoodValues == 0)
+			return;
+		this.count += nrGoodValues;
+		this.sum += sum;
+		if (min < this.min)
+			this.min = min;
+		if (max > this.max)
+			this.max = max;
+	}
+
+	/**
+	 * Must be called only once, after all values have been added.
+	 * @return
+	 * 		the reduced values, or an empty list if no values have been added
+	 */
+	public List<SampledValue> getResult() {
+		if (empty)
+			return Collections.emptyList();
+		while (intervalEnd < end) {
+			nextInterval();
+		}
+		emit();
+		return result;
+	}
+
+	private void moveTo(long t) {
+		empty = false;
+		while (t > intervalEnd) {
+			nextInterval();
+		}
+	}
+
+	private long getIntervalEnd(long intervalStart) {
+		if (end - intervalStart < intervalSize) // avoids an overflow
+			return end;
+		return intervalStart + intervalSize - 1;
+	}
+
+	private void add(double value) {
+		count++;
+		sum += value;
+		if (value < min)
+			min = value;
+		if (value > max)
+			max = value;
+	}
+
+	private void nextInterval() {
+		emit();
+		reset();
+		intervalStart = intervalEnd + 1;
+		intervalEnd = getIntervalEnd(intervalStart);
+	}
+
+	private void reset() {
+		count = 0;
+		sum = 0;
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+	}
+
+	private void emit() {
+		switch (mode) {
+		case AVERAGE:
+			emit(sum / count);
+			break;
+		case MINIMUM_VALUE:
+			emit(min);
+			break;
+		case MAXIMUM_VALUE:
+			emit(max);
+			break;
+		case MIN_MAX_VALUE:
+			emit(min);
+			emit(max);
+			break;
+		default:
+			throw new IllegalArgumentException("Mode " + mode.toString() + " not supported");
+		}
+	}
+
+	private void emit(double value) {
+		if (count == 0)
+			result.add(new SampledValue(DoubleValues.of(0), intervalStart, Quality.BAD));
+		else
+			result.add(new SampledValue(DoubleValues.of(value), intervalStart, Quality.GOOD));
+	}
+
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+import org.ogema.recordeddata.DataRecorderException;
+
+public class CompressionTest extends SlotsDbTest {
+
+	private static final long MINUTE = 60 * 1000;
+	private static final byte GOOD = (byte) Quality.GOOD.getQuality();
+	private FileObjectProxy proxy;
+	private long dayStart;
+
+	@Before
+	public void setup() {
+		deleteTestFiles();
+		proxy = new FileObjectProxy(SlotsDb.DB_TEST_ROOT_FOLDER);
+		final Calendar cal = Calendar.getInstance();
+		cal.set(2018, Calendar.MARCH, 5, 0, 0, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		dayStart = cal.getTimeInMillis();
+	}
+
+	@After
+	public void cleanUp() {
+		proxy.close();
+		deleteTestFiles();
+	}
+
+	private static RecordedDataConfiguration fixedConfig() {
+		final RecordedDataConfiguration config = new RecordedDataConfiguration();
+		config.setStorageType(StorageType.FIXED_INTERVAL);
+		config.setFixedInterval(MINUTE);
+		return config;
+	}
+
+	private static RecordedDataConfiguration flexibleConfig() {
+		final RecordedDataConfiguration config = new RecordedDataConfiguration();
+		config.setStorageType(StorageType.ON_VALUE_UPDATE);
+		return config;
+	}
+
+	// three days of data, with some jitter on the timestamps for flexible configurations
+	private void writeData(String id, RecordedDataConfiguration config) throws IOException {
+		final boolean jitter = config.getStorageType() != StorageType.FIXED_INTERVAL;
+		for (int i = 0; i < 3 * 24 * 60; i++) {
+			final long t = dayStart + i * MINUTE + (jitter ? (i * 7) % 50 : 0);
+			final double value = 20 + Math.round(10 * Math.sin(i / 100.)) / 10.;
+			final byte quality = (byte) (i % 500 == 0 ? Quality.BAD.getQuality() : Quality.GOOD.getQuality());
+			proxy.appendValue(id, value, t, quality, config);
+		}
+		proxy.flush();
+	}
+
+	private static long folderSize(File folder) {
+		long size = 0;
+		for (File f : folder.listFiles()) {
+			size += f.isDirectory() ? folderSize(f) : f.length();
+		}
+		return size;
+	}
+
+	private void assertCompressionPreservesData(String id, RecordedDataConfiguration config) throws IOException, DataRecorderException {
+		writeData(id, config);
+		final List<SampledValue> before = proxy.read(id, Long.MIN_VALUE + 1, Long.MAX_VALUE - 1, config);
+		final File firstDay = new File(SlotsDb.DB_TEST_ROOT_FOLDER, "20180305");
+		final long bytesBefore = folderSize(firstDay);
+
+		proxy.compressFoldersBefore(dayStart + 2 * ONE_DAY);
+
+		final File labelFolder = new File(firstDay, proxy.encodeLabel(id));
+		for (String file : labelFolder.list()) {
+			Assert.assertTrue("Uncompressed file left over: " + file, file.startsWith(CompressedFileObject.PREFIX));
+		}
+		final long bytesAfter = folderSize(firstDay);
+		Assert.assertTrue("Compression did not reduce file size: " + bytesBefore + " -> " + bytesAfter,
+				bytesAfter * 5 < bytesBefore);
+		final List<SampledValue> after = proxy.read(id, Long.MIN_VALUE + 1, Long.MAX_VALUE - 1, config);
+		Assert.assertEquals("Unexpected number of values after compression", before.size(), after.size());
+		for (int i = 0; i < before.size(); i++) {
+			final SampledValue expected = before.get(i);
+			final SampledValue actual = after.get(i);
+			Assert.assertEquals(expected.getTimestamp(), actual.getTimestamp());
+			Assert.assertEquals(expected.getValue().getDoubleValue(), actual.getValue().getDoubleValue(), 0);
+			Assert.assertEquals(expected.getQuality(), actual.getQuality());
+		}
+		Assert.assertEquals("Unexpected size after compression", after.size(), proxy.size(id, Long.MIN_VALUE, Long.MAX_VALUE));
+
+		final SampledValue sample = before.get(before.size() / 5);
+		Assert.assertEquals(sample.getTimestamp(), proxy.read(id, sample.getTimestamp(), config).getTimestamp());
+		Assert.assertEquals(sample.getTimestamp(), proxy.readNextValue(id, sample.getTimestamp() - 1, config).getTimestamp());
+		Assert.assertEquals(sample.getTimestamp(), proxy.readPreviousValue(id, sample.getTimestamp() + 1, config).getTimestamp());
+		final List<SampledValue> partial = proxy.read(id, dayStart + 12 * 60 * MINUTE, dayStart + 36 * 60 * MINUTE, config);
+		Assert.assertEquals(partial.size(), proxy.size(id, dayStart + 12 * 60 * MINUTE, dayStart + 36 * 60 * MINUTE));
+	}
+
+	@Test
+	public void compressionWorksForFixedInterval() throws IOException, DataRecorderException {
+		assertCompressionPreservesData("compressionFixed", fixedConfig());
+	}
+
+	@Test
+	public void compressionWorksForFlexibleInterval() throws IOException, DataRecorderException {
+		assertCompressionPreservesData("compressionFlexible", flexibleConfig());
+	}
+
+	@Test
+	public void appendingToCompressedDayWorks() throws IOException, DataRecorderException {
+		final String id = "compressionAppend";
+		final RecordedDataConfiguration config = flexibleConfig();
+		proxy.appendValue(id, 1, dayStart + MINUTE, GOOD, config);
+		proxy.appendValue(id, 2, dayStart + 2 * MINUTE, GOOD, config);
+		proxy.appendValue(id, 3, dayStart + ONE_DAY + MINUTE, GOOD, config);
+		proxy.flush();
+		proxy.compressFoldersBefore(dayStart + ONE_DAY);
+		proxy.appendValue(id, 4, dayStart + 3 * MINUTE, GOOD, config);
+		proxy.flush();
+		final List<SampledValue> values = proxy.read(id, dayStart, dayStart + 2 * ONE_DAY, config);
+		Assert.assertEquals(4, values.size());
+		Assert.assertEquals(4, values.get(2).getValue().getDoubleValue(), 0);
+	}
+
+	@Test
+	public void compressionKeepsNaNAndBadQualitySamples() throws IOException, DataRecorderException {
+		final String id = "compressionNaN";
+		final RecordedDataConfiguration config = flexibleConfig();
+		final byte bad = (byte) Quality.BAD.getQuality();
+		proxy.appendValue(id, 1, dayStart + MINUTE, GOOD, config);
+		proxy.appendValue(id, Double.NaN, dayStart + 2 * MINUTE, GOOD, config);
+		proxy.appendValue(id, 3, dayStart + 3 * MINUTE, bad, config);
+		proxy.appendValue(id, Double.NaN, dayStart + 4 * MINUTE, bad, config);
+		proxy.appendValue(id, 5, dayStart + ONE_DAY + MINUTE, GOOD, config);
+		proxy.flush();
+		final List<SampledValue> before = proxy.read(id, dayStart, dayStart + ONE_DAY, config);
+		Assert.assertEquals(2, before.size());
+
+		proxy.compressFoldersBefore(dayStart + ONE_DAY);
+
+		// the NaN samples are stored in the compressed file
+		final File labelFolder = new File(new File(SlotsDb.DB_TEST_ROOT_FOLDER, "20180305"), proxy.encodeLabel(id));
+		final File[] files = labelFolder.listFiles();
+		Assert.assertEquals(1, files.length);
+		try (final DataInputStream dis = new DataInputStream(new FileInputStream(files[0]))) {
+			dis.skipBytes(16);
+			Assert.assertEquals(CompressedFileObject.MAGIC, dis.readInt());
+			Assert.assertEquals(1, dis.readInt());
+			dis.skipBytes(16);
+			Assert.assertEquals("Unexpected number of samples", 4, dis.readInt());
+			Assert.assertEquals("Unexpected number of NaN samples", 2, dis.readInt());
+		}
+
+		// ... and skipped by the readers, like in the original file
+		final List<SampledValue> after = proxy.read(id, dayStart, dayStart + ONE_DAY, config);
+		Assert.assertEquals(2, after.size());
+		Assert.assertEquals(dayStart + MINUTE, after.get(0).getTimestamp());
+		Assert.assertEquals(dayStart + 3 * MINUTE, after.get(1).getTimestamp());
+		Assert.assertEquals(3, after.get(1).getValue().getDoubleValue(), 0);
+		Assert.assertEquals(Quality.BAD, after.get(1).getQuality());
+		Assert.assertEquals(2, proxy.size(id, dayStart, dayStart + 3 * MINUTE));
+		Assert.assertNull(proxy.read(id, dayStart + 2 * MINUTE, config));
+		Assert.assertEquals(dayStart + 3 * MINUTE, proxy.readNextValue(id, dayStart + 2 * MINUTE, config).getTimestamp());
+		Assert.assertEquals(dayStart + 3 * MINUTE, proxy.readPreviousValue(id, dayStart + 4 * MINUTE, config).getTimestamp());
+	}
+
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+import org.ogema.recordeddata.DataRecorderException;
+
+/**
+ * Tests for the catalog of day and label folders, see {@link FolderCatalog}.
+ */
+public class FolderCatalogTest extends SlotsDbTest {
+
+	private static final String[] IDS = { "catalogTest/a", "catalogTest/b" };
+	private static final int NR_DAYS = 5;
+	private static final long HOUR = 60 * 60 * 1000;
+	private final RecordedDataConfiguration config = new RecordedDataConfiguration();
+	private long start;
+
+	@Before
+	public void setup() {
+		deleteTestFiles();
+		config.setStorageType(StorageType.ON_VALUE_UPDATE);
+		final Calendar cal = Calendar.getInstance();
+		cal.set(2018, Calendar.APRIL, 2, 0, 0, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		start = cal.getTimeInMillis();
+	}
+
+	@After
+	public void cleanUp() {
+		System.clearProperty(SlotsDb.CATALOG_SNAPSHOT);
+		deleteTestFiles();
+	}
+
+	// one value per hour for both labels; the second label skips the middle day
+	private void writeValues(FileObjectProxy proxy) throws IOException {
+		for (int i = 0; i < NR_DAYS * 24; i++) {
+			final long t = start + i * HOUR + HOUR / 2;
+			proxy.appendValue(IDS[0], i, t, (byte) Quality.GOOD.getQuality(), config);
+			if (i / 24 != NR_DAYS / 2)
+				proxy.appendValue(IDS[1], i, t, (byte) Quality.GOOD.getQuality(), config);
+		}
+		proxy.flush();
+	}
+
+	private void assertReadsWork(FileObjectProxy proxy) throws IOException, DataRecorderException {
+		final long end = start + NR_DAYS * ONE_DAY;
+		Assert.assertEquals(NR_DAYS * 24, proxy.read(IDS[0], start, end, config).size());
+		Assert.assertEquals((NR_DAYS - 1) * 24, proxy.read(IDS[1], start, end, config).size());
+		// single day
+		Assert.assertEquals(24, proxy.read(IDS[0], start + ONE_DAY, start + 2 * ONE_DAY - 1, config).size());
+		Assert.assertTrue(proxy.read(IDS[1], start + 2 * ONE_DAY, start + 3 * ONE_DAY - 1, config).isEmpty());
+		// the next value of the second label is in the day after the gap
+		final long gapStart = start + (NR_DAYS / 2) * ONE_DAY;
+		final SampledValue next = proxy.readNextValue(IDS[1], gapStart, config);
+		Assert.assertNotNull(next);
+		Assert.assertEquals(gapStart + ONE_DAY + HOUR / 2, next.getTimestamp());
+		final SampledValue previous = proxy.readPreviousValue(IDS[1], gapStart + ONE_DAY - 1, config);
+		Assert.assertNotNull(previous);
+		Assert.assertEquals(gapStart - HOUR / 2, previous.getTimestamp());
+		Assert.assertNull(proxy.readNextValue(IDS[0], end, config));
+	}
+
+	@Test
+	public void lookupsAreServedFromCatalog() throws IOException, DataRecorderException {
+		final FileObjectProxy proxy = new FileObjectProxy(SlotsDb.DB_TEST_ROOT_FOLDER);
+		try {
+			writeValues(proxy);
+			assertReadsWork(proxy);
+			final long misses = proxy.getCatalogMisses();
+			Assert.assertTrue("Each day folder should be listed at most once, got " + misses, misses <= NR_DAYS);
+			final long hits = proxy.getCatalogHits();
+			assertReadsWork(proxy);
+			Assert.assertEquals("Unexpected directory listing", misses, proxy.getCatalogMisses());
+			Assert.assertTrue(proxy.getCatalogHits() > hits);
+			// new label folders in known days
+			final String id = "catalogTest/c";
+			proxy.appendValue(id, 1, start + ONE_DAY + HOUR, (byte) Quality.GOOD.getQuality(), config);
+			proxy.flush();
+			final List<SampledValue> values = proxy.read(id, start, start + NR_DAYS * ONE_DAY, config);
+			Assert.assertEquals(1, values.size());
+			Assert.assertEquals(misses, proxy.getCatalogMisses());
+		} finally {
+			proxy.close();
+		}
+	}
+
+	@Test
+	public void snapshotIsRestoredForUnchangedDays() throws IOException, DataRecorderException {
+		System.setProperty(SlotsDb.CATALOG_SNAPSHOT, "true");
+		FileObjectProxy proxy = new FileObjectProxy(SlotsDb.DB_TEST_ROOT_FOLDER);
+		try {
+			writeValues(proxy);
+			assertReadsWork(proxy);
+		} finally {
+			proxy.close();
+		}
+		Assert.assertTrue(new File(SlotsDb.DB_TEST_ROOT_FOLDER, FolderCatalog.SNAPSHOT_FILE).isFile());
+		proxy = new FileObjectProxy(SlotsDb.DB_TEST_ROOT_FOLDER);
+		try {
+			assertReadsWork(proxy);
+			Assert.assertEquals("Day folders listed despite catalog snapshot", 0, proxy.getCatalogMisses());
+		} finally {
+			proxy.close();
+		}
+		// a day folder modified while the database was not running must be listed again
+		File day = null;
+		for (File f : new File(SlotsDb.DB_TEST_ROOT_FOLDER).listFiles()) {
+			if (f.isDirectory())
+				day = f;
+		}
+		Assert.assertNotNull(day);
+		final File extra = new File(day, "extra");
+		Assert.assertTrue(extra.mkdir());
+		Assert.assertTrue(day.setLastModified(day.lastModified() + 5000));
+		proxy = new FileObjectProxy(SlotsDb.DB_TEST_ROOT_FOLDER);
+		try {
+			assertReadsWork(proxy);
+			Assert.assertEquals(1, proxy.getCatalogMisses());
+		} finally {
+			proxy.close();
+		}
+	}
+
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+
+/**
+ * Tests for the per-label locking in {@link FileObjectProxy}: many writer threads, each logging
+ * a separate label across several days, in parallel to range readers and explicit flushes.
+ */
+public class LabelLockingTest extends SlotsDbTest {
+
+	private static final int NR_LABELS = 24;
+	private static final int NR_READERS = 8;
+	private static final int NR_DAYS = 3;
+	private static final int VALUES_PER_DAY = 200;
+	private static final long INTERVAL = ONE_DAY / VALUES_PER_DAY;
+	private static final byte GOOD = (byte) Quality.GOOD.getQuality();
+
+	private FileObjectProxy proxy;
+
+	@Before
+	public void setup() {
+		deleteTestFiles();
+		proxy = new FileObjectProxy(SlotsDb.DB_TEST_ROOT_FOLDER);
+	}
+
+	@After
+	public void cleanUp() {
+		proxy.close();
+		deleteTestFiles();
+	}
+
+	private static RecordedDataConfiguration getConfig(int i) {
+		final RecordedDataConfiguration config = new RecordedDataConfiguration();
+		if (i % 2 == 0) {
+			config.setStorageType(StorageType.FIXED_INTERVAL);
+			config.setFixedInterval(INTERVAL);
+		}
+		else {
+			config.setStorageType(StorageType.ON_VALUE_UPDATE);
+		}
+		return config;
+	}
+
+	// the value is determined by the timestamp, so readers can verify what they get
+	private static double getValue(long timestamp) {
+		return (timestamp / INTERVAL) % 1000;
+	}
+
+	@Test
+	public void manyWritersAndReadersWorkInParallel() throws Throwable {
+		final ExecutorService exec = Executors.newFixedThreadPool(NR_LABELS + NR_READERS + 1);
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		final AtomicInteger writersRunning = new AtomicInteger(NR_LABELS);
+		final List<Future<?>> results = new ArrayList<>();
+		try {
+			for (int i = 0; i < NR_LABELS; i++) {
+				results.add(exec.submit(new Writer(i, startLatch, writersRunning)));
+			}
+			for (int i = 0; i < NR_READERS; i++) {
+				results.add(exec.submit(new Reader(i, startLatch, writersRunning)));
+			}
+			results.add(exec.submit(new Callable<Void>() {
+
+				@Override
+				public Void call() throws Exception {
+					startLatch.await();
+					while (writersRunning.get() > 0) {
+						proxy.flush();
+						Thread.sleep(5);
+					}
+					return null;
+				}
+			}));
+			startLatch.countDown();
+			for (Future<?> result : results) {
+				try {
+					result.get(2, TimeUnit.MINUTES);
+				} catch (ExecutionException e) {
+					throw e.getCause();
+				}
+			}
+		} finally {
+			exec.shutdownNow();
+		}
+		for (int i = 0; i < NR_LABELS; i++) {
+			final List<SampledValue> values = proxy.read("stressLabel" + i, 0, NR_DAYS * ONE_DAY, getConfig(i));
+			Assert.assertEquals("Unexpected number of values for label " + i, NR_DAYS * VALUES_PER_DAY, values.size());
+			Assert.assertEquals(NR_DAYS * VALUES_PER_DAY, proxy.size("stressLabel" + i, 0, NR_DAYS * ONE_DAY));
+		}
+	}
+
+	@Test
+	public void lockedLabelDoesNotBlockOtherLabels() throws Exception {
+		final String blocked = "blockedLabel";
+		final Lock blockedLock = proxy.getLabelLock(proxy.encodeLabel(blocked)).writeLock();
+		String other = null;
+		for (int i = 0; other == null; i++) {
+			final String candidate = "otherLabel" + i;
+			if (proxy.getLabelLock(proxy.encodeLabel(candidate)) != proxy.getLabelLock(proxy.encodeLabel(blocked)))
+				other = candidate;
+		}
+		final String otherLabel = other;
+		final RecordedDataConfiguration config = getConfig(1);
+		proxy.appendValue(otherLabel, 1, ONE_DAY, GOOD, config);
+		final ExecutorService exec = Executors.newSingleThreadExecutor();
+		blockedLock.lock();
+		try {
+			// appends and reads on another label, including the creation of a new day folder
+			final Future<Integer> result = exec.submit(new Callable<Integer>() {
+
+				@Override
+				public Integer call() throws Exception {
+					proxy.appendValue(otherLabel, 2, ONE_DAY + 1000, GOOD, config);
+					proxy.appendValue(otherLabel, 3, 2 * ONE_DAY, GOOD, config);
+					proxy.flush();
+					return proxy.read(otherLabel, 0, 3 * ONE_DAY, config).size();
+				}
+			});
+			Assert.assertEquals(3, result.get(30, TimeUnit.SECONDS).intValue());
+		} finally {
+			blockedLock.unlock();
+			exec.shutdownNow();
+		}
+	}
+
+	private class Writer implements Callable<Void> {
+
+		private final int idx;
+		private final CountDownLatch startLatch;
+		private final AtomicInteger writersRunning;
+
+		Writer(int idx, CountDownLatch startLatch, AtomicInteger writersRunning) {
+			this.idx = idx;
+			this.startLatch = startLatch;
+			this.writersRunning = writersRunning;
+		}
+
+		@Override
+		public Void call() throws Exception {
+			try {
+				startLatch.await();
+				final String label = "stressLabel" + idx;
+				final RecordedDataConfiguration config = getConfig(idx);
+				for (int i = 0; i < NR_DAYS * VALUES_PER_DAY; i++) {
+					final long t = i * INTERVAL;
+					proxy.appendValue(label, getValue(t), t, GOOD, config);
+				}
+				return null;
+			} finally {
+				writersRunning.decrementAndGet();
+			}
+		}
+
+	}
+
+	private class Reader implements Callable<Void> {
+
+		private final Random random;
+		private final CountDownLatch startLatch;
+		private final AtomicInteger writersRunning;
+		private final int[] lastSizes = new int[NR_LABELS];
+
+		Reader(int idx, CountDownLatch startLatch, AtomicInteger writersRunning) {
+			this.random = new Random(idx);
+			this.startLatch = startLatch;
+			this.writersRunning = writersRunning;
+		}
+
+		@Override
+		public Void call() throws Exception {
+			startLatch.await();
+			while (writersRunning.get() > 0) {
+				final int idx = random.nextInt(NR_LABELS);
+				check(idx);
+			}
+			return null;
+		}
+
+		private void check(int idx) throws IOException {
+			final List<SampledValue> values = proxy.read("stressLabel" + idx, 0, NR_DAYS * ONE_DAY, getConfig(idx));
+			Assert.assertTrue("Number of values decreased for label " + idx, values.size() >= lastSizes[idx]);
+			lastSizes[idx] = values.size();
+			long last = Long.MIN_VALUE;
+			for (SampledValue sv : values) {
+				final long t = sv.getTimestamp();
+				Assert.assertTrue("Values not sorted", t > last);
+				Assert.assertEquals("Unexpected value at " + t, getValue(t), sv.getValue().getDoubleValue(), 0);
+				last = t;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,238 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ogema.core.administration.FrameworkClock;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+import org.ogema.recordeddata.DataRecorderException;
+
+/**
+ * Compares the results of the memory-mapped read path against the stream based one.
+ */
+public class MappedReadTest extends SlotsDbTest {
+
+	private static final String MMAP_PROPERTY = SlotsDb.class.getPackage().getName().toLowerCase() + ".mmap";
+	private static final long MINUTE = 60 * 1000;
+	private long dayStart;
+
+	@Before
+	public void setup() {
+		deleteTestFiles();
+		final Calendar cal = Calendar.getInstance();
+		cal.set(2018, Calendar.MARCH, 5, 0, 0, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		dayStart = cal.getTimeInMillis();
+	}
+
+	@After
+	public void cleanUp() {
+		System.clearProperty(MMAP_PROPERTY);
+		deleteTestFiles();
+	}
+
+	private static RecordedDataConfiguration getConfig(boolean fixed) {
+		final RecordedDataConfiguration config = new RecordedDataConfiguration();
+		if (fixed) {
+			config.setStorageType(StorageType.FIXED_INTERVAL);
+			config.setFixedInterval(MINUTE);
+		}
+		else {
+			config.setStorageType(StorageType.ON_VALUE_UPDATE);
+		}
+		return config;
+	}
+
+	private static FileObjectProxy createProxy(boolean mapped) {
+		System.setProperty(MMAP_PROPERTY, String.valueOf(mapped));
+		return new FileObjectProxy(SlotsDb.DB_TEST_ROOT_FOLDER);
+	}
+
+	// two days of data with gaps, the first proxy writes, the second one only reads
+	private void writeData(FileObjectProxy proxy, String id, RecordedDataConfiguration config) throws IOException {
+		for (int i = 0; i < 2 * 24 * 60; i++) {
+			if (i % 37 == 0)
+				continue;
+			final long t = dayStart + i * MINUTE;
+			final byte quality = (byte) (i % 11 == 0 ? Quality.BAD.getQuality() : Quality.GOOD.getQuality());
+			proxy.appendValue(id, Math.sin(i / 50.), t, quality, config);
+		}
+		proxy.flush();
+	}
+
+	private static void assertEqualValues(SampledValue expected, SampledValue actual) {
+		if (expected == null) {
+			Assert.assertNull(actual);
+			return;
+		}
+		Assert.assertNotNull("Value missing, expected " + expected, actual);
+		Assert.assertEquals(expected.getTimestamp(), actual.getTimestamp());
+		Assert.assertEquals(expected.getValue().getDoubleValue(), actual.getValue().getDoubleValue(), 0);
+		Assert.assertEquals(expected.getQuality(), actual.getQuality());
+	}
+
+	private static void assertEqualValues(List<SampledValue> expected, List<SampledValue> actual) {
+		Assert.assertEquals("Unexpected number of values", expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEqualValues(expected.get(i), actual.get(i));
+		}
+	}
+
+	private void assertMappedReadsMatch(String id, boolean fixed) throws IOException, DataRecorderException {
+		final RecordedDataConfiguration config = getConfig(fixed);
+		final FileObjectProxy streamProxy = createProxy(false);
+		final FileObjectProxy mappedProxy = createProxy(true);
+		try {
+			writeData(streamProxy, id, config);
+			final long end = dayStart + 2 * ONE_DAY;
+			assertEqualValues(streamProxy.read(id, dayStart, end, config), mappedProxy.read(id, dayStart, end, config));
+			final long subStart = dayStart + 5 * 60 * MINUTE + MINUTE / 2;
+			final long subEnd = dayStart + 30 * 60 * MINUTE + 17;
+			assertEqualValues(streamProxy.read(id, subStart, subEnd, config), mappedProxy.read(id, subStart, subEnd, config));
+			Assert.assertEquals(streamProxy.size(id, dayStart, end), mappedProxy.size(id, dayStart, end));
+			Assert.assertEquals(streamProxy.size(id, subStart, subEnd), mappedProxy.size(id, subStart, subEnd));
+			for (int i = 0; i < 2 * 24 * 60; i += 7) {
+				final long t = dayStart + i * MINUTE;
+				assertEqualValues(streamProxy.read(id, t, config), mappedProxy.read(id, t, config));
+				assertEqualValues(streamProxy.readNextValue(id, t + 1, config), mappedProxy.readNextValue(id, t + 1, config));
+				assertEqualValues(streamProxy.readPreviousValue(id, t - 1, config), mappedProxy.readPreviousValue(id, t - 1, config));
+			}
+			// values appended after the file has been mapped must become visible
+			final long latest = dayStart + 2 * ONE_DAY - MINUTE;
+			Assert.assertNull(mappedProxy.read(id, latest + MINUTE, config));
+			mappedProxy.appendValue(id, 42, latest + MINUTE, (byte) Quality.GOOD.getQuality(), config);
+			mappedProxy.flush();
+			final SampledValue appended = mappedProxy.read(id, latest + MINUTE, config);
+			Assert.assertNotNull("Appended value not found", appended);
+			Assert.assertEquals(42, appended.getValue().getDoubleValue(), 0);
+			Assert.assertEquals(latest + MINUTE, mappedProxy.readPreviousValue(id, Long.MAX_VALUE, config).getTimestamp());
+		} finally {
+			streamProxy.close();
+			mappedProxy.close();
+		}
+	}
+
+	@Test
+	public void mappedReadsWorkForFixedInterval() throws IOException, DataRecorderException {
+		assertMappedReadsMatch("mmapFixed", true);
+	}
+
+	@Test
+	public void mappedReadsWorkForFlexibleInterval() throws IOException, DataRecorderException {
+		assertMappedReadsMatch("mmapFlexible", false);
+	}
+
+	@Test
+	public void mappedReadsWorkForCompressedFiles() throws IOException, DataRecorderException {
+		final String id = "mmapCompressed";
+		final RecordedDataConfiguration config = getConfig(false);
+		final FileObjectProxy streamProxy = createProxy(false);
+		try {
+			writeData(streamProxy, id, config);
+			streamProxy.compressFoldersBefore(dayStart + ONE_DAY);
+		} finally {
+			streamProxy.close();
+		}
+		final FileObjectProxy mappedProxy = createProxy(true);
+		final FileObjectProxy readProxy = createProxy(false);
+		try {
+			final long end = dayStart + 2 * ONE_DAY;
+			assertEqualValues(readProxy.read(id, dayStart, end, config), mappedProxy.read(id, dayStart, end, config));
+			final long t = dayStart + 100 * MINUTE;
+			assertEqualValues(readProxy.readNextValue(id, t + 1, config), mappedProxy.readNextValue(id, t + 1, config));
+		} finally {
+			mappedProxy.close();
+			readProxy.close();
+		}
+	}
+
+	@Test
+	public void onlyClosedFilesAreMapped() throws IOException {
+		final String id = "mmapOpenFiles";
+		final RecordedDataConfiguration config = getConfig(false);
+		final FileObjectProxy proxy = createProxy(true);
+		final long now = System.currentTimeMillis();
+		try {
+			proxy.appendValue(id, 1, dayStart + MINUTE, (byte) Quality.GOOD.getQuality(), config);
+			proxy.appendValue(id, 2, now, (byte) Quality.GOOD.getQuality(), config);
+			proxy.flush();
+			final SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd");
+			final SlotsDbCache cache = new SlotsDbCache(1024 * 1024);
+			final String label = proxy.encodeLabel(id);
+			final FileObjectList past = new FileObjectList(new File(SlotsDb.DB_TEST_ROOT_FOLDER,
+					sdf.format(dayStart) + "/" + label).getPath(), cache, label, sdf.format(now));
+			final FileObjectList today = new FileObjectList(new File(SlotsDb.DB_TEST_ROOT_FOLDER,
+					sdf.format(now) + "/" + label).getPath(), cache, label, sdf.format(now));
+			final FileObject pastFile = past.getFileObjectForTimestamp(dayStart + MINUTE);
+			Assert.assertTrue("Closed file not mapped", pastFile.useMappedReads());
+			Assert.assertFalse("File of the current day is mapped", today.getFileObjectForTimestamp(now).useMappedReads());
+			// a file which is appended to is read through streams from then on
+			pastFile.append(3, dayStart + 2 * MINUTE, (byte) Quality.GOOD.getQuality());
+			Assert.assertFalse("File is mapped after append", pastFile.useMappedReads());
+			Assert.assertEquals(dayStart + 2 * MINUTE, pastFile.getTimestampForLatestValue());
+			pastFile.close();
+		} finally {
+			proxy.close();
+		}
+	}
+
+	@Test
+	public void pastDaysAreDeterminedByTheFrameworkClock() throws IOException {
+		final String id = "mmapClock";
+		final RecordedDataConfiguration config = getConfig(false);
+		// simulated time in the middle of the second day
+		final long now = dayStart + ONE_DAY + ONE_DAY / 2;
+		System.setProperty(MMAP_PROPERTY, "true");
+		final FileObjectProxy proxy = new FileObjectProxy(SlotsDb.DB_TEST_ROOT_FOLDER, (FrameworkClock) Proxy.newProxyInstance(
+				getClass().getClassLoader(), new Class<?>[] { FrameworkClock.class }, new InvocationHandler() {
+
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (method.getName().equals("getExecutionTime"))
+							return now;
+						throw new UnsupportedOperationException(method.getName());
+					}
+				}));
+		try {
+			proxy.appendValue(id, 1, dayStart + MINUTE, (byte) Quality.GOOD.getQuality(), config);
+			proxy.appendValue(id, 2, dayStart + ONE_DAY + MINUTE, (byte) Quality.GOOD.getQuality(), config);
+			proxy.flush();
+			final String label = proxy.encodeLabel(id);
+			Assert.assertTrue("File of a past day not mapped", proxy.getNextFolder(label, dayStart)
+					.getFileObjectForTimestamp(dayStart + MINUTE).useMappedReads());
+			Assert.assertFalse("File of the current day is mapped", proxy.getNextFolder(label, dayStart + ONE_DAY)
+					.getFileObjectForTimestamp(dayStart + ONE_DAY + MINUTE).useMappedReads());
+		} finally {
+			proxy.close();
+		}
+	}
+
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+import org.ogema.core.recordeddata.ReductionMode;
+import org.ogema.recordeddata.RecordedDataStorage;
+
+/**
+ * Tests for reading several time series at once, see {@link SlotsDb#getValues(List, long, long, long, ReductionMode)}.
+ */
+public class MultiSeriesReadTest extends SlotsDbTest {
+
+	private static final int NR_SERIES = 8;
+	private static final long MINUTE = 60 * 1000;
+	private SlotsDb sdb;
+	private final List<String> ids = new ArrayList<>();
+
+	@Before
+	public void setup() throws Exception {
+		deleteTestFiles();
+		System.setProperty(SlotsDb.READ_PARALLELISM, "4");
+		sdb = new SlotsDb(SlotsDb.DB_TEST_ROOT_FOLDER);
+		final RecordedDataConfiguration config = new RecordedDataConfiguration();
+		config.setStorageType(StorageType.ON_VALUE_UPDATE);
+		for (int s = 0; s < NR_SERIES; s++) {
+			final String id = "multiSeries" + s;
+			final RecordedDataStorage rds = sdb.createRecordedDataStorage(id, config);
+			final List<SampledValue> values = new ArrayList<>();
+			// two days, series differ in the number of values
+			for (long t = 0; t < 2 * ONE_DAY; t += (s + 1) * MINUTE) {
+				values.add(new SampledValue(DoubleValues.of(s * 1000 + t / MINUTE), t, Quality.GOOD));
+			}
+			rds.insertValues(values);
+			ids.add(id);
+		}
+	}
+
+	@After
+	public void cleanUp() {
+		sdb.deactivate(null);
+		System.clearProperty(SlotsDb.READ_PARALLELISM);
+		deleteTestFiles();
+	}
+
+	private static void assertEquals(List<SampledValue> expected, List<SampledValue> actual) {
+		Assert.assertNotNull(actual);
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertEquals(expected.get(i).getTimestamp(), actual.get(i).getTimestamp());
+			Assert.assertEquals(expected.get(i).getValue().getDoubleValue(), actual.get(i).getValue().getDoubleValue(), 1E-9);
+		}
+	}
+
+	private void assertMatchesSingleReads(long start, long end, long interval, ReductionMode mode) {
+		final List<String> requested = new ArrayList<>(ids);
+		requested.add(2, "noSuchSeries");
+		final Map<String, List<SampledValue>> result = sdb.getValues(requested, start, end, interval, mode);
+		Assert.assertEquals(ids, new ArrayList<>(result.keySet()));
+		for (String id : ids) {
+			assertEquals(sdb.getRecordedDataStorage(id).getValues(start, end, interval, mode), result.get(id));
+		}
+	}
+
+	@Test
+	public void multiSeriesReadsMatchSingleReads() {
+		assertMatchesSingleReads(0, 2 * ONE_DAY, 0, ReductionMode.NONE);
+		assertMatchesSingleReads(3 * 60 * MINUTE, ONE_DAY + 7 * MINUTE, 0, ReductionMode.NONE);
+		for (ReductionMode mode : Arrays.asList(ReductionMode.AVERAGE, ReductionMode.MIN_MAX_VALUE)) {
+			assertMatchesSingleReads(0, 2 * ONE_DAY, 60 * MINUTE, mode);
+		}
+	}
+
+	@Test
+	public void singleSeriesAndEmptyRequestsWork() {
+		Assert.assertTrue(sdb.getValues(new ArrayList<String>(), 0, ONE_DAY, 0, ReductionMode.NONE).isEmpty());
+		final Map<String, List<SampledValue>> result = sdb.getValues(ids.subList(0, 1), 0, ONE_DAY, 0, ReductionMode.NONE);
+		Assert.assertEquals(1, result.size());
+		Assert.assertEquals(24 * 60, result.get(ids.get(0)).size());
+	}
+
+}
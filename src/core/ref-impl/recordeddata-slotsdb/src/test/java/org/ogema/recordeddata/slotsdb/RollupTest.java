@@ -0,0 +1,248 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+import org.ogema.core.recordeddata.ReductionMode;
+import org.ogema.recordeddata.RecordedDataStorage;
+import org.ogema.recordeddata.slotsdb.reduction.StreamingReduction;
+
+/**
+ * Tests for the aggregated log data, see {@link Rollups}.
+ */
+public class RollupTest extends SlotsDbTest {
+
+	private static final long MINUTE = 60 * 1000;
+	private static final long HOUR = 60 * MINUTE;
+	private static final ReductionMode[] MODES = { ReductionMode.AVERAGE, ReductionMode.MINIMUM_VALUE,
+			ReductionMode.MAXIMUM_VALUE, ReductionMode.MIN_MAX_VALUE };
+
+	private long base;
+
+	@Before
+	public void setup() {
+		deleteTestFiles();
+		System.setProperty(SlotsDb.ROLLUPS, "true");
+		base = getDayStart(2018, Calendar.MARCH, 5);
+	}
+
+	@After
+	public void cleanUp() {
+		System.clearProperty(SlotsDb.ROLLUPS);
+		deleteTestFiles();
+	}
+
+	// midnight in the default time zone, where the day folders begin
+	private static long getDayStart(int year, int month, int day) {
+		final Calendar cal = Calendar.getInstance();
+		cal.clear();
+		cal.set(year, month, day);
+		return cal.getTimeInMillis();
+	}
+
+	// one value every five minutes over three days from base, with gaps and some values of bad quality
+	private static List<SampledValue> createValues(long base, long seed) {
+		final Random random = new Random(seed);
+		final List<SampledValue> values = new ArrayList<>();
+		for (int i = 0; i < 3 * 24 * 12; i++) {
+			if (random.nextInt(10) == 0 || (i > 300 && i < 340))
+				continue;
+			final Quality quality = random.nextInt(20) == 0 ? Quality.BAD : Quality.GOOD;
+			values.add(new SampledValue(DoubleValues.of(random.nextGaussian() * 100), base + i * 5 * MINUTE, quality));
+		}
+		return values;
+	}
+
+	private static RecordedDataConfiguration getConfig(boolean fixedInterval) {
+		final RecordedDataConfiguration config = new RecordedDataConfiguration();
+		if (fixedInterval) {
+			config.setStorageType(StorageType.FIXED_INTERVAL);
+			config.setFixedInterval(5 * MINUTE);
+		}
+		else {
+			config.setStorageType(StorageType.ON_VALUE_UPDATE);
+		}
+		return config;
+	}
+
+	private static void assertEquals(List<SampledValue> expected, List<SampledValue> actual) {
+		Assert.assertEquals("Unexpected number of reduced values", expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			final SampledValue e = expected.get(i);
+			final SampledValue a = actual.get(i);
+			Assert.assertEquals(e.getTimestamp(), a.getTimestamp());
+			Assert.assertEquals(e.getQuality(), a.getQuality());
+			Assert.assertEquals(e.getValue().getDoubleValue(), a.getValue().getDoubleValue(), 1E-6);
+		}
+	}
+
+	private static void assertReductionsMatch(SlotsDb sdb, List<SampledValue> values, long base) {
+		final long[][] requests = {
+				{ 0, 3 * ONE_DAY, HOUR },
+				{ 2 * HOUR, 2 * ONE_DAY + 5 * HOUR, 3 * HOUR },
+				{ 15 * 60 * 1000, 30 * HOUR + 45 * MINUTE, 30 * MINUTE },
+				{ 0, 3 * ONE_DAY, ONE_DAY },
+				{ 4 * ONE_DAY, 5 * ONE_DAY, HOUR } };
+		for (boolean fixedInterval : new boolean[] { false, true }) {
+			final RecordedDataStorage rds = sdb.getRecordedDataStorage("rollupTest" + fixedInterval);
+			for (long[] request : requests) {
+				final long start = base + request[0];
+				final long end = base + request[1];
+				Assert.assertTrue(sdb.getProxy().getRollupTier(start, end, request[2]) > 0);
+				for (ReductionMode mode : MODES) {
+					final List<SampledValue> expected = StreamingReduction.reduce(values.iterator(), start, end - 1, request[2], mode);
+					assertEquals(expected, rds.getValues(start, end, request[2], mode));
+				}
+			}
+		}
+	}
+
+	private static SlotsDb createStorages(List<SampledValue> values) throws Exception {
+		final SlotsDb sdb = new SlotsDb(SlotsDb.DB_TEST_ROOT_FOLDER);
+		for (boolean fixedInterval : new boolean[] { false, true }) {
+			final RecordedDataStorage rds = sdb.createRecordedDataStorage("rollupTest" + fixedInterval, getConfig(fixedInterval));
+			// the first half value by value, the rest in a batch
+			final int half = values.size() / 2;
+			for (SampledValue value : values.subList(0, half)) {
+				rds.insertValue(value);
+			}
+			rds.insertValues(values.subList(half, values.size()));
+		}
+		return sdb;
+	}
+
+	private static int deleteRollupFiles(File folder) {
+		int cnt = 0;
+		for (File file : folder.listFiles()) {
+			if (file.isDirectory())
+				cnt += deleteRollupFiles(file);
+			else if (file.getName().equals(Rollups.FILE_NAME) && file.delete())
+				cnt++;
+		}
+		return cnt;
+	}
+
+	@Test
+	public void tierSelectionWorks() {
+		Assert.assertEquals(ONE_DAY, Rollups.getTier(base, base + 3 * ONE_DAY, ONE_DAY));
+		Assert.assertEquals(HOUR, Rollups.getTier(base - HOUR, base + 3 * ONE_DAY, ONE_DAY));
+		Assert.assertEquals(15 * MINUTE, Rollups.getTier(base, base + 3 * ONE_DAY, 45 * MINUTE));
+		Assert.assertEquals(0, Rollups.getTier(base, base + 3 * ONE_DAY, 5 * MINUTE));
+		Assert.assertEquals(0, Rollups.getTier(base + 1, base + 3 * ONE_DAY, HOUR));
+		Assert.assertEquals(0, Rollups.getTier(base, Long.MAX_VALUE, HOUR));
+	}
+
+	@Test
+	public void rollupReductionMatchesRawReduction() throws Exception {
+		final List<SampledValue> values = createValues(base, 3);
+		final SlotsDb sdb = createStorages(values);
+		try {
+			assertReductionsMatch(sdb, values, base);
+		} finally {
+			sdb.deactivate(null);
+		}
+	}
+
+	@Test
+	public void rollupsArePersistedAndRecalculated() throws Exception {
+		final List<SampledValue> values = createValues(base, 5);
+		createStorages(values).deactivate(null);
+		SlotsDb sdb = new SlotsDb(SlotsDb.DB_TEST_ROOT_FOLDER);
+		try {
+			assertReductionsMatch(sdb, values, base);
+		} finally {
+			sdb.deactivate(null);
+		}
+		Assert.assertTrue("Aggregated values have not been stored", deleteRollupFiles(new File(SlotsDb.DB_TEST_ROOT_FOLDER)) > 0);
+		sdb = new SlotsDb(SlotsDb.DB_TEST_ROOT_FOLDER);
+		try {
+			assertReductionsMatch(sdb, values, base);
+			// append to the existing data; aggregates of the last day are loaded from disk now
+			final List<SampledValue> more = new ArrayList<>(values);
+			final long last = values.get(values.size() - 1).getTimestamp();
+			for (int i = 1; i <= 100; i++) {
+				final SampledValue value = new SampledValue(DoubleValues.of(i), last + i * 5 * MINUTE, Quality.GOOD);
+				more.add(value);
+				for (boolean fixedInterval : new boolean[] { false, true }) {
+					sdb.getRecordedDataStorage("rollupTest" + fixedInterval).insertValue(value);
+				}
+			}
+			assertReductionsMatch(sdb, more, base);
+		} finally {
+			sdb.deactivate(null);
+		}
+	}
+
+	@Test
+	public void nanValuesAreNotAggregated() throws Exception {
+		final List<SampledValue> values = createValues(base, 7);
+		final List<SampledValue> withNaN = new ArrayList<>();
+		for (int i = 0; i < values.size(); i++) {
+			final SampledValue value = values.get(i);
+			withNaN.add(i % 7 == 0 ? new SampledValue(DoubleValues.of(Double.NaN), value.getTimestamp(), value.getQuality()) : value);
+		}
+		final List<SampledValue> expected = new ArrayList<>();
+		for (SampledValue value : withNaN) {
+			if (!Double.isNaN(value.getValue().getDoubleValue()))
+				expected.add(value);
+		}
+		final SlotsDb sdb = createStorages(withNaN);
+		try {
+			assertReductionsMatch(sdb, expected, base);
+		} finally {
+			sdb.deactivate(null);
+		}
+	}
+
+	@Test
+	public void tiersAreAlignedToLocalDays() throws Exception {
+		final TimeZone defaultZone = TimeZone.getDefault();
+		TimeZone.setDefault(TimeZone.getTimeZone("Europe/Berlin"));
+		try {
+			final long localBase = getDayStart(2018, Calendar.MARCH, 5);
+			Assert.assertTrue("Local day starts at an epoch day", localBase % ONE_DAY != 0);
+			Assert.assertEquals(ONE_DAY, Rollups.getTier(localBase, localBase + 3 * ONE_DAY, ONE_DAY));
+			// the day of the daylight saving time change has 23 hours, so fixed intervals of 24 hours do not match
+			final long dst = getDayStart(2018, Calendar.MARCH, 24);
+			Assert.assertEquals(ONE_DAY, Rollups.getTier(dst, dst + ONE_DAY, ONE_DAY));
+			Assert.assertEquals(HOUR, Rollups.getTier(dst, dst + 3 * ONE_DAY, ONE_DAY));
+			final List<SampledValue> values = createValues(localBase, 11);
+			final SlotsDb sdb = createStorages(values);
+			try {
+				assertReductionsMatch(sdb, values, localBase);
+			} finally {
+				sdb.deactivate(null);
+			}
+		} finally {
+			TimeZone.setDefault(defaultZone);
+		}
+	}
+
+}
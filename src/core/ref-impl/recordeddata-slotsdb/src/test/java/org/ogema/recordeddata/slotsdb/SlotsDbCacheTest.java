@@ -0,0 +1,130 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+import org.ogema.recordeddata.DataRecorderException;
+
+import com.google.common.cache.CacheStats;
+
+/**
+ * Tests for the size bound and statistics of the {@link SlotsDbCache}.
+ */
+public class SlotsDbCacheTest extends SlotsDbTest {
+
+	private static final int NR_LABELS = 12;
+	private static final int NR_VALUES = 8000;
+	private final RecordedDataConfiguration config = new RecordedDataConfiguration();
+	private long start;
+
+	@Before
+	public void setup() {
+		deleteTestFiles();
+		System.setProperty(SlotsDb.CACHE_SIZE, "1");
+		config.setStorageType(StorageType.ON_VALUE_UPDATE);
+		final Calendar cal = Calendar.getInstance();
+		cal.set(2018, Calendar.MAY, 7, 0, 0, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		start = cal.getTimeInMillis();
+	}
+
+	@After
+	public void cleanUp() {
+		System.clearProperty(SlotsDb.CACHE_SIZE);
+		deleteTestFiles();
+	}
+
+	private void writeValues(FileObjectProxy proxy) throws IOException {
+		for (int i = 0; i < NR_VALUES; i++) {
+			for (int l = 0; l < NR_LABELS; l++) {
+				final Quality quality = i % 9 == 0 ? Quality.BAD : Quality.GOOD;
+				proxy.appendValue("cacheTest" + l, l + i / 10., start + i * 1000, (byte) quality.getQuality(), config);
+			}
+		}
+		proxy.flush();
+	}
+
+	private void assertValuesCorrect(int label, List<SampledValue> values) {
+		Assert.assertEquals(NR_VALUES, values.size());
+		for (int i = 0; i < NR_VALUES; i += 97) {
+			final SampledValue sv = values.get(i);
+			Assert.assertEquals(start + i * 1000, sv.getTimestamp());
+			Assert.assertEquals(label + i / 10., sv.getValue().getDoubleValue(), 0);
+			Assert.assertEquals(i % 9 == 0 ? Quality.BAD : Quality.GOOD, sv.getQuality());
+		}
+	}
+
+	@Test
+	public void cacheSizeIsBounded() throws IOException, DataRecorderException {
+		final FileObjectProxy proxy = new FileObjectProxy(SlotsDb.DB_TEST_ROOT_FOLDER);
+		try {
+			writeValues(proxy);
+			final long end = start + NR_VALUES * 1000;
+			for (int k = 0; k < 2; k++) {
+				for (int l = 0; l < NR_LABELS; l++) {
+					assertValuesCorrect(l, proxy.read("cacheTest" + l, start, end, config));
+					Assert.assertTrue("Cache size exceeded: " + proxy.getCacheResidentBytes(),
+							proxy.getCacheResidentBytes() <= 1024 * 1024);
+				}
+			}
+			final CacheStats stats = proxy.getCacheStats();
+			Assert.assertTrue("No cache evictions despite size limit", stats.evictionCount() > 0);
+			Assert.assertTrue(proxy.getCacheResidentBytes() > 0);
+		} finally {
+			proxy.close();
+		}
+		Assert.assertEquals(0, proxy.getCacheResidentBytes());
+	}
+
+	@Test
+	public void cachedValuesAreReused() throws IOException, DataRecorderException {
+		final FileObjectProxy proxy = new FileObjectProxy(SlotsDb.DB_TEST_ROOT_FOLDER);
+		try {
+			writeValues(proxy);
+			final long end = start + NR_VALUES * 1000;
+			assertValuesCorrect(0, proxy.read("cacheTest0", start, end, config));
+			final long hits = proxy.getCacheStats().hitCount();
+			assertValuesCorrect(0, proxy.read("cacheTest0", start, end, config));
+			Assert.assertTrue(proxy.getCacheStats().hitCount() > hits);
+			// partial reads and counts are served from the cache as well
+			final long from = start + 1000 * 1000 + 1;
+			final long to = start + 2000 * 1000;
+			final List<SampledValue> values = proxy.read("cacheTest0", from, to, config);
+			Assert.assertEquals(1000, values.size());
+			Assert.assertEquals(from + 999, values.get(0).getTimestamp());
+			Assert.assertEquals(to, values.get(values.size() - 1).getTimestamp());
+			Assert.assertEquals(1000, proxy.size("cacheTest0", from, to));
+			// appending invalidates the cached values
+			proxy.appendValue("cacheTest0", -1, end, (byte) Quality.GOOD.getQuality(), config);
+			proxy.flush();
+			Assert.assertEquals(NR_VALUES + 1, proxy.read("cacheTest0", start, end, config).size());
+		} finally {
+			proxy.close();
+		}
+	}
+
+}
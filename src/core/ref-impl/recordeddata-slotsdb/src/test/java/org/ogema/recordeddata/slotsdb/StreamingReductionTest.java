@@ -0,0 +1,173 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+import org.ogema.core.recordeddata.ReductionMode;
+import org.ogema.recordeddata.RecordedDataStorage;
+import org.ogema.recordeddata.slotsdb.reduction.Reduction;
+import org.ogema.recordeddata.slotsdb.reduction.ReductionFactory;
+import org.ogema.recordeddata.slotsdb.reduction.StreamingReduction;
+
+/**
+ * Compares {@link StreamingReduction} to the list based {@link Reduction} implementations.
+ */
+public class StreamingReductionTest extends SlotsDbTest {
+
+	private final static boolean ignore = "true".equalsIgnoreCase(System.getenv("NO_LONG_TESTS")) || Boolean.getBoolean("NO_LONG_TESTS");
+	private static final long MINUTE = 60 * 1000;
+	private static final ReductionMode[] MODES = { ReductionMode.AVERAGE, ReductionMode.MINIMUM_VALUE,
+			ReductionMode.MAXIMUM_VALUE, ReductionMode.MIN_MAX_VALUE };
+
+	// one value per minute, with gaps and some values of bad quality
+	private static List<SampledValue> createValues(long start, int nrValues, long seed) {
+		final Random random = new Random(seed);
+		final List<SampledValue> values = new ArrayList<>(nrValues);
+		for (int i = 0; i < nrValues; i++) {
+			if (random.nextInt(10) == 0)
+				continue;
+			final Quality quality = random.nextInt(20) == 0 ? Quality.BAD : Quality.GOOD;
+			values.add(new SampledValue(DoubleValues.of(random.nextGaussian() * 100), start + i * MINUTE, quality));
+		}
+		return values;
+	}
+
+	// the previous implementation: collects the values per interval and applies a Reduction
+	private static List<SampledValue> reduceByIntervals(List<SampledValue> values, long start, long end, long intervalSize,
+			ReductionMode mode) {
+		final Reduction reduction = new ReductionFactory().getReduction(mode);
+		final List<SampledValue> result = new ArrayList<>();
+		final Iterator<SampledValue> it = values.iterator();
+		SampledValue next = it.hasNext() ? it.next() : null;
+		long intervalStart = start;
+		while (intervalStart <= end) {
+			final long intervalEnd = Math.min(intervalStart + intervalSize - 1, end);
+			final List<SampledValue> intervalValues = new ArrayList<>();
+			while (next != null && next.getTimestamp() <= intervalEnd) {
+				if (next.getTimestamp() >= intervalStart && next.getQuality() == Quality.GOOD)
+					intervalValues.add(next);
+				next = it.hasNext() ? it.next() : null;
+			}
+			result.addAll(reduction.performReduction(intervalValues, intervalStart));
+			intervalStart = intervalEnd + 1;
+		}
+		return result;
+	}
+
+	private static void assertEquals(List<SampledValue> expected, List<SampledValue> actual) {
+		Assert.assertEquals("Unexpected number of reduced values", expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			final SampledValue e = expected.get(i);
+			final SampledValue a = actual.get(i);
+			Assert.assertEquals(e.getTimestamp(), a.getTimestamp());
+			Assert.assertEquals(e.getQuality(), a.getQuality());
+			Assert.assertEquals(e.getValue().getDoubleValue(), a.getValue().getDoubleValue(), 1E-6);
+		}
+	}
+
+	@Test
+	public void streamingReductionMatchesIntervalReduction() {
+		final long start = 7 * MINUTE;
+		final List<SampledValue> values = createValues(0, 5000, 42);
+		final long[] intervalSizes = { 1000, MINUTE, 7 * MINUTE - 3, 60 * MINUTE, 10000 * MINUTE };
+		for (ReductionMode mode : MODES) {
+			for (long intervalSize : intervalSizes) {
+				final long end = start + 4000 * MINUTE + 17;
+				final List<SampledValue> expected = reduceByIntervals(values, start, end, intervalSize, mode);
+				final List<SampledValue> actual = StreamingReduction.reduce(values.iterator(), start, end, intervalSize, mode);
+				assertEquals(expected, actual);
+			}
+		}
+	}
+
+	@Test
+	public void emptyIntervalsAreBad() {
+		final List<SampledValue> values = new ArrayList<>();
+		values.add(new SampledValue(DoubleValues.of(1F), 10, Quality.GOOD));
+		values.add(new SampledValue(DoubleValues.of(3F), 11, Quality.GOOD));
+		values.add(new SampledValue(DoubleValues.of(5F), 40, Quality.BAD));
+		final List<SampledValue> result = StreamingReduction.reduce(values.iterator(), 0, 49, 10, ReductionMode.MIN_MAX_VALUE);
+		Assert.assertEquals(10, result.size());
+		Assert.assertEquals(Quality.BAD, result.get(0).getQuality());
+		Assert.assertEquals(1, result.get(2).getValue().getDoubleValue(), 0);
+		Assert.assertEquals(3, result.get(3).getValue().getDoubleValue(), 0);
+		Assert.assertEquals(10, result.get(3).getTimestamp());
+		for (int i = 4; i < 10; i++) {
+			Assert.assertEquals(Quality.BAD, result.get(i).getQuality());
+		}
+		Assert.assertTrue(StreamingReduction.reduce(values.iterator(), 50, 100, 10, ReductionMode.AVERAGE).isEmpty());
+	}
+
+	@Test
+	public void storageReductionWorks() throws Exception {
+		deleteTestFiles();
+		final SlotsDb sdb = new SlotsDb(SlotsDb.DB_TEST_ROOT_FOLDER);
+		try {
+			final RecordedDataConfiguration config = new RecordedDataConfiguration();
+			config.setStorageType(StorageType.ON_VALUE_UPDATE);
+			final RecordedDataStorage rds = sdb.createRecordedDataStorage("streamingReductionTest", config);
+			// three days
+			final List<SampledValue> values = createValues(0, 3 * 24 * 60, 7);
+			rds.insertValues(values);
+			final long start = 100 * MINUTE;
+			final long end = 3 * ONE_DAY - 300 * MINUTE;
+			for (ReductionMode mode : MODES) {
+				final List<SampledValue> expected = reduceByIntervals(values, start, end - 1, 60 * MINUTE, mode);
+				assertEquals(expected, rds.getValues(start, end, 60 * MINUTE, mode));
+			}
+		} finally {
+			sdb.deactivate(null);
+			deleteTestFiles();
+		}
+	}
+
+	/**
+	 * Not a proper benchmark; logs the time needed to reduce one year of one minute data to daily values.
+	 */
+	@Test
+	public void compareReductionTimes() {
+		Assume.assumeFalse(ignore);
+		final List<SampledValue> values = createValues(0, 365 * 24 * 60, 1);
+		final long end = 365 * ONE_DAY - 1;
+		for (ReductionMode mode : MODES) {
+			long intervalTime = Long.MAX_VALUE;
+			long streamingTime = Long.MAX_VALUE;
+			for (int i = 0; i < 5; i++) {
+				long t0 = System.nanoTime();
+				final List<SampledValue> expected = reduceByIntervals(values, 0, end, ONE_DAY, mode);
+				intervalTime = Math.min(intervalTime, System.nanoTime() - t0);
+				t0 = System.nanoTime();
+				final List<SampledValue> actual = StreamingReduction.reduce(values.iterator(), 0, end, ONE_DAY, mode);
+				streamingTime = Math.min(streamingTime, System.nanoTime() - t0);
+				Assert.assertEquals(expected.size(), actual.size());
+			}
+			System.out.println("Reduction " + mode + " of " + values.size() + " values: interval based " + intervalTime / 1000000
+					+ " ms, streaming " + streamingTime / 1000000 + " ms");
+		}
+	}
+
+}
@@ -0,0 +1,207 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+import org.ogema.recordeddata.DataRecorderException;
+
+/**
+ * Tests for the index of flexible interval files, see {@link TimestampIndex}.
+ */
+public class TimestampIndexTest extends SlotsDbTest {
+
+	private static final String ID = "timestampIndexTest";
+	private static final long SECOND = 1000;
+	// more than one index entry
+	private static final int NR_VALUES = 10 * TimestampIndex.STEP + 17;
+	private final RecordedDataConfiguration config = new RecordedDataConfiguration();
+	private long dayStart;
+
+	@Before
+	public void setup() {
+		deleteTestFiles();
+		config.setStorageType(StorageType.ON_VALUE_UPDATE);
+		final Calendar cal = Calendar.getInstance();
+		cal.set(2018, Calendar.MARCH, 5, 1, 0, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		dayStart = cal.getTimeInMillis();
+	}
+
+	@After
+	public void cleanUp() {
+		deleteTestFiles();
+	}
+
+	// timestamps every 3 seconds, some NaN values
+	private List<SampledValue> writeValues(FileObjectProxy proxy) throws IOException {
+		final List<SampledValue> expected = new ArrayList<>();
+		for (int i = 0; i < NR_VALUES; i++) {
+			final long t = dayStart + 3 * i * SECOND;
+			final double value = i % 50 == 7 ? Double.NaN : i;
+			proxy.appendValue(ID, value, t, (byte) Quality.GOOD.getQuality(), config);
+			if (!Double.isNaN(value))
+				expected.add(new SampledValue(DoubleValues.of(value), t, Quality.GOOD));
+		}
+		return expected;
+	}
+
+	private static SampledValue getNext(List<SampledValue> values, long t) {
+		for (SampledValue sv : values) {
+			if (sv.getTimestamp() >= t)
+				return sv;
+		}
+		return null;
+	}
+
+	private static SampledValue getPrevious(List<SampledValue> values, long t) {
+		SampledValue previous = null;
+		for (SampledValue sv : values) {
+			if (sv.getTimestamp() > t)
+				break;
+			previous = sv;
+		}
+		return previous;
+	}
+
+	private static int count(List<SampledValue> values, long start, long end) {
+		int cnt = 0;
+		for (SampledValue sv : values) {
+			if (sv.getTimestamp() >= start && sv.getTimestamp() <= end)
+				cnt++;
+		}
+		return cnt;
+	}
+
+	private static void assertEqualValues(SampledValue expected, SampledValue actual) {
+		if (expected == null) {
+			Assert.assertNull(actual);
+			return;
+		}
+		Assert.assertNotNull("Value missing, expected " + expected, actual);
+		Assert.assertEquals(expected.getTimestamp(), actual.getTimestamp());
+		Assert.assertEquals(expected.getValue().getDoubleValue(), actual.getValue().getDoubleValue(), 0);
+	}
+
+	private void assertLookupsWork(FileObjectProxy proxy, List<SampledValue> expected) throws IOException, DataRecorderException {
+		final long end = expected.get(expected.size() - 1).getTimestamp();
+		for (long t = dayStart - SECOND; t <= end + SECOND; t += 7 * SECOND) {
+			assertEqualValues(getNext(expected, t), proxy.readNextValue(ID, t, config));
+			assertEqualValues(getPrevious(expected, t), proxy.readPreviousValue(ID, t, config));
+			final SampledValue previous = getPrevious(expected, t);
+			assertEqualValues(previous != null && previous.getTimestamp() == t ? previous : null, proxy.read(ID, t, config));
+		}
+		final long[][] periods = { { dayStart + SECOND, end - SECOND }, { dayStart + 100 * SECOND, dayStart + 1000 * SECOND + 1 },
+				{ dayStart + 3 * SECOND * TimestampIndex.STEP, dayStart + 6 * SECOND * TimestampIndex.STEP - 1 } };
+		for (long[] period : periods) {
+			Assert.assertEquals(count(expected, period[0], period[1]), proxy.size(ID, period[0], period[1]));
+			final List<SampledValue> values = proxy.read(ID, period[0], period[1], config);
+			Assert.assertEquals(count(expected, period[0], period[1]), values.size());
+			assertEqualValues(getNext(expected, period[0]), values.get(0));
+		}
+	}
+
+	private static int countIndexFiles(File folder) {
+		int cnt = 0;
+		for (File file : folder.listFiles()) {
+			if (file.isDirectory())
+				cnt += countIndexFiles(file);
+			else if (file.getName().endsWith(TimestampIndex.FILE_EXTENSION))
+				cnt++;
+		}
+		return cnt;
+	}
+
+	@Test
+	public void indexedLookupsWork() throws IOException, DataRecorderException {
+		final FileObjectProxy proxy = new FileObjectProxy(SlotsDb.DB_TEST_ROOT_FOLDER);
+		try {
+			final List<SampledValue> expected = writeValues(proxy);
+			assertLookupsWork(proxy, expected);
+		} finally {
+			proxy.close();
+		}
+		Assert.assertEquals("Index file missing", 1, countIndexFiles(new File(SlotsDb.DB_TEST_ROOT_FOLDER)));
+	}
+
+	@Test
+	public void indexIsRestoredAfterRestart() throws IOException, DataRecorderException {
+		FileObjectProxy proxy = new FileObjectProxy(SlotsDb.DB_TEST_ROOT_FOLDER);
+		final List<SampledValue> expected;
+		try {
+			expected = writeValues(proxy);
+		} finally {
+			proxy.close();
+		}
+		proxy = new FileObjectProxy(SlotsDb.DB_TEST_ROOT_FOLDER);
+		try {
+			// older values must be ignored, newer ones must be indexed
+			final long last = expected.get(expected.size() - 1).getTimestamp();
+			proxy.appendValue(ID, -1, last - 2 * SECOND, (byte) Quality.GOOD.getQuality(), config);
+			for (int i = 1; i <= 200; i++) {
+				proxy.appendValue(ID, -i, last + i * SECOND, (byte) Quality.GOOD.getQuality(), config);
+				expected.add(new SampledValue(DoubleValues.of(-i), last + i * SECOND, Quality.GOOD));
+			}
+			assertLookupsWork(proxy, expected);
+		} finally {
+			proxy.close();
+		}
+		Assert.assertEquals(1, countIndexFiles(new File(SlotsDb.DB_TEST_ROOT_FOLDER)));
+	}
+
+	@Test
+	public void invalidIndexIsRecreated() throws IOException, DataRecorderException {
+		FileObjectProxy proxy = new FileObjectProxy(SlotsDb.DB_TEST_ROOT_FOLDER);
+		final List<SampledValue> expected;
+		try {
+			expected = writeValues(proxy);
+		} finally {
+			proxy.close();
+		}
+		// replace the log file by a copy of the data with one value less; the index file does not match any more
+		final File[] days = new File(SlotsDb.DB_TEST_ROOT_FOLDER).listFiles();
+		Assert.assertEquals(1, days.length);
+		final File labelFolder = days[0].listFiles()[0];
+		for (File file : labelFolder.listFiles()) {
+			if (file.getName().endsWith(SlotsDb.FILE_EXTENSION))
+				Assert.assertTrue(file.delete());
+		}
+		proxy = new FileObjectProxy(SlotsDb.DB_TEST_ROOT_FOLDER);
+		try {
+			final List<SampledValue> shorter = expected.subList(0, expected.size() - 1);
+			for (SampledValue sv : shorter) {
+				proxy.appendValue(ID, sv.getValue().getDoubleValue(), sv.getTimestamp(), (byte) Quality.GOOD.getQuality(), config);
+			}
+			proxy.flush();
+			assertLookupsWork(proxy, shorter);
+		} finally {
+			proxy.close();
+		}
+	}
+
+}
@@ -0,0 +1,218 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ogema.core.channelmanager.measurements.FloatValue;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+import org.ogema.recordeddata.RecordedDataStorage;
+
+/**
+ * Tests for the asynchronous write path, see {@link WriteBuffer}.
+ */
+public class WriteBufferTest extends SlotsDbTest {
+
+	private static final int NR_STORAGES = 8;
+	private static final int NR_VALUES = 500;
+	private static final long INTERVAL = 60 * 1000;
+
+	@Before
+	public void setup() {
+		deleteTestFiles();
+		System.setProperty(SlotsDb.ASYNC_WRITES, "true");
+		// small buffer, so that writers are blocked frequently
+		System.setProperty(SlotsDb.ASYNC_CAPACITY, "16");
+	}
+
+	@After
+	public void cleanUp() {
+		System.clearProperty(SlotsDb.ASYNC_WRITES);
+		System.clearProperty(SlotsDb.ASYNC_CAPACITY);
+		System.clearProperty(SlotsDb.ASYNC_FSYNC);
+		deleteTestFiles();
+	}
+
+	private static RecordedDataConfiguration getConfig(int i) {
+		final RecordedDataConfiguration config = new RecordedDataConfiguration();
+		if (i % 2 == 0) {
+			config.setStorageType(StorageType.FIXED_INTERVAL);
+			config.setFixedInterval(INTERVAL);
+		}
+		else {
+			config.setStorageType(StorageType.ON_VALUE_UPDATE);
+		}
+		return config;
+	}
+
+	private static SampledValue getValue(int i) {
+		return new SampledValue(new FloatValue(i), i * INTERVAL, Quality.GOOD);
+	}
+
+	private void writeInParallel(final SlotsDb sdb) throws Throwable {
+		final ExecutorService exec = Executors.newFixedThreadPool(NR_STORAGES);
+		try {
+			final List<Future<Void>> results = new ArrayList<>();
+			for (int i = 0; i < NR_STORAGES; i++) {
+				final RecordedDataStorage rds = sdb.createRecordedDataStorage("writeBufferTest" + i, getConfig(i));
+				results.add(exec.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() throws Exception {
+						for (int j = 0; j < NR_VALUES; j++) {
+							rds.insertValue(getValue(j));
+							if (j % 100 == 99) {
+								// pending values must be visible to readers
+								Assert.assertEquals(j + 1, rds.getValues(Long.MIN_VALUE, Long.MAX_VALUE).size());
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> result : results) {
+				try {
+					result.get(1, TimeUnit.MINUTES);
+				} catch (ExecutionException e) {
+					throw e.getCause();
+				}
+			}
+		} finally {
+			exec.shutdownNow();
+		}
+	}
+
+	private static void assertAllValuesPresent(final SlotsDb sdb) {
+		for (int i = 0; i < NR_STORAGES; i++) {
+			final RecordedDataStorage rds = sdb.getRecordedDataStorage("writeBufferTest" + i);
+			Assert.assertNotNull(rds);
+			final List<SampledValue> values = rds.getValues(Long.MIN_VALUE, Long.MAX_VALUE);
+			Assert.assertEquals(NR_VALUES, values.size());
+			for (int j = 0; j < NR_VALUES; j++) {
+				Assert.assertEquals(j * INTERVAL, values.get(j).getTimestamp());
+				Assert.assertEquals(j, values.get(j).getValue().getFloatValue(), 0.1);
+			}
+		}
+	}
+
+	@Test
+	public void asyncWritesFromManyThreadsWork() throws Throwable {
+		final SlotsDb sdb = new SlotsDb(SlotsDb.DB_TEST_ROOT_FOLDER);
+		try {
+			Assert.assertNotNull(sdb.getWriteBuffer());
+			writeInParallel(sdb);
+			assertAllValuesPresent(sdb);
+		} finally {
+			sdb.deactivate(null);
+		}
+	}
+
+	@Test
+	public void asyncWritesWithFsyncWork() throws Throwable {
+		System.setProperty(SlotsDb.ASYNC_FSYNC, "true");
+		final SlotsDb sdb = new SlotsDb(SlotsDb.DB_TEST_ROOT_FOLDER);
+		try {
+			writeInParallel(sdb);
+			assertAllValuesPresent(sdb);
+		} finally {
+			sdb.deactivate(null);
+		}
+	}
+
+	@Test
+	public void pendingValuesAreWrittenOnDeactivation() throws Throwable {
+		final SlotsDb sdb = new SlotsDb(SlotsDb.DB_TEST_ROOT_FOLDER);
+		final List<SampledValue> values = new ArrayList<>();
+		for (int j = 0; j < NR_VALUES; j++) {
+			values.add(getValue(j));
+		}
+		try {
+			for (int i = 0; i < NR_STORAGES; i++) {
+				sdb.createRecordedDataStorage("writeBufferTest" + i, getConfig(i)).insertValues(values);
+			}
+		} finally {
+			sdb.deactivate(null);
+		}
+		System.setProperty(SlotsDb.ASYNC_WRITES, "false");
+		final SlotsDb sdb2 = new SlotsDb(SlotsDb.DB_TEST_ROOT_FOLDER);
+		try {
+			Assert.assertNull(sdb2.getWriteBuffer());
+			assertAllValuesPresent(sdb2);
+		} finally {
+			sdb2.deactivate(null);
+		}
+	}
+
+	@Test
+	public void valuesAddedConcurrentlyToCloseAreWritten() throws Throwable {
+		final SlotsDb sdb = new SlotsDb(SlotsDb.DB_TEST_ROOT_FOLDER);
+		try {
+			final ExecutorService exec = Executors.newFixedThreadPool(NR_STORAGES);
+			try {
+				final List<Future<Void>> results = new ArrayList<>();
+				final List<SlotsDbStorage> storages = new ArrayList<>();
+				for (int i = 0; i < NR_STORAGES; i++) {
+					final SlotsDbStorage rds = (SlotsDbStorage) sdb.createRecordedDataStorage("writeBufferTest" + i,
+							getConfig(1));
+					storages.add(rds);
+					results.add(exec.submit(new Callable<Void>() {
+
+						@Override
+						public Void call() throws Exception {
+							for (int j = 0; j < NR_VALUES; j++) {
+								rds.insertValue(getValue(j));
+							}
+							return null;
+						}
+					}));
+				}
+				// values not accepted by the closed buffer are written directly
+				Thread.sleep(5);
+				sdb.getWriteBuffer().close();
+				for (Future<Void> result : results) {
+					try {
+						result.get(1, TimeUnit.MINUTES);
+					} catch (ExecutionException e) {
+						throw e.getCause();
+					}
+				}
+				for (SlotsDbStorage rds : storages) {
+					Assert.assertEquals(0, rds.pendingWrites.get());
+				}
+				assertAllValuesPresent(sdb);
+			} finally {
+				exec.shutdownNow();
+			}
+		} finally {
+			sdb.deactivate(null);
+		}
+	}
+
+}
@@ -16,6 +16,7 @@
 package org.ogema.persistence.impl.mem;
 
 import java.lang.reflect.Array;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import org.ogema.core.resourcemanager.InvalidResourceTypeException;
 import org.ogema.resourcetree.SimpleResourceData;
@@ -26,7 +27,17 @@ import org.ogema.resourcetree.SimpleResourceData;
  */
 public class DefaultSimpleResourceData implements SimpleResourceData {
 
-	Object data;
+	private static final AtomicReferenceFieldUpdater<DefaultSimpleResourceData, Object> UPDATER = AtomicReferenceFieldUpdater
+			.newUpdater(DefaultSimpleResourceData.class, Object.class, "data");
+
+	volatile Object data;
+
+	/*
+	 * replaces the current value, if it is the one the expected value was compared with
+	 */
+	private boolean compareAndSet(Object current, Object update) {
+		return UPDATER.compareAndSet(this, current, update);
+	}
 
 	@Override
 	public boolean getBoolean() throws InvalidResourceTypeException {
@@ -38,6 +49,17 @@ public class DefaultSimpleResourceData implements SimpleResourceData {
 		data = z;
 	}
 
+	@Override
+	public boolean compareAndSetBoolean(boolean expect, boolean update) throws InvalidResourceTypeException {
+		for (;;) {
+			final Object current = data;
+			if (Boolean.valueOf(String.valueOf(current)) != expect)
+				return false;
+			if (compareAndSet(current, update))
+				return true;
+		}
+	}
+
 	@Override
 	public float getFloat() throws InvalidResourceTypeException {
 		return data == null ? Float.NaN : (float) data;
@@ -48,6 +70,17 @@ public class DefaultSimpleResourceData implements SimpleResourceData {
 		data = f;
 	}
 
+	@Override
+	public boolean compareAndSetFloat(float expect, float update) throws InvalidResourceTypeException {
+		for (;;) {
+			final Object current = data;
+			if (Float.compare(current == null ? Float.NaN : (float) current, expect) != 0)
+				return false;
+			if (compareAndSet(current, update))
+				return true;
+		}
+	}
+
 	@Override
 	public int getInt() throws InvalidResourceTypeException {
 		return data == null ? 0 : (int) data;
@@ -58,6 +91,17 @@ public class DefaultSimpleResourceData implements SimpleResourceData {
 		data = i;
 	}
 
+	@Override
+	public boolean compareAndSetInt(int expect, int update) throws InvalidResourceTypeException {
+		for (;;) {
+			final Object current = data;
+			if ((current == null ? 0 : (int) current) != expect)
+				return false;
+			if (compareAndSet(current, update))
+				return true;
+		}
+	}
+
 	@Override
 	public long getLong() throws InvalidResourceTypeException {
 		return data == null ? 0 : (long) data;
@@ -68,6 +112,17 @@ public class DefaultSimpleResourceData implements SimpleResourceData {
 		data = j;
 	}
 
+	@Override
+	public boolean compareAndSetLong(long expect, long update) throws InvalidResourceTypeException {
+		for (;;) {
+			final Object current = data;
+			if ((current == null ? 0 : (long) current) != expect)
+				return false;
+			if (compareAndSet(current, update))
+				return true;
+		}
+	}
+
 	@Override
 	public String getString() throws InvalidResourceTypeException {
 		return data == null ? "" : data.toString();
@@ -78,6 +133,17 @@ public class DefaultSimpleResourceData implements SimpleResourceData {
 		data = s;
 	}
 
+	@Override
+	public boolean compareAndSetString(String expect, String update) throws InvalidResourceTypeException {
+		for (;;) {
+			final Object current = data;
+			if (!(current == null ? "" : current.toString()).equals(expect))
+				return false;
+			if (compareAndSet(current, update))
+				return true;
+		}
+	}
+
 	@Override
 	public boolean[] getBooleanArr() throws InvalidResourceTypeException {
 		return (boolean[]) data;
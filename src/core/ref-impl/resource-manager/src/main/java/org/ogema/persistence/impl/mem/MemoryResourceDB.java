@@ -178,6 +178,22 @@ public class MemoryResourceDB implements ResourceDB {
 		return null;
 	}
 
+	@Override
+	public Collection<TreeElement> getElementsByType(Class<? extends Resource> type, boolean includeSubTypes) {
+		if (type == null) {
+			type = Resource.class;
+		}
+		List<TreeElement> rval = new ArrayList<>();
+		synchronized (resources) {
+			for (MemoryTreeElement el : resources.values()) {
+				if (includeSubTypes ? type.isAssignableFrom(el.getType()) : type.equals(el.getType())) {
+					rval.add(el);
+				}
+			}
+		}
+		return rval;
+	}
+
 	@Override
 	public TreeElement getFilteredNodesByPath(String path, boolean isRoot) {
 		// TODO Auto-generated method stub
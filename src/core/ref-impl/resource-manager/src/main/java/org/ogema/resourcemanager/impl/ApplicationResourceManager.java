@@ -84,6 +84,8 @@ public class ApplicationResourceManager implements ResourceManagement, ResourceA
 	// resource demands registered by this app
 	private final Collection<ResourceDemandListenerRegistration> resourceDemands;
 	private final Cache<String, ResourceAccessRights> accessRights;
+	// value listener callbacks of this app
+	private final ListenerEventQueue listenerEvents;
 	
 	public ApplicationResourceManager(ApplicationManager appMan, Application app, ResourceDBManager dbMan,	PermissionManager pManager) {
 		Objects.requireNonNull(appMan);
@@ -101,6 +103,7 @@ public class ApplicationResourceManager implements ResourceManagement, ResourceA
 		this.structureListeners = new HashSet<>();
 		this.resourceDemands = new HashSet<>();
         this.accessRights = CacheBuilder.newBuilder().softValues().build();//new ConcurrentHashMap<>();
+		this.listenerEvents = new ListenerEventQueue(appMan);
 		logger = org.slf4j.LoggerFactory.getLogger("org.ogema.core.resourcemanager-" + app.getClass().getName());
 	}
 
@@ -679,6 +682,14 @@ public class ApplicationResourceManager implements ResourceManagement, ResourceA
 		}
 	}
 	
+	/**
+	 * @return the queue of the value listener callbacks of this application, with its queue depth and its counters
+	 *         of merged and dropped callbacks.
+	 */
+	public ListenerEventQueue getListenerEventQueue() {
+		return listenerEvents;
+	}
+
 	@Override
 	public ResourceTransaction createResourceTransaction() {
 		return new ResourceTransactionImpl(dbMan, appMan);
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.resourcemanager.impl;
+
+import java.util.List;
+
+import org.ogema.core.model.Resource;
+
+/**
+ * Listener for value changes of many resources, which are delivered in batches instead of one callback per change.
+ * See {@link BatchValueListenerRegistration}.
+ */
+public interface BatchValueListener {
+
+	/**
+	 * Called in the application thread with the changes collected since the last call, in the order they occurred.
+	 * The list must not be modified.
+	 *
+	 * @param changes
+	 *            the changes, at least one and at most the maximum batch size of the registration
+	 */
+	void resourcesChanged(List<Change> changes);
+
+	/**
+	 * Value change of a single resource.
+	 */
+	final class Change {
+
+		private final Resource resource;
+		private final long time;
+
+		Change(Resource resource, long time) {
+			this.resource = resource;
+			this.time = time;
+		}
+
+		/**
+		 * @return the resource the listener was registered on.
+		 */
+		public Resource getResource() {
+			return resource;
+		}
+
+		/**
+		 * @return framework time of the change.
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		@Override
+		public String toString() {
+			return resource.getPath() + "@" + time;
+		}
+
+	}
+
+}
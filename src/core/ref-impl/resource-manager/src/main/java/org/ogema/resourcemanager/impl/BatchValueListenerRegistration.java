@@ -0,0 +1,238 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.resourcemanager.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.ogema.core.administration.AdminApplication;
+import org.ogema.core.application.ApplicationManager;
+import org.ogema.core.application.Timer;
+import org.ogema.core.application.TimerListener;
+import org.ogema.core.model.Resource;
+import org.ogema.core.resourcemanager.ResourceValueListener;
+import org.ogema.resourcetree.listeners.InternalValueChangedListenerRegistration;
+
+/**
+ * Delivers the value changes of many resources to a {@link BatchValueListener}, for applications which listen to
+ * a large number of resources, such as loggers. Instead of one callback per resource and change, the changes are
+ * collected and passed to the listener in batches:
+ * <ul>
+ * <li>as soon as maxBatchSize changes have been collected,</li>
+ * <li>at the latest maxLatency ms after a change, from a timer of the application,</li>
+ * <li>if maxLatency is 0, once per dispatch cycle of the application, i.e. all changes which occur while the
+ * callback waits for the application thread are delivered together.</li>
+ * </ul>
+ * Each resource is registered as a value listener of its own, so references, deletion and the removal of all
+ * listeners of a stopped application are handled as for ordinary value listeners.
+ */
+public class BatchValueListenerRegistration {
+
+	private final ApplicationManager appMan;
+	private final BatchValueListener listener;
+	private final int maxBatchSize;
+	private final boolean callOnEveryUpdate;
+	private final Timer timer;
+	// registered resources by path
+	private final ConcurrentMap<String, Member> members = new ConcurrentHashMap<>();
+	private final Object lock = new Object();
+	// guarded by lock
+	private List<BatchValueListener.Change> buffer = new ArrayList<>();
+	// guarded by lock, a dispatch task has been submitted but not started yet
+	private boolean dispatchSubmitted;
+
+	private final Callable<Void> dispatchTask = new Callable<Void>() {
+
+		@Override
+		public Void call() throws Exception {
+			dispatch();
+			return null;
+		}
+	};
+
+	/**
+	 * @param appMan
+	 *            the application manager of the listening application
+	 * @param listener
+	 *            the listener
+	 * @param maxBatchSize
+	 *            maximum number of changes per callback
+	 * @param maxLatency
+	 *            maximum time in ms a change is held back, 0 to deliver the changes as soon as the application thread
+	 *            is available
+	 * @param callOnEveryUpdate
+	 *            if false, only updates which change the value are delivered
+	 */
+	public BatchValueListenerRegistration(ApplicationManager appMan, BatchValueListener listener, int maxBatchSize,
+			long maxLatency, boolean callOnEveryUpdate) {
+		if (maxBatchSize < 1)
+			throw new IllegalArgumentException("Batch size must be positive: " + maxBatchSize);
+		if (maxLatency < 0)
+			throw new IllegalArgumentException("Latency must not be negative: " + maxLatency);
+		this.appMan = appMan;
+		this.listener = listener;
+		this.maxBatchSize = maxBatchSize;
+		this.callOnEveryUpdate = callOnEveryUpdate;
+		if (maxLatency > 0) {
+			this.timer = appMan.createTimer(maxLatency, new TimerListener() {
+
+				@Override
+				public void timerElapsed(Timer timer) {
+					dispatch();
+				}
+			});
+		}
+		else {
+			this.timer = null;
+		}
+	}
+
+	/**
+	 * Adds a resource to the resources listened to. The resource must have been obtained by the application the
+	 * registration was created for.
+	 */
+	public void addResource(Resource resource) {
+		final Member m = new Member(resource);
+		if (members.putIfAbsent(resource.getPath(), m) == null) {
+			resource.addValueListener(m, callOnEveryUpdate);
+		}
+	}
+
+	/**
+	 * @return true if the resource was registered.
+	 */
+	public boolean removeResource(Resource resource) {
+		final Member m = members.remove(resource.getPath());
+		if (m == null) {
+			return false;
+		}
+		m.resource.removeValueListener(m);
+		return true;
+	}
+
+	/**
+	 * @return the number of registered resources.
+	 */
+	public int size() {
+		return members.size();
+	}
+
+	/**
+	 * Removes all resources and stops the timer. Changes not delivered yet are discarded.
+	 */
+	public void close() {
+		for (Member m : new ArrayList<>(members.values())) {
+			removeResource(m.resource);
+		}
+		if (timer != null) {
+			timer.destroy();
+		}
+		synchronized (lock) {
+			buffer.clear();
+		}
+	}
+
+	void changed(Resource resource) {
+		final BatchValueListener.Change change = new BatchValueListener.Change(resource, appMan.getFrameworkTime());
+		synchronized (lock) {
+			buffer.add(change);
+			if (dispatchSubmitted || (timer != null && buffer.size() < maxBatchSize)) {
+				return;
+			}
+			dispatchSubmitted = true;
+		}
+		if (appMan.submitEvent(dispatchTask) == null) { // app is shutting down
+			synchronized (lock) {
+				dispatchSubmitted = false;
+				buffer.clear();
+			}
+		}
+	}
+
+	/*
+	 * called in the application thread
+	 */
+	void dispatch() {
+		final List<BatchValueListener.Change> changes;
+		synchronized (lock) {
+			dispatchSubmitted = false;
+			if (buffer.isEmpty()) {
+				return;
+			}
+			changes = buffer;
+			buffer = new ArrayList<>();
+		}
+		for (int i = 0; i < changes.size(); i += maxBatchSize) {
+			listener.resourcesChanged(Collections.unmodifiableList(changes.subList(i,
+					Math.min(i + maxBatchSize, changes.size()))));
+		}
+	}
+
+	/*
+	 * The value listener registration of a single resource. Registered as its own value listener, so it is found
+	 * again by the resource manager when it is removed or re-registered.
+	 */
+	private class Member extends InternalValueChangedListenerRegistration implements ResourceValueListener<Resource> {
+
+		private final Resource resource;
+
+		Member(Resource resource) {
+			this.resource = resource;
+		}
+
+		@Override
+		public void queueResourceChangedEvent(Resource r, boolean valueChanged) {
+			if (!callOnEveryUpdate && !valueChanged) {
+				return;
+			}
+			if (isActive()) {
+				changed(resource); // always report the registration resource
+			}
+		}
+
+		@Override
+		public void resourceChanged(Resource r) {
+			// changes are collected by queueResourceChangedEvent
+		}
+
+		@Override
+		public Resource getResource() {
+			return resource;
+		}
+
+		@Override
+		public AdminApplication getApplication() {
+			return appMan.getAdministrationManager().getAppById(appMan.getAppID().getIDString());
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public <T extends Resource> ResourceValueListener<T> getValueListener() {
+			return (ResourceValueListener<T>) this;
+		}
+
+		@Override
+		public boolean isCallOnEveryUpdate() {
+			return callOnEveryUpdate;
+		}
+
+	}
+
+}
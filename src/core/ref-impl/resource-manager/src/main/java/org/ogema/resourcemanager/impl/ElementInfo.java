@@ -139,10 +139,18 @@ public class ElementInfo {
 	}
 	
 	public void fireResourceChanged(final ConnectedResource r, long time, boolean valueChanged) {
-		if (!r.isActive()) {
+		fireResourceChanged(r, r.getTreeElement(), time, valueChanged);
+	}
+
+	/**
+	 * Variant of {@link #fireResourceChanged(ConnectedResource, long, boolean)} for callers which have already looked
+	 * up the tree element of the resource.
+	 */
+	public void fireResourceChanged(final ConnectedResource r, TreeElement el, long time, boolean valueChanged) {
+		if (!el.isActive()) {
 			return;
 		}
-		DefaultRecordedData d = man.getExistingRecordedData(r.getTreeElement());
+		DefaultRecordedData d = man.getExistingRecordedData(el);
 		if (d != null) {
 			d.update(time);
 		}
@@ -282,6 +290,15 @@ public class ElementInfo {
     	}
 	}
 
+    /**
+     * @return true iff there are references pointing to this ElementInfo's tree element.
+     */
+    public boolean isReferenced() {
+    	synchronized (referencesLock) {
+    		return references != null && !references.isEmpty();
+    	}
+    }
+
 	AccessModeRequest addAccessModeRequest(Resource res, ApplicationManager app, AccessMode mode, AccessPriority priority) {
 		synchronized (accessLock) {
 	        if (accessRequests == null) {
@@ -0,0 +1,145 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.resourcemanager.impl;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ogema.core.application.ApplicationManager;
+import org.ogema.events.OrderedEventSubmitter;
+
+/**
+ * Submits the value listener callbacks of one application to its executor and keeps track of the callbacks which are
+ * queued but not yet started.<br>
+ * If conflation is enabled (system property {@link #CONFLATE_PROPERTY}), a change of a resource is merged into a
+ * callback for the same listener and resource which is still queued. The listener then reads the latest value when
+ * the callback is executed, instead of being called once for every intermediate value. Listener callbacks of slow
+ * applications thus queue up to one callback per listener and resource only.<br>
+ * If the application executes its callbacks on several threads (see {@link OrderedEventSubmitter}), the callbacks
+ * of a registration are submitted with the registration as ordering key, so a listener is still called one at a time
+ * and in the order of the changes.
+ */
+public class ListenerEventQueue {
+
+	public static final String CONFLATE_PROPERTY = "org.ogema.resman.listeners.conflate";
+
+	private final ApplicationManager appMan;
+	private final boolean conflate;
+	private final AtomicInteger queueDepth = new AtomicInteger();
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong merged = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	public ListenerEventQueue(ApplicationManager appMan) {
+		this(appMan, Boolean.getBoolean(CONFLATE_PROPERTY));
+	}
+
+	public ListenerEventQueue(ApplicationManager appMan, boolean conflate) {
+		this.appMan = appMan;
+		this.conflate = conflate;
+	}
+
+	/**
+	 * Submits a listener callback without an ordering key, i.e. in order with all other callbacks of the application.
+	 * 
+	 * @see #submit(Object, Callable, Set, Object)
+	 */
+	public void submit(final Callable<Void> callback, final Set<Object> pending, final Object key) {
+		submit(null, callback, pending, key);
+	}
+
+	/**
+	 * Submits a listener callback.
+	 *
+	 * @param registration
+	 *            the listener registration, callbacks of the same registration are executed in order. May be null.
+	 * @param callback
+	 *            the listener call
+	 * @param pending
+	 *            keys of the callbacks of the registration which are queued but not yet started, a concurrent set
+	 * @param key
+	 *            identifies the resource the callback is for, callbacks for the same key are merged if conflation is
+	 *            enabled
+	 */
+	public void submit(Object registration, final Callable<Void> callback, final Set<Object> pending,
+			final Object key) {
+		if (conflate && !pending.add(key)) {
+			merged.incrementAndGet();
+			return;
+		}
+		Callable<Void> task = new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				queueDepth.decrementAndGet();
+				if (conflate) {
+					// removed before the listener is called, so a change during the call is delivered by another callback
+					pending.remove(key);
+				}
+				return callback.call();
+			}
+		};
+		queueDepth.incrementAndGet();
+		final Future<Void> f = registration != null && appMan instanceof OrderedEventSubmitter
+				? ((OrderedEventSubmitter) appMan).submitEvent(registration, task)
+				: appMan.submitEvent(task);
+		if (f == null) { // app is shutting down
+			queueDepth.decrementAndGet();
+			if (conflate) {
+				pending.remove(key);
+			}
+			dropped.incrementAndGet();
+			return;
+		}
+		submitted.incrementAndGet();
+	}
+
+	public boolean isConflating() {
+		return conflate;
+	}
+
+	/**
+	 * @return the number of listener callbacks which are queued but not yet started.
+	 */
+	public int getQueueDepth() {
+		return queueDepth.get();
+	}
+
+	/**
+	 * @return the number of listener callbacks submitted to the application.
+	 */
+	public long getSubmittedCount() {
+		return submitted.get();
+	}
+
+	/**
+	 * @return the number of changes merged into a callback which was already queued.
+	 */
+	public long getMergedCount() {
+		return merged.get();
+	}
+
+	/**
+	 * @return the number of callbacks dropped, because the application did not accept them any more.
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+}
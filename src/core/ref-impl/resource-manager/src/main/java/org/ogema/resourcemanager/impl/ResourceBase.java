@@ -16,9 +16,11 @@
 package org.ogema.resourcemanager.impl;
 
 import java.lang.reflect.Method;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -115,6 +117,71 @@ public abstract class ResourceBase implements ConnectedResource {
 				resMan.getApplicationManager().getFrameworkTime(), valueChanged);
 	}
 
+	/*
+	 * Use instead of handleResourceUpdate after a value write guarded by lockValue, once the subtree lock has been
+	 * released. Works on the element the value has been written to, so the global lock is only needed by listeners
+	 * which inspect the resource graph.
+	 */
+	protected void handleValueUpdate(final VirtualTreeElement el, final boolean valueChanged) {
+		TreeElement te = el;
+		while (te.isReference()) {
+			te = te.getReference();
+		}
+		final long time = resMan.getApplicationManager().getFrameworkTime();
+		te.setLastModified(time);
+		if (!el.isActive())
+			return;
+		resMan.getDatabaseManager().getElementInfo(el).fireResourceChanged(this, el, time, valueChanged);
+	}
+
+	/*
+	 * Locks the subtree containing the location of this resource for a value write (shared) or for exclusive access,
+	 * returns the index to be passed to unlockValue. The global lock is not taken, so structural changes in other
+	 * subtrees do not block value writes. The element is looked up again once the lock is held, since the location
+	 * may have changed in between; changes of the location hold all subtree locks. While the lock is held neither the
+	 * global lock nor another subtree lock may be acquired, see ResourceDBManager.
+	 */
+	protected final int lockValue(final boolean exclusive) {
+		final ResourceDBManager dbMan = resMan.getDatabaseManager();
+		int lock = dbMan.getSubtreeLockIndex(getElInternal());
+		while (true) {
+			dbMan.lockSubtree(lock, exclusive);
+			final int current = dbMan.getSubtreeLockIndex(getElInternal());
+			if (current == lock)
+				return lock;
+			dbMan.unlockSubtree(lock, exclusive);
+			lock = current;
+		}
+	}
+
+	protected final void unlockValue(final int lock, final boolean exclusive) {
+		resMan.getDatabaseManager().unlockSubtree(lock, exclusive);
+	}
+
+	/*
+	 * Locks the structure of the subtree containing the location of this resource, for structural changes which do
+	 * not affect other subtrees; returns the index to be passed to unlockSubtreeStructure. Holds the structure read
+	 * lock and the write lock of the subtree. Changes involving references need lockStructureWrite.
+	 */
+	protected final int lockSubtreeStructure() {
+		final ResourceDBManager dbMan = resMan.getDatabaseManager();
+		dbMan.lockStructureRead();
+		try {
+			final int lock = dbMan.getSubtreeLockIndex(getElInternal());
+			dbMan.lockSubtree(lock, true);
+			return lock;
+		} catch (RuntimeException | Error e) {
+			dbMan.unlockStructureRead();
+			throw e;
+		}
+	}
+
+	protected final void unlockSubtreeStructure(final int lock) {
+		final ResourceDBManager dbMan = resMan.getDatabaseManager();
+		dbMan.unlockSubtree(lock, true);
+		dbMan.unlockStructureRead();
+	}
+
 	@Override
 	@JsonIgnore
 	//FIXME! annotation does not belong here
@@ -641,7 +708,8 @@ public abstract class ResourceBase implements ConnectedResource {
 			}
 		}
 		final TreeElement element;
-        resMan.getDatabaseManager().lockStructureWrite();
+		// direct sub resources only, the change is confined to this subtree
+        final int lock = lockSubtreeStructure();
         List<ResourceBase> changedResources = null;
         try {
         	element = getElInternal();
@@ -662,7 +730,7 @@ public abstract class ResourceBase implements ConnectedResource {
             }
             resMan.getDatabaseManager().lockStructureRead();
         } finally {
-            resMan.getDatabaseManager().unlockStructureWrite();
+            unlockSubtreeStructure(lock);
         }
         try {
             if (recursive && changedResources != null) {
@@ -858,7 +926,10 @@ public abstract class ResourceBase implements ConnectedResource {
 					.getType(), name)));
 		}
 		final Resource result;
-        resMan.getDatabaseManager().lockStructureWrite();
+		// replacing a reference affects the subtree of its target as well
+		final int lock = existingReference != null ? -1 : lockSubtreeStructure();
+		if (lock < 0)
+			resMan.getDatabaseManager().lockStructureWrite();
         try {
             List<InternalValueChangedListenerRegistration> oldReferenceListeners = Collections.emptyList();
             if (existingReference != null) {
@@ -884,7 +955,10 @@ public abstract class ResourceBase implements ConnectedResource {
             }
             resMan.getDatabaseManager().lockStructureRead();
         } finally {
-            resMan.getDatabaseManager().unlockStructureWrite();
+        	if (lock < 0)
+        		resMan.getDatabaseManager().unlockStructureWrite();
+        	else
+        		unlockSubtreeStructure(lock);
         }
         try {
         	 notifyCreate(this, (ResourceBase)result);
@@ -987,7 +1061,7 @@ public abstract class ResourceBase implements ConnectedResource {
 			}
 		}
 		final T result;
-        resMan.getDatabaseManager().lockStructureWrite();
+        final int lock = lockSubtreeStructure();
         try {
 			VirtualTreeElement existingDecorator = getElInternal().getChild(name);
 			if (existingDecorator != null) {
@@ -1031,7 +1105,7 @@ public abstract class ResourceBase implements ConnectedResource {
 			assert dec.isActive() == false : "newly-created tree elements must be inactive";
 			resMan.getDatabaseManager().lockStructureRead();
 		} finally {
-			resMan.getDatabaseManager().unlockStructureWrite();
+			unlockSubtreeStructure(lock);
 		}
         try {
             notifyCreate(this, (ResourceBase) result);
@@ -1139,14 +1213,10 @@ public abstract class ResourceBase implements ConnectedResource {
 
 	@Override
 	public void deleteElement(String name) {
-        resMan.getDatabaseManager().lockStructureWrite();
-        try {
-            Resource r = getSubResource(name);
-            if (r != null && r.exists()) {
-                r.delete();
-            }
-        } finally {
-            resMan.getDatabaseManager().unlockStructureWrite();
+		// delete determines the lock it needs
+        Resource r = getSubResource(name);
+        if (r != null && r.exists()) {
+            r.delete();
         }
 	}
 
@@ -1285,7 +1355,8 @@ public abstract class ResourceBase implements ConnectedResource {
 		if (exists()) {
 			return (T) this;
 		}
-		resMan.getDatabaseManager().lockStructureWrite();
+		// virtual parents are located in the same subtree
+		final int lock = lockSubtreeStructure();
 		try {
             ResourceBase parent = getParent();
 			assert parent != null : "create called on non-existitent resource without parent: " + getPath();
@@ -1303,7 +1374,7 @@ public abstract class ResourceBase implements ConnectedResource {
 
 			resMan.getDatabaseManager().lockStructureRead(); // FIXME maybe this does not work here; test
 		} finally {
-			resMan.getDatabaseManager().unlockStructureWrite();
+			unlockSubtreeStructure(lock);
 		}
 		try {
 			 notifyCreate((ResourceBase)getParent(), this);
@@ -1544,13 +1615,20 @@ public abstract class ResourceBase implements ConnectedResource {
 
 	// write lock must be held
 	protected void deleteTreeElement() {
-		resMan.getDatabaseManager().resourceDeleted(getElInternal());
+		final ResourceDBManager dbMan = resMan.getDatabaseManager();
+		dbMan.resourceDeleted(getElInternal());
 
-		getElInternal().delete();
-		resMan.getDatabaseManager().incrementRevision();
+		// no value write may be in progress on the deleted element, value writers recognize the deletion by the revision
+		final int lock = dbMan.getSubtreeLockIndex(getElInternal());
+		dbMan.lockSubtree(lock, true);
+		try {
+			getElInternal().delete();
+			dbMan.incrementRevision();
+		} finally {
+			dbMan.unlockSubtree(lock, true);
+		}
 	}
 
-	@SuppressWarnings("rawtypes")
 	@Override
 	public void delete() {
 		if (!getAccessRights().isDeletePermitted()) {
@@ -1558,29 +1636,65 @@ public abstract class ResourceBase implements ConnectedResource {
 					"Application '%s' does not have permission to delete resource %s (path=%s)", resMan.getAppId(),
 					getLocation(), getPath()));
 		}
-		resMan.getDatabaseManager().lockStructureWrite();
+		final int lock = lockSubtreeStructure();
 		try {
-            if (isTopLevel()) {
-                resMan.getDatabaseManager().deleteUniqueName(el);
-            }
-			List<ResourceList> affectedLists = getReferencingResources(ResourceList.class);
-			Resource parent = getParent();
-			Map<String, DeletedLinkInfo> dl = deleteInternal(null);
-			postProcessLinks(dl);
-			if (parent != null && parent.exists() && (parent instanceof ResourceList)) {
-				((ResourceList) parent).getAllElements();
-			}
-			for (ResourceList<?> l : affectedLists) {
-                //rebuild the list
-				if (l.exists()) {
-					l.getAllElements();
-				}
+			if (isDeletionConfinedToSubtree()) {
+				deleteLocked();
+				return;
 			}
+		} finally {
+			unlockSubtreeStructure(lock);
+		}
+		resMan.getDatabaseManager().lockStructureWrite();
+		try {
+			deleteLocked();
 		} finally {
 			resMan.getDatabaseManager().unlockStructureWrite();
 		}
 	}
 
+	/*
+	 * True if deleting this resource does not change other subtrees: it is no top level resource, whose unique name
+	 * is stored separately, and neither it nor one of its sub resources is a reference or the target of a reference.
+	 * Requires the structure lock of the subtree.
+	 */
+	private boolean isDeletionConfinedToSubtree() {
+		if (isTopLevel() || isReference(false)) {
+			return false;
+		}
+		final ResourceDBManager dbMan = resMan.getDatabaseManager();
+		final Deque<TreeElement> queue = new ArrayDeque<>();
+		queue.add(getElInternal());
+		while (!queue.isEmpty()) {
+			final TreeElement element = queue.pop();
+			if (element.isReference() || dbMan.getElementInfo(element).isReferenced()) {
+				return false;
+			}
+			queue.addAll(element.getChildren());
+		}
+		return true;
+	}
+
+	@SuppressWarnings("rawtypes")
+	private void deleteLocked() {
+        if (isTopLevel()) {
+            resMan.getDatabaseManager().deleteUniqueName(el);
+        }
+		List<ResourceList> affectedLists = getReferencingResources(ResourceList.class);
+		Resource parent = getParent();
+		Map<String, DeletedLinkInfo> dl = deleteInternal(null);
+		postProcessLinks(dl);
+		if (parent != null && parent.exists() && (parent instanceof ResourceList)) {
+			((ResourceList) parent).getAllElements();
+		}
+		for (ResourceList<?> l : affectedLists) {
+            //rebuild the list
+			if (l.exists()) {
+				l.getAllElements();
+			}
+		}
+	}
+
     //raises structure events for deleted resources
     private void notifyDelete(ResourceBase r, boolean reachedThroughReference, Set<String> affectedPaths, Set<String> visitedPaths) {
         if (visitedPaths.contains(r.getLocation())) {
@@ -17,6 +17,7 @@ package org.ogema.resourcemanager.impl;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
@@ -73,9 +74,20 @@ public class ResourceDBManager {
 
 	final private Map<Class<? extends Resource>, List<ResourceDemandListenerRegistration>> resourceTypeListeners = new HashMap<>();
 	/**
-	 * Global lock for read- and write-operations.
+	 * Global lock for read- and write-operations. Guards the structure of the resource graph and value operations which
+	 * are not covered by the subtree locks.
 	 */
 	private final ReentrantReadWriteLock commitLock = new ReentrantReadWriteLock();
+	/**
+	 * Locks for value operations and structural changes, striped by the name of the top level resource containing
+	 * the location of a resource. Value writes, including the atomic compare-and-set operations, hold only the read
+	 * lock of their subtree; plain value reads do not lock. Write transactions and structural changes confined to
+	 * one subtree hold the global read lock and the write lock of their subtree. Structural changes affecting more
+	 * than one subtree, like adding or removing references, hold the global write lock and all subtree locks. The
+	 * global lock has to be obtained before any subtree lock, and unless the global write lock is held, a thread
+	 * holding a subtree lock must neither wait for the global lock nor for another subtree lock.
+	 */
+	private final ReentrantReadWriteLock[] subtreeLocks;
 	/** global lock guarding structural changes */
 	//private final ReentrantReadWriteLock structureLock = new ReentrantReadWriteLock();
 	protected RecordedDataManager recordedDataManager;
@@ -94,6 +106,11 @@ public class ResourceDBManager {
 		this.access = access;
 
 		this.recordedDataManager = new RecordedDataManager(this, recordedDataAccess, scheduler);
+		int stripes = Integer.highestOneBit(Math.max(Integer.getInteger("org.ogema.resman.lockstripes", 64), 1));
+		this.subtreeLocks = new ReentrantReadWriteLock[stripes];
+		for (int i = 0; i < stripes; i++) {
+			subtreeLocks[i] = new ReentrantReadWriteLock();
+		}
 		init();
 
 	}
@@ -429,31 +446,16 @@ public class ResourceDBManager {
 	}
     
     public Collection<TreeElement> getElementsByType(Class<? extends Resource> resourceType, boolean includeSubTypes) {
-        if (resourceType == null) {
-            resourceType = Resource.class;
-        }
-        if (!includeSubTypes) {
-            return getElementsByType(resourceType);
-        }
-		final List<TreeElement> result = new ArrayList<>();
-        for (Class<?> t: resdb.getResourceTypesInstalled(resourceType)) {
-            if (resourceType.isAssignableFrom(t)) {
-                result.addAll(getElementsByType(t));
-            }
-        }
-        return result;
-	}
-    
-    private Collection<TreeElement> getElementsByType(final Class<?> resourceType) {
-        Map<String,String> dict = new HashMap<>();
-        dict.put("type", resourceType.getCanonicalName());
-        return resdb.getFilteredNodes(dict);
+        return resdb.getElementsByType(resourceType, includeSubTypes);
 	}
 
 
 	public TreeElement createResource(String name, Class<? extends Resource> type, String appId)
 			throws ResourceAlreadyExistsException, InvalidResourceTypeException {
-        lockStructureWrite();
+        // a new top level resource only affects its own subtree
+        lockStructureRead();
+        final int lock = getSubtreeLockIndex(name);
+        lockSubtree(lock, true);
         try {
             if (resdb.hasResource(name)) {
                 TreeElement existingElement = resdb.getToplevelResource(name);
@@ -471,7 +473,8 @@ public class ResourceDBManager {
             el.setResRef(info);
             return el;
         } finally {
-            unlockStructureWrite();
+            unlockSubtree(lock, true);
+            unlockStructureRead();
         }
 	}
 
@@ -479,8 +482,15 @@ public class ResourceDBManager {
 		// the order may be relevant here... deleting the resource, resp. the DVTE, before firing resourceUnavialble
 		// may imply it being removed from the cache before the callback has been executed.
         resourceDeleted(elem);
-		resdb.deleteResource(elem);
-        revisionCounter.incrementAndGet();
+        // no value write may be in progress on the deleted elements
+        final int lock = getSubtreeLockIndex(elem);
+        lockSubtree(lock, true);
+        try {
+            resdb.deleteResource(elem);
+            revisionCounter.incrementAndGet();
+        } finally {
+            unlockSubtree(lock, true);
+        }
     }
 
 	public boolean hasResource(String name) {
@@ -574,18 +584,30 @@ public class ResourceDBManager {
         commitLock.readLock().unlock();
     }
 
+    /**
+     * Lock for structural changes affecting more than one subtree, excludes all other operations. Changes confined to
+     * a single subtree only need the structure read lock and the write lock of their subtree.
+     */
     public void lockStructureWrite() {
         //structureLock.writeLock().lock();
-        commitLock.writeLock().lock();
+        lockWrite();
     }
 
     public void unlockStructureWrite() {
         //structureLock.writeLock().unlock();
+        unlockWrite();
+    }
+
+    /**
+     * Waits for the structural changes in progress to be completed, without blocking value operations.
+     */
+    public void awaitStructureChanges() {
+        commitLock.writeLock().lock();
         commitLock.writeLock().unlock();
     }
 
-    // TODO The convention for obtaining these locks must be explained here.
-    // E.g., the structure lock must always be obtained before the commit lock, if they are both acquired. Otherwise, deadlock can occur.
+    // The structure lock and the commit lock are the same global lock. It must always be obtained before any subtree lock,
+    // otherwise deadlock can occur.
 
 	/**
 	 * Lock for reading.
@@ -595,10 +617,13 @@ public class ResourceDBManager {
 	}
 
 	/**
-	 * Lock for writing.
+	 * Lock for writing, excludes all value operations, including those guarded by the subtree locks.
 	 */
 	public void lockWrite() {
 		commitLock.writeLock().lock();
+		for (ReentrantReadWriteLock l : subtreeLocks) {
+			l.writeLock().lock();
+		}
 	}
 
 	/**
@@ -612,9 +637,104 @@ public class ResourceDBManager {
 	 * Unlock writing.
 	 */
 	public void unlockWrite() {
+		for (int i = subtreeLocks.length - 1; i >= 0; i--) {
+			subtreeLocks[i].writeLock().unlock();
+		}
 		commitLock.writeLock().unlock();
 	}
 
+	/**
+	 * Index of the subtree lock guarding the values of an element, determined by the name of the top level resource
+	 * containing its location. Virtual elements are mapped to the lock they will have once they are created.
+	 */
+	public int getSubtreeLockIndex(TreeElement el) {
+		final String location = el.getLocation();
+		return getSubtreeLockIndex(location != null ? location : el.getPath());
+	}
+
+	/**
+	 * Index of the subtree lock guarding the given location or top level resource name.
+	 */
+	public int getSubtreeLockIndex(String location) {
+		int h = 0;
+		for (int i = location.startsWith("/") ? 1 : 0; i < location.length(); i++) {
+			final char c = location.charAt(i);
+			if (c == '/') {
+				break;
+			}
+			h = 31 * h + c;
+		}
+		h ^= (h >>> 16);
+		return h & (subtreeLocks.length - 1);
+	}
+
+	/**
+	 * Lock the subtree with the given index, for value writes (shared) or for exclusive access.
+	 */
+	public void lockSubtree(int index, boolean exclusive) {
+		if (exclusive) {
+			subtreeLocks[index].writeLock().lock();
+		}
+		else {
+			subtreeLocks[index].readLock().lock();
+		}
+	}
+
+	/**
+	 * Unlock the subtree with the given index.
+	 */
+	public void unlockSubtree(int index, boolean exclusive) {
+		if (exclusive) {
+			subtreeLocks[index].writeLock().unlock();
+		}
+		else {
+			subtreeLocks[index].readLock().unlock();
+		}
+	}
+
+	/**
+	 * Lock the subtrees of several elements in the order of their indices, so concurrent multi subtree operations
+	 * cannot deadlock.
+	 * 
+	 * @return the indices of the locked subtrees, to be passed to {@link #unlockSubtrees(int[], boolean)}.
+	 */
+	public int[] lockSubtrees(Collection<? extends TreeElement> elements, boolean exclusive) {
+		final BitSet indices = new BitSet(subtreeLocks.length);
+		for (TreeElement el : elements) {
+			indices.set(getSubtreeLockIndex(el));
+		}
+		final int[] locked = new int[indices.cardinality()];
+		int n = 0;
+		for (int i = indices.nextSetBit(0); i >= 0; i = indices.nextSetBit(i + 1)) {
+			lockSubtree(i, exclusive);
+			locked[n++] = i;
+		}
+		return locked;
+	}
+
+	/**
+	 * Lock all subtrees, in the order of their indices.
+	 * 
+	 * @return the indices of the locked subtrees, to be passed to {@link #unlockSubtrees(int[], boolean)}.
+	 */
+	public int[] lockAllSubtrees(boolean exclusive) {
+		final int[] locked = new int[subtreeLocks.length];
+		for (int i = 0; i < locked.length; i++) {
+			lockSubtree(i, exclusive);
+			locked[i] = i;
+		}
+		return locked;
+	}
+
+	/**
+	 * Unlock the subtrees locked by {@link #lockSubtrees(Collection, boolean)} or {@link #lockAllSubtrees(boolean)}.
+	 */
+	public void unlockSubtrees(int[] indices, boolean exclusive) {
+		for (int i = indices.length - 1; i >= 0; i--) {
+			unlockSubtree(indices[i], exclusive);
+		}
+	}
+
 	/*
 	 * Structure read lock required
 	 */
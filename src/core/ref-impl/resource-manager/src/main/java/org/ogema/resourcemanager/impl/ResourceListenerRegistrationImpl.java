@@ -16,7 +16,11 @@
 package org.ogema.resourcemanager.impl;
 
 import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.ogema.core.administration.AdminApplication;
 import org.ogema.core.application.ApplicationManager;
 
@@ -39,6 +43,8 @@ public class ResourceListenerRegistrationImpl extends InternalValueChangedListen
 	protected final ResourceBase origin;
 	protected final WeakReference<org.ogema.core.resourcemanager.ResourceListener> listener;
 	protected final boolean recursive;
+	// paths of the resources with callbacks queued but not yet started, see ListenerEventQueue
+	private final Set<Object> pendingEvents = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>(4));
 
 	public ResourceListenerRegistrationImpl(ResourceBase origin, org.ogema.core.resourcemanager.ResourceListener listener, boolean recursive) {
 		this.origin = origin;
@@ -93,7 +99,7 @@ public class ResourceListenerRegistrationImpl extends InternalValueChangedListen
 				return null;
 			}
 		};
-		origin.resMan.getApplicationManager().submitEvent(listenerCall);
+		origin.resMan.getListenerEventQueue().submit(this, listenerCall, pendingEvents, changedResource.getPath());
 	}
 
 	@Override
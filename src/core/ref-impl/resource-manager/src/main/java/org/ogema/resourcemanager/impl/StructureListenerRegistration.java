@@ -64,8 +64,7 @@ public class StructureListenerRegistration extends InternalStructureListenerRegi
 						.getDatabaseManager();
 				// FIXME is this really necessary?
 				// get the structure lock and release it to insure that the action which triggered this event is completed
-				dbMan.lockStructureWrite();  // XXX why isn't it sufficient to lock structure read?
-				dbMan.unlockStructureWrite();
+				dbMan.awaitStructureChanges();  // XXX why isn't it sufficient to lock structure read?
 				if (!isActive())
 					return false;
 				listener.resourceStructureChanged(e);
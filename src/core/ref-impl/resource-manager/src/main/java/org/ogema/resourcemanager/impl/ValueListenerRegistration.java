@@ -15,7 +15,11 @@
  */
 package org.ogema.resourcemanager.impl;
 
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.ogema.core.administration.AdminApplication;
 import org.ogema.core.application.ApplicationManager;
 
@@ -35,6 +39,8 @@ public class ValueListenerRegistration extends InternalValueChangedListenerRegis
 	@SuppressWarnings("rawtypes")
 	protected final ResourceValueListener listener;
 	protected final boolean callOnEveryUpdate;
+	// callbacks queued but not yet started, see ListenerEventQueue
+	private final Set<Object> pendingEvents = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>(4));
 
 	public ValueListenerRegistration(ResourceBase origin, ResourceValueListener<?> listener, boolean callOnEveryUpdate) {
 		this.origin = origin;
@@ -57,7 +63,8 @@ public class ValueListenerRegistration extends InternalValueChangedListenerRegis
 				return null;
 			}
 		};
-		origin.resMan.getApplicationManager().submitEvent(listenerCall);
+		// the listener is always called on the registration resource, so all callbacks can be merged
+		origin.resMan.getListenerEventQueue().submit(this, listenerCall, pendingEvents, Boolean.TRUE);
 	}
 
 	@Override
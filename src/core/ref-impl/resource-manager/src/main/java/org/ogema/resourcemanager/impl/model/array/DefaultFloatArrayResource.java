@@ -44,19 +44,20 @@ public class DefaultFloatArrayResource extends ResourceBase implements FloatArra
 
 	@Override
 	public boolean setValues(float[] values) {
-		resMan.lockRead();
+		final int lock = lockValue(false);
+		final VirtualTreeElement el;
 		try {
-			final VirtualTreeElement el = getElInternal();
+			el = getElInternal();
 			if (el.isVirtual() || getAccessModeInternal() == AccessMode.READ_ONLY) {
 				return false;
 			}
 			checkWritePermission();
 			el.getData().setFloatArr(values);
-			//FIXME no change check!
-			handleResourceUpdateInternal(true);
 		} finally {
-			resMan.unlockRead();
+			unlockValue(lock, false);
 		}
+		//FIXME no change check!
+		handleValueUpdate(el, true);
 		return true;
 	}
 
@@ -94,14 +95,26 @@ public class DefaultFloatArrayResource extends ResourceBase implements FloatArra
 		if (!exists())
 			throw new VirtualResourceException("Resource " + path + " is virtual, cannot set value");
 		checkWriteAccess();
-		resMan.lockWrite(); 
+		checkReadPermission();
+		// read and write under the exclusive lock of the subtree, without calling getValues and setValues, which
+		// would acquire further locks
+		final int lock = lockValue(true);
+		final VirtualTreeElement el;
+		final float[] val;
 		try {
-			final float[] val = getValues();
-			setValues(value);
-			return val;
+			el = getElInternal();
+			if (el.isVirtual())
+				throw new VirtualResourceException("Resource " + path + " is virtual, cannot set value");
+			val = el.getData().getFloatArr().clone();
+			if (getAccessModeInternal() == AccessMode.READ_ONLY)
+				return val;
+			checkWritePermission();
+			el.getData().setFloatArr(value);
 		} finally {
-			resMan.unlockWrite();
+			unlockValue(lock, true);
 		}
+		handleValueUpdate(el, true);
+		return val;
 	}
 
 }
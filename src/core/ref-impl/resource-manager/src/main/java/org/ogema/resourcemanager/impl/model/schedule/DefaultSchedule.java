@@ -75,7 +75,7 @@ public class DefaultSchedule extends ResourceBase implements org.ogema.core.mode
 	@Override
 	@SuppressWarnings("unchecked")
 	public <T extends Resource> T create() {
-		getResourceDB().lockStructureWrite();
+		final int lock = lockSubtreeStructure();
 		m_dbMan.startTransaction();
 		try {
 			DefaultSchedule s = super.create();
@@ -83,7 +83,7 @@ public class DefaultSchedule extends ResourceBase implements org.ogema.core.mode
 			return (T) s;
 		} finally {
 			m_dbMan.finishTransaction();
-			getResourceDB().unlockStructureWrite();
+			unlockSubtreeStructure(lock);
 		}
 	}
 
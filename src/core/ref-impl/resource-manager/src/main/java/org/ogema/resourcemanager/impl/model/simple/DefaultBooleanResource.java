@@ -44,20 +44,22 @@ public class DefaultBooleanResource extends SingleValueResourceBase implements B
 	
 	@Override
 	public boolean setValue(boolean value) {
-		resMan.lockRead();
+		final int lock = lockValue(false);
+		final VirtualTreeElement el;
+		final boolean changed;
 		try {
-			final VirtualTreeElement el = getElInternal();
+			el = getElInternal();
 			if (el.isVirtual() || getAccessModeInternal() == AccessMode.READ_ONLY) {
 				return false;
 			}
 			checkWritePermission();
 			final SimpleResourceData data = el.getData();
-			boolean changed = value != data.getBoolean();
+			changed = value != data.getBoolean();
 			data.setBoolean(value);
-			handleResourceUpdateInternal(changed);
 		} finally {
-			resMan.unlockRead();
+			unlockValue(lock, false);
 		}
+		handleValueUpdate(el, changed);
 		return true;
 	}
 
@@ -87,14 +89,55 @@ public class DefaultBooleanResource extends SingleValueResourceBase implements B
 		if (!exists())
 			throw new VirtualResourceException("Resource " + path + " is virtual, cannot set value");
 		checkWriteAccess();
-		resMan.lockWrite(); 
+		checkReadPermission();
+		// the shared lock of the subtree only keeps the resource from being deleted, concurrent updates of the value
+		// are resolved by compare-and-set
+		final int lock = lockValue(false);
+		final VirtualTreeElement el;
+		boolean val;
+		final boolean changed;
 		try {
-			final boolean val = getValue();
-			setValue(value);
-			return val;
+			el = getElInternal();
+			if (el.isVirtual())
+				throw new VirtualResourceException("Resource " + path + " is virtual, cannot set value");
+			final SimpleResourceData data = el.getData();
+			if (getAccessModeInternal() == AccessMode.READ_ONLY)
+				return data.getBoolean();
+			checkWritePermission();
+			do {
+				val = data.getBoolean();
+			} while (!data.compareAndSetBoolean(val, value));
+			changed = value != val;
 		} finally {
-			resMan.unlockWrite();
+			unlockValue(lock, false);
 		}
+		handleValueUpdate(el, changed);
+		return val;
+	}
+
+	@Override
+	public boolean compareAndSet(final boolean expect, final boolean update) throws VirtualResourceException, SecurityException,
+			ResourceAccessException {
+		if (!exists())
+			throw new VirtualResourceException("Resource " + path + " is virtual, cannot set value");
+		checkWriteAccess();
+		checkReadPermission();
+		final int lock = lockValue(false);
+		final VirtualTreeElement el;
+		try {
+			el = getElInternal();
+			if (el.isVirtual())
+				throw new VirtualResourceException("Resource " + path + " is virtual, cannot set value");
+			if (getAccessModeInternal() == AccessMode.READ_ONLY)
+				return false;
+			checkWritePermission();
+			if (!el.getData().compareAndSetBoolean(expect, update))
+				return false;
+		} finally {
+			unlockValue(lock, false);
+		}
+		handleValueUpdate(el, update != expect);
+		return true;
 	}
 
 }
@@ -44,20 +44,22 @@ public class DefaultFloatResource extends SingleValueResourceBase implements Flo
 
 	@Override
 	public boolean setValue(float value) {
-		resMan.lockRead();
+		final int lock = lockValue(false);
+		final VirtualTreeElement el;
+		final boolean changed;
 		try {
-			final VirtualTreeElement el = getElInternal();
+			el = getElInternal();
 			if (el.isVirtual() || getAccessModeInternal() == AccessMode.READ_ONLY) {
 				return false;
 			}
 			checkWritePermission();
 			final SimpleResourceData data = el.getData();
-			boolean changed = value != data.getFloat();
+			changed = value != data.getFloat();
 			data.setFloat(value);
-			handleResourceUpdateInternal(changed);
 		} finally {
-			resMan.unlockRead();
+			unlockValue(lock, false);
 		}
+		handleValueUpdate(el, changed);
 		return true;
 	}
 
@@ -96,14 +98,57 @@ public class DefaultFloatResource extends SingleValueResourceBase implements Flo
 		if (!exists())
 			throw new VirtualResourceException("Resource " + path + " is virtual, cannot set value");
 		checkWriteAccess();
-		resMan.lockWrite(); 
+		checkReadPermission();
+		// the shared lock of the subtree only keeps the resource from being deleted, concurrent updates of the value
+		// are resolved by compare-and-set
+		final int lock = lockValue(false);
+		final VirtualTreeElement el;
+		float val;
+		final boolean changed;
 		try {
-			final float val = getValue();
-			setValue(addOrSet ? (val + value) : value);
-			return val;
+			el = getElInternal();
+			if (el.isVirtual())
+				throw new VirtualResourceException("Resource " + path + " is virtual, cannot set value");
+			final SimpleResourceData data = el.getData();
+			if (getAccessModeInternal() == AccessMode.READ_ONLY)
+				return data.getFloat();
+			checkWritePermission();
+			float newValue;
+			do {
+				val = data.getFloat();
+				newValue = addOrSet ? val + value : value;
+			} while (!data.compareAndSetFloat(val, newValue));
+			changed = newValue != val;
 		} finally {
-			resMan.unlockWrite();
+			unlockValue(lock, false);
 		}
+		handleValueUpdate(el, changed);
+		return val;
 	}
-	
+
+	@Override
+	public boolean compareAndSet(final float expect, final float update) throws VirtualResourceException, SecurityException,
+			ResourceAccessException {
+		if (!exists())
+			throw new VirtualResourceException("Resource " + path + " is virtual, cannot set value");
+		checkWriteAccess();
+		checkReadPermission();
+		final int lock = lockValue(false);
+		final VirtualTreeElement el;
+		try {
+			el = getElInternal();
+			if (el.isVirtual())
+				throw new VirtualResourceException("Resource " + path + " is virtual, cannot set value");
+			if (getAccessModeInternal() == AccessMode.READ_ONLY)
+				return false;
+			checkWritePermission();
+			if (!el.getData().compareAndSetFloat(expect, update))
+				return false;
+		} finally {
+			unlockValue(lock, false);
+		}
+		handleValueUpdate(el, update != expect);
+		return true;
+	}
+
 }
@@ -44,20 +44,22 @@ public class DefaultIntegerResource extends SingleValueResourceBase implements I
 
 	@Override
 	public boolean setValue(int value) {
-		resMan.lockRead();
+		final int lock = lockValue(false);
+		final VirtualTreeElement el;
+		final boolean changed;
 		try {
-			final VirtualTreeElement el = getElInternal();
+			el = getElInternal();
 			if (el.isVirtual() || getAccessModeInternal() == AccessMode.READ_ONLY) {
 				return false;
 			}
 			checkWritePermission();
 			final SimpleResourceData data = el.getData();
-			boolean changed = value != data.getInt();
+			changed = value != data.getInt();
 			data.setInt(value);
-			handleResourceUpdateInternal(changed);
 		} finally {
-			resMan.unlockRead();
+			unlockValue(lock, false);
 		}
+		handleValueUpdate(el, changed);
 		return true;
 	}
 
@@ -96,16 +98,57 @@ public class DefaultIntegerResource extends SingleValueResourceBase implements I
 		if (!exists())
 			throw new VirtualResourceException("Resource " + path + " is virtual, cannot set value");
 		checkWriteAccess();
-		// expensive; we make use of the fact that all access to the SimpleResourceData is 
-		// guarded by the resMan lock. 
-		resMan.lockWrite(); 
+		checkReadPermission();
+		// the shared lock of the subtree only keeps the resource from being deleted, concurrent updates of the value
+		// are resolved by compare-and-set
+		final int lock = lockValue(false);
+		final VirtualTreeElement el;
+		int val;
+		final boolean changed;
 		try {
-			final int val = getValue();
-			setValue(addOrSet ? (val + value) : value);
-			return val;
+			el = getElInternal();
+			if (el.isVirtual())
+				throw new VirtualResourceException("Resource " + path + " is virtual, cannot set value");
+			final SimpleResourceData data = el.getData();
+			if (getAccessModeInternal() == AccessMode.READ_ONLY)
+				return data.getInt();
+			checkWritePermission();
+			int newValue;
+			do {
+				val = data.getInt();
+				newValue = addOrSet ? val + value : value;
+			} while (!data.compareAndSetInt(val, newValue));
+			changed = newValue != val;
 		} finally {
-			resMan.unlockWrite();
+			unlockValue(lock, false);
 		}
+		handleValueUpdate(el, changed);
+		return val;
+	}
+
+	@Override
+	public boolean compareAndSet(final int expect, final int update) throws VirtualResourceException, SecurityException,
+			ResourceAccessException {
+		if (!exists())
+			throw new VirtualResourceException("Resource " + path + " is virtual, cannot set value");
+		checkWriteAccess();
+		checkReadPermission();
+		final int lock = lockValue(false);
+		final VirtualTreeElement el;
+		try {
+			el = getElInternal();
+			if (el.isVirtual())
+				throw new VirtualResourceException("Resource " + path + " is virtual, cannot set value");
+			if (getAccessModeInternal() == AccessMode.READ_ONLY)
+				return false;
+			checkWritePermission();
+			if (!el.getData().compareAndSetInt(expect, update))
+				return false;
+		} finally {
+			unlockValue(lock, false);
+		}
+		handleValueUpdate(el, update != expect);
+		return true;
 	}
 
 }
@@ -44,20 +44,22 @@ public class DefaultStringResource extends SingleValueResourceBase implements St
 
 	@Override
 	public boolean setValue(String value) {
-		resMan.lockRead();
+		final int lock = lockValue(false);
+		final VirtualTreeElement el;
+		final boolean changed;
 		try {
-			final VirtualTreeElement el = getElInternal();
+			el = getElInternal();
 			if (el.isVirtual() || getAccessModeInternal() == AccessMode.READ_ONLY) {
 				return false;
 			}
 			checkWritePermission();
 			final SimpleResourceData data = el.getData();
-			boolean changed = !value.equals(data.getString());
+			changed = !value.equals(data.getString());
 			data.setString(value);
-			handleResourceUpdateInternal(changed);
 		} finally {
-			resMan.unlockRead();
+			unlockValue(lock, false);
 		}
+		handleValueUpdate(el, changed);
 		return true;
 	}
 
@@ -76,14 +78,55 @@ public class DefaultStringResource extends SingleValueResourceBase implements St
 		if (!exists())
 			throw new VirtualResourceException("Resource " + path + " is virtual, cannot set value");
 		checkWriteAccess();
-		resMan.lockWrite(); 
+		checkReadPermission();
+		// the shared lock of the subtree only keeps the resource from being deleted, concurrent updates of the value
+		// are resolved by compare-and-set
+		final int lock = lockValue(false);
+		final VirtualTreeElement el;
+		String val;
+		final boolean changed;
 		try {
-			final String val = getValue();
-			setValue(value);
-			return val;
+			el = getElInternal();
+			if (el.isVirtual())
+				throw new VirtualResourceException("Resource " + path + " is virtual, cannot set value");
+			final SimpleResourceData data = el.getData();
+			if (getAccessModeInternal() == AccessMode.READ_ONLY)
+				return data.getString();
+			checkWritePermission();
+			do {
+				val = data.getString();
+			} while (!data.compareAndSetString(val, value));
+			changed = !value.equals(val);
 		} finally {
-			resMan.unlockWrite();
+			unlockValue(lock, false);
 		}
+		handleValueUpdate(el, changed);
+		return val;
+	}
+
+	@Override
+	public boolean compareAndSet(final String expect, final String update) throws VirtualResourceException, SecurityException,
+			ResourceAccessException {
+		if (!exists())
+			throw new VirtualResourceException("Resource " + path + " is virtual, cannot set value");
+		checkWriteAccess();
+		checkReadPermission();
+		final int lock = lockValue(false);
+		final VirtualTreeElement el;
+		try {
+			el = getElInternal();
+			if (el.isVirtual())
+				throw new VirtualResourceException("Resource " + path + " is virtual, cannot set value");
+			if (getAccessModeInternal() == AccessMode.READ_ONLY)
+				return false;
+			checkWritePermission();
+			if (!el.getData().compareAndSetString(expect, update))
+				return false;
+		} finally {
+			unlockValue(lock, false);
+		}
+		handleValueUpdate(el, update == null ? expect != null : !update.equals(expect));
+		return true;
 	}
 
 }
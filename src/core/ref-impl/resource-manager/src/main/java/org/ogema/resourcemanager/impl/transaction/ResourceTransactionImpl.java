@@ -18,6 +18,7 @@ package org.ogema.resourcemanager.impl.transaction;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.LinkedList;
@@ -46,12 +47,14 @@ import org.ogema.core.resourcemanager.transaction.ResourceTransaction;
 import org.ogema.core.resourcemanager.transaction.TransactionFuture;
 import org.ogema.core.resourcemanager.transaction.WriteConfiguration;
 import org.ogema.core.timeseries.ReadOnlyTimeSeries;
+import org.ogema.resourcemanager.impl.ConnectedResource;
 import org.ogema.resourcemanager.impl.ResourceDBManager;
 import org.ogema.resourcemanager.impl.transaction.actions.AccessModeAction;
 import org.ogema.resourcemanager.impl.transaction.actions.AccessModeReadAction;
 import org.ogema.resourcemanager.impl.transaction.actions.AccessPriorityReadAction;
 import org.ogema.resourcemanager.impl.transaction.actions.ActivationAction;
 import org.ogema.resourcemanager.impl.transaction.actions.ActiveReadAction;
+import org.ogema.resourcemanager.impl.transaction.actions.CompositeAction;
 import org.ogema.resourcemanager.impl.transaction.actions.CreationAction;
 import org.ogema.resourcemanager.impl.transaction.actions.DeletionAction;
 import org.ogema.resourcemanager.impl.transaction.actions.ExistenceReadAction;
@@ -61,6 +64,7 @@ import org.ogema.resourcemanager.impl.transaction.actions.ResourceWriteAction;
 import org.ogema.resourcemanager.impl.transaction.actions.ScheduleAddAction;
 import org.ogema.resourcemanager.impl.transaction.actions.ScheduleReadAction;
 import org.ogema.resourcemanager.impl.transaction.actions.ScheduleReplaceAction;
+import org.ogema.resourcetree.TreeElement;
 
 public class ResourceTransactionImpl implements ResourceTransaction {
 	
@@ -70,6 +74,8 @@ public class ResourceTransactionImpl implements ResourceTransaction {
     private final Queue<AtomicAction> pending = new LinkedList<>();
     private boolean requiresStructureWriteLock = false;
     private boolean requiresCommitWriteLock = false;
+    // indices of the subtree locks held during a commit which writes values, null if all subtrees are locked
+    private int[] subtreeLocks;
     
     public ResourceTransactionImpl(ResourceDBManager dbMan, ApplicationManager appMan) {
         this.dbMan = dbMan;
@@ -139,10 +145,23 @@ public class ResourceTransactionImpl implements ResourceTransaction {
 			dbMan.lockStructureWrite();
 		else
 			dbMan.lockStructureRead();
-		if (valueWrite)
-			dbMan.lockWrite();
-		else
+		if (valueWrite) {
+			// only the subtrees of the written resources are locked, in the order of their indices
+			final List<TreeElement> targets = getTargets();
+			if (targets != null)
+				subtreeLocks = dbMan.lockSubtrees(targets, true);
+			else
+				dbMan.lockWrite();
+		}
+		else {
 			dbMan.lockRead();
+			if (!structureWrite) {
+				// value-only write transactions hold the global read lock as well; the shared subtree locks
+				// keep them from being applied in between the reads
+				final List<TreeElement> targets = getTargets();
+				subtreeLocks = targets != null ? dbMan.lockSubtrees(targets, false) : dbMan.lockAllSubtrees(false);
+			}
+		}
 		if (structureWrite || valueWrite)
 			dbMan.startTransaction();
 	}
@@ -150,16 +169,38 @@ public class ResourceTransactionImpl implements ResourceTransaction {
 	private void unlock(boolean structureWrite, boolean valueWrite) {
 		if (structureWrite || valueWrite)
 			dbMan.finishTransaction();
-		if (valueWrite)
-			dbMan.unlockWrite();
-		else
+		if (valueWrite) {
+			if (subtreeLocks != null)
+				dbMan.unlockSubtrees(subtreeLocks, true);
+			else
+				dbMan.unlockWrite();
+		}
+		else {
+			if (subtreeLocks != null)
+				dbMan.unlockSubtrees(subtreeLocks, false);
 			dbMan.unlockRead();
+		}
 		if (structureWrite)
 			dbMan.unlockStructureWrite();
 		else
 			dbMan.unlockStructureRead();
 	}
 	
+	/*
+	 * The tree elements of the resources the pending actions operate on, or null if they cannot be determined for
+	 * all actions. Requires the structure lock.
+	 */
+	private List<TreeElement> getTargets() {
+		final List<TreeElement> targets = new ArrayList<>(pending.size());
+		for (AtomicAction action : pending) {
+			final Resource source = action.getSource();
+			if (action instanceof CompositeAction || !(source instanceof ConnectedResource))
+				return null;
+			targets.add(((ConnectedResource) source).getTreeElement());
+		}
+		return targets;
+	}
+	
 	
 	// TODO check need for locks
 	private void addAction(AtomicAction action) {
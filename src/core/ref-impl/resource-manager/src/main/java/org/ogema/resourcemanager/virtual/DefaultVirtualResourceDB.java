@@ -255,6 +255,16 @@ public class DefaultVirtualResourceDB implements VirtualResourceDB {
 		return vEls;
 	}
 
+	@Override
+	public Collection<TreeElement> getElementsByType(Class<? extends Resource> type, boolean includeSubTypes) {
+        Collection<TreeElement> realElements = realResources.getElementsByType(type, includeSubTypes);
+        Collection<TreeElement> vEls = new ArrayList<>(realElements.size());
+        for (TreeElement e: realElements) {
+            vEls.add(getElement(e));
+        }
+		return vEls;
+	}
+
 	@Override
 	public TreeElement getFilteredNodesByPath(String path, boolean isRoot) {
 		// TODO Auto-generated method stub
@@ -0,0 +1,190 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.resourcemanager.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ogema.core.application.ApplicationManager;
+import org.ogema.events.OrderedEventSubmitter;
+
+/**
+ * Tests the conflation of listener callbacks, with an application manager that executes the callbacks in a single
+ * thread, like the app executor.
+ */
+public class ListenerEventQueueTest {
+
+	private ExecutorService executor;
+	private ApplicationManager appMan;
+	private final CountDownLatch blocker = new CountDownLatch(1);
+
+	@Before
+	public void setup() {
+		executor = Executors.newSingleThreadExecutor();
+		appMan = (ApplicationManager) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { ApplicationManager.class }, new InvocationHandler() {
+
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (!method.getName().equals("submitEvent"))
+							throw new UnsupportedOperationException(method.getName());
+						return executor.isShutdown() ? null : executor.submit((Callable<?>) args[0]);
+					}
+				});
+	}
+
+	@After
+	public void shutdown() {
+		blocker.countDown();
+		executor.shutdownNow();
+	}
+
+	// occupies the app thread until the blocker is released
+	private void blockAppThread() {
+		executor.submit(new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				blocker.await(30, TimeUnit.SECONDS);
+				return null;
+			}
+		});
+	}
+
+	private static Callable<Void> counter(final AtomicInteger calls) {
+		return new Callable<Void>() {
+
+			@Override
+			public Void call() {
+				calls.incrementAndGet();
+				return null;
+			}
+		};
+	}
+
+	private void awaitIdle() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		executor.submit(new Callable<Void>() {
+
+			@Override
+			public Void call() {
+				latch.countDown();
+				return null;
+			}
+		});
+		Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void callbacksForSameKeyAreMerged() throws InterruptedException {
+		final ListenerEventQueue queue = new ListenerEventQueue(appMan, true);
+		final Set<Object> pending = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+		final AtomicInteger callsA = new AtomicInteger();
+		final AtomicInteger callsB = new AtomicInteger();
+		blockAppThread();
+		for (int i = 0; i < 100; i++) {
+			queue.submit(counter(callsA), pending, "a");
+			queue.submit(counter(callsB), pending, "b");
+		}
+		Assert.assertEquals(2, queue.getQueueDepth());
+		Assert.assertEquals(2, queue.getSubmittedCount());
+		Assert.assertEquals(198, queue.getMergedCount());
+		blocker.countDown();
+		awaitIdle();
+		Assert.assertEquals(1, callsA.get());
+		Assert.assertEquals(1, callsB.get());
+		Assert.assertEquals(0, queue.getQueueDepth());
+		Assert.assertTrue(pending.isEmpty());
+		// a change after the callback has started is delivered again
+		queue.submit(counter(callsA), pending, "a");
+		awaitIdle();
+		Assert.assertEquals(2, callsA.get());
+	}
+
+	@Test
+	public void callbacksAreNotMergedByDefault() throws InterruptedException {
+		final ListenerEventQueue queue = new ListenerEventQueue(appMan, false);
+		final Set<Object> pending = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+		final AtomicInteger calls = new AtomicInteger();
+		blockAppThread();
+		for (int i = 0; i < 100; i++) {
+			queue.submit(counter(calls), pending, "a");
+		}
+		Assert.assertEquals(100, queue.getQueueDepth());
+		Assert.assertEquals(0, queue.getMergedCount());
+		blocker.countDown();
+		awaitIdle();
+		Assert.assertEquals(100, calls.get());
+		Assert.assertEquals(0, queue.getQueueDepth());
+	}
+
+	@Test
+	public void callbacksAreDroppedAfterShutdown() {
+		final ListenerEventQueue queue = new ListenerEventQueue(appMan, true);
+		final Set<Object> pending = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+		executor.shutdown();
+		queue.submit(counter(new AtomicInteger()), pending, "a");
+		queue.submit(counter(new AtomicInteger()), pending, "a");
+		Assert.assertEquals(2, queue.getDroppedCount());
+		Assert.assertEquals(0, queue.getQueueDepth());
+		Assert.assertTrue(pending.isEmpty());
+	}
+
+	@Test
+	public void registrationIsUsedAsOrderingKey() throws InterruptedException {
+		final List<Object> keys = Collections.synchronizedList(new ArrayList<Object>());
+		final ApplicationManager orderedAppMan = (ApplicationManager) Proxy.newProxyInstance(
+				getClass().getClassLoader(), new Class<?>[] { ApplicationManager.class, OrderedEventSubmitter.class },
+				new InvocationHandler() {
+
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (!method.getName().equals("submitEvent"))
+							throw new UnsupportedOperationException(method.getName());
+						if (args.length == 1)
+							return executor.submit((Callable<?>) args[0]);
+						keys.add(args[0]);
+						return executor.submit((Callable<?>) args[1]);
+					}
+				});
+		final ListenerEventQueue queue = new ListenerEventQueue(orderedAppMan, false);
+		final Set<Object> pending = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+		final Object registration = new Object();
+		final AtomicInteger calls = new AtomicInteger();
+		queue.submit(registration, counter(calls), pending, "a");
+		queue.submit(counter(calls), pending, "a");
+		awaitIdle();
+		Assert.assertEquals(2, calls.get());
+		Assert.assertEquals(Collections.singletonList(registration), keys);
+	}
+
+}
@@ -31,7 +31,11 @@ import java.util.concurrent.TimeoutException;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.ogema.core.model.simple.FloatResource;
 import org.ogema.core.model.simple.IntegerResource;
+import org.ogema.core.model.simple.StringResource;
+import org.ogema.core.resourcemanager.VirtualResourceException;
+import org.ogema.model.sensors.TemperatureSensor;
 import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
 import org.ops4j.pax.exam.spi.reactors.PerClass;
 
@@ -85,6 +89,38 @@ public class AtomicReadWriteTest extends OsgiTestBase {
 		getAndAddWorks(150, resource, false);
 	}
 	
+	@Test
+	public void compareAndSetWorks() {
+		final IntegerResource resource = getApplicationManager().getResourceManagement().createResource(newResourceName(), IntegerResource.class);
+		resource.setValue(1);
+		Assert.assertFalse(resource.compareAndSet(0, 2));
+		Assert.assertEquals(1, resource.getValue());
+		Assert.assertTrue(resource.compareAndSet(1, 2));
+		Assert.assertEquals(2, resource.getValue());
+		final FloatResource f = getApplicationManager().getResourceManagement().createResource(newResourceName(), FloatResource.class);
+		f.setValue(Float.NaN);
+		Assert.assertTrue(f.compareAndSet(Float.NaN, 1.5F));
+		Assert.assertEquals(1.5F, f.getValue(), 0F);
+		final StringResource s = getApplicationManager().getResourceManagement().createResource(newResourceName(), StringResource.class);
+		s.setValue("a");
+		Assert.assertFalse(s.compareAndSet("b", "c"));
+		Assert.assertTrue(s.compareAndSet(new String("a"), "c"));
+		Assert.assertEquals("c", s.getValue());
+		resource.delete();
+		f.delete();
+		s.delete();
+	}
+	
+	@Test(expected=VirtualResourceException.class)
+	public void compareAndSetFailsOnVirtualResource() {
+		final TemperatureSensor sensor = getApplicationManager().getResourceManagement().createResource(newResourceName(), TemperatureSensor.class);
+		try {
+			sensor.reading().compareAndSet(0, 1);
+		} finally {
+			sensor.delete();
+		}
+	}
+	
 	private static class GetAndIncrementOperation implements Callable<Integer> {
 		
 		private final IntegerResource resource;
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.resourcemanager.impl.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ogema.core.model.simple.FloatResource;
+import org.ogema.model.sensors.TemperatureSensor;
+import org.ogema.resourcemanager.impl.BatchValueListener;
+import org.ogema.resourcemanager.impl.BatchValueListenerRegistration;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerClass;
+
+@ExamReactorStrategy(PerClass.class)
+public class BatchValueListenerTest extends OsgiTestBase {
+
+	private static class CountingListener implements BatchValueListener {
+
+		final AtomicInteger calls = new AtomicInteger();
+		final AtomicInteger maxSize = new AtomicInteger();
+		final CountDownLatch latch;
+
+		CountingListener(int expectedChanges) {
+			latch = new CountDownLatch(expectedChanges);
+		}
+
+		@Override
+		public void resourcesChanged(List<Change> changes) {
+			calls.incrementAndGet();
+			if (changes.size() > maxSize.get())
+				maxSize.set(changes.size());
+			for (Change c : changes) {
+				Assert.assertTrue(c.getResource() instanceof FloatResource);
+				latch.countDown();
+			}
+		}
+	}
+
+	private List<FloatResource> createReadings(int count) {
+		final List<FloatResource> readings = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			final TemperatureSensor sensor = resMan.createResource(newResourceName(), TemperatureSensor.class);
+			final FloatResource reading = sensor.reading().create();
+			readings.add(reading);
+			sensor.activate(true);
+		}
+		return readings;
+	}
+
+	@Test
+	public void changesAreDeliveredInBatches() throws InterruptedException {
+		final int count = 200;
+		final List<FloatResource> readings = createReadings(count);
+		final CountingListener listener = new CountingListener(count);
+		final BatchValueListenerRegistration reg = new BatchValueListenerRegistration(getApplicationManager(),
+				listener, 50, 100, false);
+		for (FloatResource f : readings)
+			reg.addResource(f);
+		Assert.assertEquals(count, reg.size());
+		for (FloatResource f : readings)
+			f.setValue(1);
+		Assert.assertTrue("Missing changes", listener.latch.await(10, TimeUnit.SECONDS));
+		Assert.assertTrue("Too many callbacks: " + listener.calls.get(), listener.calls.get() < count / 10);
+		Assert.assertTrue(listener.maxSize.get() <= 50);
+		reg.close();
+		Assert.assertEquals(0, reg.size());
+		for (FloatResource f : readings) {
+			f.setValue(2);
+			f.getParent().delete();
+		}
+	}
+
+	@Test
+	public void removedResourcesAreNotReported() throws InterruptedException {
+		final List<FloatResource> readings = createReadings(2);
+		final CountingListener listener = new CountingListener(1);
+		final BatchValueListenerRegistration reg = new BatchValueListenerRegistration(getApplicationManager(),
+				listener, 10, 0, true);
+		reg.addResource(readings.get(0));
+		reg.addResource(readings.get(1));
+		Assert.assertTrue(reg.removeResource(readings.get(1)));
+		Assert.assertFalse(reg.removeResource(readings.get(1)));
+		readings.get(1).setValue(3);
+		readings.get(0).setValue(3);
+		Assert.assertTrue(listener.latch.await(5, TimeUnit.SECONDS));
+		Thread.sleep(200);
+		Assert.assertEquals(1, listener.calls.get());
+		reg.close();
+	}
+
+}
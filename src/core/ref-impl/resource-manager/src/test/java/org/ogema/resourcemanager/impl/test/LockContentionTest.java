@@ -0,0 +1,231 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.resourcemanager.impl.test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ogema.core.model.simple.FloatResource;
+import org.ogema.core.model.simple.IntegerResource;
+import org.ogema.model.sensors.TemperatureSensor;
+import org.ogema.resourcemanager.impl.ApplicationResourceManager;
+import org.ogema.resourcemanager.impl.ResourceDBManager;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerClass;
+
+/**
+ * Value writes of several apps to separate resource trees, concurrently with structural changes to another tree. The
+ * number of writes per thread can be set with the system property org.ogema.resman.benchmark.size.
+ */
+@ExamReactorStrategy(PerClass.class)
+public class LockContentionTest extends OsgiTestBase {
+
+	private static final int THREADS = 4;
+
+	private static final int WRITES = Integer.getInteger("org.ogema.resman.benchmark.size", 20000);
+
+	/*
+	 * Each thread writes to its own sensor, returns the duration in ms.
+	 */
+	private long writeValues(final List<TemperatureSensor> sensors) throws Exception {
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		final ExecutorService exec = Executors.newFixedThreadPool(sensors.size());
+		try {
+			final List<Future<?>> results = new ArrayList<>();
+			for (final TemperatureSensor sensor : sensors) {
+				results.add(exec.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() throws Exception {
+						Assert.assertTrue(startLatch.await(30, TimeUnit.SECONDS));
+						final FloatResource value = sensor.reading();
+						final IntegerResource count = sensor.getSubResource("count", IntegerResource.class);
+						for (int i = 0; i < WRITES; i++) {
+							value.setValue(i);
+							count.getAndAdd(1);
+						}
+						return null;
+					}
+				}));
+			}
+			final long start = System.nanoTime();
+			startLatch.countDown();
+			for (Future<?> f : results)
+				f.get(5, TimeUnit.MINUTES);
+			return (System.nanoTime() - start) / 1000000;
+		} finally {
+			exec.shutdown();
+		}
+	}
+
+	private List<TemperatureSensor> createSensors() {
+		final List<TemperatureSensor> sensors = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			final TemperatureSensor sensor = resMan.createResource(newResourceName(), TemperatureSensor.class);
+			sensor.reading().create();
+			sensor.getSubResource("count", IntegerResource.class).create();
+			sensor.activate(true);
+			sensors.add(sensor);
+		}
+		return sensors;
+	}
+
+	@Test
+	public void valueWritesProceedDuringStructuralChanges() throws Exception {
+		final List<TemperatureSensor> sensors = createSensors();
+		final long idle = writeValues(sensors);
+		final TemperatureSensor other = resMan.createResource(newResourceName(), TemperatureSensor.class);
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final ExecutorService structure = Executors.newSingleThreadExecutor();
+		final Future<Integer> changes = structure.submit(new Callable<Integer>() {
+
+			@Override
+			public Integer call() {
+				int n = 0;
+				while (running.get()) {
+					other.location().create().activate(true);
+					other.location().delete();
+					n++;
+				}
+				return n;
+			}
+		});
+		try {
+			final long busy = writeValues(sensors);
+			running.set(false);
+			final int n = changes.get(1, TimeUnit.MINUTES);
+			System.out.println(String.format(
+					"%d threads with %d writes each: %d ms, during %d structural changes of another tree %d ms",
+					THREADS, WRITES, idle, n, busy));
+			Assert.assertTrue("no structural changes during the value writes", n > 0);
+		} finally {
+			running.set(false);
+			structure.shutdown();
+		}
+		for (TemperatureSensor sensor : sensors) {
+			Assert.assertEquals(WRITES - 1, sensor.reading().getValue(), 0.1f);
+			Assert.assertEquals("getAndAdd is not atomic", 2 * WRITES,
+					sensor.getSubResource("count", IntegerResource.class).getValue());
+		}
+		Assert.assertFalse(other.location().exists());
+	}
+
+	private ResourceDBManager getDatabaseManager() throws Exception {
+		final Method m = ApplicationResourceManager.class.getDeclaredMethod("getDatabaseManager");
+		m.setAccessible(true);
+		return (ResourceDBManager) m.invoke(resMan);
+	}
+
+	private Future<Boolean> setValue(final ExecutorService exec, final FloatResource resource, final float value) {
+		return exec.submit(new Callable<Boolean>() {
+
+			@Override
+			public Boolean call() {
+				return resource.setValue(value);
+			}
+		});
+	}
+
+	/*
+	 * A structural change of one tree holds the lock of its subtree, value writes to another tree must not wait for
+	 * it.
+	 */
+	@Test
+	public void valueWritesAreNotBlockedByStructuralChangesOfAnotherTree() throws Exception {
+		final ResourceDBManager dbMan = getDatabaseManager();
+		final TemperatureSensor a = resMan.createResource(newResourceName(), TemperatureSensor.class);
+		TemperatureSensor other = resMan.createResource(newResourceName(), TemperatureSensor.class);
+		while (dbMan.getSubtreeLockIndex(other.getName()) == dbMan.getSubtreeLockIndex(a.getName())) {
+			other.delete();
+			other = resMan.createResource(newResourceName(), TemperatureSensor.class);
+		}
+		final TemperatureSensor b = other;
+		a.reading().create();
+		b.reading().create();
+		a.activate(true);
+		b.activate(true);
+		final int lockB = dbMan.getSubtreeLockIndex(b.getName());
+		final CountDownLatch locked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final ExecutorService exec = Executors.newFixedThreadPool(3);
+		try {
+			// holds the lock of subtree B the way structural changes confined to B do, while changing B
+			final Future<?> structuralChange = exec.submit(new Callable<Void>() {
+
+				@Override
+				public Void call() throws Exception {
+					dbMan.lockStructureRead();
+					dbMan.lockSubtree(lockB, true);
+					try {
+						b.location().create();
+						locked.countDown();
+						Assert.assertTrue(release.await(30, TimeUnit.SECONDS));
+						b.location().delete();
+					} finally {
+						dbMan.unlockSubtree(lockB, true);
+						dbMan.unlockStructureRead();
+					}
+					return null;
+				}
+			});
+			Assert.assertTrue(locked.await(30, TimeUnit.SECONDS));
+			final Future<Boolean> writeB = setValue(exec, b.reading(), 2);
+			try {
+				writeB.get(200, TimeUnit.MILLISECONDS);
+				Assert.fail("value write did not wait for the structural change of its tree");
+			} catch (TimeoutException expected) {
+			}
+			final Future<Boolean> writeA = setValue(exec, a.reading(), 1);
+			Assert.assertTrue(writeA.get(5, TimeUnit.SECONDS));
+			Assert.assertFalse(writeB.isDone());
+			release.countDown();
+			structuralChange.get(30, TimeUnit.SECONDS);
+			Assert.assertTrue(writeB.get(30, TimeUnit.SECONDS));
+		} finally {
+			release.countDown();
+			exec.shutdownNow();
+		}
+		Assert.assertEquals(1, a.reading().getValue(), 0.1f);
+		Assert.assertEquals(2, b.reading().getValue(), 0.1f);
+		Assert.assertFalse(b.location().exists());
+	}
+
+	@Test
+	public void valueWritesToSharedTreeAreConsistent() throws Exception {
+		final TemperatureSensor sensor = resMan.createResource(newResourceName(), TemperatureSensor.class);
+		sensor.reading().create();
+		sensor.getSubResource("count", IntegerResource.class).create();
+		sensor.activate(true);
+		final List<TemperatureSensor> sensors = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			sensors.add(sensor);
+		}
+		writeValues(sensors);
+		Assert.assertEquals(THREADS * WRITES, sensor.getSubResource("count", IntegerResource.class).getValue());
+	}
+
+}
@@ -20,9 +20,12 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -36,6 +39,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.ogema.accesscontrol.RestAccess;
 import org.ogema.core.application.ApplicationManager;
+import org.ogema.core.channelmanager.measurements.SampledValue;
 import org.ogema.core.model.Resource;
 import org.ogema.core.model.simple.BooleanResource;
 import org.ogema.core.model.simple.FloatResource;
@@ -66,6 +70,7 @@ class RecordedDataServlet extends HttpServlet {
     public final static String PARAM_END = "end";
     public final static String PARAM_INTERVAL = "interval";
     public final static String PARAM_MODE = "mode";
+    public final static String PARAM_ID = "id";
 
     static final String ALIAS = "/rest/recordeddata";
 
@@ -83,6 +88,7 @@ class RecordedDataServlet extends HttpServlet {
 
     // two alternative ways to restrict the time interval: either append "/" + timestamp; OR use request
     // parameters: ?start=<START_TIME>&end=<END_TIME>
+    // several time series can be requested at once, as JSON: ?id=<ID1>&id=<ID2>&start=<START_TIME>&end=<END_TIME>
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
     	final ApplicationManager appman = restAcc.authenticate(req, resp);
@@ -94,6 +100,10 @@ class RecordedDataServlet extends HttpServlet {
         }
         try {
 	        final String pathInfo = req.getPathInfo();
+	        if ((pathInfo == null || pathInfo.isEmpty() || pathInfo.equals("/")) && req.getParameterValues(PARAM_ID) != null) {
+	        	outputMultipleSeries(req, resp, appman.getResourceAccess());
+	        	return;
+	        }
 	        if (pathInfo == null || pathInfo.isEmpty()) {
 	        	resp.setContentType("text/plain");
 	        	resp.setCharacterEncoding("UTF-8");
@@ -298,6 +308,78 @@ class RecordedDataServlet extends HttpServlet {
 		}
     }
     
+    /*
+     * Reads all requested time series in one call to the data recorder, which may read them in parallel.
+     * Time series the user has no access to are skipped.
+     */
+    private void outputMultipleSeries(HttpServletRequest req, HttpServletResponse resp, ResourceAccess ra) throws IOException {
+    	final List<String> ids = new ArrayList<>();
+    	for (String id : req.getParameterValues(PARAM_ID)) {
+    		try {
+    			if (ra.getResource(id) == null)
+    				continue;
+    		} catch (SecurityException expected) {
+    			continue;
+    		}
+    		ids.add(id);
+    	}
+    	long start = 0;
+    	long end = Long.MAX_VALUE;
+    	long interval = 0;
+    	ReductionMode mode = ReductionMode.NONE;
+    	try {
+    		final String startTimestamp = req.getParameter(PARAM_START);
+    		if (startTimestamp != null)
+    			start = parseTimestamp(startTimestamp);
+    		final String endTimestamp = req.getParameter(PARAM_END);
+    		if (endTimestamp != null)
+    			end = parseTimestamp(endTimestamp);
+    		final String pInterval = req.getParameter(PARAM_INTERVAL);
+    		if (pInterval != null)
+    			interval = Long.parseLong(pInterval);
+    		final String pMode = req.getParameter(PARAM_MODE);
+    		if (pMode != null)
+    			mode = ReductionMode.valueOf(pMode);
+    	} catch (IllegalArgumentException e) { // includes NumberFormatException
+    		resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+    		return;
+    	}
+    	RestApp.logger.debug("return RecordedData {}, {}, {}, {}, {}", ids, start, end, interval, mode);
+    	final Map<String, List<SampledValue>> values = rda.getValues(ids, start, end, interval, mode);
+    	resp.setContentType(Utils.JSON);
+    	resp.setCharacterEncoding("UTF-8");
+    	final PrintWriter writer = resp.getWriter();
+    	writer.write('{');
+    	boolean firstSeries = true;
+    	for (Map.Entry<String, List<SampledValue>> entry : values.entrySet()) {
+    		if (!firstSeries)
+    			writer.write(',');
+    		firstSeries = false;
+    		writer.write(JSONObject.quote(entry.getKey()));
+    		writer.write(":[");
+    		final List<SampledValue> series = entry.getValue();
+    		if (series != null) {
+    			boolean first = true;
+    			for (SampledValue sv : series) {
+    				if (!first)
+    					writer.write(',');
+    				first = false;
+    				final float value = sv.getValue().getFloatValue();
+    				writer.write("{\"time\":");
+    				writer.write(Long.toString(sv.getTimestamp()));
+    				writer.write(",\"quality\":\"");
+    				writer.write(sv.getQuality().name());
+    				writer.write("\",\"value\":");
+    				writer.write(Float.isNaN(value) || Float.isInfinite(value) ? "null" : Float.toString(value));
+    				writer.write('}');
+    			}
+    		}
+    		writer.write(']');
+    	}
+    	writer.write('}');
+    	resp.setStatus(HttpServletResponse.SC_OK);
+    }
+    
     protected static long parseTimestamp(String ts) {
         long rval;
         try {
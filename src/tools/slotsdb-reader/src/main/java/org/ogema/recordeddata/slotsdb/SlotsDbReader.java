@@ -291,6 +291,11 @@ public class SlotsDbReader {
 		File file = new File(arg);
 		FileObject fo = null;
 
+		// compressed files of closed days are identified by their name
+		if (file.getName().startsWith(CompressedFileObject.PREFIX)) {
+			return new CompressedFileObject(file, dummyCache);
+		}
+
 		// create a ConstantIntervalFileObject as default to access data of the file
 		fo = new ConstantIntervalFileObject(file, dummyCache);
 